@@ -43,4 +43,6 @@ else
 fi
 
 java -Xmx128g -jar -Dtinylog.configuration=/home/user/tinylog.properties $JAR $PROPS $EX_TYPE
-#java -jar -Dtinylog.configuration=/home/user/tinylog.properties $JAR $PROPS $EX_TYPE
\ No newline at end of file
+#java -jar -Dtinylog.configuration=/home/user/tinylog.properties $JAR $PROPS $EX_TYPE
+# Records the extraction with JDK Flight Recorder
+#java -Xmx128g -XX:StartFlightRecording:settings=/home/user/extraction.jfc,filename=/home/user/ground-truth/extraction.jfr,maxsize=512m -jar -Dtinylog.configuration=/home/user/tinylog.properties $JAR $PROPS $EX_TYPE
\ No newline at end of file
@@ -0,0 +1,57 @@
+package org.variantsync.vevos.extraction.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.variantsync.vevos.extraction.gt.BlockAnnotation;
+import org.variantsync.vevos.extraction.gt.LineAnnotation;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks the export of block annotations to KernelHaven's CSV format. Each invocation
+ * processes all blocks, or all distinct conditions, of one synthetic file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BlockAnnotationBenchmark {
+    @Param({"10000"})
+    public int lines;
+
+    @Param({"2", "16"})
+    public int depth;
+
+    private List<BlockAnnotation> blocks;
+    private String[] conditions;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        List<LineAnnotation> annotations = SyntheticGroundTruth.annotations(lines, depth, 42);
+        blocks = SyntheticGroundTruth.mutable("file.c", annotations).finishMutation()
+                .aggregatedBlocks();
+        // Each block normalizes its feature mapping and its presence condition
+        conditions = annotations.stream()
+                .flatMap(a -> Stream.of(a.featureMapping().mapping(),
+                        a.presenceCondition().condition()))
+                .distinct().toArray(String[]::new);
+    }
+
+    @Benchmark
+    public void asCSVLine(Blackhole blackhole) {
+        for (BlockAnnotation block : blocks) {
+            blackhole.consume(block.asCSVLine());
+        }
+    }
+
+    @Benchmark
+    public void normalizeCondition(Blackhole blackhole) {
+        for (String condition : conditions) {
+            blackhole.consume(BlockAnnotation.normalizeCondition(condition));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.variantsync.vevos.extraction.benchmark;
+
+import org.variantsync.vevos.extraction.FastGroundTruthExtraction;
+import org.variantsync.vevos.extraction.FullGroundTruthExtraction;
+import org.variantsync.vevos.extraction.GroundTruthExtraction;
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.variantsync.vevos.extraction.ConfigProperties.*;
+
+/**
+ * Measures the throughput of complete extractions on synthetic git histories that are generated
+ * locally, so that no network access is required. The benchmark generates the repositories,
+ * writes a dataset file that points to them, and runs the requested extraction modes one after
+ * another in the same JVM.
+ * <p>
+ * All arguments are given as key=value pairs. The shape of the histories is configured with
+ * repositories, commits, files, lines, depth, change-rate, branch-every, branch-length, and seed.
+ * The modes are selected with modes=fast,full, and the working directory with work-dir. Any other
+ * key that starts with 'extraction.' or 'diff-detective.' is passed on to the extraction, e.g.,
+ * extraction.parallel-patch-threshold=64.
+ * <p>
+ * The results are printed and appended to e2e-results.csv in the working directory.
+ */
+public class EndToEndBenchmark {
+    private static final String RESULTS_FILE = "e2e-results.csv";
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("repositories", "1"), Map.entry("commits", "500"),
+            Map.entry("files", "50"), Map.entry("lines", "400"), Map.entry("depth", "4"),
+            Map.entry("change-rate", "0.1"), Map.entry("branch-every", "25"),
+            Map.entry("branch-length", "3"), Map.entry("seed", "42"),
+            Map.entry("modes", "fast,full"));
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value but got " + arg);
+            }
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        Path workDir = arguments.containsKey("work-dir") ? Path.of(arguments.get("work-dir"))
+                : Files.createTempDirectory("vevos-e2e");
+        workDir = workDir.toAbsolutePath();
+
+        // Generate the repositories and the dataset that points to them
+        int repositories = Integer.parseInt(arguments.get("repositories"));
+        long seed = Long.parseLong(arguments.get("seed"));
+        StringBuilder dataset = new StringBuilder();
+        dataset.append("Project name | Domain | Source code available (**y**es/**n**o)? | ")
+                .append("Is it a git repository (**y**es/**n**o)? | Repository URL | Clone URL | ")
+                .append("Estimated number of commits\n");
+        dataset.append("-------------|--------|---|---|---|---|---\n");
+        long totalCommits = 0;
+        for (int i = 0; i < repositories; i++) {
+            String name = "synthetic" + i;
+            Path repository = workDir.resolve("repositories").resolve(name);
+            SyntheticHistory.Shape shape = new SyntheticHistory.Shape(
+                    Integer.parseInt(arguments.get("commits")),
+                    Integer.parseInt(arguments.get("files")),
+                    Integer.parseInt(arguments.get("lines")),
+                    Integer.parseInt(arguments.get("depth")),
+                    Double.parseDouble(arguments.get("change-rate")),
+                    Integer.parseInt(arguments.get("branch-every")),
+                    Integer.parseInt(arguments.get("branch-length")), seed + i);
+            long start = System.nanoTime();
+            int commits = SyntheticHistory.generate(repository, shape);
+            System.out.printf("Generated %s with %d commits in %.1fs%n", name, commits,
+                    (System.nanoTime() - start) / 1e9);
+            totalCommits += commits;
+            String url = repository.toUri().toString();
+            dataset.append("%s | synthetic | y | y | %s | %s | %d\n".formatted(name, url, url,
+                    commits));
+        }
+        Path datasetFile = workDir.resolve("synthetic.md");
+        Files.writeString(datasetFile, dataset.toString());
+
+        List<String> rows = new ArrayList<>();
+        for (String mode : arguments.get("modes").split(",")) {
+            Properties properties = properties(workDir.resolve(mode.trim()), datasetFile,
+                    arguments);
+            GroundTruthExtraction extraction = switch (mode.trim()) {
+                case "fast" -> new FastGroundTruthExtraction(properties);
+                case "full" -> new FullGroundTruthExtraction(properties);
+                default -> throw new IllegalArgumentException("Unknown mode " + mode);
+            };
+            rows.add(measure(mode.trim(), extraction, properties, repositories, totalCommits));
+        }
+
+        Path resultsFile = workDir.resolve(RESULTS_FILE);
+        if (!Files.exists(resultsFile)) {
+            Serde.writeToFile(resultsFile,
+                    "Mode;Repositories;Commits;Seconds;Commits/s;Peak Heap [MiB];Bytes Written"
+                            + System.lineSeparator());
+        }
+        for (String row : rows) {
+            System.out.println(row);
+            Serde.appendText(resultsFile, row + System.lineSeparator());
+        }
+        System.out.println("Results have been appended to " + resultsFile);
+    }
+
+    private static Properties properties(Path modeDir, Path datasetFile,
+            Map<String, String> arguments) {
+        Properties properties = new Properties();
+        properties.setProperty(PRINT_ENABLED, "false");
+        properties.setProperty(IGNORE_PC_CHANGES, "true");
+        properties.setProperty(EXTRACT_CODE_MATCHING, "false");
+        properties.setProperty(GT_SAVE_DIR, modeDir.resolve("ground-truth").toString());
+        properties.setProperty(DD_OUTPUT_DIR, modeDir.resolve("dd").toString());
+        properties.setProperty(REPO_SAVE_DIR, modeDir.resolve("clones").toString());
+        properties.setProperty(DATASET_FILE, datasetFile.toString());
+        for (Map.Entry<String, String> argument : arguments.entrySet()) {
+            if (argument.getKey().startsWith("extraction.")
+                    || argument.getKey().startsWith("diff-detective.")) {
+                properties.setProperty(argument.getKey(), argument.getValue());
+            }
+        }
+        return properties;
+    }
+
+    private static String measure(String mode, GroundTruthExtraction extraction,
+            Properties properties, int repositories, long commits) throws IOException {
+        System.gc();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong peakHeap = new AtomicLong();
+        // Sample the used heap, because the peaks of the individual pools cannot be summed up
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(
+                () -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 10, TimeUnit.MILLISECONDS);
+
+        long start = System.nanoTime();
+        try {
+            extraction.run(GroundTruthExtraction.diffdetectiveOptions(properties));
+        } finally {
+            sampler.shutdownNow();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long bytesWritten = size(Path.of(properties.getProperty(GT_SAVE_DIR)))
+                + size(Path.of(properties.getProperty(DD_OUTPUT_DIR)));
+        return "%s;%d;%d;%.3f;%.2f;%d;%d".formatted(mode, repositories, commits, seconds,
+                commits / seconds, peakHeap.get() / (1024 * 1024), bytesWritten);
+    }
+
+    private static long size(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+    }
+}
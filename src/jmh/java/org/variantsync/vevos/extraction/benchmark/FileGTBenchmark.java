@@ -0,0 +1,85 @@
+package org.variantsync.vevos.extraction.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.variantsync.vevos.extraction.gt.FileGT;
+import org.variantsync.vevos.extraction.gt.LineAnnotation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the construction of file ground truths, i.e., the insertion of line annotations and
+ * the completion of mutable file ground truths, which aggregates the blocks and renders the CSV
+ * lines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class FileGTBenchmark {
+    @Param({"1000", "100000"})
+    public int lines;
+
+    @Param({"2", "16"})
+    public int depth;
+
+    private List<LineAnnotation> ascending;
+    private List<LineAnnotation> descending;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        ascending = SyntheticGroundTruth.annotations(lines, depth, 42);
+        descending = new ArrayList<>(ascending);
+        Collections.reverse(descending);
+    }
+
+    /**
+     * Inserts the annotations line by line, which grows the ground truth with every insertion.
+     */
+    @Benchmark
+    public FileGT.Mutable insertAscending() {
+        return SyntheticGroundTruth.mutable("file.c", ascending);
+    }
+
+    /**
+     * Inserts the annotations starting with the last line, which grows the ground truth once.
+     */
+    @Benchmark
+    public FileGT.Mutable insertDescending() {
+        return SyntheticGroundTruth.mutable("file.c", descending);
+    }
+
+    /**
+     * Explicitly grows an empty ground truth to the number of lines.
+     */
+    @Benchmark
+    public FileGT.Mutable growIfRequired() {
+        FileGT.Mutable fileGT = new FileGT.Mutable("file.c");
+        fileGT.growIfRequired(lines);
+        return fileGT;
+    }
+
+    /**
+     * Completes a mutable ground truth. A mutable ground truth can only be completed once, so a
+     * new one is created before each invocation. The file sizes are chosen so that the creation is
+     * not dominated by the timer overhead of invocation-level setups.
+     */
+    @Benchmark
+    public FileGT.Complete complete(Uncompleted uncompleted) {
+        return uncompleted.fileGT.finishMutation();
+    }
+
+    @State(Scope.Thread)
+    public static class Uncompleted {
+        FileGT.Mutable fileGT;
+
+        @Setup(Level.Invocation)
+        public void create(FileGTBenchmark benchmark) {
+            fileGT = SyntheticGroundTruth.mutable("file.c", benchmark.ascending);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.variantsync.vevos.extraction.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.variantsync.vevos.extraction.gt.FileGT;
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations on the ground truth of a commit that are performed by the full
+ * extraction: combining it with the changes of the next commit, exporting it as CSV, and storing
+ * it to disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class GroundTruthBenchmark {
+    @Param({"10", "100"})
+    public int files;
+
+    @Param({"1000"})
+    public int lines;
+
+    @Param({"4"})
+    public int depth;
+
+    // Every n-th file is updated by the next commit
+    @Param({"10"})
+    public int updateInterval;
+
+    private GroundTruth groundTruth;
+    private GroundTruth update;
+    private Path tempDir;
+    private File serialized;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        groundTruth = SyntheticGroundTruth.groundTruth(files, lines, depth, 42);
+        update = new GroundTruth(new TreeMap<>(), new HashSet<>());
+        for (int i = 0; i < files; i += updateInterval) {
+            String file = SyntheticGroundTruth.fileName(i);
+            FileGT.Complete fileGT = SyntheticGroundTruth.complete(file, lines, depth, -i);
+            update.fileGTs().put(file, fileGT);
+            update.variables().addAll(fileGT.getVariables());
+        }
+        tempDir = Files.createTempDirectory("vevos-benchmark");
+        serialized = tempDir.resolve("commit.gt").toFile();
+        Serde.serialize(serialized, groundTruth);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(serialized.toPath());
+        Files.deleteIfExists(tempDir);
+    }
+
+    /**
+     * Applies the same update repeatedly. The update replaces the same files each time, so the
+     * amount of work does not change between invocations.
+     */
+    @Benchmark
+    public GroundTruth updateWith() {
+        groundTruth.updateWith(update);
+        return groundTruth;
+    }
+
+    @Benchmark
+    public String asPcCsvString() {
+        return groundTruth.asPcCsvString();
+    }
+
+    @Benchmark
+    public void serialize() {
+        Serde.serialize(serialized, groundTruth);
+    }
+
+    @Benchmark
+    public GroundTruth deserialize() {
+        return Serde.deserialize(serialized);
+    }
+
+    @Benchmark
+    public GroundTruth roundTrip() {
+        Serde.serialize(serialized, groundTruth);
+        return Serde.deserialize(serialized);
+    }
+}
@@ -0,0 +1,136 @@
+package org.variantsync.vevos.extraction.benchmark;
+
+import org.variantsync.vevos.extraction.gt.FeatureMapping;
+import org.variantsync.vevos.extraction.gt.FileGT;
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.LineAnnotation;
+import org.variantsync.vevos.extraction.gt.PresenceCondition;
+
+import java.util.*;
+
+/**
+ * Generates synthetic ground truths for benchmarks. The generated files consist of nested
+ * annotation blocks, as they are produced by the analysis of a variation diff: each block starts
+ * with an 'if' line, contains artifacts and nested blocks, and ends with an 'endif' line.
+ * Generation is deterministic for a given seed.
+ */
+public final class SyntheticGroundTruth {
+    // The probability with which a new block is opened or the current block is closed at a line
+    private static final double BLOCK_PROBABILITY = 0.1;
+    // The number of distinct features from which the conditions are built
+    private static final int NUMBER_OF_FEATURES = 64;
+
+    private SyntheticGroundTruth() {
+    }
+
+    /**
+     * Generates the line annotations of a single file in ascending order of line numbers.
+     *
+     * @param lines The number of lines of the file
+     * @param maxDepth The maximum nesting depth of annotation blocks
+     * @param seed The seed for the random generator
+     * @return A list with one annotation per line
+     */
+    public static List<LineAnnotation> annotations(int lines, int maxDepth, long seed) {
+        Random random = new Random(seed);
+        List<LineAnnotation> annotations = new ArrayList<>(lines);
+        Deque<Block> blocks = new ArrayDeque<>();
+        Block root = new Block(new FeatureMapping("True"), new PresenceCondition("True"),
+                Collections.singleton("True"));
+        for (int lineNumber = 1; lineNumber <= lines; lineNumber++) {
+            int remaining = lines - lineNumber + 1;
+            if (!blocks.isEmpty()
+                    && (remaining <= blocks.size() || random.nextDouble() < BLOCK_PROBABILITY)) {
+                // The endif carries the annotation of the closed block
+                Block closed = blocks.pop();
+                annotations.add(closed.annotate(lineNumber, "endif"));
+            } else if (blocks.size() < maxDepth && remaining > blocks.size() + 2
+                    && random.nextDouble() < BLOCK_PROBABILITY) {
+                Block opened = Objects.requireNonNullElse(blocks.peek(), root).nest(random);
+                blocks.push(opened);
+                annotations.add(opened.annotate(lineNumber, "if"));
+            } else {
+                annotations.add(Objects.requireNonNullElse(blocks.peek(), root)
+                        .annotate(lineNumber, "artifact"));
+            }
+        }
+        return annotations;
+    }
+
+    /**
+     * Creates a mutable file ground truth that contains the given annotations.
+     *
+     * @param file The name of the file
+     * @param annotations The annotations to insert
+     * @return A new mutable file ground truth
+     */
+    public static FileGT.Mutable mutable(String file, List<LineAnnotation> annotations) {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        for (LineAnnotation annotation : annotations) {
+            fileGT.insert(annotation);
+        }
+        return fileGT;
+    }
+
+    /**
+     * Generates a complete file ground truth.
+     *
+     * @param file The name of the file
+     * @param lines The number of lines of the file
+     * @param maxDepth The maximum nesting depth of annotation blocks
+     * @param seed The seed for the random generator
+     * @return A new complete file ground truth
+     */
+    public static FileGT.Complete complete(String file, int lines, int maxDepth, long seed) {
+        return mutable(file, annotations(lines, maxDepth, seed)).finishMutation();
+    }
+
+    /**
+     * Generates the ground truth of a commit with the given number of files.
+     *
+     * @param files The number of files
+     * @param lines The number of lines of each file
+     * @param maxDepth The maximum nesting depth of annotation blocks
+     * @param seed The seed for the random generator
+     * @return A new ground truth with complete file ground truths
+     */
+    public static GroundTruth groundTruth(int files, int lines, int maxDepth, long seed) {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new HashSet<>());
+        for (int i = 0; i < files; i++) {
+            FileGT.Complete fileGT = complete(fileName(i), lines, maxDepth, seed + i);
+            groundTruth.fileGTs().put(fileName(i), fileGT);
+            groundTruth.variables().addAll(fileGT.getVariables());
+        }
+        return groundTruth;
+    }
+
+    /**
+     * @param index The index of a generated file
+     * @return The name of the generated file
+     */
+    public static String fileName(int index) {
+        return "src/module%d/file%d.c".formatted(index % 16, index);
+    }
+
+    private record Block(FeatureMapping featureMapping, PresenceCondition presenceCondition,
+            Set<String> features) {
+
+        Block nest(Random random) {
+            String feature = "FEATURE_" + random.nextInt(NUMBER_OF_FEATURES);
+            // Negated literals are exported differently and must be covered by the benchmarks
+            String literal = random.nextBoolean() ? feature : "-" + feature;
+            String condition = features.contains("True") ? literal
+                    : presenceCondition.condition() + " & " + literal;
+            Set<String> nestedFeatures = new HashSet<>(features);
+            nestedFeatures.remove("True");
+            nestedFeatures.add(feature);
+            return new Block(new FeatureMapping(literal), new PresenceCondition(condition),
+                    nestedFeatures);
+        }
+
+        LineAnnotation annotate(int lineNumber, String nodeType) {
+            return new LineAnnotation(lineNumber, featureMapping, presenceCondition, nodeType,
+                    features);
+        }
+    }
+}
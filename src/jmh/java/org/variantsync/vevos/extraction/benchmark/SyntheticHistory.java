@@ -0,0 +1,256 @@
+package org.variantsync.vevos.extraction.benchmark;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates local git repositories with a synthetic history of C files that are annotated with
+ * nested preprocessor blocks. Generation is deterministic for a given {@link Shape}, including the
+ * commit ids, so that extraction runs on different revisions process identical histories.
+ */
+public final class SyntheticHistory {
+    private static final String MAIN_BRANCH = "main";
+    // The probability with which a generated chunk is an annotated block
+    private static final double BLOCK_PROBABILITY = 0.2;
+    // The number of distinct features that appear in the annotations
+    private static final int NUMBER_OF_FEATURES = 64;
+    private static final long START_TIME = 1_600_000_000_000L;
+
+    /**
+     * The shape of a generated history.
+     *
+     * @param commits The total number of commits, including merge commits
+     * @param files The number of C files in the repository
+     * @param lines The approximate number of lines per file
+     * @param maxDepth The maximum nesting depth of #ifdef blocks
+     * @param changeRate The fraction of files that are modified by each commit
+     * @param branchEvery Every n-th commit on the main branch starts a side branch that is merged
+     *        back. Use 0 for a linear history.
+     * @param branchLength The number of commits on each side branch
+     * @param seed The seed for the random generator
+     */
+    public record Shape(int commits, int files, int lines, int maxDepth, double changeRate,
+            int branchEvery, int branchLength, long seed) {
+    }
+
+    private final Shape shape;
+    private final Random random;
+    private final List<List<String>> files;
+    private int variableCounter;
+    private int createdCommits;
+
+    private SyntheticHistory(Shape shape) {
+        this.shape = shape;
+        this.random = new Random(shape.seed());
+        this.files = new ArrayList<>();
+    }
+
+    /**
+     * Generates a new repository with the given shape.
+     *
+     * @param directory The directory of the new repository. Must not exist or be empty.
+     * @param shape The shape of the history
+     * @return The number of generated commits
+     */
+    public static int generate(Path directory, Shape shape) throws IOException, GitAPIException {
+        SyntheticHistory history = new SyntheticHistory(shape);
+        Files.createDirectories(directory);
+        try (Git git = Git.init().setDirectory(directory.toFile()).setInitialBranch(MAIN_BRANCH)
+                .call()) {
+            history.generate(git, directory);
+        }
+        return history.createdCommits;
+    }
+
+    private void generate(Git git, Path directory) throws IOException, GitAPIException {
+        for (int i = 0; i < shape.files(); i++) {
+            files.add(chunks(shape.lines()));
+        }
+        writeAll(directory);
+        commit(git, "Initial commit");
+
+        int mainCommits = 0;
+        while (createdCommits < shape.commits()) {
+            mainCommits++;
+            // A side branch requires its commits, one commit on main, and the merge commit
+            int remaining = shape.commits() - createdCommits;
+            if (shape.branchEvery() > 0 && mainCommits % shape.branchEvery() == 0
+                    && remaining >= shape.branchLength() + 2) {
+                branchAndMerge(git, directory, mainCommits);
+            } else {
+                modify(directory, 0, 1);
+                commit(git, "Change " + createdCommits);
+            }
+        }
+    }
+
+    /**
+     * Creates a side branch with the configured number of commits, advances the main branch, and
+     * merges the side branch into the main branch. The branches modify disjoint sets of files, so
+     * that the merge never conflicts.
+     */
+    private void branchAndMerge(Git git, Path directory, int id)
+            throws IOException, GitAPIException {
+        String branch = "feature-" + id;
+        git.checkout().setCreateBranch(true).setName(branch).call();
+        for (int i = 0; i < shape.branchLength(); i++) {
+            modify(directory, 1, 2);
+            commit(git, "Change " + createdCommits + " on " + branch);
+        }
+        git.checkout().setName(MAIN_BRANCH).call();
+        // The working tree has been reset to main, so the file contents must be restored
+        reloadAll(directory);
+        modify(directory, 0, 2);
+        commit(git, "Change " + createdCommits);
+        MergeResult result = git.merge().include(git.getRepository().resolve(branch))
+                .setFastForward(MergeCommand.FastForwardMode.NO_FF).setCommit(false).call();
+        if (!result.getMergeStatus().isSuccessful()) {
+            throw new IllegalStateException("Unexpected merge result " + result.getMergeStatus());
+        }
+        commit(git, "Merge " + branch);
+        reloadAll(directory);
+    }
+
+    /**
+     * Modifies a random selection of the files whose index i satisfies i % stride == offset.
+     */
+    private void modify(Path directory, int offset, int stride) throws IOException {
+        int candidates = (shape.files() - offset + stride - 1) / stride;
+        if (candidates <= 0) {
+            return;
+        }
+        int changes = Math.max(1, (int) Math.round(candidates * shape.changeRate()));
+        for (int c = 0; c < changes; c++) {
+            int index = offset + random.nextInt(candidates) * stride;
+            List<String> chunks = files.get(index);
+            // Replace, insert, or delete a few top-level chunks, which keeps the file balanced
+            int edits = 1 + random.nextInt(3);
+            for (int e = 0; e < edits; e++) {
+                int position = random.nextInt(chunks.size() + 1);
+                switch (random.nextInt(3)) {
+                    case 0 -> chunks.add(position, chunk(0));
+                    case 1 -> {
+                        if (position < chunks.size() && chunks.size() > 1) {
+                            chunks.remove(position);
+                        }
+                    }
+                    default -> {
+                        if (position < chunks.size()) {
+                            chunks.set(position, chunk(0));
+                        }
+                    }
+                }
+            }
+            write(directory, index);
+        }
+    }
+
+    private void commit(Git git, String message) throws GitAPIException {
+        PersonIdent ident = new PersonIdent("VEVOS Benchmark", "benchmark@example.org",
+                new Date(START_TIME + createdCommits * 60_000L), TimeZone.getTimeZone("UTC"));
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).setAllowEmpty(true)
+                .call();
+        createdCommits++;
+    }
+
+    private void writeAll(Path directory) throws IOException {
+        for (int i = 0; i < files.size(); i++) {
+            write(directory, i);
+        }
+    }
+
+    private void write(Path directory, int index) throws IOException {
+        Path file = directory.resolve(fileName(index));
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, String.join("", files.get(index)));
+    }
+
+    private void reloadAll(Path directory) throws IOException {
+        for (int i = 0; i < files.size(); i++) {
+            String content = Files.readString(directory.resolve(fileName(i)));
+            // Restore the chunks from the file's top-level structure
+            files.set(i, splitTopLevel(content));
+        }
+    }
+
+    private static String fileName(int index) {
+        return "src/module%d/file%d.c".formatted(index % 8, index);
+    }
+
+    private List<String> chunks(int lines) {
+        List<String> chunks = new ArrayList<>();
+        int generated = 0;
+        while (generated < lines) {
+            String chunk = chunk(0);
+            generated += (int) chunk.lines().count();
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Generates a chunk of code, which is either a single line or a complete annotated block.
+     */
+    private String chunk(int depth) {
+        if (depth < shape.maxDepth() && random.nextDouble() < BLOCK_PROBABILITY) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(condition()).append("\n");
+            int children = 1 + random.nextInt(6);
+            for (int i = 0; i < children; i++) {
+                sb.append(chunk(depth + 1));
+            }
+            if (random.nextInt(4) == 0) {
+                sb.append("#else\n");
+                sb.append(chunk(depth + 1));
+            }
+            sb.append("#endif\n");
+            return sb.toString();
+        }
+        return "int v%d = %d;\n".formatted(variableCounter++, random.nextInt(1000));
+    }
+
+    private String condition() {
+        String feature = "FEATURE_" + random.nextInt(NUMBER_OF_FEATURES);
+        return switch (random.nextInt(3)) {
+            case 0 -> "#ifdef " + feature;
+            case 1 -> "#ifndef " + feature;
+            default -> "#if defined(%s) && !defined(FEATURE_%d)".formatted(feature,
+                    random.nextInt(NUMBER_OF_FEATURES));
+        };
+    }
+
+    private static List<String> splitTopLevel(String content) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int depth = 0;
+        for (String line : content.split("\n", -1)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            current.append(line).append("\n");
+            if (line.startsWith("#if")) {
+                depth++;
+            } else if (line.startsWith("#endif")) {
+                depth--;
+            }
+            if (depth == 0) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        return chunks;
+    }
+}
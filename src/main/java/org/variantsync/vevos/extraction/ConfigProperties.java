@@ -19,4 +19,68 @@ public class ConfigProperties {
             = "diff-detective.batch-size";
     public static final String EXTRACT_CODE_MATCHING
             = "extraction.extract-code-matching";
+    public static final String CODE_MATCHING_FORMAT
+            = "extraction.code-matching-format";
+    public static final String PARALLEL_PATCH_THRESHOLD
+            = "extraction.parallel-patch-threshold";
+    public static final String PARALLEL_PATCH_THREADS
+            = "extraction.parallel-patch-threads";
+    public static final String IO_EXECUTION_MODE
+            = "extraction.io-execution-mode";
+    public static final String PROFILING_ENABLED
+            = "extraction.profiling-enabled";
+    public static final String STATUS_INTERVAL
+            = "extraction.status-interval";
+    public static final String PROGRESS_WINDOW
+            = "extraction.progress-window";
+    public static final String METRICS_PORT
+            = "extraction.metrics-port";
+    public static final String MEMORY_GOVERNOR_ENABLED
+            = "extraction.memory-governor";
+    public static final String MEMORY_HIGH_WATERMARK
+            = "extraction.memory-high-watermark";
+    public static final String MEMORY_LOW_WATERMARK
+            = "extraction.memory-low-watermark";
+    public static final String SPILL_THRESHOLD
+            = "extraction.spill-threshold";
+    public static final String SPILL_DIR
+            = "extraction.spill-dir";
+    public static final String COMMIT_TIME_BUDGET
+            = "extraction.commit-time-budget";
+    public static final String COMMIT_PATCH_BUDGET
+            = "extraction.commit-patch-budget";
+    public static final String COMMIT_LINE_BUDGET
+            = "extraction.commit-line-budget";
+    public static final String DEFERRED_LANE_THREADS
+            = "extraction.deferred-lane-threads";
+    public static final String FILE_EXTENSIONS
+            = "extraction.file-extensions";
+    public static final String INCLUDE_PATHS
+            = "extraction.include-paths";
+    public static final String EXCLUDE_PATHS
+            = "extraction.exclude-paths";
+    public static final String SAMPLE_RANGE
+            = "extraction.sample-range";
+    public static final String SAMPLE_SINCE
+            = "extraction.sample-since";
+    public static final String SAMPLE_UNTIL
+            = "extraction.sample-until";
+    public static final String SAMPLE_REFS
+            = "extraction.sample-refs";
+    public static final String SAMPLE_EVERY
+            = "extraction.sample-every";
+    public static final String BLOB_CACHE_LINES
+            = "extraction.blob-cache-lines";
+    public static final String BLOB_CACHE_PERSISTENT
+            = "extraction.blob-cache-persistent";
+    public static final String INCREMENTAL_PATCHES
+            = "extraction.incremental-patches";
+    public static final String FAST_DELTA_OUTPUT
+            = "extraction.fast-delta-output";
+    public static final String VARIABLES_CHECKPOINT_INTERVAL
+            = "extraction.variables-checkpoint-interval";
+    public static final String OFF_HEAP_GROUND_TRUTHS
+            = "extraction.off-heap-ground-truths";
+    public static final String FEATURE_INDEX
+            = "extraction.feature-index";
 }
@@ -4,10 +4,19 @@ import org.tinylog.Logger;
 import org.variantsync.diffdetective.analysis.Analysis;
 import org.variantsync.diffdetective.datasets.Repository;
 import org.variantsync.vevos.extraction.analysis.FastVariabilityAnalysis;
+import org.variantsync.vevos.extraction.concurrency.IOExecutors;
+import org.variantsync.vevos.extraction.concurrency.MemoryGovernor;
+import org.variantsync.vevos.extraction.concurrency.PatchScheduler;
+import org.variantsync.vevos.extraction.filter.CommitSampler;
+import org.variantsync.vevos.extraction.gt.FeatureIndex;
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.MatchingFormat;
+import org.variantsync.vevos.extraction.metrics.RepoMetrics;
 
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 
@@ -31,17 +40,52 @@ public class FastGroundTruthExtraction extends GroundTruthExtraction {
             Path extractionDir = Path.of(this.properties.getProperty(GT_SAVE_DIR));
             Path resultsRoot = extractionDir.resolve(repo.getRepositoryName());
             boolean printEnabled = Boolean.parseBoolean(this.properties.getProperty(PRINT_ENABLED));
+            PatchScheduler patchScheduler = patchScheduler();
+            MemoryGovernor memoryGovernor = memoryGovernor();
+            RepoMetrics metrics = repoMetrics(repo);
+            CommitSampler.Selection selection = sampleCommits(repo);
+            metrics.progress().begin("analysis",
+                    selection.isAll() ? countCommits(repo) : selection.sampled().size());
+            // By default, each worker writes the ground truths of its commits itself. With
+            // virtual threads, the writing is handed off so that workers do not wait for the disk.
+            ExecutorService ioExecutor = null;
+            if (ioExecutionMode() == IOExecutors.Mode.VIRTUAL) {
+                ioExecutor = IOExecutors.create("fast-writer", IOExecutors.Mode.VIRTUAL,
+                        numProcessors());
+            }
 
             FastVariabilityAnalysis analysis = new FastVariabilityAnalysis(printEnabled,
                     resultsRoot, Boolean.parseBoolean(properties.getProperty(IGNORE_PC_CHANGES)),
-                    Boolean.parseBoolean(properties.getProperty(EXTRACT_CODE_MATCHING)));
+                    Boolean.parseBoolean(properties.getProperty(EXTRACT_CODE_MATCHING)),
+                    MatchingFormat.fromProperty(properties.getProperty(CODE_MATCHING_FORMAT)),
+                    Boolean.parseBoolean(properties.getProperty(FAST_DELTA_OUTPUT)),
+                    patchScheduler, memoryGovernor, spillPolicy(), commitBudget(),
+                    ioExecutor == null ? Runnable::run : ioExecutor, metrics);
+            analysis.restrictTo(selection.sampled());
+            FeatureIndex featureIndex = featureIndex(resultsRoot);
+            if (featureIndex != null) {
+                analysis.indexFeatures(featureIndex);
+            }
             final BiFunction<Repository, Path, Analysis> AnalysisFactory =
                     (r, out) -> new Analysis("PCAnalysis", List.of(analysis), r, out);
 
-            Analysis.forEachCommit(() -> AnalysisFactory.apply(repo, repoOutputDir),
-                    diffDetectiveBatchSize(), numProcessors());
-
-            FastVariabilityAnalysis.numProcessed = 0;
+            try {
+                Analysis.forEachCommit(() -> AnalysisFactory.apply(repo, repoOutputDir),
+                        diffDetectiveBatchSize(), numProcessors());
+                processDeferredCommits(analysis, () -> AnalysisFactory.apply(repo, repoOutputDir),
+                        resultsRoot, metrics, deferredLaneThreads());
+            } finally {
+                patchScheduler.shutdown();
+                if (ioExecutor != null) {
+                    IOExecutors.shutdownAndAwait(ioExecutor);
+                }
+                memoryGovernor.close();
+                progressTracker.finish(metrics);
+            }
+            metrics.profiles().write(resultsRoot);
+            if (featureIndex != null) {
+                featureIndex.save(resultsRoot.resolve(GroundTruth.FEATURE_INDEX_FILE));
+            }
         };
     }
 }
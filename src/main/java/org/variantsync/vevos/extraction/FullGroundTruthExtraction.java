@@ -7,8 +7,26 @@ import org.tinylog.Logger;
 import org.variantsync.diffdetective.analysis.Analysis;
 import org.variantsync.diffdetective.datasets.Repository;
 import org.variantsync.vevos.extraction.analysis.FullVariabilityAnalysis;
+import org.variantsync.vevos.extraction.concurrency.IOExecutors;
+import org.variantsync.vevos.extraction.concurrency.MemoryGovernor;
+import org.variantsync.vevos.extraction.concurrency.PatchScheduler;
+import org.variantsync.vevos.extraction.events.CommitEvent;
+import org.variantsync.vevos.extraction.events.PostprocessWriteEvent;
+import org.variantsync.vevos.extraction.filter.CommitSampler;
+import org.variantsync.vevos.extraction.filter.PathFilter;
+import org.variantsync.vevos.extraction.gt.BlobCache;
+import org.variantsync.vevos.extraction.gt.FeatureIndex;
+import org.variantsync.vevos.extraction.gt.FileGT;
+import org.variantsync.vevos.extraction.gt.FileGTArena;
 import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.MatchingFormat;
+import org.variantsync.vevos.extraction.gt.VariableSet;
+import org.variantsync.vevos.extraction.gt.VariablesDelta;
 import org.variantsync.vevos.extraction.io.Serde;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+import org.variantsync.vevos.extraction.metrics.Phase;
+import org.variantsync.vevos.extraction.metrics.RepoMetrics;
 
 import java.io.File;
 import java.io.IOException;
@@ -17,9 +35,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import static org.variantsync.vevos.extraction.ConfigProperties.*;
 import static org.variantsync.vevos.extraction.gt.GroundTruth.*;
@@ -45,35 +63,96 @@ public class FullGroundTruthExtraction extends GroundTruthExtraction {
 
     protected BiConsumer<Repository, Path> extractionRunner() {
         return (repo, repoOutputDir) -> {
+            PatchScheduler patchScheduler = patchScheduler();
+            MemoryGovernor memoryGovernor = memoryGovernor();
+            BlobCache blobCache = blobCache(repo);
+            RepoMetrics metrics = repoMetrics(repo);
+            // The ground truths of sampled commits are completed with the changes of all ancestors
+            CommitSampler.Selection selection = sampleCommits(repo);
+            if (!selection.isAll()) {
+                Logger.warn("The full extraction analyzes all {} ancestors of the {} sampled "
+                        + "commits of {}, sampling only reduces the written ground truths",
+                        selection.required().size() - selection.sampled().size(),
+                        selection.sampled().size(), repo.getRepositoryName());
+            }
+            metrics.progress().begin("analysis",
+                    selection.isAll() ? countCommits(repo) : selection.required().size());
             FullVariabilityAnalysis analysis =
                     new FullVariabilityAnalysis(Path.of(properties.getProperty(DD_OUTPUT_DIR)),
-                            Boolean.parseBoolean(properties.getProperty(IGNORE_PC_CHANGES)));
+                            Boolean.parseBoolean(properties.getProperty(IGNORE_PC_CHANGES)),
+                            patchScheduler, memoryGovernor, commitBudget(), blobCache,
+                            Boolean.parseBoolean(properties.getProperty(INCREMENTAL_PATCHES)),
+                            metrics);
+            analysis.restrictTo(selection.required());
             final BiFunction<Repository, Path, Analysis> AnalysisFactory =
                     (r, out) -> new Analysis("PCAnalysis", List.of(analysis), r, out);
 
-            Analysis.forEachCommit(() -> AnalysisFactory.apply(repo, repoOutputDir),
-                    diffDetectiveBatchSize(), numProcessors());
+            try {
+                Analysis.forEachCommit(() -> AnalysisFactory.apply(repo, repoOutputDir),
+                        diffDetectiveBatchSize(), numProcessors());
+                // The postprocessing requires the ground truths of all commits
+                processDeferredCommits(analysis, () -> AnalysisFactory.apply(repo, repoOutputDir),
+                        Path.of(this.properties.getProperty(GT_SAVE_DIR))
+                                .resolve(repo.getRepositoryName()),
+                        metrics, Math.max(1, deferredLaneThreads()));
+                // Patches that do not fit the ground truth of their parent are replaced
+                int staleCommits = analysis.reanalyzeStalePatchesOnly();
+                if (staleCommits > 0) {
+                    Logger.info("Analyzing {} commits of {} again without patches, because the "
+                            + "parent's version of a patched file has not been extracted",
+                            staleCommits, repo.getRepositoryName());
+                    metrics.progress().begin("reanalysis", staleCommits);
+                    Analysis.forEachCommit(() -> AnalysisFactory.apply(repo, repoOutputDir), 1,
+                            numProcessors());
+                }
+                if (blobCache.isEnabled()) {
+                    Logger.info("Reused {} of {} file ground truths of {} from the blob cache",
+                            metrics.blobCacheHits(),
+                            metrics.blobCacheHits() + metrics.blobCacheMisses(),
+                            repo.getRepositoryName());
+                    Path blobCacheFile = blobCacheFile(repo);
+                    if (blobCacheFile != null) {
+                        blobCache.save(blobCacheFile);
+                    }
+                }
+            } catch (RuntimeException e) {
+                memoryGovernor.close();
+                progressTracker.finish(metrics);
+                throw e;
+            } finally {
+                patchScheduler.shutdown();
+            }
 
             ArrayList<RevCommit> commits = new ArrayList<>();
             try (Git gitRepo = repo.getGitRepo().run()) {
                 gitRepo.log().call().forEach(commits::add);
                 Collections.reverse(commits);
+                commits.removeIf(commit -> !selection.isRequired(commit.getName()));
             } catch (GitAPIException e) {
                 Logger.error(e);
                 throw new RuntimeException(e);
             }
 
             ExecutorService threadPool = null;
+            List<CommitProfile> profiles = List.of();
             try {
-                threadPool = Executors.newFixedThreadPool(numProcessors());
-                postprocess(repo, commits, threadPool);
+                metrics.progress().begin("postprocess", commits.size());
+                threadPool = IOExecutors.create("postprocess-writer", ioExecutionMode(),
+                        numProcessors());
+                profiles = postprocess(repo, commits, selection, threadPool, memoryGovernor,
+                        metrics);
             } finally {
                 if (threadPool != null) {
                     Logger.info("Awaiting termination of threadpool");
-                    threadPool.shutdown();
+                    IOExecutors.shutdownAndAwait(threadPool);
                 }
+                memoryGovernor.close();
+                progressTracker.finish(metrics);
             }
-            FullVariabilityAnalysis.numProcessed = 0;
+            // All writes have been executed, so the postprocessing profiles are complete
+            profiles.forEach(metrics.profiles()::end);
+            metrics.profiles().write(Path.of(this.properties.getProperty(GT_SAVE_DIR))
+                    .resolve(repo.getRepositoryName()));
         };
     }
 
@@ -83,46 +162,150 @@ public class FullGroundTruthExtraction extends GroundTruthExtraction {
      * for unmodified files are reused. New file ground truths are added for created files, and old
      * ground truths are updated for modified files.
      *
+     * <p>
+     * The results are only written for sampled commits. The completed ground truths of all other
+     * commits are only kept in memory, unless a later commit continues from them. The serialized
+     * changes of these commits are deleted once they are part of the completed ground truth.
+     * </p>
+     *
      * @param repo The repo that has been analyzed
      * @param commits A list of commits in the repo
+     * @param selection The sampled commits
      * @param threadPool A thread pool for multithreading of IO operations
+     * @param memoryGovernor Pauses the postprocessing while pending writes fill the heap
+     * @param metrics The metrics of the repository
+     * @return The profiles of all postprocessed commits. The profiles are only complete after all
+     *         tasks submitted to the thread pool have been executed.
      */
-    private void postprocess(Repository repo, ArrayList<RevCommit> commits,
-            ExecutorService threadPool) {
+    private List<CommitProfile> postprocess(Repository repo, ArrayList<RevCommit> commits,
+            CommitSampler.Selection selection, ExecutorService threadPool,
+            MemoryGovernor memoryGovernor, RepoMetrics metrics) {
         boolean print = Boolean.parseBoolean(this.properties.getProperty(PRINT_ENABLED));
+        List<CommitProfile> profiles = new ArrayList<>();
         int processedCount = 0;
         RevCommit lastCommit = null;
-        GroundTruth completedGroundTruth = new GroundTruth(new HashMap<>(), new HashSet<>());
+        GroundTruth completedGroundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
+        // Null if the complete variables are written for each commit
+        final VariablesDelta variablesDelta = variablesDelta();
+        // Null if the file ground truths are kept on the heap
+        final FileGTArena arena =
+                Boolean.parseBoolean(properties.getProperty(OFF_HEAP_GROUND_TRUTHS))
+                        ? new FileGTArena()
+                        : null;
         final String diffDetectiveCache = properties.getProperty(DD_OUTPUT_DIR);
+        final String repositoryName = repo.getRepositoryName();
+        // Null if no index of the variables is built
+        final FeatureIndex featureIndex = featureIndex(
+                Path.of(this.properties.getProperty(GT_SAVE_DIR)).resolve(repositoryName));
+        // The files that changed since the last indexed commit, all files if the completed
+        // ground truth has been replaced since
+        final Set<String> unindexedFiles = new HashSet<>();
+        boolean indexAllFiles = false;
+        // Ground truths from earlier runs might contain files that are filtered by now
+        final PathFilter pathFilter = PathFilter.fromProperties(properties, repositoryName);
+        // The completed ground truths of first parents that are not processed right before their
+        // children have to be loaded from the cache
+        final Set<RevCommit> branchPoints = new HashSet<>();
+        for (int i = 0; i < commits.size(); i++) {
+            RevCommit[] parents = commits.get(i).getParents();
+            if (parents.length > 0 && (i == 0 || !parents[0].equals(commits.get(i - 1)))) {
+                branchPoints.add(parents[0]);
+            }
+        }
         for (RevCommit commit : commits) {
+            // Each commit adds rendered ground truths to the writers' queue
+            memoryGovernor.awaitHeadroom(IOMetrics.pendingTasks("postprocess-writer")::sum);
+            CommitProfile profile = metrics.profiles().begin(commit.getName(), "postprocess");
+            profiles.add(profile);
+            CommitEvent event = CommitEvent.begin(repositoryName, commit.getName(), "postprocess");
             if (lastCommit != null) {
                 // Check whether the last commit is the first parent of this commit.
                 // If this is the case, we can continue with the existing ground truth.
                 // If this is not the case, we have to load the completed ground truth of the
                 // parent.
                 RevCommit firstParent = Arrays.stream(commit.getParents()).findFirst().orElse(null);
+                if (arena != null && (firstParent == null || !firstParent.equals(lastCommit))) {
+                    // The replaced ground truth is no longer used
+                    arena.release(completedGroundTruth);
+                }
+                if (firstParent == null || !firstParent.equals(lastCommit)) {
+                    indexAllFiles = true;
+                }
                 if (firstParent == null) {
-                    completedGroundTruth = new GroundTruth(new HashMap<>(), new HashSet<>());
+                    completedGroundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
                 } else if (!firstParent.equals(lastCommit)) {
                     File parentGT = new File(diffDetectiveCache + "/pc/" + repo.getRepositoryName()
                             + "/" + firstParent.getName() + ".gt");
+                    long ioStart = profile.now();
                     completedGroundTruth = Serde.deserialize(parentGT);
+                    profile.addSince(Phase.IO, ioStart);
+                    completedGroundTruth.fileGTs().keySet()
+                            .removeIf(file -> !pathFilter.accepts(file));
+                    if (arena != null) {
+                        arena.storeAll(completedGroundTruth);
+                    }
                 }
             }
             File currentGTFile = new File(diffDetectiveCache + "/pc/" + repo.getRepositoryName()
                     + "/" + commit.getName() + ".gt");
             if (Files.exists(currentGTFile.toPath())) {
+                long ioStart = profile.now();
                 GroundTruth loadedGT = Serde.deserialize(currentGTFile);
+                profile.addSince(Phase.IO, ioStart);
+                profile.addFiles(loadedGT.size());
+                // Removals are kept, so that the snapshot cannot retain a file that is filtered
+                loadedGT.fileGTs().entrySet()
+                        .removeIf(entry -> !(entry.getValue() instanceof FileGT.Removed)
+                                && !pathFilter.accepts(entry.getKey()));
                 if (processedCount % 1_000 == 0) {
                     Logger.info("Completing ground truth for {}", commit.getName());
                 }
-                completedGroundTruth.updateWith(loadedGT);
+                if (featureIndex != null) {
+                    unindexedFiles.addAll(loadedGT.fileGTs().keySet());
+                }
+                if (arena != null) {
+                    arena.updateWith(completedGroundTruth, loadedGT, profile);
+                } else {
+                    completedGroundTruth.updateWith(loadedGT, profile);
+                }
                 if (print) {
                     print(completedGroundTruth, commit.getName());
                 }
             }
-            // Save the extracted ground truth
-            Serde.serialize(currentGTFile, completedGroundTruth);
+            boolean sampled = selection.isSampled(commit.getName());
+            if (sampled || branchPoints.contains(commit)) {
+                // Save the extracted ground truth
+                long ioStart = profile.now();
+                long previousSize = currentGTFile.length();
+                Serde.serialize(currentGTFile, completedGroundTruth);
+                metrics.cacheFileWritten(previousSize, currentGTFile.length());
+                profile.addSince(Phase.IO, ioStart);
+            } else if (Files.exists(currentGTFile.toPath())) {
+                // The changes of the commit are part of the completed ground truth by now
+                long previousSize = currentGTFile.length();
+                try {
+                    Files.delete(currentGTFile.toPath());
+                } catch (IOException e) {
+                    Logger.error(e);
+                    throw new UncheckedIOException(e);
+                }
+                metrics.cacheFileDeleted(previousSize);
+            }
+            if (!sampled) {
+                event.finish(completedGroundTruth.size(), completedGroundTruth.lineCount());
+                lastCommit = commit;
+                processedCount++;
+                metrics.progress().step();
+                continue;
+            }
+            if (featureIndex != null) {
+                if (indexAllFiles) {
+                    unindexedFiles.addAll(completedGroundTruth.fileGTs().keySet());
+                }
+                featureIndex.add(commit.getName(), completedGroundTruth, unindexedFiles);
+                unindexedFiles.clear();
+                indexAllFiles = false;
+            }
             Path extractionDir = Path.of(this.properties.getProperty(GT_SAVE_DIR));
             Path resultsRoot = extractionDir.resolve(repo.getRepositoryName());
             Path commitSaveDir = resultsRoot.resolve("data").resolve(commit.getName());
@@ -132,32 +315,60 @@ public class FullGroundTruthExtraction extends GroundTruthExtraction {
                 Logger.error(e);
                 throw new UncheckedIOException(e);
             }
-            String variablesList = completedGroundTruth.variablesListAsString();
-            threadPool.submit(
-                    () -> Serde.writeToFile(commitSaveDir.resolve(VARIABLES_FILE), variablesList));
+            long renderStart = profile.now();
+            VariablesDelta.Rendered variables = variablesDelta == null
+                    ? new VariablesDelta.Rendered(VARIABLES_FILE,
+                            completedGroundTruth.variablesListAsString())
+                    : variablesDelta.render(commit.getName(), completedGroundTruth);
+            profile.addSince(Phase.CSV_RENDERING, renderStart);
+            threadPool.submit(timedWrite(profile, repositoryName, commit,
+                    commitSaveDir.resolve(variables.fileName()),
+                    path -> Serde.writeToFile(path, variables.content())));
 
+            renderStart = profile.now();
             String groundTruthAsCSV = completedGroundTruth.asPcCsvString();
-            threadPool.submit(() -> Serde.writeToFile(commitSaveDir.resolve(CODE_VARIABILITY_CSV),
-                    groundTruthAsCSV));
+            profile.addSince(Phase.CSV_RENDERING, renderStart);
+            threadPool.submit(timedWrite(profile, repositoryName, commit,
+                    commitSaveDir.resolve(CODE_VARIABILITY_CSV),
+                    path -> Serde.writeToFile(path, groundTruthAsCSV)));
 
-            threadPool.submit(() -> Serde.writeToFile(commitSaveDir.resolve(COMMIT_MESSAGE_FILE),
-                    commit.getFullMessage()));
+            threadPool.submit(timedWrite(profile, repositoryName, commit,
+                    commitSaveDir.resolve(COMMIT_MESSAGE_FILE),
+                    path -> Serde.writeToFile(path, commit.getFullMessage())));
 
             Optional<String> parentIds = Arrays.stream(commit.getParents()).map(RevCommit::getName)
                     .reduce((s, s2) -> s + " " + s2);
-            threadPool.submit(() -> parentIds.ifPresentOrElse(
-                    s -> Serde.writeToFile(commitSaveDir.resolve(COMMIT_PARENTS_FILE), s),
-                    () -> Serde.writeToFile(commitSaveDir.resolve(COMMIT_PARENTS_FILE), "")));
+            threadPool.submit(timedWrite(profile, repositoryName, commit,
+                    commitSaveDir.resolve(COMMIT_PARENTS_FILE),
+                    path -> Serde.writeToFile(path, parentIds.orElse(""))));
 
-            threadPool.submit(() -> Serde.appendText(resultsRoot.resolve(SUCCESS_COMMIT_FILE),
-                    commit.getName() + "\n"));
+            threadPool.submit(timedWrite(profile, repositoryName, commit,
+                    resultsRoot.resolve(SUCCESS_COMMIT_FILE),
+                    path -> Serde.appendText(path, commit.getName() + "\n")));
 
-            if (Boolean.parseBoolean(properties.getProperty(EXTRACT_CODE_MATCHING))) {
+            MatchingFormat matchingFormat =
+                    MatchingFormat.fromProperty(properties.getProperty(CODE_MATCHING_FORMAT));
+            if (Boolean.parseBoolean(properties.getProperty(EXTRACT_CODE_MATCHING))
+                    && matchingFormat.writesLines()) {
+                renderStart = profile.now();
                 String matchingAsCSV = completedGroundTruth.asMatchingCsvString();
+                profile.addSince(Phase.CSV_RENDERING, renderStart);
+
+                threadPool.submit(timedWrite(profile, repositoryName, commit,
+                        commitSaveDir.resolve(CODE_MATCHING_CSV),
+                        path -> Serde.writeToFile(path, matchingAsCSV)));
+            }
+            if (Boolean.parseBoolean(properties.getProperty(EXTRACT_CODE_MATCHING))
+                    && matchingFormat.writesRanges()) {
+                renderStart = profile.now();
+                String matchingRanges = completedGroundTruth.asMatchingRangesCsvString();
+                profile.addSince(Phase.CSV_RENDERING, renderStart);
 
-                threadPool.submit(() -> Serde.writeToFile(commitSaveDir.resolve(CODE_MATCHING_CSV),
-                        matchingAsCSV));
+                threadPool.submit(timedWrite(profile, repositoryName, commit,
+                        commitSaveDir.resolve(CODE_MATCHING_RANGES_CSV),
+                        path -> Serde.writeToFile(path, matchingRanges)));
             }
+            event.finish(completedGroundTruth.size(), completedGroundTruth.lineCount());
 
             if (processedCount % 1_000 == 0) {
                 Logger.info("Saved ground truth for commit {} of {}", processedCount + 1,
@@ -165,6 +376,48 @@ public class FullGroundTruthExtraction extends GroundTruthExtraction {
             }
             lastCommit = commit;
             processedCount++;
+            metrics.progress().step();
+        }
+        if (featureIndex != null) {
+            featureIndex.save(Path.of(this.properties.getProperty(GT_SAVE_DIR))
+                    .resolve(repositoryName).resolve(FEATURE_INDEX_FILE));
+        }
+        return profiles;
+    }
+
+    /**
+     * @return The renderer of delta-encoded variables, or null if no checkpoint interval is
+     *         configured
+     */
+    private VariablesDelta variablesDelta() {
+        String configuredInterval = this.properties.getProperty(VARIABLES_CHECKPOINT_INTERVAL);
+        if (configuredInterval == null || configuredInterval.trim().isEmpty()
+                || configuredInterval.trim().equals("0")) {
+            return null;
         }
+        return new VariablesDelta(Integer.parseInt(configuredInterval.trim()));
+    }
+
+    /**
+     * Wraps the given write of a commit's result file so that its runtime is added to the given
+     * profile and recorded as a Flight Recorder event.
+     */
+    private static Runnable timedWrite(CommitProfile profile, String repository,
+            RevCommit commit, Path path, Consumer<Path> write) {
+        return () -> {
+            PostprocessWriteEvent event = new PostprocessWriteEvent();
+            event.begin();
+            long start = profile.now();
+            write.accept(path);
+            profile.addSince(Phase.IO, start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repository;
+                event.commit = commit.getName();
+                event.path = path.toString();
+                event.bytes = path.toFile().length();
+                event.commit();
+            }
+        };
     }
 }
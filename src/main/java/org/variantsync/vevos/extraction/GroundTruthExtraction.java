@@ -1,21 +1,47 @@
 package org.variantsync.vevos.extraction;
 
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.tinylog.Logger;
 import org.variantsync.diffdetective.AnalysisRunner;
+import org.variantsync.diffdetective.analysis.Analysis;
 import org.variantsync.diffdetective.datasets.PatchDiffParseOptions;
 import org.variantsync.diffdetective.datasets.Repository;
-import org.variantsync.diffdetective.diff.git.DiffFilter;
 import org.variantsync.diffdetective.variation.diff.parse.VariationDiffParseOptions;
+import org.variantsync.vevos.extraction.analysis.CommitBudget;
+import org.variantsync.vevos.extraction.analysis.VariabilityAnalysis;
+import org.variantsync.vevos.extraction.concurrency.IOExecutors;
+import org.variantsync.vevos.extraction.concurrency.MemoryGovernor;
+import org.variantsync.vevos.extraction.concurrency.PatchScheduler;
+import org.variantsync.vevos.extraction.filter.CommitSampler;
+import org.variantsync.vevos.extraction.filter.PathFilter;
+import org.variantsync.vevos.extraction.gt.BlobCache;
+import org.variantsync.vevos.extraction.gt.FeatureIndex;
 import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.GroundTruthSpill;
+import org.variantsync.vevos.extraction.gt.VariableDictionary;
+import org.variantsync.vevos.extraction.io.Serde;
+import org.variantsync.vevos.extraction.metrics.MetricsServer;
+import org.variantsync.vevos.extraction.metrics.PhaseHistograms;
+import org.variantsync.vevos.extraction.metrics.ProgressTracker;
+import org.variantsync.vevos.extraction.metrics.RepoMetrics;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import static org.variantsync.vevos.extraction.ConfigProperties.*;
 
@@ -29,12 +55,21 @@ import static org.variantsync.vevos.extraction.ConfigProperties.*;
  */
 public abstract class GroundTruthExtraction {
     protected final Properties properties;
+    protected final ProgressTracker progressTracker;
+    // Only collected if the metrics endpoint is enabled
+    protected final PhaseHistograms phaseHistograms;
 
     /**
      * Initialize the basic GroundTruth extraction with a set of extraction properties.
      */
     protected GroundTruthExtraction(Properties properties) {
         this.properties = properties;
+        Path extractionDir = Path.of(properties.getProperty(GT_SAVE_DIR, "."));
+        this.progressTracker = new ProgressTracker(
+                extractionDir.resolve(ProgressTracker.STATUS_FILE),
+                durationProperty(STATUS_INTERVAL, Duration.ofMinutes(1)),
+                durationProperty(PROGRESS_WINDOW, Duration.ofMinutes(10)));
+        this.phaseHistograms = metricsPort() > 0 ? new PhaseHistograms() : null;
     }
 
     /**
@@ -133,9 +168,8 @@ public abstract class GroundTruthExtraction {
                             new VariationDiffParseOptions(
                                     repoDefault.variationDiffParseOptions().annotationParser(),
                                     false, false));
-                }, repo -> new DiffFilter.Builder().allowMerge(true)
-                        // TODO: make configurable
-                        .allowedFileExtensions("h", "hpp", "c", "cpp").build(),
+                }, repo -> PathFilter.fromProperties(properties, repo.getRepositoryName())
+                        .toDiffFilter(),
                 true, false);
     }
 
@@ -202,7 +236,27 @@ public abstract class GroundTruthExtraction {
      * @throws IOException If an IO error occurs in DiffDetective
      */
     public void run(AnalysisRunner.Options options) throws IOException {
-        AnalysisRunner.run(options, extractionRunner());
+        progressTracker.start();
+        MetricsServer metricsServer = null;
+        try {
+            if (phaseHistograms != null) {
+                metricsServer = new MetricsServer(metricsPort(), progressTracker, phaseHistograms);
+            }
+            BiConsumer<Repository, Path> extractionRunner = extractionRunner();
+            AnalysisRunner.run(options, (repo, repoOutputDir) -> {
+                try {
+                    extractionRunner.accept(repo, repoOutputDir);
+                } finally {
+                    // The ground truths of a repository are done, so are the ids of its variables
+                    VariableDictionary.global().release();
+                }
+            });
+        } finally {
+            progressTracker.close();
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+        }
     }
 
     protected int numProcessors() {
@@ -228,6 +282,281 @@ public abstract class GroundTruthExtraction {
         return batchSize;
     }
 
+    /**
+     * Creates a scheduler for the analysis of the patches of a single commit. If the number of
+     * patches in a commit exceeds the configured threshold, the remaining patches are analyzed in
+     * parallel. The parallel analysis is disabled if no threshold is configured.
+     *
+     * @return A new scheduler that has to be shut down after the analysis of a repository
+     */
+    protected PatchScheduler patchScheduler() {
+        String configuredThreshold = this.properties.getProperty(PARALLEL_PATCH_THRESHOLD);
+        if (configuredThreshold == null || configuredThreshold.trim().isEmpty()
+                || configuredThreshold.trim().equals("0")) {
+            return PatchScheduler.sequential();
+        }
+        final int numThreads;
+        String configuredThreads = this.properties.getProperty(PARALLEL_PATCH_THREADS);
+        if (configuredThreads == null || configuredThreads.trim().isEmpty()
+                || configuredThreads.trim().equals("0")) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        } else {
+            numThreads = Integer.parseInt(configuredThreads.trim());
+        }
+        return new PatchScheduler(Integer.parseInt(configuredThreshold.trim()), numThreads);
+    }
+
+    /**
+     * Creates a governor that limits the number of commits in flight according to the pressure on
+     * the heap. The governor allows one commit per worker thread and has to be closed after the
+     * analysis of a repository.
+     *
+     * @return A new governor, or a disabled governor unless memory governance is switched on
+     */
+    protected MemoryGovernor memoryGovernor() {
+        String enabled = this.properties.getProperty(MEMORY_GOVERNOR_ENABLED);
+        if (enabled == null || !Boolean.parseBoolean(enabled.trim())) {
+            return MemoryGovernor.disabled();
+        }
+        return new MemoryGovernor(numProcessors(), doubleProperty(MEMORY_HIGH_WATERMARK, 0.85),
+                doubleProperty(MEMORY_LOW_WATERMARK, 0.70));
+    }
+
+    /**
+     * @return The policy that decides when the file ground truths of a commit are spilled to disk
+     */
+    protected GroundTruthSpill.Policy spillPolicy() {
+        String configuredThreshold = this.properties.getProperty(SPILL_THRESHOLD);
+        if (configuredThreshold == null || configuredThreshold.trim().isEmpty()
+                || configuredThreshold.trim().equals("0")) {
+            return GroundTruthSpill.Policy.disabled();
+        }
+        String configuredDir = this.properties.getProperty(SPILL_DIR);
+        Path directory = configuredDir == null || configuredDir.trim().isEmpty()
+                ? Path.of(System.getProperty("java.io.tmpdir"))
+                : Path.of(configuredDir.trim());
+        return new GroundTruthSpill.Policy(Long.parseLong(configuredThreshold.trim()), directory);
+    }
+
+    /**
+     * @return The resources that may be spent on a single commit before it is deferred
+     */
+    protected CommitBudget commitBudget() {
+        String configuredPatches = this.properties.getProperty(COMMIT_PATCH_BUDGET);
+        String configuredLines = this.properties.getProperty(COMMIT_LINE_BUDGET);
+        return new CommitBudget(durationProperty(COMMIT_TIME_BUDGET, Duration.ZERO),
+                configuredPatches == null || configuredPatches.trim().isEmpty() ? 0
+                        : Integer.parseInt(configuredPatches.trim()),
+                configuredLines == null || configuredLines.trim().isEmpty() ? 0
+                        : Long.parseLong(configuredLines.trim()));
+    }
+
+    /**
+     * Creates the cache for the file ground truths of the given repository's blobs. If the cache is
+     * persistent, the entries saved by an earlier extraction are loaded.
+     *
+     * @param repo The repository that is about to be analyzed
+     * @return A new cache, or a disabled cache if no capacity is configured
+     */
+    protected BlobCache blobCache(Repository repo) {
+        String configuredLines = this.properties.getProperty(BLOB_CACHE_LINES);
+        if (configuredLines == null || configuredLines.trim().isEmpty()
+                || configuredLines.trim().equals("0")) {
+            return BlobCache.disabled();
+        }
+        long capacity = Long.parseLong(configuredLines.trim());
+        Path file = blobCacheFile(repo);
+        return file == null ? new BlobCache(capacity) : BlobCache.load(file, capacity);
+    }
+
+    /**
+     * @param repo The analyzed repository
+     * @return The file to which the blob cache of the repository is saved, or null if the cache is
+     *         not persistent
+     */
+    protected Path blobCacheFile(Repository repo) {
+        if (!Boolean.parseBoolean(this.properties.getProperty(BLOB_CACHE_PERSISTENT))) {
+            return null;
+        }
+        return Path.of(this.properties.getProperty(DD_OUTPUT_DIR)).resolve("blobs")
+                .resolve(repo.getRepositoryName() + ".cache");
+    }
+
+    /**
+     * @param resultsRoot The directory with the results of a repository
+     * @return The index of the variables that extends the index saved in the results, or null if
+     *         no index is built
+     */
+    protected FeatureIndex featureIndex(Path resultsRoot) {
+        if (!Boolean.parseBoolean(this.properties.getProperty(FEATURE_INDEX))) {
+            return null;
+        }
+        return FeatureIndex.load(resultsRoot.resolve(GroundTruth.FEATURE_INDEX_FILE));
+    }
+
+    /**
+     * @return The number of threads that process the deferred commits of a repository
+     */
+    protected int deferredLaneThreads() {
+        String configuredThreads = this.properties.getProperty(DEFERRED_LANE_THREADS);
+        if (configuredThreads == null || configuredThreads.trim().isEmpty()) {
+            return 1;
+        }
+        return Integer.parseInt(configuredThreads.trim());
+    }
+
+    /**
+     * Lists the commits that have been deferred by the given analysis in
+     * {@link GroundTruth#DEFERRED_COMMIT_FILE} and processes them again without budget. Must be
+     * called after DiffDetective processed all commits of the repository.
+     *
+     * @param analysis The analysis that processed the repository
+     * @param analysisFactory Creates a DiffDetective analysis with the given analysis as hook
+     * @param resultsRoot The directory of the repository's results
+     * @param metrics The metrics of the repository
+     * @param numThreads The number of threads that process the deferred commits. If it is 0, the
+     *        deferred commits are only listed.
+     */
+    protected void processDeferredCommits(VariabilityAnalysis analysis,
+            Supplier<Analysis> analysisFactory, Path resultsRoot, RepoMetrics metrics,
+            int numThreads) {
+        List<String> deferredCommits = new ArrayList<>(analysis.deferredCommits());
+        if (deferredCommits.isEmpty()) {
+            return;
+        }
+        Collections.sort(deferredCommits);
+        try {
+            Files.createDirectories(resultsRoot);
+        } catch (IOException e) {
+            Logger.error(e);
+            throw new UncheckedIOException(e);
+        }
+        Serde.writeToFile(resultsRoot.resolve(GroundTruth.DEFERRED_COMMIT_FILE),
+                String.join("\n", deferredCommits) + "\n");
+        if (numThreads <= 0) {
+            Logger.info("Skipping {} deferred commits of {}", deferredCommits.size(),
+                    metrics.repositoryName());
+            return;
+        }
+        Logger.info("Processing {} deferred commits of {}", deferredCommits.size(),
+                metrics.repositoryName());
+        metrics.progress().begin("deferred", deferredCommits.size());
+        analysis.processDeferredCommitsOnly();
+        // Each commit is a batch of its own, so that the deferred commits are spread over all
+        // threads of the lane
+        Analysis.forEachCommit(analysisFactory, 1, numThreads);
+    }
+
+    /**
+     * Creates the metrics for the extraction of the given repository and registers them with the
+     * progress tracker. The extraction runner has to call {@link ProgressTracker#finish} once the
+     * repository has been processed.
+     *
+     * @param repo The repository that is about to be analyzed
+     * @return New metrics with all counters set to 0
+     */
+    protected RepoMetrics repoMetrics(Repository repo) {
+        RepoMetrics metrics = new RepoMetrics(repo.getRepositoryName(),
+                Boolean.parseBoolean(this.properties.getProperty(PROFILING_ENABLED)),
+                phaseHistograms);
+        progressTracker.register(metrics);
+        return metrics;
+    }
+
+    /**
+     * Counts the commits of the given repository that are processed by DiffDetective.
+     *
+     * @param repo The repository to count the commits of
+     * @return The number of commits, or -1 if they could not be counted
+     */
+    protected long countCommits(Repository repo) {
+        try {
+            // The git instance is shared with DiffDetective, so it must not be closed here
+            Git git = repo.getGitRepo().run();
+            long count = 0;
+            for (RevCommit ignored : git.log().call()) {
+                count++;
+            }
+            return count;
+        } catch (GitAPIException | RuntimeException e) {
+            Logger.warn("Was not able to count the commits of {}: {}", repo.getRepositoryName(),
+                    e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Selects the commits of the given repository that are sampled according to the properties.
+     *
+     * @param repo The repository that is about to be analyzed
+     * @return The selected commits
+     */
+    protected CommitSampler.Selection sampleCommits(Repository repo) {
+        CommitSampler sampler = CommitSampler.fromProperties(properties, repo.getRepositoryName());
+        if (!sampler.isEnabled()) {
+            return CommitSampler.Selection.all();
+        }
+        try {
+            // The git instance is shared with DiffDetective, so it must not be closed here
+            CommitSampler.Selection selection =
+                    sampler.select(repo.getGitRepo().run().getRepository());
+            Logger.info("Sampled {} commits of {}", selection.sampled().size(),
+                    repo.getRepositoryName());
+            return selection;
+        } catch (IOException e) {
+            Logger.error(e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The port of the metrics endpoint, or 0 if the endpoint is disabled
+     */
+    protected int metricsPort() {
+        String configuredPort = this.properties.getProperty(METRICS_PORT);
+        if (configuredPort == null || configuredPort.trim().isEmpty()) {
+            return 0;
+        }
+        return Integer.parseInt(configuredPort.trim());
+    }
+
+    /**
+     * Parses a duration that is configured in seconds.
+     *
+     * @param key The key of the property
+     * @param defaultValue The value to use if the property is not set
+     * @return The configured duration
+     */
+    protected Duration durationProperty(String key, Duration defaultValue) {
+        String configured = this.properties.getProperty(key);
+        if (configured == null || configured.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Duration.ofSeconds(Long.parseLong(configured.trim()));
+    }
+
+    /**
+     * Reads a fraction or another decimal number from the properties.
+     *
+     * @param key The key of the property
+     * @param defaultValue The value if the property is not set
+     * @return The configured or default value
+     */
+    protected double doubleProperty(String key, double defaultValue) {
+        String configured = this.properties.getProperty(key);
+        if (configured == null || configured.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return Double.parseDouble(configured.trim());
+    }
+
+    /**
+     * @return The kind of threads that should execute the I/O phases of the extraction
+     */
+    protected IOExecutors.Mode ioExecutionMode() {
+        return IOExecutors.Mode.parse(this.properties.getProperty(IO_EXECUTION_MODE));
+    }
+
     /**
      * Return a runner for the ground truth extraction. The runner receives pairs of repositories
      * and paths to result output directories and then starts a DiffDetective analysis. See
@@ -0,0 +1,84 @@
+package org.variantsync.vevos.extraction.analysis;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The resources that the analysis may spend on a single commit. Commits that exceed their budget
+ * are deferred, i.e., their analysis is aborted, and they are processed again after all other
+ * commits of the repository have been processed.
+ *
+ * @param wallTime The maximum time from beginning the commit to its last analyzed patch, or null
+ *        for no limit. The time includes the parsing by DiffDetective.
+ * @param patches The maximum number of analyzed patches, or 0 for no limit
+ * @param lines The maximum total number of lines of all analyzed files, or 0 for no limit
+ */
+public record CommitBudget(Duration wallTime, int patches, long lines) {
+
+    /**
+     * @return A budget without any limits
+     */
+    public static CommitBudget unlimited() {
+        return new CommitBudget(null, 0, 0);
+    }
+
+    /**
+     * @return Whether any of the limits is set
+     */
+    public boolean isLimited() {
+        return (wallTime != null && !wallTime.isZero()) || patches > 0 || lines > 0;
+    }
+
+    /**
+     * Starts to track the resources spent on a commit.
+     *
+     * @return The usage of the commit
+     */
+    public Usage begin() {
+        return new Usage(this);
+    }
+
+    /**
+     * The resources spent on a single commit so far. The patches are counted by the thread that
+     * processes the commit, while the lines can be added by any thread that analyzes a patch.
+     */
+    public static class Usage {
+        private final CommitBudget budget;
+        private final long startNanos;
+        private final LongAdder lines;
+        private int patches;
+
+        private Usage(CommitBudget budget) {
+            this.budget = budget;
+            this.startNanos = System.nanoTime();
+            this.lines = new LongAdder();
+        }
+
+        public void addPatch() {
+            patches++;
+        }
+
+        public void addLines(long count) {
+            lines.add(count);
+        }
+
+        /**
+         * Checks the usage against the budget.
+         *
+         * @return The name of the first exceeded limit, or null if the commit is within its budget
+         */
+        public String exceededLimit() {
+            if (budget.patches > 0 && patches > budget.patches) {
+                return "patch";
+            }
+            if (budget.lines > 0 && lines.sum() > budget.lines) {
+                return "line";
+            }
+            if (budget.wallTime != null && !budget.wallTime.isZero()
+                    && System.nanoTime() - startNanos > budget.wallTime.toNanos()) {
+                return "time";
+            }
+            return null;
+        }
+    }
+}
@@ -6,11 +6,25 @@ import org.tinylog.Logger;
 import org.variantsync.diffdetective.analysis.Analysis;
 import org.variantsync.diffdetective.editclass.proposed.ProposedEditClasses;
 import org.variantsync.diffdetective.metadata.EditClassCount;
+import org.variantsync.diffdetective.variation.DiffLinesLabel;
 import org.variantsync.diffdetective.variation.diff.Time;
+import org.variantsync.diffdetective.variation.diff.VariationDiff;
+import org.variantsync.vevos.extraction.concurrency.MemoryGovernor;
+import org.variantsync.vevos.extraction.concurrency.PatchScheduler;
 import org.variantsync.vevos.extraction.error.MatchingException;
+import org.variantsync.vevos.extraction.events.CommitEvent;
+import org.variantsync.vevos.extraction.events.FileAnalysisEvent;
+import org.variantsync.vevos.extraction.gt.BlockDelta;
+import org.variantsync.vevos.extraction.gt.FeatureIndex;
 import org.variantsync.vevos.extraction.gt.FileGT;
 import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.GroundTruthSpill;
+import org.variantsync.vevos.extraction.gt.MatchingFormat;
+import org.variantsync.vevos.extraction.gt.VariableSet;
 import org.variantsync.vevos.extraction.io.Serde;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+import org.variantsync.vevos.extraction.metrics.Phase;
+import org.variantsync.vevos.extraction.metrics.RepoMetrics;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -18,6 +32,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import static org.variantsync.vevos.extraction.gt.GroundTruth.*;
 
@@ -26,23 +43,78 @@ import static org.variantsync.vevos.extraction.gt.GroundTruth.*;
  * conditions for each file, a list of all variables, and commit metadata.
  */
 public class FastVariabilityAnalysis implements Analysis.Hooks, VariabilityAnalysis {
-    public static int numProcessed = 0;
-    private final ConcurrentHashMap<Long, ThreadBatch> threadBatches;
+    private final ConcurrentHashMap<Analysis, Batch> batches;
     private final Set<String> failedCommits;
+    private final Set<String> deferredCommits;
     private final boolean printEnabled;
 
     private final boolean ignorePCChanges;
     private final Path resultsRoot;
     private final boolean extractCodeMatching;
+    private final MatchingFormat matchingFormat;
+    private final boolean deltaOutput;
+    private final PatchScheduler patchScheduler;
+    private final MemoryGovernor memoryGovernor;
+    private final GroundTruthSpill.Policy spillPolicy;
+    private final CommitBudget budget;
+    private final Executor ioExecutor;
+    private final RepoMetrics metrics;
+    // Guards the files to which the results of all commits are appended
+    private final Object commitListLock;
+    // Set once the deferred commits are processed
+    private volatile boolean deferredOnly;
+    // The sampled commits, or null if all commits are analyzed
+    private volatile Set<String> selectedCommits;
+    // The index of the variables of all commits, or null if no index is built
+    private volatile FeatureIndex featureIndex;
 
     public FastVariabilityAnalysis(boolean printEnabled, Path resultsRoot, boolean ignorePCChanges,
             boolean extractCodeMatching) {
+        this(printEnabled, resultsRoot, ignorePCChanges, extractCodeMatching,
+                MatchingFormat.LINES, false, PatchScheduler.sequential(), MemoryGovernor.disabled(),
+                GroundTruthSpill.Policy.disabled(), CommitBudget.unlimited(), Runnable::run,
+                new RepoMetrics(resultsRoot.getFileName().toString()));
+    }
+
+    /**
+     * Initializes the analysis.
+     *
+     * @param printEnabled Whether the extracted ground truths should be printed
+     * @param resultsRoot The directory to which the ground truths are written
+     * @param ignorePCChanges Whether changes to only the presence condition should be ignored
+     * @param extractCodeMatching Whether the matching of lines before and after a commit should be
+     *        extracted
+     * @param matchingFormat The formats in which the matching is written
+     * @param deltaOutput Whether files whose blocks only moved are written to the
+     *        {@link BlockDelta delta} CSV file instead of the CSV file after the commit
+     * @param patchScheduler The scheduler for the analysis of each commit's patches
+     * @param memoryGovernor The governor that limits the number of commits in flight
+     * @param spillPolicy Decides when finished file ground truths of a commit are moved to disk
+     * @param budget The resources that may be spent on a commit before it is deferred
+     * @param ioExecutor The executor that writes the ground truth of a commit to disk
+     * @param metrics The counters of the analyzed repository
+     */
+    public FastVariabilityAnalysis(boolean printEnabled, Path resultsRoot, boolean ignorePCChanges,
+            boolean extractCodeMatching, MatchingFormat matchingFormat, boolean deltaOutput,
+            PatchScheduler patchScheduler,
+            MemoryGovernor memoryGovernor, GroundTruthSpill.Policy spillPolicy,
+            CommitBudget budget, Executor ioExecutor, RepoMetrics metrics) {
         this.printEnabled = printEnabled;
         this.resultsRoot = resultsRoot;
-        this.threadBatches = new ConcurrentHashMap<>();
+        this.batches = new ConcurrentHashMap<>();
         this.failedCommits = ConcurrentHashMap.newKeySet();
+        this.deferredCommits = ConcurrentHashMap.newKeySet();
         this.ignorePCChanges = ignorePCChanges;
         this.extractCodeMatching = extractCodeMatching;
+        this.matchingFormat = matchingFormat;
+        this.deltaOutput = deltaOutput;
+        this.patchScheduler = patchScheduler;
+        this.memoryGovernor = memoryGovernor;
+        this.spillPolicy = spillPolicy;
+        this.budget = budget;
+        this.ioExecutor = ioExecutor;
+        this.metrics = metrics;
+        this.commitListLock = new Object();
         try {
             Files.createDirectories(resultsRoot);
         } catch (IOException e) {
@@ -66,6 +138,33 @@ public class FastVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
         }
     }
 
+    @Override
+    public boolean beginCommit(Analysis analysis) {
+        RevCommit commit = analysis.getCurrentCommit();
+        Batch batch = batches.get(analysis);
+        if (deferredOnly && !deferredCommits.contains(commit.getName())) {
+            // All other commits have already been processed
+            batch.skipped.add(commit.getName());
+            return false;
+        }
+        Set<String> selected = selectedCommits;
+        if (selected != null && !selected.contains(commit.getName())) {
+            batch.skipped.add(commit.getName());
+            return false;
+        }
+        // Wait until the heap allows another commit in flight
+        memoryGovernor.acquire();
+        batch.admitted.add(commit.getName());
+        if (!deferredOnly && budget.isLimited()) {
+            batch.usages.put(commit.getName(), budget.begin());
+        }
+        batch.profiles.put(commit.getName(),
+                metrics.profiles().begin(commit.getName(), "analysis"));
+        batch.events.put(commit.getName(), CommitEvent.begin(
+                analysis.getRepository().getRepositoryName(), commit.getName(), "analysis"));
+        return true;
+    }
+
     @Override
     public void onFailedParse(Analysis analysis) {
         RevCommit commit = analysis.getCurrentCommit();
@@ -74,115 +173,310 @@ public class FastVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
     }
 
     private void extractionFailed(RevCommit commit) {
-        synchronized (FastVariabilityAnalysis.class) {
-            Logger.warn("Was not able to extract ground truth for commit " + commit.getName());
-            Serde.appendText(resultsRoot.resolve(ERROR_COMMIT_FILE), commit.getName() + "\n");
-            failedCommits.add(commit.getName());
+        Logger.warn("Was not able to extract ground truth for commit " + commit.getName());
+        if (failedCommits.add(commit.getName())) {
+            metrics.commitFailed();
+            synchronized (commitListLock) {
+                Serde.appendText(resultsRoot.resolve(ERROR_COMMIT_FILE), commit.getName() + "\n");
+            }
         }
     }
 
     @Override
     public void endCommit(Analysis analysis) {
         RevCommit commit = analysis.getCurrentCommit();
+        // Retrieve data of the batch that is processed by the analysis
+        var currentBatch = batches.get(analysis);
+        if (currentBatch.skipped.remove(commit.getName())) {
+            return;
+        }
 
-        synchronized (FastVariabilityAnalysis.class) {
-            FastVariabilityAnalysis.numProcessed++;
-            if (FastVariabilityAnalysis.numProcessed % 1_000 == 0) {
-                Logger.info("End Processing of Commit ({}): {}",
-                        FastVariabilityAnalysis.numProcessed, commit.name());
-            }
+        long numProcessed = metrics.commitProcessed();
+        if (numProcessed % 1_000 == 0) {
+            Logger.info("End Processing of Commit ({}): {}", numProcessed, commit.name());
+        }
+
+        final CommitProfile profile = Objects.requireNonNullElse(
+                currentBatch.profiles.remove(commit.getName()), CommitProfile.DISABLED);
+        profile.finishParsing();
+        final CommitEvent event = Objects.requireNonNullElseGet(
+                currentBatch.events.remove(commit.getName()), CommitEvent::new);
+
+        // Wait for the analysis of all patches that have been fanned out
+        PatchScheduler.Session session = currentBatch.sessions.remove(commit.getName());
+        if (session != null) {
+            session.await();
         }
 
-        if (failedCommits.contains(commit.getName())) {
+        // File ground truths that have been moved to disk while the commit was analyzed
+        final Spills spills = Objects.requireNonNullElseGet(
+                currentBatch.spills.remove(commit.getName()),
+                () -> Spills.create(spillPolicy.directory(), featureIndex));
+
+        if (failedCommits.remove(commit.getName())) {
             Logger.warn("Skip writing ground truth for " + commit.getName());
+            spills.close();
+            metrics.profiles().end(profile);
+            event.finish(0, 0);
+            release(currentBatch, commit);
             // Return early, if the entire commit resulted in an error
             return;
         }
 
-        // Retrieve data being processed by the current thread
-        var currentBatch = threadBatches.get(Thread.currentThread().getId());
         HashMap<String, GroundTruth> groundTruthMapBefore = currentBatch.groundTruthMapBefore;
         HashMap<String, GroundTruth> groundTruthMapAfter = currentBatch.groundTruthMapAfter;
 
         // Complete all new or updated file ground truths
-        GroundTruth groundTruthBefore = groundTruthMapBefore.getOrDefault(commit.getName(),
-                new GroundTruth(new HashMap<>(), new HashSet<>()));
-        GroundTruth groundTruthAfter = groundTruthMapAfter.getOrDefault(commit.getName(),
-                new GroundTruth(new HashMap<>(), new HashSet<>()));
+        GroundTruth groundTruthBefore = Objects.requireNonNullElseGet(
+                groundTruthMapBefore.remove(commit.getName()),
+                () -> new GroundTruth(new TreeMap<>(), new VariableSet()));
+        GroundTruth groundTruthAfter = Objects.requireNonNullElseGet(
+                groundTruthMapAfter.remove(commit.getName()),
+                () -> new GroundTruth(new TreeMap<>(), new VariableSet()));
+        CommitBudget.Usage usage = currentBatch.usages.remove(commit.getName());
+        if (usage != null) {
+            String exceededLimit = usage.exceededLimit();
+            if (exceededLimit != null) {
+                defer(commit, exceededLimit);
+            }
+            if (deferredCommits.contains(commit.getName())) {
+                // Drop the partial ground truth, the commit is processed again at the end
+                spills.close();
+                metrics.profiles().end(profile);
+                event.finish(0, 0);
+                release(currentBatch, commit);
+                return;
+            }
+        }
         if (groundTruthBefore.isEmpty() && groundTruthAfter.isEmpty()) {
             // Return early and do not save any data, if the ground truths are both empty.
             // In this case, no changes have been analyzed, and we are not interested in the
             // commit's
             // data.
-            synchronized (FastVariabilityAnalysis.class) {
-                Logger.debug("No code changes for " + commit.getName());
+            Logger.debug("No code changes for " + commit.getName());
+            metrics.commitEmpty();
+            spills.close();
+            metrics.profiles().end(profile);
+            event.finish(0, 0);
+            release(currentBatch, commit);
+            synchronized (commitListLock) {
                 Serde.appendText(resultsRoot.resolve(EMPTY_COMMIT_FILE), commit.getName() + "\n");
-                failedCommits.add(commit.getName());
             }
             return;
         }
 
-        VariabilityAnalysis.makeComplete(groundTruthBefore);
-        VariabilityAnalysis.makeComplete(groundTruthAfter);
+        spills.before.detach(groundTruthBefore);
+        spills.after.detach(groundTruthAfter);
+
+        // Reserve headroom for the completed ground truths until they have been written
+        final long reservation = MemoryGovernor
+                .estimate(groundTruthBefore.lineCount() + groundTruthAfter.lineCount());
+        memoryGovernor.reserve(reservation);
+        VariabilityAnalysis.makeComplete(groundTruthBefore, profile);
+        VariabilityAnalysis.makeComplete(groundTruthAfter, profile);
+        if (featureIndex != null) {
+            featureIndex.add(commit.getName(), groundTruthBefore, spills.before, groundTruthAfter,
+                    spills.after);
+        }
+        event.finish(
+                groundTruthBefore.size() + groundTruthAfter.size() + spills.before.size()
+                        + spills.after.size(),
+                groundTruthBefore.lineCount() + groundTruthAfter.lineCount()
+                        + spills.before.lineCount() + spills.after.lineCount());
 
         if (printEnabled) {
             print(groundTruthBefore, commit.getName());
             print(groundTruthAfter, commit.getName());
         }
 
-        // Save the extracted ground truth
-        Path commitSaveDir = resultsRoot.resolve("data").resolve(commit.getName());
-        try {
-            Files.createDirectories(commitSaveDir);
-        } catch (IOException e) {
-            Logger.error(e);
-            throw new UncheckedIOException(e);
-        }
+        // Render the extracted ground truth. The CSV files of a partially spilled ground truth are
+        // streamed when they are written.
+        long renderStart = profile.now();
         String variablesList = groundTruthBefore.combinedVariablesListAsString(groundTruthAfter);
-        Serde.writeToFile(commitSaveDir.resolve(VARIABLES_FILE), variablesList);
+        String pcAsCSVBefore =
+                spills.before.isEmpty() ? groundTruthBefore.asPcCsvString() : null;
+        // Files whose blocks only moved are not repeated in the CSV file after the commit
+        final GroundTruth changedAfter;
+        final String deltaCSV;
+        if (deltaOutput) {
+            changedAfter = new GroundTruth(new TreeMap<>(groundTruthAfter.fileGTs()),
+                    groundTruthAfter.variables());
+            deltaCSV = BlockDelta.asDeltaCsvString(
+                    BlockDelta.extractMovedFiles(groundTruthBefore, changedAfter));
+        } else {
+            changedAfter = groundTruthAfter;
+            deltaCSV = null;
+        }
+        String pcAsCSVAfter = spills.after.isEmpty() ? changedAfter.asPcCsvString() : null;
+        final String matchingAsCSVBefore;
+        final String matchingAsCSVAfter;
+        if (extractCodeMatching && matchingFormat.writesLines()) {
+            matchingAsCSVBefore =
+                    spills.before.isEmpty() ? groundTruthBefore.asMatchingCsvString() : null;
+            matchingAsCSVAfter =
+                    spills.after.isEmpty() ? groundTruthAfter.asMatchingCsvString() : null;
+        } else {
+            matchingAsCSVBefore = null;
+            matchingAsCSVAfter = null;
+        }
+        final String matchingRangesBefore;
+        final String matchingRangesAfter;
+        if (extractCodeMatching && matchingFormat.writesRanges()) {
+            matchingRangesBefore = spills.before.isEmpty()
+                    ? groundTruthBefore.asMatchingRangesCsvString()
+                    : null;
+            matchingRangesAfter = spills.after.isEmpty()
+                    ? groundTruthAfter.asMatchingRangesCsvString()
+                    : null;
+        } else {
+            matchingRangesBefore = null;
+            matchingRangesAfter = null;
+        }
+        String commitMessage = commit.getFullMessage();
+        String parentIds = Arrays.stream(commit.getParents()).map(RevCommit::getName)
+                .reduce((s, s2) -> s + " " + s2).orElse("");
+        profile.addSince(Phase.CSV_RENDERING, renderStart);
 
-        String pcAsCSVBefore = groundTruthBefore.asPcCsvString();
-        String pcAsCSVAfter = groundTruthAfter.asPcCsvString();
+        // Save the extracted ground truth
+        ioExecutor.execute(() -> {
+            try {
+                long ioStart = profile.now();
+                Path commitSaveDir = resultsRoot.resolve("data").resolve(commit.getName());
+                try {
+                    Files.createDirectories(commitSaveDir);
+                } catch (IOException e) {
+                    Logger.error(e);
+                    throw new UncheckedIOException(e);
+                }
+                Serde.writeToFile(commitSaveDir.resolve(VARIABLES_FILE), variablesList);
+
+                writeCsv(commitSaveDir.resolve(CODE_VARIABILITY_CSV_BEFORE), pcAsCSVBefore,
+                        path -> spills.before.writePcCsv(path, groundTruthBefore));
+                writeCsv(commitSaveDir.resolve(CODE_VARIABILITY_CSV_AFTER), pcAsCSVAfter,
+                        path -> spills.after.writePcCsv(path, changedAfter));
+                if (deltaCSV != null) {
+                    Serde.writeToFile(commitSaveDir.resolve(CODE_VARIABILITY_CSV_DELTA), deltaCSV);
+                }
+
+                if (extractCodeMatching && matchingFormat.writesLines()) {
+                    writeCsv(commitSaveDir.resolve(CODE_MATCHING_CSV_BEFORE), matchingAsCSVBefore,
+                            path -> spills.before.writeMatchingCsv(path, groundTruthBefore));
+                    writeCsv(commitSaveDir.resolve(CODE_MATCHING_CSV_AFTER), matchingAsCSVAfter,
+                            path -> spills.after.writeMatchingCsv(path, groundTruthAfter));
+                }
+                if (extractCodeMatching && matchingFormat.writesRanges()) {
+                    writeCsv(commitSaveDir.resolve(CODE_MATCHING_RANGES_CSV_BEFORE),
+                            matchingRangesBefore,
+                            path -> spills.before.writeMatchingRangesCsv(path, groundTruthBefore));
+                    writeCsv(commitSaveDir.resolve(CODE_MATCHING_RANGES_CSV_AFTER),
+                            matchingRangesAfter,
+                            path -> spills.after.writeMatchingRangesCsv(path, groundTruthAfter));
+                }
+
+                Serde.writeToFile(commitSaveDir.resolve(COMMIT_MESSAGE_FILE), commitMessage);
+                Serde.writeToFile(commitSaveDir.resolve(COMMIT_PARENTS_FILE), parentIds);
 
-        Serde.writeToFile(commitSaveDir.resolve(CODE_VARIABILITY_CSV_BEFORE), pcAsCSVBefore);
-        Serde.writeToFile(commitSaveDir.resolve(CODE_VARIABILITY_CSV_AFTER), pcAsCSVAfter);
+                synchronized (commitListLock) {
+                    Serde.appendText(resultsRoot.resolve(SUCCESS_COMMIT_FILE),
+                            commit.getName() + "\n");
+                }
+                profile.addSince(Phase.IO, ioStart);
+                metrics.profiles().end(profile);
+            } catch (RuntimeException e) {
+                // The writer thread has no caller that could handle the failure
+                Logger.error(e);
+                extractionFailed(commit);
+            } finally {
+                spills.close();
+                memoryGovernor.unreserve(reservation);
+            }
+        });
+        release(currentBatch, commit);
+    }
 
-        if (extractCodeMatching) {
-            String matchingAsCSVBefore = groundTruthBefore.asMatchingCsvString();
-            String matchingAsCSVAfter = groundTruthAfter.asMatchingCsvString();
+    /**
+     * Writes a CSV file that has either been rendered in memory or is streamed from a spill.
+     *
+     * @param path The path of the CSV file
+     * @param renderedCsv The rendered content, or null if the content has to be streamed
+     * @param streamedCsv Streams the content to the given path
+     */
+    private static void writeCsv(Path path, String renderedCsv, Consumer<Path> streamedCsv) {
+        if (renderedCsv != null) {
+            Serde.writeToFile(path, renderedCsv);
+        } else {
+            streamedCsv.accept(path);
+        }
+    }
 
-            Serde.writeToFile(commitSaveDir.resolve(CODE_MATCHING_CSV_BEFORE), matchingAsCSVBefore);
-            Serde.writeToFile(commitSaveDir.resolve(CODE_MATCHING_CSV_AFTER), matchingAsCSVAfter);
+    /**
+     * Marks the given commit as deferred.
+     *
+     * @param commit The commit that exceeded its budget
+     * @param limit The name of the exceeded limit
+     */
+    private void defer(RevCommit commit, String limit) {
+        if (deferredCommits.add(commit.getName())) {
+            Logger.info("Deferring commit {} because it exceeds its {} budget", commit.getName(),
+                    limit);
+            metrics.commitDeferred();
         }
+    }
 
-        Serde.writeToFile(commitSaveDir.resolve(COMMIT_MESSAGE_FILE), commit.getFullMessage());
+    @Override
+    public Set<String> deferredCommits() {
+        return Collections.unmodifiableSet(deferredCommits);
+    }
 
-        Optional<String> parentIds = Arrays.stream(commit.getParents()).map(RevCommit::getName)
-                .reduce((s, s2) -> s + " " + s2);
-        parentIds.ifPresentOrElse(
-                s -> Serde.writeToFile(commitSaveDir.resolve(COMMIT_PARENTS_FILE), s),
-                () -> Serde.writeToFile(commitSaveDir.resolve(COMMIT_PARENTS_FILE), ""));
+    @Override
+    public void processDeferredCommitsOnly() {
+        this.deferredOnly = true;
+    }
 
-        synchronized (FastVariabilityAnalysis.class) {
-            Serde.appendText(resultsRoot.resolve(SUCCESS_COMMIT_FILE), commit.getName() + "\n");
-        }
+    @Override
+    public void restrictTo(Set<String> commits) {
+        this.selectedCommits = commits;
+    }
+
+    /**
+     * Adds the completed ground truths before and after each commit to the given index. Files
+     * that have been moved to disk are indexed by the runs of variables that their spill keeps.
+     *
+     * @param featureIndex The index of the variables of all commits
+     */
+    public void indexFeatures(FeatureIndex featureIndex) {
+        this.featureIndex = featureIndex;
+    }
 
+    /**
+     * Returns the permit of the given commit to the memory governor.
+     */
+    private void release(Batch batch, RevCommit commit) {
+        if (batch.admitted.remove(commit.getName())) {
+            memoryGovernor.release();
+        }
     }
 
     @Override
     public void beginBatch(Analysis analysis) {
-        // Initialize the data for the current thread
-        var id = Thread.currentThread().getId();
-        // Logger.info("Starting new batch for thread " + id);
-        threadBatches.put(id, new ThreadBatch(new HashMap<>(), new HashMap<>()));
+        // Initialize the data for the batch processed by the analysis. The data is bound to the
+        // analysis instance and not to the thread that executes it.
+        batches.put(analysis,
+                new Batch(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                        new HashMap<>(), new HashSet<>(), new HashMap<>(), new HashMap<>(),
+                        new HashSet<>()));
     }
 
     @Override
     public void endBatch(Analysis analysis) {
         // Clean up the data of the fully-processed batch
-        var id = Thread.currentThread().getId();
-        // Logger.info("Cleaning up data of batch for thread " + id);
-        threadBatches.remove(id);
+        Batch batch = batches.remove(analysis);
+        // Return the permits of commits whose processing has been aborted
+        for (int i = 0; i < batch.admitted.size(); i++) {
+            memoryGovernor.release();
+        }
+        // Delete the spills of commits whose processing has been aborted
+        batch.spills.values().forEach(Spills::close);
     }
 
     @Override
@@ -192,17 +486,35 @@ public class FastVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
 
     @Override
     public boolean analyzeVariationDiff(Analysis analysis) {
-        // Retrieve data being processed by the current thread
-        var currentBatch = threadBatches.get(Thread.currentThread().getId());
+        // Retrieve data of the batch that is processed by the analysis
+        var currentBatch = batches.get(analysis);
+        final CommitBudget.Usage usage =
+                currentBatch.usages.get(analysis.getCurrentCommit().getName());
+        if (usage != null) {
+            if (deferredCommits.contains(analysis.getCurrentCommit().getName())) {
+                // Skip the remaining patches of a deferred commit
+                return true;
+            }
+            usage.addPatch();
+            String exceededLimit = usage.exceededLimit();
+            if (exceededLimit != null) {
+                defer(analysis.getCurrentCommit(), exceededLimit);
+                return true;
+            }
+        }
+        final CommitProfile profile = currentBatch.profiles.getOrDefault(
+                analysis.getCurrentCommit().getName(), CommitProfile.DISABLED);
+        long hookStart = profile.now();
+        profile.addFiles(1);
         HashMap<String, GroundTruth> groundTruthMapBefore = currentBatch.groundTruthMapBefore;
         HashMap<String, GroundTruth> groundTruthMapAfter = currentBatch.groundTruthMapAfter;
 
         GroundTruth groundTruthBefore =
                 groundTruthMapBefore.computeIfAbsent(analysis.getCurrentCommit().getName(),
-                        commit -> new GroundTruth(new HashMap<>(), new HashSet<>()));
+                        commit -> new GroundTruth(new TreeMap<>(), new VariableSet()));
         GroundTruth groundTruthAfter =
                 groundTruthMapAfter.computeIfAbsent(analysis.getCurrentCommit().getName(),
-                        commit -> new GroundTruth(new HashMap<>(), new HashSet<>()));
+                        commit -> new GroundTruth(new TreeMap<>(), new VariableSet()));
         // Show.diff(analysis.getCurrentVariationDiff()).showAndAwait();
         // Get the ground truth for this file
         String fileNameBefore = analysis.getCurrentPatch().getFileName(Time.BEFORE);
@@ -228,32 +540,130 @@ public class FastVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
                     k -> new FileGT.Mutable(fileNameAfter));
         }
 
-        analysis.getCurrentVariationDiff().forAll(node -> {
-            try {
-                // Logger.debug("Node: {}", node);
-                // If the file is not completely new, we consider the before case
-                if (!(changeType == DiffEntry.ChangeType.ADD)) {
-                    VariabilityAnalysis.analyzeNode(fileGTBefore, node, Time.BEFORE,
-                            ignorePCChanges);
+        // The analysis of the file's nodes might be fanned out for commits with many patches
+        final RevCommit commit = analysis.getCurrentCommit();
+        final VariationDiff<DiffLinesLabel> variationDiff = analysis.getCurrentVariationDiff();
+        PatchScheduler.Session session = currentBatch.sessions.computeIfAbsent(commit.getName(),
+                c -> patchScheduler.beginCommit());
+        final Spills spills = spillPolicy.isEnabled()
+                ? currentBatch.spills.computeIfAbsent(commit.getName(),
+                        c -> Spills.create(spillPolicy.directory(), featureIndex))
+                : null;
+        final String repositoryName = analysis.getRepository().getRepositoryName();
+        Runnable patchAnalysis = () -> {
+            // If a previous patch of the commit has already moved a ground truth of the file to
+            // disk, the file is analyzed again and replaces the spilled ground truth
+            final boolean reopenedBefore = fileGTBefore != null && fileGTBefore.isConsumed();
+            final boolean reopenedAfter = fileGTAfter != null && fileGTAfter.isConsumed();
+            final FileGT.Mutable targetBefore =
+                    reopenedBefore ? spills.before.reopen(fileNameBefore) : fileGTBefore;
+            final FileGT.Mutable targetAfter =
+                    reopenedAfter ? spills.after.reopen(fileNameAfter) : fileGTAfter;
+            FileAnalysisEvent event = new FileAnalysisEvent();
+            event.begin();
+            long analysisStart = profile.now();
+            int[] nodeCount = new int[1];
+            variationDiff.forAll(node -> {
+                nodeCount[0]++;
+                try {
+                    // Logger.debug("Node: {}", node);
+                    // If the file is not completely new, we consider the before case
+                    if (!(changeType == DiffEntry.ChangeType.ADD)) {
+                        VariabilityAnalysis.analyzeNode(targetBefore, node, Time.BEFORE,
+                                ignorePCChanges);
+                    }
+                    if (!(changeType == DiffEntry.ChangeType.DELETE)) {
+                        // If the file has not been deleted, we consider the after case
+                        VariabilityAnalysis.analyzeNode(targetAfter, node, Time.AFTER,
+                                ignorePCChanges);
+                    }
+                } catch (MatchingException e) {
+                    Logger.error("unhandled exception while analyzing {} -> {} for commit {}.",
+                            fileNameBefore, fileNameAfter, commit.getName());
+                    Logger.error(e);
+                    extractionFailed(commit);
                 }
-                if (!(changeType == DiffEntry.ChangeType.DELETE)) {
-                    // If the file has not been deleted, we consider the after case
-                    VariabilityAnalysis.analyzeNode(fileGTAfter, node, Time.AFTER, ignorePCChanges);
+            });
+            profile.addNodes(nodeCount[0]);
+            profile.addSince(Phase.NODE_ANALYSIS, analysisStart);
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repositoryName;
+                event.commit = commit.getName();
+                event.path = changeType == DiffEntry.ChangeType.DELETE ? fileNameBefore
+                        : fileNameAfter;
+                event.nodes = nodeCount[0];
+                event.commit();
+            }
+            if (usage != null) {
+                usage.addLines((targetBefore == null ? 0 : targetBefore.size())
+                        + (targetAfter == null ? 0 : targetAfter.size()));
+            }
+            if (spills != null) {
+                // Reopened ground truths are not part of the commit's ground truth in memory
+                if (reopenedBefore) {
+                    targetBefore.spillTo(spills.before, profile);
                 }
-            } catch (MatchingException e) {
-                Logger.error("unhandled exception while analyzing {} -> {} for commit {}.",
-                        fileNameBefore, fileNameAfter, analysis.getCurrentCommit().getName());
-                Logger.error(e);
-                extractionFailed(analysis.getCurrentCommit());
+                if (reopenedAfter) {
+                    targetAfter.spillTo(spills.after, profile);
+                }
+                spills.retain(reopenedBefore ? null : targetBefore,
+                        reopenedAfter ? null : targetAfter, spillPolicy.threshold(), profile);
             }
-        });
+        };
+        session.schedule(Arrays.asList(fileGTBefore, fileGTAfter), patchAnalysis);
 
+        profile.addHookTimeSince(hookStart);
         return true;
     }
 
-    private record ThreadBatch(HashMap<String, GroundTruth> groundTruthMapBefore,
-            HashMap<String, GroundTruth> groundTruthMapAfter) {
+    private record Batch(HashMap<String, GroundTruth> groundTruthMapBefore,
+            HashMap<String, GroundTruth> groundTruthMapAfter,
+            HashMap<String, PatchScheduler.Session> sessions,
+            HashMap<String, CommitProfile> profiles, HashMap<String, CommitEvent> events,
+            HashSet<String> admitted, HashMap<String, Spills> spills,
+            HashMap<String, CommitBudget.Usage> usages, HashSet<String> skipped) {
+
+    }
 
+    /**
+     * The spills of a commit's ground truths before and after the changes.
+     *
+     * @param retainedLines The number of lines of the commit's finished file ground truths that
+     *        are held in memory
+     */
+    private record Spills(GroundTruthSpill before, GroundTruthSpill after,
+            AtomicLong retainedLines) {
+
+        static Spills create(Path directory, FeatureIndex featureIndex) {
+            return new Spills(new GroundTruthSpill(directory, featureIndex),
+                    new GroundTruthSpill(directory, featureIndex), new AtomicLong());
+        }
+
+        /**
+         * Keeps the given finished file ground truths in memory as long as the commit's retained
+         * lines do not exceed the threshold. Otherwise, they are completed and spilled.
+         */
+        void retain(FileGT.Mutable fileGTBefore, FileGT.Mutable fileGTAfter, long threshold,
+                CommitProfile profile) {
+            long lines = (fileGTBefore == null ? 0 : fileGTBefore.size())
+                    + (fileGTAfter == null ? 0 : fileGTAfter.size());
+            if (retainedLines.addAndGet(lines) <= threshold) {
+                return;
+            }
+            if (fileGTBefore != null) {
+                fileGTBefore.spillTo(before, profile);
+            }
+            if (fileGTAfter != null) {
+                fileGTAfter.spillTo(after, profile);
+            }
+            retainedLines.addAndGet(-lines);
+        }
+
+        void close() {
+            before.close();
+            after.close();
+        }
     }
 
 }
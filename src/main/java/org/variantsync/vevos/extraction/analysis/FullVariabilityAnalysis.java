@@ -1,60 +1,281 @@
 package org.variantsync.vevos.extraction.analysis;
 
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.tinylog.Logger;
 import org.variantsync.diffdetective.analysis.Analysis;
 import org.variantsync.diffdetective.editclass.proposed.ProposedEditClasses;
 import org.variantsync.diffdetective.metadata.EditClassCount;
+import org.variantsync.diffdetective.variation.DiffLinesLabel;
 import org.variantsync.diffdetective.variation.diff.Time;
+import org.variantsync.diffdetective.variation.diff.VariationDiff;
+import org.variantsync.vevos.extraction.concurrency.MemoryGovernor;
+import org.variantsync.vevos.extraction.concurrency.PatchScheduler;
 import org.variantsync.vevos.extraction.error.MatchingException;
+import org.variantsync.vevos.extraction.events.CommitEvent;
+import org.variantsync.vevos.extraction.events.FileAnalysisEvent;
+import org.variantsync.vevos.extraction.gt.BlobCache;
 import org.variantsync.vevos.extraction.gt.FileGT;
 import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.VariableSet;
 import org.variantsync.vevos.extraction.io.Serde;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+import org.variantsync.vevos.extraction.metrics.Phase;
+import org.variantsync.vevos.extraction.metrics.RepoMetrics;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Extracts ground truths for all repositories in a dataset. The ground truth consists of presence
  * conditions for each file, a list of all variables, and commit metadata.
  */
 public class FullVariabilityAnalysis implements Analysis.Hooks, VariabilityAnalysis {
-    public static int numProcessed = 0;
-    private final Hashtable<String, GroundTruth> groundTruthMap;
+    // The state of each batch is only accessed by the analysis that processes the batch
+    private final ConcurrentHashMap<Analysis, Batch> batches;
     private final Path diffDetectiveCache;
     private final boolean ignorePCChanges;
+    private final PatchScheduler patchScheduler;
+    private final MemoryGovernor memoryGovernor;
+    private final CommitBudget budget;
+    private final BlobCache blobCache;
+    private final boolean incrementalPatches;
+    private final RepoMetrics metrics;
+    private final Set<String> deferredCommits;
+    // Set once the deferred commits are processed
+    private volatile boolean deferredOnly;
+    // The extracted blobs and the parent blobs of all patches
+    private final PatchParents patchParents;
+    // The abbreviated ids of the commits that are analyzed again without patches, or null
+    private volatile Set<Long> stalePatchCommits;
+    // The sampled commits, or null if all commits are analyzed
+    private volatile Set<String> selectedCommits;
 
     public FullVariabilityAnalysis(Path diffDetectiveCache, boolean ignorePCChanges) {
-        this.groundTruthMap = new Hashtable<>();
+        // The repository is not known before the analysis
+        this(diffDetectiveCache, ignorePCChanges, new RepoMetrics("unknown"));
+    }
+
+    public FullVariabilityAnalysis(Path diffDetectiveCache, boolean ignorePCChanges,
+            RepoMetrics metrics) {
+        this(diffDetectiveCache, ignorePCChanges, PatchScheduler.sequential(),
+                MemoryGovernor.disabled(), CommitBudget.unlimited(), BlobCache.disabled(), false,
+                metrics);
+    }
+
+    /**
+     * @param incrementalPatches Whether modified files are stored as {@link FileGT.Patch patches}
+     *        of their parent's ground truth if only few of their lines changed. Patches are not
+     *        used if changes to only the presence condition are ignored, because the annotations
+     *        of the parent would be based on older presence conditions.
+     */
+    public FullVariabilityAnalysis(Path diffDetectiveCache, boolean ignorePCChanges,
+            PatchScheduler patchScheduler, MemoryGovernor memoryGovernor, CommitBudget budget,
+            BlobCache blobCache, boolean incrementalPatches, RepoMetrics metrics) {
+        this.batches = new ConcurrentHashMap<>();
         this.diffDetectiveCache = diffDetectiveCache;
         this.ignorePCChanges = ignorePCChanges;
+        this.patchScheduler = patchScheduler;
+        this.memoryGovernor = memoryGovernor;
+        this.budget = budget;
+        this.blobCache = blobCache;
+        this.incrementalPatches = incrementalPatches && !ignorePCChanges;
+        this.metrics = metrics;
+        this.deferredCommits = ConcurrentHashMap.newKeySet();
+        this.patchParents = new PatchParents();
+    }
+
+    @Override
+    public void beginBatch(Analysis analysis) {
+        batches.put(analysis, new Batch(new HashMap<>(), new HashMap<>(), new HashMap<>(),
+                new HashMap<>(), new HashSet<>(), new HashMap<>(), new HashSet<>(),
+                new HashMap<>()));
+    }
+
+    @Override
+    public boolean beginCommit(Analysis analysis) {
+        RevCommit commit = analysis.getCurrentCommit();
+        Batch batch = batches.get(analysis);
+        Set<Long> stale = stalePatchCommits;
+        if (stale != null) {
+            if (!stale.contains(PatchParents.abbreviate(commit.getName()))) {
+                batch.skipped.add(commit.getName());
+                return false;
+            }
+        } else if (deferredOnly && !deferredCommits.contains(commit.getName())) {
+            // All other commits have already been processed
+            batch.skipped.add(commit.getName());
+            return false;
+        }
+        Set<String> selected = selectedCommits;
+        if (selected != null && !selected.contains(commit.getName())) {
+            batch.skipped.add(commit.getName());
+            return false;
+        }
+        // Wait until the heap permits the processing of another commit
+        memoryGovernor.acquire();
+        batch.admitted.add(commit.getName());
+        if (!deferredOnly && stale == null && budget.isLimited()) {
+            batch.usages.put(commit.getName(), budget.begin());
+        }
+        batch.profiles.put(commit.getName(),
+                metrics.profiles().begin(commit.getName(), "analysis"));
+        batch.events.put(commit.getName(), CommitEvent.begin(
+                analysis.getRepository().getRepositoryName(), commit.getName(), "analysis"));
+        return true;
+    }
+
+    @Override
+    public void endBatch(Analysis analysis) {
+        Batch batch = batches.remove(analysis);
+        if (batch != null) {
+            // Return the permits of commits that were aborted before endCommit
+            batch.admitted.forEach(commit -> memoryGovernor.release());
+        }
     }
 
     @Override
     public void endCommit(Analysis analysis) throws Exception {
         RevCommit commit = analysis.getCurrentCommit();
+        Batch batch = batches.get(analysis);
+        if (batch.skipped.remove(commit.getName())) {
+            return;
+        }
         var repo = analysis.getRepository();
         Path resultFile = diffDetectiveCache.resolve("pc").resolve(repo.getRepositoryName())
                 .resolve(commit.getName() + ".gt");
         Files.createDirectories(resultFile.getParent());
 
-        GroundTruth groundTruth = this.groundTruthMap.getOrDefault(commit.getName(),
-                new GroundTruth(new HashMap<>(), new HashSet<>()));
-        // Complete all new or updated file ground truths
-        VariabilityAnalysis.makeComplete(groundTruth);
-        Serde.serialize(resultFile.toFile(), groundTruth);
-        this.groundTruthMap.remove(commit.getName());
-        synchronized (FullVariabilityAnalysis.class) {
-            FullVariabilityAnalysis.numProcessed++;
-            if (FullVariabilityAnalysis.numProcessed % 1_000 == 0) {
-                Logger.info("Finished Commit ({}): {}", FullVariabilityAnalysis.numProcessed,
-                        commit.name());
+        final CommitProfile profile = Objects.requireNonNullElse(
+                batch.profiles.remove(commit.getName()), CommitProfile.DISABLED);
+        profile.finishParsing();
+        final CommitEvent event = Objects.requireNonNullElseGet(
+                batch.events.remove(commit.getName()), CommitEvent::new);
+        // Wait for the analysis of all patches that have been fanned out
+        PatchScheduler.Session session = batch.sessions.remove(commit.getName());
+        if (session != null) {
+            session.await();
+        }
+        // The blobs whose annotations have been extracted by this commit
+        final Map<String, String> blobKeys =
+                Objects.requireNonNullElseGet(batch.blobKeys.remove(commit.getName()), Map::of);
+
+        GroundTruth groundTruth = Objects.requireNonNullElseGet(
+                batch.groundTruthMap.remove(commit.getName()),
+                () -> new GroundTruth(new TreeMap<>(), new VariableSet()));
+        CommitBudget.Usage usage = batch.usages.remove(commit.getName());
+        if (usage != null) {
+            String exceededLimit = usage.exceededLimit();
+            if (exceededLimit != null) {
+                defer(commit, exceededLimit);
+            }
+            if (deferredCommits.contains(commit.getName())) {
+                // Drop the partial ground truth, the commit is processed again before the
+                // postprocessing
+                metrics.profiles().end(profile);
+                event.finish(0, 0);
+                if (batch.admitted.remove(commit.getName())) {
+                    memoryGovernor.release();
+                }
+                return;
+            }
+        }
+        long reservation = MemoryGovernor.estimate(groundTruth.lineCount());
+        memoryGovernor.reserve(reservation);
+        try {
+            // Complete all new or updated file ground truths
+            VariabilityAnalysis.makeComplete(groundTruth, profile);
+            blobKeys.forEach((file, key) -> {
+                if (groundTruth.get(file) instanceof FileGT.Complete complete) {
+                    blobCache.put(key, complete);
+                }
+            });
+            event.finish(groundTruth.size(), groundTruth.lineCount());
+            long ioStart = profile.now();
+            long previousSize = resultFile.toFile().length();
+            Serde.serialize(resultFile.toFile(), groundTruth);
+            metrics.cacheFileWritten(previousSize, resultFile.toFile().length());
+            profile.addSince(Phase.IO, ioStart);
+            if (incrementalPatches) {
+                for (FileGT fileGT : groundTruth.fileGTs().values()) {
+                    if (fileGT.blobId() != null) {
+                        patchParents.extracted(fileGT.blobId());
+                    }
+                    if (fileGT instanceof FileGT.Patch patch && patch.parentBlobId() != null) {
+                        patchParents.patched(commit.getName(), patch.parentBlobId());
+                    }
+                }
+            }
+        } finally {
+            memoryGovernor.unreserve(reservation);
+            if (batch.admitted.remove(commit.getName())) {
+                memoryGovernor.release();
             }
         }
+        metrics.profiles().end(profile);
+        if (stalePatchCommits != null) {
+            // The commit has already been counted by its first analysis
+            metrics.progress().step();
+            return;
+        }
+        long numProcessed = metrics.commitProcessed();
+        if (numProcessed % 1_000 == 0) {
+            Logger.info("Finished Commit ({}): {}", numProcessed, commit.name());
+        }
+    }
+
+    /**
+     * Marks the given commit as deferred.
+     *
+     * @param commit The commit that exceeded its budget
+     * @param limit The name of the exceeded limit
+     */
+    private void defer(RevCommit commit, String limit) {
+        if (deferredCommits.add(commit.getName())) {
+            Logger.info("Deferring commit {} because it exceeds its {} budget", commit.getName(),
+                    limit);
+            metrics.commitDeferred();
+        }
+    }
+
+    /**
+     * Restricts the analysis to the commits with a patch whose parent blob has not been extracted
+     * by any commit, e.g., because the file could not be parsed at the parent commit. These
+     * commits are analyzed again without patches, so that their files are annotated fully. Has to
+     * be called after all other commits, including the deferred commits, have been processed.
+     *
+     * @return The number of commits that are analyzed again
+     */
+    public int reanalyzeStalePatchesOnly() {
+        Set<Long> stale = patchParents.staleCommits();
+        this.stalePatchCommits = stale;
+        return stale.size();
+    }
+
+    @Override
+    public Set<String> deferredCommits() {
+        return Collections.unmodifiableSet(deferredCommits);
+    }
+
+    @Override
+    public void processDeferredCommitsOnly() {
+        this.deferredOnly = true;
+    }
+
+    @Override
+    public void restrictTo(Set<String> commits) {
+        this.selectedCommits = commits;
     }
 
     @Override
@@ -64,9 +285,27 @@ public class FullVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
 
     @Override
     public boolean analyzeVariationDiff(Analysis analysis) throws Exception {
+        Batch batch = batches.get(analysis);
+        final CommitBudget.Usage usage = batch.usages.get(analysis.getCurrentCommit().getName());
+        if (usage != null) {
+            if (deferredCommits.contains(analysis.getCurrentCommit().getName())) {
+                // Skip the remaining patches of a deferred commit
+                return true;
+            }
+            usage.addPatch();
+            String exceededLimit = usage.exceededLimit();
+            if (exceededLimit != null) {
+                defer(analysis.getCurrentCommit(), exceededLimit);
+                return true;
+            }
+        }
+        final CommitProfile profile = batch.profiles
+                .getOrDefault(analysis.getCurrentCommit().getName(), CommitProfile.DISABLED);
+        long hookStart = profile.now();
+        profile.addFiles(1);
         GroundTruth groundTruth =
-                this.groundTruthMap.computeIfAbsent(analysis.getCurrentCommit().getName(),
-                        commit -> new GroundTruth(new HashMap<>(), new HashSet<>()));
+                batch.groundTruthMap.computeIfAbsent(analysis.getCurrentCommit().getName(),
+                        commit -> new GroundTruth(new TreeMap<>(), new VariableSet()));
         // Show.diff(analysis.getCurrentVariationDiff()).showAndAwait();
         // Get the ground truth for this file
         String fileNameBefore = analysis.getCurrentPatch().getFileName(Time.BEFORE);
@@ -83,6 +322,7 @@ public class FullVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
 
         if (analysis.getCurrentPatch().getChangeType() == DiffEntry.ChangeType.DELETE) {
             // We return early, if the file has been completely deleted
+            profile.addHookTimeSince(hookStart);
             return true;
         }
 
@@ -90,17 +330,155 @@ public class FullVariabilityAnalysis implements Analysis.Hooks, VariabilityAnaly
         final FileGT.Mutable fileGT = (FileGT.Mutable) groundTruth.computeIfAbsent(fileNameAfter,
                 k -> new FileGT.Mutable(fileNameAfter));
 
-        analysis.getCurrentVariationDiff().forAll(node -> {
-            // Logger.debug("Node: {}", node);
-            try {
-                VariabilityAnalysis.analyzeNode(fileGT, node, Time.AFTER, ignorePCChanges);
-            } catch (MatchingException e) {
-                Logger.error("unhandled exception while analyzing {} -> {} for commit {}.",
-                        fileNameBefore, fileNameAfter, analysis.getCurrentCommit().getName());
+        // Files with few changed lines might only be analyzed where they changed, unless their
+        // commit is analyzed again because the parent's blob of a patch has not been extracted
+        final RevCommit commit = analysis.getCurrentCommit();
+        final boolean patchable = incrementalPatches && stalePatchCommits == null
+                && changeType == DiffEntry.ChangeType.MODIFY
+                && fileNameBefore.equals(fileNameAfter) && fileGT.size() == 0
+                && commit.getParentCount() > 0;
+        // Patches only fit the ground truth of the parent's blob
+        final String[] blobIds = incrementalPatches
+                ? blobIds(analysis, fileNameAfter, patchable)
+                : new String[2];
+        if (blobIds[0] != null) {
+            fileGT.identifyBlob(blobIds[0]);
+        }
+
+        // The annotations of a blob that has been analyzed before can be reused
+        BlobCache.Entry cachedBlob = null;
+        if (blobCache.isEnabled() && fileGT.size() == 0) {
+            String key = blobIds[0] != null && !ignorePCChanges ? blobIds[0]
+                    : blobKey(analysis, fileNameBefore, fileNameAfter, changeType);
+            if (key != null) {
+                cachedBlob = blobCache.get(key);
+                if (cachedBlob == null) {
+                    metrics.blobCacheMiss();
+                    batch.blobKeys.computeIfAbsent(analysis.getCurrentCommit().getName(),
+                            c -> new HashMap<>()).put(fileNameAfter, key);
+                } else {
+                    metrics.blobCacheHit();
+                }
             }
-        });
+        }
+        final BlobCache.Entry reusedBlob = cachedBlob;
+        final boolean incremental =
+                patchable && reusedBlob == null && blobIds[0] != null && blobIds[1] != null;
 
+        // The analysis of the file's nodes might be fanned out for commits with many patches
+        final VariationDiff<DiffLinesLabel> variationDiff = analysis.getCurrentVariationDiff();
+        PatchScheduler.Session session = batch.sessions.computeIfAbsent(commit.getName(),
+                c -> patchScheduler.beginCommit());
+        final String repositoryName = analysis.getRepository().getRepositoryName();
+        Runnable patchAnalysis = () -> {
+            FileAnalysisEvent event = new FileAnalysisEvent();
+            event.begin();
+            long analysisStart = profile.now();
+            int[] nodeCount = new int[1];
+            if (reusedBlob != null) {
+                fileGT.adopt(reusedBlob);
+            }
+            final IncrementalFileAnalysis incrementalAnalysis =
+                    incremental ? IncrementalFileAnalysis.of(fileNameAfter, variationDiff) : null;
+            variationDiff.forAll(node -> {
+                nodeCount[0]++;
+                // Logger.debug("Node: {}", node);
+                try {
+                    if (reusedBlob != null) {
+                        VariabilityAnalysis.analyzeMatching(fileGT, node, Time.AFTER);
+                    } else if (incrementalAnalysis != null) {
+                        incrementalAnalysis.analyzeNode(node);
+                    } else {
+                        VariabilityAnalysis.analyzeNode(fileGT, node, Time.AFTER,
+                                ignorePCChanges);
+                    }
+                } catch (MatchingException e) {
+                    Logger.error("unhandled exception while analyzing {} -> {} for commit {}.",
+                            fileNameBefore, fileNameAfter, commit.getName());
+                }
+            });
+            if (incrementalAnalysis != null) {
+                incrementalAnalysis.patch().identifyBlobs(blobIds[0], blobIds[1]);
+                fileGT.replaceWith(incrementalAnalysis.patch());
+            }
+            profile.addNodes(nodeCount[0]);
+            profile.addSince(Phase.NODE_ANALYSIS, analysisStart);
+            if (usage != null) {
+                usage.addLines(incrementalAnalysis != null
+                        ? incrementalAnalysis.patch().changedLineCount()
+                        : fileGT.size());
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repositoryName;
+                event.commit = commit.getName();
+                event.path = fileNameAfter;
+                event.nodes = nodeCount[0];
+                event.commit();
+            }
+        };
+        session.schedule(List.of(fileGT), patchAnalysis);
+
+        profile.addHookTimeSince(hookStart);
         return true;
     }
 
+    /**
+     * Determines the key of the blob that is analyzed for the current patch. If changes to only the
+     * presence condition are ignored, the annotations also depend on the file before the commit,
+     * so that the key consists of both blobs.
+     *
+     * @return The key, or null if a blob could not be determined
+     */
+    private String blobKey(Analysis analysis, String fileNameBefore, String fileNameAfter,
+            DiffEntry.ChangeType changeType) {
+        RevCommit commit = analysis.getCurrentCommit();
+        try {
+            var repository = analysis.getRepository().getGitRepo().run().getRepository();
+            ObjectId after = BlobCache.blobId(repository, commit, fileNameAfter);
+            if (after == null || !ignorePCChanges) {
+                return after == null ? null : after.name();
+            }
+            ObjectId before = changeType == DiffEntry.ChangeType.ADD
+                    || commit.getParentCount() == 0 ? ObjectId.zeroId()
+                            : BlobCache.blobId(repository, commit.getParent(0), fileNameBefore);
+            return before == null ? null : before.name() + ":" + after.name();
+        } catch (IOException e) {
+            Logger.warn("Was not able to determine the blob of {} at commit {}: {}",
+                    fileNameAfter, commit.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the ids of the blobs of a file at the current commit and, optionally, at its first
+     * parent with a single walk over their trees.
+     *
+     * @return The names of both blobs' ids, with null for a blob that could not be determined
+     */
+    private static String[] blobIds(Analysis analysis, String fileName, boolean withParent) {
+        RevCommit commit = analysis.getCurrentCommit();
+        String[] names = new String[2];
+        try {
+            var repository = analysis.getRepository().getGitRepo().run().getRepository();
+            ObjectId[] blobs = withParent
+                    ? BlobCache.blobIds(repository, fileName, commit, commit.getParent(0))
+                    : BlobCache.blobIds(repository, fileName, commit);
+            for (int i = 0; i < blobs.length; i++) {
+                names[i] = blobs[i] == null ? null : blobs[i].name();
+            }
+        } catch (IOException e) {
+            Logger.warn("Was not able to determine the blob of {} at commit {}: {}", fileName,
+                    commit.getName(), e.getMessage());
+        }
+        return names;
+    }
+
+    private record Batch(HashMap<String, GroundTruth> groundTruthMap,
+            HashMap<String, PatchScheduler.Session> sessions,
+            HashMap<String, CommitProfile> profiles, HashMap<String, CommitEvent> events,
+            HashSet<String> admitted, HashMap<String, CommitBudget.Usage> usages,
+            HashSet<String> skipped, HashMap<String, HashMap<String, String>> blobKeys) {
+
+    }
 }
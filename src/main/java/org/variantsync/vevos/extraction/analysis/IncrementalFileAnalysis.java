@@ -0,0 +1,175 @@
+package org.variantsync.vevos.extraction.analysis;
+
+import org.prop4j.Node;
+import org.variantsync.diffdetective.util.LineRange;
+import org.variantsync.diffdetective.variation.DiffLinesLabel;
+import org.variantsync.diffdetective.variation.diff.DiffNode;
+import org.variantsync.diffdetective.variation.diff.DiffType;
+import org.variantsync.diffdetective.variation.diff.Time;
+import org.variantsync.diffdetective.variation.diff.VariationDiff;
+import org.variantsync.vevos.extraction.error.MatchingException;
+import org.variantsync.vevos.extraction.gt.FileGT;
+import org.variantsync.vevos.extraction.gt.LineAnnotation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Analyzes a modified file incrementally. Only the lines that do not belong to an unchanged node
+ * are annotated, while all other lines are retained from the ground truth of the file at the parent
+ * commit. Because the parent's ground truth is only known while the full extraction combines the
+ * ground truths of all commits, the result is a {@link FileGT.Patch patch} of the parent's ground
+ * truth.
+ *
+ * <p>
+ * The analysis is only applicable if the annotations of the file are unchanged. Otherwise, the
+ * presence conditions of unchanged artifacts might change as well.
+ * </p>
+ */
+public class IncrementalFileAnalysis {
+    private final FileGT.Patch patch;
+    // The sorted numbers of all lines that are not retained from the parent
+    private final int[] changedLines;
+
+    private IncrementalFileAnalysis(FileGT.Patch patch, int[] changedLines) {
+        this.patch = patch;
+        this.changedLines = changedLines;
+    }
+
+    /**
+     * Determines the lines of a file that are retained from the parent's ground truth.
+     *
+     * @param fileName The name of the modified file
+     * @param variationDiff The variation diff of the file
+     * @return The incremental analysis of the file, or null if the diff changes annotations or if
+     *         more than half of the file's lines have to be annotated
+     */
+    public static IncrementalFileAnalysis of(String fileName,
+            VariationDiff<DiffLinesLabel> variationDiff) {
+        // The number of lines after and before the change
+        int[] sizes = new int[2];
+        boolean[] annotationsChanged = new boolean[1];
+        // Runs of unchanged lines (line, parent line, number of lines, 1 for artifacts)
+        List<int[]> anchors = new ArrayList<>();
+        variationDiff.forAll(node -> {
+            boolean hasEndif = node.isAnnotation() && !node.isRoot();
+            if (hasEndif && node.diffType != DiffType.NON) {
+                annotationsChanged[0] = true;
+                return;
+            }
+            LineRange after = node.getLinesAtTime(Time.AFTER);
+            LineRange before = node.getLinesAtTime(Time.BEFORE);
+            int endif = hasEndif ? 1 : 0;
+            if (node.diffType != DiffType.REM) {
+                sizes[0] = Math.max(sizes[0], after.toExclusive() + endif);
+            }
+            if (node.diffType != DiffType.ADD) {
+                sizes[1] = Math.max(sizes[1], before.toExclusive() + endif);
+            }
+            if (node.diffType != DiffType.NON || node.isRoot()) {
+                return;
+            }
+            if (hasEndif) {
+                // The lines with the condition and the 'endif' of an unchanged annotation
+                anchors.add(new int[] {after.fromInclusive(), before.fromInclusive(), 1, 0});
+                anchors.add(new int[] {after.toExclusive(), before.toExclusive(), 1, 0});
+            } else if (after.toExclusive() - after.fromInclusive() > 0 && after.toExclusive()
+                    - after.fromInclusive() == before.toExclusive() - before.fromInclusive()) {
+                anchors.add(new int[] {after.fromInclusive(), before.fromInclusive(),
+                        after.toExclusive() - after.fromInclusive(), 1});
+            }
+        });
+        if (annotationsChanged[0]) {
+            return null;
+        }
+
+        // Merge the anchors to disjoint runs; overlapping anchors must retain the same lines
+        anchors.sort(Comparator.<int[]>comparingInt(anchor -> anchor[0])
+                .thenComparing(anchor -> anchor[2], Comparator.reverseOrder()));
+        List<int[]> runs = new ArrayList<>();
+        int retainedCount = 0;
+        for (int[] anchor : anchors) {
+            int[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && anchor[0] < last[0] + last[2]) {
+                if (anchor[0] - last[0] != anchor[1] - last[1]) {
+                    return null;
+                }
+                int end = Math.max(last[0] + last[2], anchor[0] + anchor[2]);
+                retainedCount += end - last[0] - last[2];
+                last[2] = end - last[0];
+            } else {
+                runs.add(anchor);
+                retainedCount += anchor[2];
+            }
+        }
+        int changedCount = sizes[0] - retainedCount;
+        if (changedCount > sizes[0] / 2) {
+            return null;
+        }
+
+        FileGT.Patch patch = new FileGT.Patch(fileName, sizes[0], sizes[1]);
+        int[] changedLines = new int[changedCount];
+        int changedIndex = 0;
+        int nextLine = 1;
+        for (int[] run : runs) {
+            patch.retain(run[0], run[1], run[2], run[3] == 1);
+            for (; nextLine < run[0]; nextLine++) {
+                changedLines[changedIndex++] = nextLine;
+            }
+            nextLine = run[0] + run[2];
+        }
+        for (; nextLine <= sizes[0]; nextLine++) {
+            changedLines[changedIndex++] = nextLine;
+        }
+        return new IncrementalFileAnalysis(patch, changedLines);
+    }
+
+    /**
+     * Analyzes the given node like {@link VariabilityAnalysis#analyzeNode} after the edit, but
+     * only annotates the changed lines. The node's conditions are only converted if the node
+     * covers a changed line.
+     *
+     * @param node The node that is to be analyzed
+     */
+    public void analyzeNode(DiffNode<DiffLinesLabel> node) throws MatchingException {
+        if (node.diffType == DiffType.REM) {
+            return;
+        }
+        LineRange currentRange = node.getLinesAtTime(Time.AFTER);
+        int fromLine = currentRange.fromInclusive();
+        int toLine = currentRange.toExclusive();
+        // Also consider the #endif in case of an annotation
+        toLine = (node.isAnnotation() && !node.isRoot()) ? toLine + 1 : toLine;
+
+        // The matching is relative to the parent and is required for all lines
+        if (!node.isAnnotation()) {
+            patch.setMatching(currentRange, node.getLinesAtTime(Time.BEFORE));
+        }
+
+        int index = Arrays.binarySearch(changedLines, fromLine);
+        index = index < 0 ? -index - 1 : index;
+        if (index == changedLines.length || changedLines[index] >= toLine) {
+            // All lines of the node are retained
+            return;
+        }
+        Node featureMapping = node.getFeatureMapping(Time.AFTER).toCNF(false);
+        Node presenceCondition = node.getPresenceCondition(Time.AFTER).toCNF(false);
+        for (; index < changedLines.length && changedLines[index] < toLine; index++) {
+            int lineNumber = changedLines[index];
+            LineAnnotation annotation = VariabilityAnalysis.annotateLine(node, lineNumber, toLine,
+                    patch.changedLine(lineNumber), featureMapping, presenceCondition);
+            if (annotation != null) {
+                patch.insert(annotation);
+            }
+        }
+    }
+
+    /**
+     * @return The patch that holds the annotations of the changed lines
+     */
+    public FileGT.Patch patch() {
+        return patch;
+    }
+}
@@ -0,0 +1,87 @@
+package org.variantsync.vevos.extraction.analysis;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks whether the parent blobs of all {@link org.variantsync.vevos.extraction.gt.FileGT.Patch
+ * patches} have been extracted. A patch only fits the ground truth of its parent's blob, so a
+ * commit whose patch refers to a blob that no commit has extracted, e.g., because the parent's
+ * version of the file could not be parsed, has to be analyzed again without patches.
+ *
+ * <p>
+ * The ids of blobs and commits are abbreviated to their first 64 bits and kept in growing arrays,
+ * so that even histories with millions of file versions only take a few bytes per version. An
+ * abbreviation that collides with another one might hide a stale patch, which is then detected
+ * when the patch is applied.
+ * </p>
+ */
+final class PatchParents {
+    private long[] extractedBlobs;
+    private int extractedCount;
+    // Pairs of the commit and the parent blob of each patch
+    private long[] patches;
+    private int patchCount;
+
+    PatchParents() {
+        this.extractedBlobs = new long[1024];
+        this.patches = new long[1024];
+    }
+
+    /**
+     * Records that the ground truth of a blob has been extracted.
+     *
+     * @param blobId The name of the blob's id
+     */
+    synchronized void extracted(String blobId) {
+        if (extractedCount == extractedBlobs.length) {
+            extractedBlobs = Arrays.copyOf(extractedBlobs, 2 * extractedCount);
+        }
+        extractedBlobs[extractedCount++] = abbreviate(blobId);
+    }
+
+    /**
+     * Records that a commit stores a file ground truth as patch of the given parent blob.
+     *
+     * @param commit The name of the commit's id
+     * @param parentBlobId The name of the parent blob's id
+     */
+    synchronized void patched(String commit, String parentBlobId) {
+        if (2 * patchCount == patches.length) {
+            patches = Arrays.copyOf(patches, 2 * patches.length);
+        }
+        patches[2 * patchCount] = abbreviate(commit);
+        patches[2 * patchCount + 1] = abbreviate(parentBlobId);
+        patchCount++;
+    }
+
+    /**
+     * @return The abbreviated ids of all commits with a patch whose parent blob has not been
+     *         extracted
+     */
+    synchronized Set<Long> staleCommits() {
+        Arrays.sort(extractedBlobs, 0, extractedCount);
+        Set<Long> stale = new HashSet<>();
+        for (int i = 0; i < patchCount; i++) {
+            if (Arrays.binarySearch(extractedBlobs, 0, extractedCount,
+                    patches[2 * i + 1]) < 0) {
+                stale.add(patches[2 * i]);
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * @param id The name of a git object id
+     * @return The first 64 bits of the id
+     */
+    static long abbreviate(String id) {
+        byte[] raw = new byte[Long.BYTES * 3];
+        ObjectId.fromString(id).copyRawTo(raw, 0);
+        return ByteBuffer.wrap(raw).getLong();
+    }
+}
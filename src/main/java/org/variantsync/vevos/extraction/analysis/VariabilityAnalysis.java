@@ -8,11 +8,33 @@ import org.variantsync.diffdetective.variation.diff.DiffType;
 import org.variantsync.diffdetective.variation.diff.Time;
 import org.variantsync.vevos.extraction.error.MatchingException;
 import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
 
 import java.util.Map;
+import java.util.Set;
 
 public interface VariabilityAnalysis {
 
+    /**
+     * @return The ids of all commits whose analysis has been aborted because they exceeded their
+     *         {@link CommitBudget budget}
+     */
+    Set<String> deferredCommits();
+
+    /**
+     * Restricts the analysis to the deferred commits, which are then processed without any budget.
+     * Must only be called after DiffDetective has processed all commits of the repository.
+     */
+    void processDeferredCommitsOnly();
+
+    /**
+     * Restricts the analysis to the given commits. All other commits are skipped. Must be called
+     * before DiffDetective processes the repository.
+     *
+     * @param commits The ids of the commits to analyze, or null to analyze all commits
+     */
+    void restrictTo(Set<String> commits);
+
     /**
      * Analyzes the given node and applies its annotation to the file's ground truth
      *
@@ -74,30 +96,82 @@ public interface VariabilityAnalysis {
         }
 
         for (int lineNumber = fromLine; lineNumber < toLine; lineNumber++) {
-            LineAnnotation existingAnnotation = fileGT.get(lineNumber - 1);
-            if (existingAnnotation != null && existingAnnotation.nodeType().equals("artifact")
-                    && node.isAnnotation()) {
-                // Never overwrite artifact pcs with annotation pcs
-                continue;
+            LineAnnotation annotation = annotateLine(node, lineNumber, toLine,
+                    fileGT.get(lineNumber - 1), featureMapping, presenceCondition);
+            if (annotation != null) {
+                fileGT.insert(annotation);
             }
-            String nodeType = node.getNodeType().name;
-            if (node.isAnnotation() && lineNumber == toLine - 1) {
-                // The last line of any annotation is the 'endif'
-                // If it is an else, or elif, it will be overwritten by the next node
-                nodeType = "endif";
-            }
-            LineAnnotation annotation =
-                    new LineAnnotation(lineNumber, new FeatureMapping(featureMapping.toString()),
-                            new PresenceCondition(presenceCondition.toString()), nodeType,
-                            presenceCondition.getUniqueContainedFeatures());
-            fileGT.insert(annotation);
         }
     }
 
+    /**
+     * Determines the annotation of a single line that is written by the given node.
+     *
+     * @param node The node whose lines are annotated
+     * @param lineNumber The number of the annotated line
+     * @param toLine The end of the node's lines, including the 'endif' of an annotation
+     * @param existingAnnotation The current annotation of the line, or null if it has none
+     * @param featureMapping The feature mapping of the node
+     * @param presenceCondition The presence condition of the node
+     * @return The annotation of the line, or null if the existing annotation is kept
+     */
+    static LineAnnotation annotateLine(DiffNode<DiffLinesLabel> node, int lineNumber, int toLine,
+            LineAnnotation existingAnnotation, Node featureMapping, Node presenceCondition) {
+        if (existingAnnotation != null && existingAnnotation.nodeType().equals("artifact")
+                && node.isAnnotation()) {
+            // Never overwrite artifact pcs with annotation pcs
+            return null;
+        }
+        String nodeType = node.getNodeType().name;
+        if (node.isAnnotation() && lineNumber == toLine - 1) {
+            // The last line of any annotation is the 'endif'
+            // If it is an else, or elif, it will be overwritten by the next node
+            nodeType = "endif";
+        }
+        return new LineAnnotation(lineNumber, new FeatureMapping(featureMapping.toString()),
+                new PresenceCondition(presenceCondition.toString()), nodeType,
+                presenceCondition.getUniqueContainedFeatures());
+    }
+
+    /**
+     * Applies the line matching of the given node to a file's ground truth whose annotations have
+     * been adopted from a {@link BlobCache cached blob}.
+     *
+     * @param fileGT The ground truth whose matching is set
+     * @param node The node that is to be analyzed
+     * @param time Whether we should handle the node as before or after the edit
+     */
+    static void analyzeMatching(FileGT.Mutable fileGT, DiffNode<DiffLinesLabel> node, Time time)
+            throws MatchingException {
+        if (node.isAnnotation() || (time == Time.BEFORE && node.diffType == DiffType.ADD)
+                || (time == Time.AFTER && node.diffType == DiffType.REM)) {
+            return;
+        }
+        Time counterpart = time == Time.BEFORE ? Time.AFTER : Time.BEFORE;
+        fileGT.setMatching(node.getLinesAtTime(time), node.getLinesAtTime(counterpart));
+    }
+
     static void makeComplete(GroundTruth groundTruth) {
+        makeComplete(groundTruth, CommitProfile.DISABLED);
+    }
+
+    /**
+     * Completes all mutable file ground truths in the given ground truth. Mutable ground truths
+     * that have been replaced by a patch are replaced by their patch.
+     *
+     * @param groundTruth The ground truth of a commit
+     * @param profile The profile of the commit
+     */
+    static void makeComplete(GroundTruth groundTruth, CommitProfile profile) {
         for (Map.Entry<String, FileGT> entry : groundTruth.fileGTs().entrySet()) {
             if (entry.getValue() instanceof FileGT.Mutable mutable) {
-                FileGT.Complete complete = mutable.finishMutation();
+                if (mutable.replacement() != null) {
+                    // A patch is only applied once the ground truth of the parent is known
+                    groundTruth.variables().addAll(mutable.replacement().getVariables());
+                    groundTruth.fileGTs().put(entry.getKey(), mutable.replacement());
+                    continue;
+                }
+                FileGT.Complete complete = mutable.finishMutation(profile);
                 groundTruth.variables().addAll(complete.getVariables());
                 groundTruth.fileGTs().put(entry.getKey(), complete);
             }
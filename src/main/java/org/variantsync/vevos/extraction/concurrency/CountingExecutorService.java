@@ -0,0 +1,66 @@
+package org.variantsync.vevos.extraction.concurrency;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An executor service that counts the tasks which have been submitted to a delegate but have not
+ * been completed yet.
+ */
+class CountingExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final LongAdder pending;
+
+    CountingExecutorService(ExecutorService delegate, LongAdder pending) {
+        this.delegate = delegate;
+        this.pending = pending;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pending.increment();
+        try {
+            delegate.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    pending.decrement();
+                }
+            });
+        } catch (RuntimeException e) {
+            // The task has been rejected
+            pending.decrement();
+            throw e;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notExecuted = delegate.shutdownNow();
+        pending.add(-notExecuted.size());
+        return notExecuted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,92 @@
+package org.variantsync.vevos.extraction.concurrency;
+
+import org.tinylog.Logger;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors that run the I/O phases of an extraction, i.e., writing the extracted
+ * ground truths to disk.
+ */
+public class IOExecutors {
+
+    /**
+     * The kind of threads that execute the I/O tasks.
+     */
+    public enum Mode {
+        /**
+         * A fixed number of platform threads.
+         */
+        PLATFORM,
+        /**
+         * One virtual thread per task. Falls back to platform threads if the JVM does not support
+         * virtual threads.
+         */
+        VIRTUAL;
+
+        /**
+         * Parses the mode from the given property value. Platform threads are used if no value is
+         * given.
+         *
+         * @param value The configured value
+         * @return The parsed mode
+         */
+        public static Mode parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return PLATFORM;
+            }
+            return Mode.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Creates a new executor for I/O tasks. The number of pending tasks of the executor is counted
+     * in {@link IOMetrics#pendingTasks(String)} under the given name.
+     *
+     * @param name The name of the executor
+     * @param mode The kind of threads to use
+     * @param numThreads The number of threads if platform threads are used
+     * @return A new executor service
+     */
+    public static ExecutorService create(String name, Mode mode, int numThreads) {
+        return new CountingExecutorService(create(mode, numThreads),
+                IOMetrics.pendingTasks(name));
+    }
+
+    private static ExecutorService create(Mode mode, int numThreads) {
+        if (mode == Mode.VIRTUAL) {
+            try {
+                // Virtual threads are a preview feature in Java 19, which is why we look them up
+                // reflectively and fall back to platform threads if they are not enabled
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException | IllegalAccessException
+                    | InvocationTargetException e) {
+                Logger.warn("Virtual threads are not available (run with --enable-preview on "
+                        + "Java 19 or use Java 21+). Falling back to platform threads.");
+            }
+        }
+        return Executors.newFixedThreadPool(numThreads);
+    }
+
+    /**
+     * Shuts down the given executor and waits until all submitted tasks have been executed.
+     *
+     * @param executor The executor to shut down
+     */
+    public static void shutdownAndAwait(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Logger.info("Waiting for pending I/O tasks");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for I/O tasks", e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package org.variantsync.vevos.extraction.concurrency;
+
+import org.tinylog.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Adapts the number of commits that are processed concurrently to the pressure on the heap.
+ *
+ * <p>
+ * The governor measures the heap that is still in use after the last garbage collection. If it
+ * exceeds the high watermark, the number of commits that may be processed at the same time is
+ * halved. Once it drops below the low watermark, the number is increased again step by step until
+ * all workers are active. In addition, the governor keeps track of the estimated size of all
+ * ground truths that are being completed and written, and delays the completion of a further
+ * ground truth that would not fit into the remaining headroom.
+ * </p>
+ *
+ * <p>
+ * Workers that wait for the governor do not hold any ground truths, which allows a run to slow
+ * down instead of failing with an {@link OutOfMemoryError}.
+ * </p>
+ */
+public class MemoryGovernor implements AutoCloseable {
+    /**
+     * A rough estimate of the retained bytes per line of a file ground truth, including the line
+     * annotation, the matching, the aggregated blocks, and the rendered CSV text.
+     */
+    public static final long BYTES_PER_LINE = 192;
+    private static final long CONTROL_INTERVAL_MILLIS = 1_000;
+    private static final long WAIT_MILLIS = 100;
+
+    private final boolean enabled;
+    private final int maxPermits;
+    private final double highWatermark;
+    private final double lowWatermark;
+    private final long maxHeap;
+    private final List<MemoryPoolMXBean> heapPools;
+    // Determines the pressure on the heap, which is measured if it is null
+    private final DoubleSupplier pressureGauge;
+    private final ScheduledExecutorService controller;
+    private int permits;
+    private int active;
+    private long reserved;
+
+    /**
+     * Initializes a governor and starts its control loop.
+     *
+     * @param maxPermits The maximum number of commits that are processed concurrently, i.e., the
+     *        number of workers
+     * @param highWatermark The fraction of the maximum heap above which concurrency is reduced
+     * @param lowWatermark The fraction of the maximum heap below which concurrency is increased
+     */
+    public MemoryGovernor(int maxPermits, double highWatermark, double lowWatermark) {
+        this(true, maxPermits, highWatermark, lowWatermark, Runtime.getRuntime().maxMemory(),
+                null);
+    }
+
+    /**
+     * Initializes a governor whose pressure is determined by the given gauge instead of the
+     * heap. Its control loop is not started, so that each step has to be triggered by
+     * {@link #adjust()}.
+     *
+     * @param maxPermits The maximum number of commits that are processed concurrently
+     * @param highWatermark The pressure above which concurrency is reduced
+     * @param lowWatermark The pressure below which concurrency is increased
+     * @param maxHeap The number of bytes that correspond to a pressure of 1
+     * @param pressureGauge Determines the current pressure in the range [0, 1]
+     */
+    public MemoryGovernor(int maxPermits, double highWatermark, double lowWatermark,
+            long maxHeap, DoubleSupplier pressureGauge) {
+        this(true, maxPermits, highWatermark, lowWatermark, maxHeap, pressureGauge);
+    }
+
+    private MemoryGovernor(boolean enabled, int maxPermits, double highWatermark,
+            double lowWatermark, long maxHeap, DoubleSupplier pressureGauge) {
+        if (lowWatermark > highWatermark) {
+            throw new IllegalArgumentException(
+                    "The low watermark must not be greater than the high watermark");
+        }
+        this.maxHeap = maxHeap;
+        // Without a limit for the heap, there is nothing to govern
+        this.enabled = enabled && maxHeap != Long.MAX_VALUE;
+        this.maxPermits = Math.max(1, maxPermits);
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+        this.pressureGauge = pressureGauge;
+        this.permits = this.maxPermits;
+        if (this.enabled && pressureGauge == null) {
+            this.controller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "memory-governor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.controller.scheduleAtFixedRate(this::adjust, CONTROL_INTERVAL_MILLIS,
+                    CONTROL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            this.controller = null;
+        }
+    }
+
+    /**
+     * @return A governor that never restricts the extraction
+     */
+    public static MemoryGovernor disabled() {
+        return new MemoryGovernor(false, 1, 1, 1, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Estimates the number of bytes that are retained by file ground truths with the given total
+     * number of lines.
+     *
+     * @param lines The number of lines
+     * @return The estimated number of bytes
+     */
+    public static long estimate(long lines) {
+        return lines * BYTES_PER_LINE;
+    }
+
+    /**
+     * Waits until the processing of another commit is permitted.
+     */
+    public synchronized void acquire() {
+        if (!enabled) {
+            return;
+        }
+        while (active >= permits) {
+            awaitChange();
+        }
+        active++;
+    }
+
+    /**
+     * Returns a permit obtained by {@link #acquire()}.
+     */
+    public synchronized void release() {
+        if (!enabled) {
+            return;
+        }
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * Reserves headroom for ground truths that are about to be completed. Waits while the
+     * reservation does not fit into the remaining headroom and other reservations exist that will
+     * be returned eventually.
+     *
+     * @param bytes The estimated size of the ground truths
+     */
+    public synchronized void reserve(long bytes) {
+        if (!enabled) {
+            return;
+        }
+        while (reserved > 0 && reserved + bytes > headroom()) {
+            awaitChange();
+        }
+        reserved += bytes;
+    }
+
+    /**
+     * Returns headroom that has been reserved by {@link #reserve(long)}.
+     *
+     * @param bytes The reserved bytes
+     */
+    public synchronized void unreserve(long bytes) {
+        if (!enabled) {
+            return;
+        }
+        reserved -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * Blocks a producer of ground truths while the heap is under pressure and the given number of
+     * pending consumer tasks is not 0. Used to pause the postprocessing until the writers have
+     * caught up.
+     *
+     * @param pendingTasks Supplies the number of pending tasks of the consumers
+     */
+    public void awaitHeadroom(LongSupplier pendingTasks) {
+        if (!enabled) {
+            return;
+        }
+        boolean paused = false;
+        while (pressure() > highWatermark && pendingTasks.getAsLong() > 0) {
+            if (!paused) {
+                Logger.info("Pausing until pending writes free the heap");
+                paused = true;
+            }
+            try {
+                Thread.sleep(WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for free heap", e);
+            }
+        }
+    }
+
+    /**
+     * Determines the fraction of the maximum heap that was still in use after the last garbage
+     * collection of each heap pool. Pools that do not report usage after collections contribute
+     * their current usage.
+     *
+     * @return The pressure on the heap in the range [0, 1]
+     */
+    public double pressure() {
+        if (pressureGauge != null) {
+            return pressureGauge.getAsDouble();
+        }
+        long live = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage afterCollection = pool.getCollectionUsage();
+            live += afterCollection != null ? afterCollection.getUsed() : pool.getUsage().getUsed();
+        }
+        return (double) live / maxHeap;
+    }
+
+    /**
+     * @return The number of commits that may currently be processed concurrently
+     */
+    public synchronized int permits() {
+        return permits;
+    }
+
+    private long headroom() {
+        return (long) (maxHeap * highWatermark) - (long) (pressure() * maxHeap);
+    }
+
+    /**
+     * A step of the control loop: decreases the permits multiplicatively under pressure and
+     * increases them additively once memory has been freed.
+     */
+    public synchronized void adjust() {
+        double pressure = pressure();
+        int previous = permits;
+        if (pressure > highWatermark) {
+            permits = Math.max(1, permits / 2);
+        } else if (pressure < lowWatermark) {
+            permits = Math.min(maxPermits, permits + 1);
+        }
+        if (permits != previous) {
+            Logger.info("Heap pressure is {}%, adjusting concurrent commits from {} to {}",
+                    Math.round(pressure * 100), previous, permits);
+        }
+        // Waiting reservations depend on the current headroom
+        notifyAll();
+    }
+
+    private void awaitChange() {
+        try {
+            wait(WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for free heap", e);
+        }
+    }
+
+    /**
+     * Stops the control loop.
+     */
+    @Override
+    public void close() {
+        if (controller != null) {
+            controller.shutdownNow();
+        }
+    }
+}
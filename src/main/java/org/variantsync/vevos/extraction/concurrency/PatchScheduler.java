@@ -0,0 +1,165 @@
+package org.variantsync.vevos.extraction.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the analysis of the patches (i.e., changed files) of a single commit. Patches are
+ * analyzed on the thread that processes the commit until the number of patches in the commit
+ * exceeds a threshold. All further patches of the commit are fanned out to a fork-join pool.
+ *
+ * <p>
+ * Each scheduled task declares the file ground truths that it mutates. Tasks that mutate the same
+ * file ground truth are chained so that they are executed one after another, while tasks for
+ * different files run independently of each other without any global lock.
+ * </p>
+ */
+public class PatchScheduler {
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Initializes a scheduler that fans out the patches of a commit once more than threshold
+     * patches have been scheduled for the commit.
+     *
+     * @param threshold The number of patches that are analyzed by the commit's own thread. A value
+     *        of 0 or less disables the parallel analysis of patches.
+     * @param parallelism The number of threads in the fork-join pool
+     */
+    public PatchScheduler(int threshold, int parallelism) {
+        this.threshold = threshold;
+        if (threshold > 0) {
+            this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        } else {
+            this.pool = null;
+        }
+    }
+
+    /**
+     * @return A scheduler that analyzes all patches on the thread that processes the commit
+     */
+    public static PatchScheduler sequential() {
+        return new PatchScheduler(0, 1);
+    }
+
+    /**
+     * @return Whether patches might be analyzed by the fork-join pool
+     */
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Starts the scheduling of patches for a new commit.
+     *
+     * @return A session that collects the tasks of the commit
+     */
+    public Session beginCommit() {
+        return new Session();
+    }
+
+    /**
+     * Shuts down the fork-join pool and waits for all remaining tasks to finish.
+     */
+    public void shutdown() {
+        if (pool == null) {
+            return;
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting until all patches have been analyzed
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the patch analysis", e);
+        }
+    }
+
+    /**
+     * The tasks scheduled for a single commit. A session must only be used by the thread that
+     * processes the commit.
+     */
+    public class Session {
+        private final IdentityHashMap<Object, CompletableFuture<Void>> pendingByTarget;
+        private final ArrayList<CompletableFuture<Void>> pending;
+        private int patchCount;
+
+        private Session() {
+            this.pendingByTarget = new IdentityHashMap<>();
+            this.pending = new ArrayList<>();
+            this.patchCount = 0;
+        }
+
+        /**
+         * Schedules the analysis of a single patch.
+         *
+         * @param targets The objects (e.g., file ground truths) that are mutated by the task;
+         *        null entries are ignored
+         * @param task The analysis of the patch
+         */
+        public void schedule(Collection<?> targets, Runnable task) {
+            patchCount++;
+            if (pool == null || patchCount <= threshold) {
+                task.run();
+                return;
+            }
+
+            // Chain the task to all previously scheduled tasks that mutate the same targets
+            ArrayList<CompletableFuture<Void>> predecessors = new ArrayList<>();
+            for (Object target : targets) {
+                CompletableFuture<Void> predecessor =
+                        target == null ? null : pendingByTarget.get(target);
+                if (predecessor != null) {
+                    predecessors.add(predecessor);
+                }
+            }
+            final CompletableFuture<Void> future;
+            if (predecessors.isEmpty()) {
+                future = CompletableFuture.runAsync(task, pool);
+            } else {
+                future = CompletableFuture
+                        .allOf(predecessors.toArray(CompletableFuture[]::new))
+                        .thenRunAsync(task, pool);
+            }
+            for (Object target : targets) {
+                if (target != null) {
+                    pendingByTarget.put(target, future);
+                }
+            }
+            pending.add(future);
+        }
+
+        /**
+         * @return The number of patches that have been scheduled in this session
+         */
+        public int patchCount() {
+            return patchCount;
+        }
+
+        /**
+         * Waits until all patches of the commit have been analyzed. Exceptions thrown by any of
+         * the tasks are rethrown.
+         */
+        public void await() {
+            try {
+                CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                } else if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            } finally {
+                pending.clear();
+                pendingByTarget.clear();
+            }
+        }
+    }
+}
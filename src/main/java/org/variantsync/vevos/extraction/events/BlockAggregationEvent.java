@@ -0,0 +1,27 @@
+package org.variantsync.vevos.extraction.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the aggregation of a file's line annotations to blocks.
+ */
+@Name("org.variantsync.vevos.extraction.BlockAggregation")
+@Label("Block Aggregation")
+@Category({"VEVOS", "Extraction"})
+@Description("Aggregation of a file's line annotations to annotated blocks")
+@StackTrace(false)
+public class BlockAggregationEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Lines")
+    public int lines;
+
+    @Label("Blocks")
+    public int blocks;
+}
@@ -0,0 +1,69 @@
+package org.variantsync.vevos.extraction.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event that spans the processing of a single commit, from the begin to the end of
+ * the commit in one stage of the extraction.
+ */
+@Name("org.variantsync.vevos.extraction.Commit")
+@Label("Commit")
+@Category({"VEVOS", "Extraction"})
+@Description("Processing of a single commit")
+@StackTrace(false)
+public class CommitEvent extends Event {
+    @Label("Repository")
+    public String repository;
+
+    @Label("Commit")
+    public String commit;
+
+    @Label("Stage")
+    @Description("The stage of the extraction, i.e., analysis or postprocess")
+    public String stage;
+
+    @Label("Files")
+    @Description("The number of files in the commit's ground truth")
+    public int files;
+
+    @Label("Lines")
+    @Description("The number of lines in the commit's ground truth")
+    public long lines;
+
+    /**
+     * Creates and begins the event for the given commit.
+     *
+     * @param repository The name of the repository
+     * @param commit The id of the commit
+     * @param stage The stage of the extraction
+     * @return The begun event
+     */
+    public static CommitEvent begin(String repository, String commit, String stage) {
+        CommitEvent event = new CommitEvent();
+        event.repository = repository;
+        event.commit = commit;
+        event.stage = stage;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it with the given counts if it is recorded.
+     *
+     * @param files The number of files in the commit's ground truth
+     * @param lines The number of lines in the commit's ground truth
+     */
+    public void finish(int files, long lines) {
+        end();
+        if (shouldCommit()) {
+            this.files = files;
+            this.lines = lines;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.variantsync.vevos.extraction.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for the analysis of the variation diff of a single file.
+ */
+@Name("org.variantsync.vevos.extraction.FileAnalysis")
+@Label("File Analysis")
+@Category({"VEVOS", "Extraction"})
+@Description("Analysis of the variation diff of a single file")
+@StackTrace(false)
+public class FileAnalysisEvent extends Event {
+    @Label("Repository")
+    public String repository;
+
+    @Label("Commit")
+    public String commit;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Nodes")
+    @Description("The number of analyzed variation diff nodes")
+    public int nodes;
+}
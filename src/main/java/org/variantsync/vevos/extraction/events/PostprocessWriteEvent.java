@@ -0,0 +1,33 @@
+package org.variantsync.vevos.extraction.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a single write of the full extraction's postprocessing.
+ */
+@Name("org.variantsync.vevos.extraction.PostprocessWrite")
+@Label("Postprocess Write")
+@Category({"VEVOS", "I/O"})
+@Description("Writing one result file of a commit during postprocessing")
+@StackTrace(false)
+public class PostprocessWriteEvent extends Event {
+    @Label("Repository")
+    public String repository;
+
+    @Label("Commit")
+    public String commit;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @Description("The size of the file after the write")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,32 @@
+package org.variantsync.vevos.extraction.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for reading or writing a file through
+ * {@link org.variantsync.vevos.extraction.io.Serde}.
+ */
+@Name("org.variantsync.vevos.extraction.Serde")
+@Label("Serde Operation")
+@Category({"VEVOS", "I/O"})
+@Description("Serialization, deserialization, or writing of a file")
+@StackTrace(false)
+public class SerdeEvent extends Event {
+    @Label("Operation")
+    @Description("One of serialize, deserialize, write, or append")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @Description("The number of bytes read or written")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,222 @@
+package org.variantsync.vevos.extraction.filter;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.variantsync.vevos.extraction.ConfigProperties.*;
+
+/**
+ * Selects the commits of a repository for which ground truths are extracted. Commits can be
+ * restricted to a range, to a window of commit dates, and to the targets of refs matching a
+ * pattern. Of the remaining commits, every n-th commit in chronological order can be selected.
+ * Each configured restriction has to be satisfied by a sampled commit.
+ *
+ * <p>
+ * Like the {@link PathFilter}, each restriction can be configured for a single repository by
+ * appending the repository's name to the key of the property.
+ * </p>
+ */
+public class CommitSampler {
+    private final String range;
+    private final LocalDate since;
+    private final LocalDate until;
+    private final Pattern refs;
+    private final int every;
+
+    /**
+     * @param range A range <code>from..to</code> of commits that are reachable from
+     *        <code>to</code> but not from <code>from</code>. Either revision may be empty;
+     *        <code>to</code> defaults to HEAD. Null to not restrict the range.
+     * @param since The first day of the commit dates, or null
+     * @param until The last day of the commit dates, or null
+     * @param refsGlob A glob pattern for the names of refs, e.g. <code>refs/tags/*</code>, or null
+     * @param every Selects every n-th of the remaining commits. Values below 2 select all commits.
+     */
+    public CommitSampler(String range, LocalDate since, LocalDate until, String refsGlob,
+            int every) {
+        this.range = range;
+        this.since = since;
+        this.until = until;
+        this.refs = refsGlob == null ? null : Pattern.compile(PathFilter.globToRegex(refsGlob));
+        this.every = every;
+    }
+
+    /**
+     * Reads the sampling of the given repository from the properties.
+     *
+     * @param properties The properties of the extraction
+     * @param repositoryName The name of the repository
+     * @return The configured sampler
+     */
+    public static CommitSampler fromProperties(Properties properties, String repositoryName) {
+        String since = property(properties, SAMPLE_SINCE, repositoryName);
+        String until = property(properties, SAMPLE_UNTIL, repositoryName);
+        String every = property(properties, SAMPLE_EVERY, repositoryName);
+        return new CommitSampler(property(properties, SAMPLE_RANGE, repositoryName),
+                since == null ? null : LocalDate.parse(since),
+                until == null ? null : LocalDate.parse(until),
+                property(properties, SAMPLE_REFS, repositoryName),
+                every == null ? 0 : Integer.parseInt(every));
+    }
+
+    private static String property(Properties properties, String key, String repositoryName) {
+        String value = properties.getProperty(key + "." + repositoryName,
+                properties.getProperty(key));
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * @return Whether any restriction is configured
+     */
+    public boolean isEnabled() {
+        return range != null || since != null || until != null || refs != null || every > 1;
+    }
+
+    /**
+     * Selects the sampled commits of the given repository.
+     *
+     * @param repository The repository
+     * @return The selected commits, or a selection of all commits if sampling is disabled
+     * @throws IOException If the repository cannot be read
+     */
+    public Selection select(Repository repository) throws IOException {
+        if (!isEnabled()) {
+            return Selection.all();
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            Set<ObjectId> refTargets = refs == null ? null : refTargets(repository, walk);
+            String from = null;
+            String to = null;
+            if (range != null) {
+                int separator = range.indexOf("..");
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Invalid commit range " + range);
+                }
+                from = range.substring(0, separator).trim();
+                to = range.substring(separator + 2).trim();
+            }
+            walk.markStart(walk.parseCommit(resolve(repository, to == null || to.isEmpty()
+                    ? Constants.HEAD : to)));
+            if (from != null && !from.isEmpty()) {
+                walk.markUninteresting(walk.parseCommit(resolve(repository, from)));
+            }
+            long sinceSeconds = since == null ? Long.MIN_VALUE
+                    : since.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            long untilSeconds = until == null ? Long.MAX_VALUE
+                    : until.plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            List<RevCommit> candidates = new ArrayList<>();
+            for (RevCommit commit : walk) {
+                long commitTime = commit.getCommitTime();
+                if (commitTime >= sinceSeconds && commitTime < untilSeconds
+                        && (refTargets == null || refTargets.contains(commit))) {
+                    candidates.add(commit);
+                }
+            }
+            // The walk returns the newest commits first
+            Collections.reverse(candidates);
+
+            List<RevCommit> sampled = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                if (every <= 1 || i % every == 0) {
+                    sampled.add(candidates.get(i));
+                }
+            }
+            return new Selection(names(sampled), ancestors(repository, sampled));
+        }
+    }
+
+    private Set<ObjectId> refTargets(Repository repository, RevWalk walk) throws IOException {
+        Set<ObjectId> targets = new HashSet<>();
+        for (Ref ref : repository.getRefDatabase().getRefs()) {
+            if (ref.getObjectId() == null || !refs.matcher(ref.getName()).matches()) {
+                continue;
+            }
+            // Annotated tags point to a tag object that has to be peeled to reach the commit
+            RevObject target = walk.peel(walk.parseAny(ref.getObjectId()));
+            if (target instanceof RevCommit) {
+                targets.add(target.copy());
+            }
+        }
+        return targets;
+    }
+
+    private static ObjectId resolve(Repository repository, String revision) throws IOException {
+        ObjectId id = repository.resolve(revision);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown revision " + revision);
+        }
+        return id;
+    }
+
+    private static Set<String> names(List<RevCommit> commits) {
+        Set<String> names = new HashSet<>();
+        commits.forEach(commit -> names.add(commit.getName()));
+        return names;
+    }
+
+    /**
+     * Collects the given commits and all of their ancestors, which are required to complete the
+     * ground truths of the commits.
+     */
+    private static Set<String> ancestors(Repository repository, List<RevCommit> commits)
+            throws IOException {
+        Set<String> ancestors = new HashSet<>();
+        if (commits.isEmpty()) {
+            return ancestors;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            for (RevCommit commit : commits) {
+                walk.markStart(walk.parseCommit(commit));
+            }
+            for (RevCommit commit : walk) {
+                ancestors.add(commit.getName());
+            }
+        }
+        return ancestors;
+    }
+
+    /**
+     * The commits selected by a sampler.
+     *
+     * @param sampled The ids of the sampled commits, or null if all commits are sampled
+     * @param required The ids of the sampled commits and all of their ancestors, or null if all
+     *        commits are sampled
+     */
+    public record Selection(Set<String> sampled, Set<String> required) {
+
+        /**
+         * @return A selection of all commits
+         */
+        public static Selection all() {
+            return new Selection(null, null);
+        }
+
+        public boolean isAll() {
+            return sampled == null;
+        }
+
+        public boolean isSampled(String commit) {
+            return sampled == null || sampled.contains(commit);
+        }
+
+        public boolean isRequired(String commit) {
+            return required == null || required.contains(commit);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.variantsync.vevos.extraction.filter;
+
+import org.variantsync.diffdetective.diff.git.DiffFilter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import static org.variantsync.vevos.extraction.ConfigProperties.*;
+
+/**
+ * Decides which files of a repository are analyzed. A file is analyzed if its extension is allowed,
+ * its path matches at least one include pattern (if any are given), and its path matches none of
+ * the exclude patterns.
+ *
+ * <p>
+ * The filter is handed to DiffDetective, which evaluates it on the paths of the changed files
+ * before any variation diff is parsed. Patterns are globs relative to the root of the repository:
+ * <code>*</code> matches any characters except <code>/</code>, <code>**</code> matches any
+ * characters including <code>/</code>, and <code>?</code> matches a single character except
+ * <code>/</code>.
+ * </p>
+ */
+public class PathFilter {
+    public static final List<String> DEFAULT_EXTENSIONS = List.of("h", "hpp", "c", "cpp");
+
+    private final List<String> extensions;
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    /**
+     * @param extensions The allowed file extensions without leading dot
+     * @param includeGlobs The patterns of which a path must match at least one. If there are no
+     *        patterns, all paths are included.
+     * @param excludeGlobs The patterns of which a path must not match any
+     */
+    public PathFilter(List<String> extensions, List<String> includeGlobs,
+            List<String> excludeGlobs) {
+        this.extensions = List.copyOf(extensions);
+        this.includes = includeGlobs.stream().map(PathFilter::globToRegex).map(Pattern::compile)
+                .toList();
+        this.excludes = excludeGlobs.stream().map(PathFilter::globToRegex).map(Pattern::compile)
+                .toList();
+    }
+
+    /**
+     * Reads the filter of the given repository from the properties. A property of a repository is
+     * configured by appending the repository's name to the key, e.g.,
+     * <code>extraction.exclude-paths.linux</code>, and replaces the property without suffix.
+     *
+     * @param properties The properties of the extraction
+     * @param repositoryName The name of the repository
+     * @return The configured filter
+     */
+    public static PathFilter fromProperties(Properties properties, String repositoryName) {
+        List<String> extensions = list(properties, FILE_EXTENSIONS, repositoryName);
+        return new PathFilter(extensions.isEmpty() ? DEFAULT_EXTENSIONS : extensions,
+                list(properties, INCLUDE_PATHS, repositoryName),
+                list(properties, EXCLUDE_PATHS, repositoryName));
+    }
+
+    private static List<String> list(Properties properties, String key, String repositoryName) {
+        String value = properties.getProperty(key + "." + repositoryName,
+                properties.getProperty(key, ""));
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Converts a glob pattern to an equivalent regular expression that matches entire paths.
+     *
+     * @param glob The glob pattern
+     * @return The regular expression
+     */
+    public static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder("^");
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                        // '**/' also matches no directory at all
+                        i++;
+                        regex.append("(?:.*/)?");
+                    } else {
+                        regex.append(".*");
+                    }
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.append('$').toString();
+    }
+
+    /**
+     * @return A DiffDetective filter that rejects the changes of all files that are not accepted
+     *         by this filter
+     */
+    public DiffFilter toDiffFilter() {
+        DiffFilter.Builder builder = new DiffFilter.Builder().allowMerge(true)
+                .allowedFileExtensions(extensions.toArray(String[]::new));
+        if (!includes.isEmpty()) {
+            builder.allowedPaths(includes.stream().map(Pattern::pattern).toArray(String[]::new));
+        }
+        if (!excludes.isEmpty()) {
+            builder.blockedPaths(excludes.stream().map(Pattern::pattern).toArray(String[]::new));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks whether a file is analyzed.
+     *
+     * @param path The path of the file relative to the root of the repository
+     * @return Whether the file is accepted by this filter
+     */
+    public boolean accepts(String path) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')
+                || !extensions.contains(path.substring(dot + 1))) {
+            return false;
+        }
+        if (!includes.isEmpty()
+                && includes.stream().noneMatch(pattern -> pattern.matcher(path).matches())) {
+            return false;
+        }
+        return excludes.stream().noneMatch(pattern -> pattern.matcher(path).matches());
+    }
+
+    /**
+     * @return Whether all files with an allowed extension are accepted
+     */
+    public boolean acceptsAllPaths() {
+        return includes.isEmpty() && excludes.isEmpty();
+    }
+}
@@ -0,0 +1,210 @@
+package org.variantsync.vevos.extraction.gt;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.tinylog.Logger;
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache for the line annotations of file ground truths, keyed by the id of the git blob
+ * from which they have been extracted. The annotations of a file only depend on its content, so a
+ * blob that reappears in another commit, e.g., due to a revert, cherry-pick or merge, does not have
+ * to be analyzed again. The line matching depends on the diff and is not cached.
+ *
+ * <p>
+ * The cache is bounded by the total number of cached lines and evicts the least recently used
+ * entries. It can be used concurrently by any number of threads.
+ * </p>
+ */
+public class BlobCache {
+    private final long capacity;
+    // Iterates from the least to the most recently used entry
+    private final LinkedHashMap<String, Entry> entries;
+    private long lineCount;
+
+    /**
+     * @param capacity The maximum total number of lines of all cached entries. A value of 0 or
+     *        less disables the cache.
+     */
+    public BlobCache(long capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return A cache that never holds an entry
+     */
+    public static BlobCache disabled() {
+        return new BlobCache(0);
+    }
+
+    /**
+     * Loads the entries that have been saved to the given file, if it exists and can be read.
+     *
+     * @param file The file to which a cache has been saved
+     * @param capacity The capacity of the loaded cache
+     * @return The loaded cache
+     */
+    public static BlobCache load(Path file, long capacity) {
+        BlobCache cache = new BlobCache(capacity);
+        if (cache.isEnabled() && Files.exists(file)) {
+            LinkedHashMap<String, Entry> saved;
+            try {
+                saved = Serde.deserialize(file.toFile());
+            } catch (RuntimeException e) {
+                // E.g., the cache has been saved by an incompatible version of the extraction
+                Logger.warn("Starting with an empty blob cache, because {} could not be loaded",
+                        file);
+                return cache;
+            }
+            saved.forEach(cache::put);
+        }
+        return cache;
+    }
+
+    /**
+     * Saves all entries to the given file.
+     *
+     * @param file The file to which the entries are written
+     */
+    public synchronized void save(Path file) {
+        try {
+            Files.createDirectories(file.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Serde.serialize(file.toFile(), new LinkedHashMap<>(entries));
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @param key The key of a blob
+     * @return The cached annotations of the blob, or null if they are not cached
+     */
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Caches the annotations of the given completed file ground truth.
+     *
+     * @param key The key of the blob from which the ground truth has been extracted
+     * @param complete The ground truth
+     */
+    public void put(String key, FileGT.Complete complete) {
+        if (complete.size() > capacity) {
+            return;
+        }
+        ArrayList<LineAnnotation> annotations = new ArrayList<>(complete.size());
+        complete.forEach(annotations::add);
+        put(key, new Entry(annotations, complete.aggregatedBlocks(),
+                VariableSet.copyOf(complete.getVariables())));
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        if (!isEnabled() || entry.annotations().size() > capacity) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            lineCount -= previous.annotations().size();
+        }
+        lineCount += entry.annotations().size();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (lineCount > capacity && eldest.hasNext()) {
+            lineCount -= eldest.next().getValue().annotations().size();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return The number of cached blobs
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The total number of lines of all cached blobs
+     */
+    public synchronized long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Looks up the id of the blob of a file at the given commit.
+     *
+     * @param repository The repository of the commit
+     * @param commit The commit
+     * @param path The path of the file relative to the root of the repository
+     * @return The id of the blob, or null if the file does not exist at the commit
+     * @throws IOException If the repository cannot be read
+     */
+    public static ObjectId blobId(Repository repository, RevCommit commit, String path)
+            throws IOException {
+        return blobIds(repository, path, commit)[0];
+    }
+
+    /**
+     * Looks up the ids of the blobs of a file at the given commits with a single walk over their
+     * trees.
+     *
+     * @param repository The repository of the commits
+     * @param path The path of the file relative to the root of the repository
+     * @param commits The commits
+     * @return The id of the blob at each commit, or null if the file does not exist at a commit
+     * @throws IOException If the repository cannot be read
+     */
+    public static ObjectId[] blobIds(Repository repository, String path, RevCommit... commits)
+            throws IOException {
+        RevTree[] trees = new RevTree[commits.length];
+        for (int i = 0; i < commits.length; i++) {
+            trees[i] = commits[i].getTree();
+            if (trees[i] == null) {
+                // The headers of parent commits are not always parsed
+                try (RevWalk walk = new RevWalk(repository)) {
+                    trees[i] = walk.parseCommit(commits[i]).getTree();
+                }
+            }
+        }
+        ObjectId[] blobIds = new ObjectId[commits.length];
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, trees)) {
+            for (int i = 0; treeWalk != null && i < commits.length; i++) {
+                ObjectId blobId = treeWalk.getObjectId(i);
+                blobIds[i] = ObjectId.zeroId().equals(blobId) ? null : blobId;
+            }
+        }
+        return blobIds;
+    }
+
+    /**
+     * The cached annotations of a blob. Entries are shared by all ground truths of the blob and
+     * must not be modified.
+     *
+     * @param annotations The annotation of each line
+     * @param blocks The aggregated blocks of the annotations
+     * @param variables The variables that occur in the annotations
+     */
+    public record Entry(ArrayList<LineAnnotation> annotations, ArrayList<BlockAnnotation> blocks,
+            Set<String> variables) implements Serializable {
+
+    }
+}
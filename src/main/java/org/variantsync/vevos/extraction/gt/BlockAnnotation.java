@@ -1,5 +1,6 @@
 package org.variantsync.vevos.extraction.gt;
 
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.Objects;
 import java.util.regex.Pattern;
@@ -9,6 +10,7 @@ import java.util.regex.Pattern;
  * mapping
  */
 public final class BlockAnnotation implements Serializable {
+    private static final long serialVersionUID = 1L;
     private static final Pattern t = Pattern.compile("True");
     private static final Pattern f = Pattern.compile("False");
     private static final Pattern not_1 = Pattern.compile("^-");
@@ -30,9 +32,16 @@ public final class BlockAnnotation implements Serializable {
             FeatureMapping featureMapping, PresenceCondition presenceCondition, String nodeType) {
         this.lineStartInclusive = lineStartInclusive;
         this.lineEndInclusive = lineEndInclusive;
-        this.featureMapping = featureMapping;
-        this.presenceCondition = presenceCondition;
-        this.nodeType = nodeType;
+        this.featureMapping = featureMapping.intern();
+        this.presenceCondition = presenceCondition.intern();
+        this.nodeType = nodeType.intern();
+    }
+
+    @Serial
+    private Object readResolve() {
+        // The node type is interned again
+        return new BlockAnnotation(lineStartInclusive, lineEndInclusive, featureMapping,
+                presenceCondition, nodeType);
     }
 
     public void setLineStartInclusive(int lineStartInclusive) {
@@ -43,6 +52,15 @@ public final class BlockAnnotation implements Serializable {
         this.lineEndInclusive = lineEndInclusive;
     }
 
+    /**
+     * @param offset The number of lines by which the block is moved
+     * @return A copy of this block that is moved by the given number of lines
+     */
+    public BlockAnnotation shifted(int offset) {
+        return new BlockAnnotation(lineStartInclusive + offset, lineEndInclusive + offset,
+                featureMapping, presenceCondition, nodeType);
+    }
+
     public int lineStartInclusive() {
         return lineStartInclusive;
     }
@@ -55,6 +73,14 @@ public final class BlockAnnotation implements Serializable {
         return nodeType;
     }
 
+    FeatureMapping featureMapping() {
+        return featureMapping;
+    }
+
+    PresenceCondition presenceCondition() {
+        return presenceCondition;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -75,16 +101,20 @@ public final class BlockAnnotation implements Serializable {
                 nodeType);
     }
 
+    /**
+     * Compares the annotations by reference, because blocks and lines only hold interned
+     * feature mappings, presence conditions, and node types.
+     */
     public boolean annotationEquals(BlockAnnotation other) {
-        return this.featureMapping.equals(other.featureMapping)
-                && this.presenceCondition.equals(other.presenceCondition)
-                && this.nodeType.equals(other.nodeType);
+        return this.featureMapping == other.featureMapping
+                && this.presenceCondition == other.presenceCondition
+                && this.nodeType == other.nodeType;
     }
 
     public boolean annotationEquals(LineAnnotation other) {
-        return this.featureMapping.equals(other.featureMapping())
-                && this.presenceCondition.equals(other.presenceCondition())
-                && this.nodeType.equals(other.nodeType());
+        return this.featureMapping == other.featureMapping()
+                && this.presenceCondition == other.presenceCondition()
+                && this.nodeType == other.nodeType();
     }
 
     @Override
@@ -106,7 +136,7 @@ public final class BlockAnnotation implements Serializable {
      * @param condition The mapping/PC String to be normalized
      * @return A normalized version of the condition
      */
-    private String normalizeCondition(String condition) {
+    public static String normalizeCondition(String condition) {
         condition = condition.replaceAll(t.pattern(), "1");
         condition = condition.replaceAll(f.pattern(), "0");
         condition = condition.replaceAll(not_1.pattern(), "!");
@@ -0,0 +1,189 @@
+package org.variantsync.vevos.extraction.gt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the presence conditions of a file after a commit relative to the presence conditions
+ * before the commit. Most edits, e.g., changes inside a function body, only move the blocks of a
+ * file. Such files are exported to the delta CSV file of a commit with the line offsets of their
+ * blocks instead of repeating their conditions in the CSV file of the ground truth after the
+ * commit.
+ *
+ * <p>
+ * The offsets of a file are a comma-separated list of runs <code>n*s:e</code>, which state that
+ * the next n blocks start s lines and end e lines after the corresponding block before the commit.
+ * </p>
+ */
+public final class BlockDelta {
+
+    private BlockDelta() {
+    }
+
+    /**
+     * Determines the offsets of the blocks of a file after a commit.
+     *
+     * @param before The ground truth of the file before the commit
+     * @param after The ground truth of the file after the commit
+     * @return The encoded offsets, or null if the blocks do not have the same conditions in the
+     *         same order
+     */
+    public static String offsets(FileGT.Complete before, FileGT.Complete after) {
+        List<BlockAnnotation> blocksBefore = before.aggregatedBlocks();
+        List<BlockAnnotation> blocksAfter = after.aggregatedBlocks();
+        if (blocksBefore.size() != blocksAfter.size()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        int runLength = 0;
+        int startOffset = 0;
+        int endOffset = 0;
+        for (int i = 0; i < blocksBefore.size(); i++) {
+            BlockAnnotation blockBefore = blocksBefore.get(i);
+            BlockAnnotation blockAfter = blocksAfter.get(i);
+            if (!blockBefore.annotationEquals(blockAfter)) {
+                return null;
+            }
+            int start = blockAfter.lineStartInclusive() - blockBefore.lineStartInclusive();
+            int end = blockAfter.lineEndExclusive() - blockBefore.lineEndExclusive();
+            if (runLength > 0 && (start != startOffset || end != endOffset)) {
+                appendRun(sb, runLength, startOffset, endOffset);
+                runLength = 0;
+            }
+            startOffset = start;
+            endOffset = end;
+            runLength++;
+        }
+        if (runLength > 0) {
+            appendRun(sb, runLength, startOffset, endOffset);
+        }
+        return sb.toString();
+    }
+
+    private static void appendRun(StringBuilder sb, int runLength, int startOffset,
+            int endOffset) {
+        if (!sb.isEmpty()) {
+            sb.append(",");
+        }
+        sb.append(runLength).append("*").append(startOffset).append(":").append(endOffset);
+    }
+
+    /**
+     * Separates the files after a commit whose blocks only moved from the other files.
+     *
+     * @param before The completed ground truth before the commit
+     * @param after The completed ground truth after the commit. The files that only moved are
+     *        removed from it.
+     * @return The offsets of all removed files by their name
+     */
+    public static Map<String, String> extractMovedFiles(GroundTruth before, GroundTruth after) {
+        Map<String, String> moved = new HashMap<>();
+        for (Map.Entry<String, FileGT> entry : after.fileGTs().entrySet()) {
+            if (entry.getValue() instanceof FileGT.Complete fileAfter
+                    && before.get(entry.getKey()) instanceof FileGT.Complete fileBefore) {
+                String offsets = offsets(fileBefore, fileAfter);
+                if (offsets != null) {
+                    moved.put(entry.getKey(), offsets);
+                }
+            }
+        }
+        after.fileGTs().keySet().removeAll(moved.keySet());
+        return moved;
+    }
+
+    /**
+     * @param offsets The offsets of files by their name
+     * @return The delta CSV file with one row for each file in the order of the file names
+     */
+    public static String asDeltaCsvString(Map<String, String> offsets) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(GroundTruth.DELTA_CSV_HEADER);
+        sb.append(System.lineSeparator());
+        new TreeMap<>(offsets).forEach((file, fileOffsets) -> {
+            sb.append(file);
+            sb.append(";");
+            sb.append(fileOffsets);
+            sb.append(System.lineSeparator());
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Restores the complete CSV file of the presence conditions after a commit, which is equal to
+     * the file that is exported without a delta.
+     *
+     * @param beforeCsv The CSV file of the presence conditions before the commit
+     * @param afterCsv The CSV file of the presence conditions of the files that did not only move
+     * @param deltaCsv The delta CSV file of the commit
+     * @return The CSV file of the presence conditions of all files after the commit
+     */
+    public static String restoreAfterCsv(String beforeCsv, String afterCsv, String deltaCsv) {
+        Map<String, List<String[]>> rowsBefore = rowsByFile(beforeCsv);
+        TreeMap<String, List<String[]>> rowsAfter = new TreeMap<>(rowsByFile(afterCsv));
+        for (String row : rowsOf(deltaCsv)) {
+            int separator = row.lastIndexOf(';');
+            String file = row.substring(0, separator);
+            List<String[]> rows = new ArrayList<>();
+            int block = 0;
+            for (String run : row.substring(separator + 1).split(",")) {
+                int count = Integer.parseInt(run.substring(0, run.indexOf('*')));
+                int startOffset = Integer
+                        .parseInt(run.substring(run.indexOf('*') + 1, run.indexOf(':')));
+                int endOffset = Integer.parseInt(run.substring(run.indexOf(':') + 1));
+                for (int i = 0; i < count; i++, block++) {
+                    String[] blockBefore = rowsBefore.get(file).get(block);
+                    rows.add(new String[] {blockBefore[0],
+                            String.valueOf(Integer.parseInt(blockBefore[1]) + startOffset),
+                            String.valueOf(Integer.parseInt(blockBefore[2]) + endOffset)});
+                }
+            }
+            rowsAfter.put(file, rows);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(GroundTruth.PC_CSV_HEADER);
+        sb.append(System.lineSeparator());
+        rowsAfter.values().forEach(rows -> rows.forEach(row -> {
+            sb.append(row[0]).append(";").append(row[1]).append(";").append(row[2]);
+            sb.append(System.lineSeparator());
+        }));
+        return sb.toString();
+    }
+
+    /**
+     * Splits the rows of a CSV file of presence conditions into the prefix with the path and the
+     * conditions, and the start and end line of each block.
+     */
+    private static Map<String, List<String[]>> rowsByFile(String csv) {
+        Map<String, List<String[]>> rows = new HashMap<>();
+        for (String row : rowsOf(csv)) {
+            // Paths might contain the separator, so the columns are split from the end
+            int endSeparator = row.lastIndexOf(';');
+            int startSeparator = row.lastIndexOf(';', endSeparator - 1);
+            int typeSeparator = row.lastIndexOf(';', startSeparator - 1);
+            int pcSeparator = row.lastIndexOf(';', typeSeparator - 1);
+            int fmSeparator = row.lastIndexOf(';', pcSeparator - 1);
+            // The path is followed by the constant file condition
+            String file = row.substring(0, row.lastIndexOf(';', fmSeparator - 1));
+            rows.computeIfAbsent(file, f -> new ArrayList<>())
+                    .add(new String[] {row.substring(0, startSeparator),
+                            row.substring(startSeparator + 1, endSeparator),
+                            row.substring(endSeparator + 1)});
+        }
+        return rows;
+    }
+
+    private static List<String> rowsOf(String csv) {
+        List<String> rows = new ArrayList<>(csv.lines().toList());
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Skip the header
+        rows.remove(0);
+        rows.removeIf(String::isEmpty);
+        return rows;
+    }
+}
@@ -0,0 +1,416 @@
+package org.variantsync.vevos.extraction.gt;
+
+import org.variantsync.vevos.extraction.io.FeatureIndexReader;
+import org.variantsync.vevos.extraction.io.GroundTruthReader.Version;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds an inverted index from the variables of an extraction to the commits, files, and line
+ * ranges in which they appear. The index is fed with the ground truth of each commit that is
+ * already in memory, so it does not require another pass over the written results. Only the files
+ * that changed in a commit are indexed, like the files of the fast extraction's results. Files
+ * that have been removed by a commit are recorded as well, so that the locations of a variable in
+ * a removed file are known to end with the commit.
+ *
+ * <p>
+ * A posting is a maximal run of consecutive lines whose presence condition contains the variable,
+ * either before or after a commit. The fast extraction indexes both versions of the changed files,
+ * the full extraction only the version after each commit. Files whose ground truths have been
+ * spilled are indexed by the {@link VariableRuns runs} that are kept by their spill. The variables
+ * are normalized like in {@link GroundTruth#VARIABLES_FILE}. The index is written
+ * to {@link GroundTruth#FEATURE_INDEX_FILE} in the format of {@link FeatureIndexReader}. Commits
+ * are kept in the order in which they have been indexed, and an index that has been saved by an
+ * earlier extraction is extended instead of replaced. This class is thread-safe.
+ * </p>
+ */
+public class FeatureIndex {
+    // The ids of commits and files in the order in which they have been added
+    private final ArrayList<String> commits;
+    private final HashMap<String, Integer> commitIds;
+    private final ArrayList<String> files;
+    private final HashMap<String, Integer> fileIds;
+    // The postings of each variable as key, file id, first line, and last line. The key of a
+    // posting is twice the id of its commit, plus 1 for the version after the commit.
+    private final HashMap<String, Postings> postings;
+    // The ids of the commits and of the files that they removed
+    private final ArrayList<int[]> removals;
+    // The normalized name of each raw variable, which is empty for constants
+    private final ConcurrentHashMap<String, String> normalizedNames;
+
+    public FeatureIndex() {
+        this.commits = new ArrayList<>();
+        this.commitIds = new HashMap<>();
+        this.files = new ArrayList<>();
+        this.fileIds = new HashMap<>();
+        this.postings = new HashMap<>();
+        this.removals = new ArrayList<>();
+        this.normalizedNames = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Loads the index that has been saved to the given file, if it exists.
+     *
+     * @param file The file to which an index has been saved
+     * @return The loaded index, which is extended by further commits
+     */
+    public static FeatureIndex load(Path file) {
+        FeatureIndex index = new FeatureIndex();
+        if (Files.exists(file)) {
+            FeatureIndexReader reader = FeatureIndexReader.open(file);
+            for (String commit : reader.commits()) {
+                int commitId = index.commitId(commit);
+                for (String removedFile : reader.removedFiles(commit)) {
+                    index.removals.add(new int[] {commitId, index.fileId(removedFile)});
+                }
+            }
+            for (String variable : reader.variables()) {
+                Postings variablePostings = index.postings(variable);
+                for (FeatureIndexReader.Location location : reader.locations(variable)) {
+                    variablePostings.add(
+                            key(index.commitId(location.commit()), location.version()),
+                            index.fileId(location.file()), location.lineStartInclusive(),
+                            location.lineEndInclusive());
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Indexes all completed files of the given ground truth.
+     *
+     * @param commit The id of the commit
+     * @param groundTruth The ground truth of the files that changed in the commit
+     */
+    public void add(String commit, GroundTruth groundTruth) {
+        add(commit, groundTruth, groundTruth.fileGTs().keySet());
+    }
+
+    /**
+     * Indexes the given files of a ground truth after a commit. Files without a completed ground
+     * truth, e.g., because they have been removed, are recorded as removed. A commit that has
+     * already been indexed is not indexed again.
+     *
+     * @param commit The id of the commit
+     * @param groundTruth The completed ground truth of the commit
+     * @param changedFiles The files that changed in the commit
+     */
+    public synchronized void add(String commit, GroundTruth groundTruth,
+            Collection<String> changedFiles) {
+        if (commitIds.containsKey(commit)) {
+            return;
+        }
+        int commitId = commitId(commit);
+        for (String file : changedFiles) {
+            if (groundTruth.get(file) instanceof FileGT.Complete complete) {
+                add(key(commitId, Version.AFTER), fileId(file), runsOf(complete));
+            } else {
+                removals.add(new int[] {commitId, fileId(file)});
+            }
+        }
+    }
+
+    /**
+     * Indexes the changed files of a commit before and after the commit. Files that are only
+     * known before the commit are recorded as removed. A commit that has already been indexed is
+     * not indexed again.
+     *
+     * @param commit The id of the commit
+     * @param before The completed ground truth of the files before the commit that have not been
+     *        spilled
+     * @param spilledBefore The spill of the ground truth before the commit
+     * @param after The completed ground truth of the files after the commit that have not been
+     *        spilled
+     * @param spilledAfter The spill of the ground truth after the commit
+     */
+    public synchronized void add(String commit, GroundTruth before, GroundTruthSpill spilledBefore,
+            GroundTruth after, GroundTruthSpill spilledAfter) {
+        if (commitIds.containsKey(commit)) {
+            return;
+        }
+        int commitId = commitId(commit);
+        Set<String> filesAfter = new HashSet<>(after.fileGTs().keySet());
+        filesAfter.addAll(spilledAfter.files());
+        for (Version version : Version.values()) {
+            GroundTruth groundTruth = version == Version.BEFORE ? before : after;
+            groundTruth.fileGTs().forEach((file, fileGT) -> {
+                if (fileGT instanceof FileGT.Complete complete) {
+                    add(key(commitId, version), fileId(file), runsOf(complete));
+                }
+            });
+            GroundTruthSpill spill = version == Version.BEFORE ? spilledBefore : spilledAfter;
+            spill.variableRuns().forEach(
+                    (file, runs) -> add(key(commitId, version), fileId(file), runs));
+        }
+        Set<String> filesBefore = new HashSet<>(before.fileGTs().keySet());
+        filesBefore.addAll(spilledBefore.files());
+        for (String file : filesBefore) {
+            if (!filesAfter.contains(file)) {
+                removals.add(new int[] {commitId, fileId(file)});
+            }
+        }
+    }
+
+    /**
+     * Determines the runs of lines of a file ground truth in which each variable appears. Can be
+     * called concurrently, e.g., by the threads that spill file ground truths.
+     *
+     * @param complete The completed ground truth of a file
+     * @return The runs of the file's variables
+     */
+    public VariableRuns runsOf(FileGT.Complete complete) {
+        VariableRuns runs = new VariableRuns();
+        for (LineAnnotation line : complete) {
+            for (String variable : line.uniqueContainedFeatures()) {
+                String name = normalizedNames.computeIfAbsent(variable,
+                        v -> Objects.requireNonNullElse(GroundTruth.normalizeVariable(v), ""));
+                if (!name.isEmpty()) {
+                    runs.extend(name, line.lineNumber());
+                }
+            }
+        }
+        return runs;
+    }
+
+    private void add(int key, int fileId, VariableRuns runs) {
+        runs.runs.forEach((name, lines) -> {
+            Postings variablePostings = postings(name);
+            for (int i = 0; i < lines.size; i += 2) {
+                variablePostings.add(key, fileId, lines.values[i], lines.values[i + 1]);
+            }
+        });
+    }
+
+    private static int key(int commitId, Version version) {
+        return 2 * commitId + (version == Version.AFTER ? 1 : 0);
+    }
+
+    /**
+     * @return The number of indexed commits
+     */
+    public synchronized int commitCount() {
+        return commits.size();
+    }
+
+    /**
+     * Saves the index to the given file.
+     *
+     * <p>
+     * The file starts with a magic number, the commits in the order in which they have been
+     * indexed, and the files sorted by their paths. Each string is written as its length and its
+     * UTF-8 bytes. The removals follow as their number and the ids of the commit and the removed
+     * file of each removal, sorted by these ids. A table of the variables, which are sorted by the
+     * UTF-8 bytes of their names, gives the offset and length of each name and the offset and
+     * number of its postings. The names and the postings follow the table. Each posting consists
+     * of its key, i.e., twice the id of its commit plus 1 for the version after the commit, the id
+     * of its file, and its first and last line. The postings of a variable are sorted by their
+     * keys, files, and lines.
+     * </p>
+     *
+     * @param file The file to which the index is written
+     */
+    public synchronized void save(Path file) {
+        // Files are written in the order of their paths, so that the postings of a commit are too
+        String[] sortedFiles = files.toArray(new String[0]);
+        Arrays.sort(sortedFiles);
+        int[] fileRanks = new int[sortedFiles.length];
+        for (int rank = 0; rank < sortedFiles.length; rank++) {
+            fileRanks[fileIds.get(sortedFiles[rank])] = rank;
+        }
+        List<byte[]> names = new ArrayList<>();
+        for (String variable : postings.keySet()) {
+            names.add(variable.getBytes(StandardCharsets.UTF_8));
+        }
+        names.sort(Arrays::compareUnsigned);
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            // The saved index might still be mapped by the reader that loaded it
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FeatureIndexReader.MAGIC);
+                writeStrings(out, commits);
+                writeStrings(out, Arrays.asList(sortedFiles));
+                int[][] sortedRemovals = new int[removals.size()][];
+                for (int i = 0; i < sortedRemovals.length; i++) {
+                    int[] removal = removals.get(i);
+                    sortedRemovals[i] = new int[] {removal[0], fileRanks[removal[1]]};
+                }
+                Arrays.sort(sortedRemovals, Arrays::compare);
+                out.writeInt(sortedRemovals.length);
+                for (int[] removal : sortedRemovals) {
+                    out.writeInt(removal[0]);
+                    out.writeInt(removal[1]);
+                }
+                out.writeInt(names.size());
+
+                int namesOffset = out.size() + names.size() * FeatureIndexReader.VARIABLE_BYTES;
+                long postingsOffset = namesOffset;
+                for (byte[] name : names) {
+                    postingsOffset += name.length;
+                }
+                if (postingsOffset + 16L * postingCount() > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("The feature index exceeds 2 GiB");
+                }
+                List<Postings> sortedPostings = new ArrayList<>();
+                for (byte[] name : names) {
+                    Postings variablePostings =
+                            postings.get(new String(name, StandardCharsets.UTF_8));
+                    sortedPostings.add(variablePostings.sorted(fileRanks));
+                    out.writeInt(namesOffset);
+                    out.writeInt(name.length);
+                    out.writeInt((int) postingsOffset);
+                    out.writeInt(variablePostings.size / 4);
+                    namesOffset += name.length;
+                    postingsOffset += 4L * variablePostings.size;
+                }
+                for (byte[] name : names) {
+                    out.write(name);
+                }
+                for (Postings variablePostings : sortedPostings) {
+                    for (int i = 0; i < variablePostings.size; i++) {
+                        out.writeInt(variablePostings.values[i]);
+                    }
+                }
+                IOMetrics.written(out.size());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings)
+            throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private long postingCount() {
+        long count = 0;
+        for (Postings variablePostings : postings.values()) {
+            count += variablePostings.size / 4;
+        }
+        return count;
+    }
+
+    private int commitId(String commit) {
+        return commitIds.computeIfAbsent(commit, c -> {
+            commits.add(c);
+            return commits.size() - 1;
+        });
+    }
+
+    private int fileId(String file) {
+        return fileIds.computeIfAbsent(file, f -> {
+            files.add(f);
+            return files.size() - 1;
+        });
+    }
+
+    private Postings postings(String variable) {
+        return postings.computeIfAbsent(variable, v -> new Postings());
+    }
+
+    /**
+     * The runs of lines of a single file in which its variables appear. The runs of a file are
+     * determined while its ground truth is held, and indexed once its commit is indexed.
+     */
+    public static final class VariableRuns {
+        // The first and last line of each run of each normalized variable
+        private final HashMap<String, Lines> runs;
+
+        private VariableRuns() {
+            this.runs = new HashMap<>();
+        }
+
+        private void extend(String variable, int lineNumber) {
+            Lines lines = runs.computeIfAbsent(variable, v -> new Lines());
+            if (lines.size > 0 && lines.values[lines.size - 1] == lineNumber - 1) {
+                lines.values[lines.size - 1] = lineNumber;
+                return;
+            }
+            if (lines.size + 2 > lines.values.length) {
+                lines.values = Arrays.copyOf(lines.values, 2 * lines.values.length);
+            }
+            lines.values[lines.size++] = lineNumber;
+            lines.values[lines.size++] = lineNumber;
+        }
+    }
+
+    /**
+     * A growing array of the first and last lines of runs.
+     */
+    private static final class Lines {
+        private int[] values = new int[4];
+        private int size;
+    }
+
+    /**
+     * The postings of a variable as a growing array of four ints per posting.
+     */
+    private static final class Postings {
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int key, int fileId, int lineStart, int lineEnd) {
+            if (size + 4 > values.length) {
+                values = Arrays.copyOf(values, 2 * values.length);
+            }
+            values[size++] = key;
+            values[size++] = fileId;
+            values[size++] = lineStart;
+            values[size++] = lineEnd;
+        }
+
+        /**
+         * @return The postings with ranked file ids, sorted by key, file, and first line
+         */
+        private Postings sorted(int[] fileRanks) {
+            int count = size / 4;
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int comparison = Integer.compare(values[4 * a], values[4 * b]);
+                if (comparison == 0) {
+                    comparison = Integer.compare(fileRanks[values[4 * a + 1]],
+                            fileRanks[values[4 * b + 1]]);
+                }
+                return comparison != 0 ? comparison
+                        : Integer.compare(values[4 * a + 2], values[4 * b + 2]);
+            });
+            Postings sorted = new Postings();
+            sorted.values = new int[size];
+            for (int i : order) {
+                sorted.add(values[4 * i], fileRanks[values[4 * i + 1]], values[4 * i + 2],
+                        values[4 * i + 3]);
+            }
+            return sorted;
+        }
+    }
+}
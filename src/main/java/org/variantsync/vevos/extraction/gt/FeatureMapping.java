@@ -1,8 +1,22 @@
 package org.variantsync.vevos.extraction.gt;
 
+import java.io.Serial;
 import java.io.Serializable;
 
 public record FeatureMapping(String mapping) implements Serializable {
+    private static final WeakInterner<FeatureMapping> INTERNED = new WeakInterner<>();
+
+    /**
+     * @return The canonical instance of this feature mapping, which can be compared by reference
+     */
+    public FeatureMapping intern() {
+        return INTERNED.intern(this);
+    }
+
+    @Serial
+    private Object readResolve() {
+        return intern();
+    }
 
     @Override
     public String toString() {
@@ -4,14 +4,20 @@ import org.tinylog.Logger;
 import org.variantsync.diffdetective.util.Assert;
 import org.variantsync.diffdetective.util.LineRange;
 import org.variantsync.vevos.extraction.error.MatchingException;
+import org.variantsync.vevos.extraction.events.BlockAggregationEvent;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+import org.variantsync.vevos.extraction.metrics.Phase;
 
+import java.io.Serial;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 
 /**
  * The ground truth for a single file at a specific commit.
  */
 public class FileGT implements Iterable<LineAnnotation>, Serializable {
+    private static final long serialVersionUID = 1L;
     // The name of the file (its relative path from the root of the repo)
     protected final String file;
     // A matching of this file's lines to counterparts associated with the same commit
@@ -24,13 +30,15 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
     private final Set<String> variables;
     // We can only use the before mapping until its being mutated
     protected boolean consumed;
+    // The id of the blob whose lines are annotated, or null if it is unknown
+    protected String blobId;
 
     protected FileGT(String file) {
         this.annotations = new ArrayList<>();
         this.matching = new ArrayList<>();
         this.consumed = false;
         this.file = file;
-        this.variables = new HashSet<>();
+        this.variables = new VariableSet();
     }
 
     protected FileGT(FileGT other) {
@@ -39,6 +47,7 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
         this.consumed = false;
         this.file = other.file;
         this.variables = other.variables;
+        this.blobId = other.blobId;
     }
 
     /**
@@ -62,6 +71,14 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
         return variables;
     }
 
+    /**
+     * @return The id of the blob whose lines are annotated by this ground truth, or null if it is
+     *         unknown
+     */
+    public String blobId() {
+        return blobId;
+    }
+
     /**
      * Inserts the given annotation at the given index and replaces the previous annotation.
      *
@@ -115,6 +132,33 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
         }
     }
 
+    /**
+     * Appends the given annotations to this ground truth. The matching of the appended lines is
+     * initialized with -1.
+     *
+     * @param lines The annotations of the lines that follow the existing lines
+     * @param lineVariables The variables that occur in the annotations
+     */
+    protected void appendLines(List<LineAnnotation> lines, Set<String> lineVariables) {
+        this.annotations.addAll(lines);
+        this.matching.ensureCapacity(this.annotations.size());
+        while (this.matching.size() < this.annotations.size()) {
+            this.matching.add(-1);
+        }
+        this.variables.addAll(lineVariables);
+    }
+
+    /**
+     * Drops the annotations and the matching of all lines. Used once the lines have been moved out
+     * of the heap.
+     */
+    protected void releaseLines() {
+        this.annotations.clear();
+        this.annotations.trimToSize();
+        this.matching.clear();
+        this.matching.trimToSize();
+    }
+
     /**
      * @return A flag that states whether this ground truth has been consumed by completing it. If
      *         true, the ground truth can no longer be changed.
@@ -146,6 +190,11 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
      * A mutable file ground truth.
      */
     public static class Mutable extends FileGT {
+        private static final long serialVersionUID = 1L;
+        // The blocks of annotations that have been adopted from a cached blob
+        private ArrayList<BlockAnnotation> adoptedBlocks;
+        // The patch of the parent's ground truth that replaces this ground truth
+        private Patch replacement;
 
         /**
          * Initializes an empty file ground truth for the given file name.
@@ -169,6 +218,46 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
             return this;
         }
 
+        /**
+         * Adopts the annotations of a blob that have already been extracted for another file
+         * ground truth. Only the matching has to be set afterward.
+         *
+         * @param cached The cached annotations of the blob
+         */
+        public void adopt(BlobCache.Entry cached) {
+            Assert.assertTrue(!consumed && this.size() == 0);
+            appendLines(cached.annotations(), cached.variables());
+            this.adoptedBlocks = cached.blocks();
+        }
+
+        /**
+         * Sets the id of the blob whose lines are annotated by this ground truth.
+         *
+         * @param blobId The id of the blob
+         */
+        public void identifyBlob(String blobId) {
+            this.blobId = blobId;
+        }
+
+        /**
+         * Replaces this ground truth with a patch of the ground truth at the parent commit. The
+         * patch is applied once the ground truth of the parent is known, so that this ground truth
+         * does not hold any lines.
+         *
+         * @param patch The patch that replaces this ground truth
+         */
+        public void replaceWith(Patch patch) {
+            Assert.assertTrue(!consumed && this.size() == 0);
+            this.replacement = patch;
+        }
+
+        /**
+         * @return The patch that replaces this ground truth, or null if it is not replaced
+         */
+        public Patch replacement() {
+            return replacement;
+        }
+
         /**
          * Set the matching of line numbers between current file version and counterpart file
          * version.
@@ -207,12 +296,38 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
          * @return An immutable file ground truth
          */
         public Complete finishMutation() {
+            return finishMutation(CommitProfile.DISABLED);
+        }
+
+        /**
+         * Finish the mutation of the ground truth and return an instance of an immutable file
+         * ground truth. The time required for aggregating the blocks and rendering the CSV lines
+         * is added to the given profile.
+         *
+         * @param profile The profile of the commit to which the file ground truth belongs
+         * @return An immutable file ground truth
+         */
+        public Complete finishMutation(CommitProfile profile) {
             this.consumed = true;
             // Set the root matching to 0
             if (!this.matching.isEmpty()) {
                 this.matching.set(0, 0);
             }
-            return new Complete(this);
+            return new Complete(this, profile);
+        }
+
+        /**
+         * Finishes the mutation of the ground truth and moves the completed ground truth to the
+         * given spill. Afterward, this ground truth is consumed and no longer holds any lines.
+         *
+         * @param spill The spill of the commit to which the file ground truth belongs
+         * @param profile The profile of the commit
+         */
+        public void spillTo(GroundTruthSpill spill, CommitProfile profile) {
+            Complete complete = finishMutation(profile);
+            spill.add(this.file, complete);
+            // The lines are shared with the completed ground truth, which is discarded
+            releaseLines();
         }
 
     }
@@ -222,6 +337,7 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
      * methods for file export.
      */
     public static class Complete extends FileGT {
+        private static final long serialVersionUID = 1L;
         private final ArrayList<BlockAnnotation> aggregatedBlocks;
         private final String csvPCText;
         private final String csvMatchingText;
@@ -230,12 +346,61 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
          * Initializes an immutable file ground truth with the given mutable ground truth.
          *
          * @param mutable the mutable ground truth that is 'absorbed'
+         * @param profile the profile to which the time spent for the aggregation is added
          */
-        private Complete(Mutable mutable) {
+        private Complete(Mutable mutable, CommitProfile profile) {
             super(mutable);
-            aggregatedBlocks = aggregateBlocks(this);
+            BlockAggregationEvent event = new BlockAggregationEvent();
+            event.begin();
+            long start = profile.now();
+            aggregatedBlocks = mutable.adoptedBlocks != null ? mutable.adoptedBlocks
+                    : aggregateBlocks(this);
+            profile.addSince(Phase.BLOCK_AGGREGATION, start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = this.file;
+                event.lines = this.size();
+                event.blocks = aggregatedBlocks.size();
+                event.commit();
+            }
+            start = profile.now();
             csvPCText = csvPCLines(this);
             csvMatchingText = csvMatchingLines(this);
+            profile.addSince(Phase.CSV_RENDERING, start);
+            profile.addLines(this.size());
+        }
+
+        /**
+         * Initializes an immutable file ground truth whose blocks and CSV lines are already known.
+         */
+        private Complete(FileGT lines, ArrayList<BlockAnnotation> aggregatedBlocks,
+                String csvPCText, String csvMatchingText) {
+            super(lines);
+            this.aggregatedBlocks = aggregatedBlocks;
+            this.csvPCText = csvPCText;
+            this.csvMatchingText = csvMatchingText;
+        }
+
+        /**
+         * Restores a file ground truth from its parts without aggregating or rendering it again.
+         *
+         * @param file The name of the file
+         * @param annotations The annotations of all lines
+         * @param matching The matching of all lines
+         * @param variables The variables of the file
+         * @param aggregatedBlocks The aggregated blocks of the lines
+         * @param csvTexts The CSV lines of the blocks and of the matching
+         * @return The restored ground truth
+         */
+        static Complete restore(String file, List<LineAnnotation> annotations, int[] matching,
+                Set<String> variables, ArrayList<BlockAnnotation> aggregatedBlocks,
+                String[] csvTexts) {
+            Mutable lines = new Mutable(file);
+            lines.appendLines(annotations, variables);
+            for (int i = 0; i < matching.length; i++) {
+                lines.matching.set(i, matching[i]);
+            }
+            return new Complete(lines, aggregatedBlocks, csvTexts[0], csvTexts[1]);
         }
 
         /**
@@ -280,78 +445,105 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
          *
          * @return The list of block annotations for this ground truth
          */
-        private static ArrayList<BlockAnnotation> aggregateBlocks(Complete complete) {
-            ArrayList<BlockAnnotation> blocks = new ArrayList<>();
-            // The root annotation is always true and covers all lines
-            BlockAnnotation rootBlock = new BlockAnnotation(1, complete.size(),
-                    new FeatureMapping("True"), new PresenceCondition("True"), "ROOT");
-
-            LinkedList<BlockAnnotation> blockStack = new LinkedList<>();
-            blockStack.push(rootBlock);
-            for (LineAnnotation line : complete) {
-                Assert.assertTrue(!line.equals(LineAnnotation.EMPTY),
-                        "Encountered unexpected `empty` annotation. The entire file should have been mapped");
-
-                if (blockStack.isEmpty()) {
-                    // Push a new block onto the stack
-                    // blockStack.push(new BlockAnnotation(line.lineNumber(), line.lineNumber(),
-                    // line.featureMapping(),
-                    // line.presenceCondition(), line.featureMappingAfter(),
-                    // line.presenceConditionAfter()));
-                    // continue;
-                    throw new IllegalStateException();
-                }
+        private static ArrayList<BlockAnnotation> aggregateBlocks(FileGT fileGT) {
+            BlockAggregator aggregator = new BlockAggregator(fileGT);
+            for (LineAnnotation line : fileGT) {
+                aggregator.accept(line);
+            }
+            return aggregator.finish();
+        }
 
-                // Does the next line have a different annotation than the current block?
-                boolean annotationChange = !blockStack.peek().annotationEquals(line)
-                        && !blockStack.peek().equals(rootBlock);
-
-                // new block, we have to unwind the stack in reverse order to find all completed
-                // blocks
-                if (annotationChange) {
-                    // The current line is nested in retrieved block
-                    // Collect a completed block
-                    BlockAnnotation block = blockStack.pop();
-                    block.setLineEndInclusive(line.lineNumber() - 1);
-                    blocks.add(block);
+        /**
+         * Determines the block annotations of a ground truth that only differs from its parent in
+         * the lines from <code>firstChange</code> to <code>lastChange</code>. The blocks that are
+         * completed before the first change are taken from the parent. If the aggregation is in the
+         * same state after the last change as the parent's aggregation at the same line, the
+         * remaining blocks are taken from the parent as well and shifted. Otherwise, the remaining
+         * lines are aggregated again.
+         *
+         * @param fileGT The ground truth whose blocks are determined
+         * @param parent The ground truth of the file before the change
+         * @param firstChange The first line that differs from the same line in the parent
+         * @param lastChange The last line that differs from the shifted line in the parent
+         * @param shift The difference between the number of lines of both ground truths
+         * @return The same blocks as a full aggregation of the ground truth
+         */
+        static ArrayList<BlockAnnotation> aggregateBlocks(FileGT fileGT, Complete parent,
+                int firstChange, int lastChange, int shift) {
+            List<BlockAnnotation> parentBlocks = parent.aggregatedBlocks();
+            if (firstChange > lastChange) {
+                // No line differs, so that the blocks only change if lines have been removed
+                return shift == 0 ? new ArrayList<>(parentBlocks) : aggregateBlocks(fileGT);
+            }
+            BlockAnnotation parentRoot = BlockAggregator.rootBlock(parent.size());
+            BlockAggregator aggregator = new BlockAggregator(fileGT);
+            // The parent's blocks that start before the first change are sorted like they have
+            // been opened. They are either completed or still open before the first change.
+            for (BlockAnnotation block : parentBlocks) {
+                if (block.lineStartInclusive() >= firstChange) {
+                    break;
                 }
-
-                if (blockStack.peek() == null) {
+                if (block.equals(parentRoot)) {
                     continue;
                 }
-
-                // Does the next line have a different annotation than the current block?
-                annotationChange = !blockStack.peek().annotationEquals(line);
-
-                Assert.assertTrue(blockStack.peekFirst() != null,
-                        () -> "%s\nProblem while processing line %d of file %s"
-                                .formatted(complete.toString(), line.lineNumber(), complete.file));
-                // If the current line is in a new block
-                if (annotationChange) {
-                    // Push a new block onto the stack
-                    blockStack.push(new BlockAnnotation(line.lineNumber(), line.lineNumber(),
-                            line.featureMapping(), line.presenceCondition(), line.nodeType()));
+                if (block.lineEndExclusive() < firstChange - 1) {
+                    aggregator.blocks.add(block);
+                } else {
+                    aggregator.open(block.shifted(0));
                 }
             }
-            // Unwind the stack fully
-            while (!blockStack.isEmpty()) {
-                BlockAnnotation block = blockStack.pop();
-                block.setLineEndInclusive(complete.size());
-                blocks.add(block);
+            for (int lineNumber = firstChange; lineNumber <= lastChange; lineNumber++) {
+                aggregator.accept(fileGT.get(lineNumber - 1));
             }
-            blocks.sort((blockAnnotation, t1) -> {
-                int c = Integer.compare(blockAnnotation.lineStartInclusive(),
-                        t1.lineStartInclusive());
-                if (c != 0) {
-                    return c;
-                } else {
-                    // If the start lines are the same, the block with the higher end line is taken
-                    // first
-                    return -1 * Integer.compare(blockAnnotation.lineEndExclusive(),
-                            t1.lineEndExclusive());
+            int nextLine = lastChange + 1;
+            if (nextLine > fileGT.size()) {
+                return aggregator.finish();
+            }
+            List<BlockAnnotation> parentOpen =
+                    openBlocks(parentBlocks, parentRoot, nextLine - shift);
+            // The root is at the bottom of the stack
+            boolean sameState = aggregator.depth - 1 == parentOpen.size();
+            for (int i = 0; sameState && i < parentOpen.size(); i++) {
+                sameState = aggregator.blocks.get(aggregator.blockStack[i + 1])
+                        .annotationEquals(parentOpen.get(i));
+            }
+            if (!sameState) {
+                for (int lineNumber = nextLine; lineNumber <= fileGT.size(); lineNumber++) {
+                    aggregator.accept(fileGT.get(lineNumber - 1));
                 }
-            });
-            return blocks;
+                return aggregator.finish();
+            }
+            // The remaining lines are aggregated exactly like the parent's remaining lines
+            for (int i = 0; i < parentOpen.size(); i++) {
+                aggregator.blocks.get(aggregator.blockStack[i + 1])
+                        .setLineEndInclusive(parentOpen.get(i).lineEndExclusive() + shift);
+            }
+            for (BlockAnnotation block : parentBlocks) {
+                if (block.lineStartInclusive() >= nextLine - shift && !block.equals(parentRoot)) {
+                    aggregator.blocks.add(block.shifted(shift));
+                }
+            }
+            return aggregator.ordered();
+        }
+
+        /**
+         * Determines the blocks that are open before the aggregation of the given line, ordered
+         * from the bottom to the top of the stack. The root block is not included.
+         */
+        private static List<BlockAnnotation> openBlocks(List<BlockAnnotation> blocks,
+                BlockAnnotation rootBlock, int lineNumber) {
+            List<BlockAnnotation> open = new ArrayList<>();
+            // Blocks are sorted by their first line, which is also the order in which they have
+            // been pushed
+            for (BlockAnnotation block : blocks) {
+                if (block.lineStartInclusive() >= lineNumber) {
+                    break;
+                }
+                if (block.lineEndExclusive() >= lineNumber - 1 && !block.equals(rootBlock)) {
+                    open.add(block);
+                }
+            }
+            return open;
         }
 
         /**
@@ -364,6 +556,39 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
             return this.csvPCText;
         }
 
+        /**
+         * Determines the textual representation of the line matchings as csv lines, with one line
+         * for each run of lines that are matched to consecutive lines or that are all unmatched.
+         *
+         * @param file The name of the file
+         * @param size The number of matched lines
+         * @param matching The match of each line
+         * @return A String with the matched ranges in csv format
+         */
+        static String csvMatchingRanges(String file, int size, IntUnaryOperator matching) {
+            StringBuilder sb = new StringBuilder();
+            int from = 0;
+            for (int i = 1; i <= size; i++) {
+                if (i < size) {
+                    int previous = matching.applyAsInt(i - 1);
+                    int current = matching.applyAsInt(i);
+                    if (previous == -1 ? current == -1 : current == previous + 1) {
+                        continue;
+                    }
+                }
+                sb.append(file);
+                sb.append(";");
+                sb.append(from);
+                sb.append(";");
+                sb.append(i - 1);
+                sb.append(";");
+                sb.append(matching.applyAsInt(from));
+                sb.append(System.lineSeparator());
+                from = i;
+            }
+            return sb.toString();
+        }
+
         /**
          * Returns the textual representation of the line matchings as csv lines which can be
          * directly used for exporting.
@@ -374,6 +599,18 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
             return this.csvMatchingText;
         }
 
+        /**
+         * Returns the textual representation of the line matchings as range-encoded csv lines
+         * which can be directly used for exporting. The lines are only rendered on demand, because
+         * they are not needed unless the matching is exported in ranges.
+         *
+         * @return A String with the matched ranges in csv format
+         * @see MatchingFormat#RANGES
+         */
+        public String csvMatchingRanges() {
+            return csvMatchingRanges(this.file, this.matching.size(), this.matching::get);
+        }
+
         /**
          * @return The list of block annotations for this file.
          */
@@ -383,11 +620,393 @@ public class FileGT implements Iterable<LineAnnotation>, Serializable {
 
     }
 
+    /**
+     * A handle of a completed file ground truth that is stored off the heap in a
+     * {@link FileGTArena}. The lines, blocks, and CSV lines are decoded from the arena when they
+     * are requested. Serializing a handle serializes the decoded ground truth.
+     */
+    public static final class Stored extends Complete {
+        private static final long serialVersionUID = 1L;
+        private final transient FileGTArena arena;
+        private final int lineCount;
+        // The region of the arena that holds the ground truth, moved if the arena is compacted
+        transient FileGTArena.Chunk chunk;
+        transient int offset;
+        transient int length;
+
+        Stored(String file, FileGTArena arena, int lineCount) {
+            super(new FileGT(file), null, null, null);
+            this.arena = arena;
+            this.lineCount = lineCount;
+        }
+
+        FileGTArena arena() {
+            return arena;
+        }
+
+        @Override
+        public int size() {
+            return lineCount;
+        }
+
+        @Override
+        public LineAnnotation get(int index) {
+            Objects.checkIndex(index, lineCount);
+            return arena.line(this, index);
+        }
+
+        @Override
+        public Iterator<LineAnnotation> iterator() {
+            return new Iterator<>() {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < lineCount;
+                }
+
+                @Override
+                public LineAnnotation next() {
+                    if (next >= lineCount) {
+                        throw new NoSuchElementException();
+                    }
+                    return arena.line(Stored.this, next++);
+                }
+            };
+        }
+
+        @Override
+        public Set<String> getVariables() {
+            return arena.variables(this);
+        }
+
+        @Override
+        public String csvPCLines() {
+            return arena.csvText(this, 0);
+        }
+
+        @Override
+        public String csvMatchingLines() {
+            return arena.csvText(this, 1);
+        }
+
+        @Override
+        public String csvMatchingRanges() {
+            return csvMatchingRanges(this.file, lineCount, line -> arena.match(this, line));
+        }
+
+        @Override
+        public ArrayList<BlockAnnotation> aggregatedBlocks() {
+            return arena.blocks(this);
+        }
+
+        @Serial
+        private Object writeReplace() {
+            return arena.decode(this);
+        }
+    }
+
+    /**
+     * The changes of a file ground truth relative to the ground truth of the same file at the
+     * parent commit. Only the annotations of changed lines are stored. All other lines are retained
+     * from the parent's ground truth and moved to their new line numbers when the patch is applied.
+     * The matching is stored for all lines, because it is relative to the parent.
+     *
+     * <p>
+     * A patch only fits the ground truth of the parent's blob of the file. Commits with patches
+     * whose parent blob has not been extracted, e.g., because it could not be parsed, are
+     * analyzed again without patches before the ground truths are combined.
+     * </p>
+     */
+    public static class Patch extends FileGT {
+        private static final long serialVersionUID = 1L;
+        // The number of lines of the patched file and of the file at the parent commit
+        private final int patchedSize;
+        private final int parentSize;
+        // Runs of retained lines ordered by line number: the first line, the first line in the
+        // parent, the number of lines, and 1 if the first line is expected to be an artifact
+        private final ArrayList<int[]> retained;
+        // The matched ranges (from, to, counterpart from, counterpart to) in the order in which
+        // they have been set
+        private final ArrayList<int[]> matchedRanges;
+        // The annotations of all changed lines
+        private final TreeMap<Integer, LineAnnotation> changedLines;
+        // The id of the parent's blob to which the patch applies, or null if it is unknown
+        private String parentBlobId;
+
+        /**
+         * Initializes an empty patch for the given file.
+         *
+         * @param fileName The name of the file
+         * @param patchedSize The number of lines of the patched file
+         * @param parentSize The number of lines of the file at the parent commit
+         */
+        public Patch(String fileName, int patchedSize, int parentSize) {
+            super(fileName);
+            this.patchedSize = patchedSize;
+            this.parentSize = parentSize;
+            this.retained = new ArrayList<>();
+            this.matchedRanges = new ArrayList<>();
+            this.changedLines = new TreeMap<>();
+        }
+
+        /**
+         * Retains a run of lines from the parent's ground truth. Runs have to be retained in the
+         * order of their line numbers and must not overlap.
+         *
+         * @param lineNumber The first line of the run in the patched file
+         * @param parentLineNumber The first line of the run in the parent's file
+         * @param count The number of lines in the run
+         * @param artifact Whether the first line of the run is annotated as an artifact
+         */
+        public void retain(int lineNumber, int parentLineNumber, int count, boolean artifact) {
+            int[] previous = retained.isEmpty() ? null : retained.get(retained.size() - 1);
+            Assert.assertTrue(previous == null || lineNumber >= previous[0] + previous[2]);
+            retained.add(new int[] {lineNumber, parentLineNumber, count, artifact ? 1 : 0});
+        }
+
+        /**
+         * Sets the blobs of the patched file and of the file at the parent commit. The patch then
+         * only fits the ground truth of the given parent blob.
+         *
+         * @param blobId The id of the patched blob
+         * @param parentBlobId The id of the parent's blob of the file
+         */
+        public void identifyBlobs(String blobId, String parentBlobId) {
+            this.blobId = blobId;
+            this.parentBlobId = parentBlobId;
+        }
+
+        /**
+         * @return The id of the parent's blob to which the patch applies, or null if it is unknown
+         */
+        public String parentBlobId() {
+            return parentBlobId;
+        }
+
+        /**
+         * Inserts the annotation of a changed line and replaces its previous annotation.
+         *
+         * @param line The inserted line annotation
+         */
+        public void insert(LineAnnotation line) {
+            changedLines.put(line.lineNumber(), line);
+            getVariables().addAll(line.uniqueContainedFeatures());
+        }
+
+        /**
+         * @param lineNumber The number of a changed line
+         * @return The annotation of the line, or null if none has been inserted yet
+         */
+        public LineAnnotation changedLine(int lineNumber) {
+            return changedLines.get(lineNumber);
+        }
+
+        /**
+         * @return The number of changed lines
+         */
+        public int changedLineCount() {
+            return changedLines.size();
+        }
+
+        /**
+         * Records the matching of line numbers between current file version and counterpart file
+         * version, which is validated like the matching of a {@link Mutable mutable} ground
+         * truth.
+         *
+         * @param currentRange The range of lines in the current file version
+         * @param counterpartRange The range of lines in the counterpart file version
+         */
+        public void setMatching(LineRange currentRange, LineRange counterpartRange)
+                throws MatchingException {
+            if (counterpartRange.fromInclusive() == -1) {
+                return;
+            }
+            if (currentRange.toExclusive() - currentRange.fromInclusive() != counterpartRange
+                    .toExclusive() - counterpartRange.fromInclusive()) {
+                throw new MatchingException("line number mismatch for file" + this.file + " -- ; "
+                        + "ranges have different size "
+                        + (currentRange.toExclusive() - currentRange.fromInclusive()) + " : "
+                        + (counterpartRange.toExclusive() - counterpartRange.fromInclusive()));
+            }
+            matchedRanges.add(new int[] {currentRange.fromInclusive(), currentRange.toExclusive(),
+                    counterpartRange.fromInclusive(), counterpartRange.toExclusive()});
+        }
+
+        /**
+         * Applies this patch to the ground truth of the file at the parent commit. Only the blocks
+         * that contain changed lines are aggregated again. Collecting the lines and rendering the
+         * CSV lines still takes time linear in the size of the file, because the lines after the
+         * first change are moved and the matching is relative to the parent.
+         *
+         * @param parent The ground truth of the file at the parent commit
+         * @param profile The profile of the commit to which the patch belongs
+         * @return The patched ground truth, or null if the patch does not fit the given ground
+         *         truth
+         */
+        public Complete applyTo(Complete parent, CommitProfile profile) {
+            if (parentBlobId != null && !parentBlobId.equals(parent.blobId())) {
+                // A ground truth of another version of the file might have the same size
+                return null;
+            }
+            if (parent.size() != parentSize) {
+                return null;
+            }
+            for (int[] run : retained) {
+                if (parent.get(run[1] - 1).nodeType().equals("artifact") != (run[3] == 1)) {
+                    return null;
+                }
+            }
+            // The lines before the first change are identical to the parent's lines, the lines
+            // after the last change are identical to the parent's lines moved by the shift
+            int shift = patchedSize - parentSize;
+            int firstChange = patchedSize + 1;
+            int lastChange = 0;
+            ArrayList<LineAnnotation> lines = new ArrayList<>(patchedSize);
+            Iterator<int[]> runs = retained.iterator();
+            int[] run = runs.hasNext() ? runs.next() : null;
+            for (int lineNumber = 1; lineNumber <= patchedSize; lineNumber++) {
+                while (run != null && lineNumber >= run[0] + run[2]) {
+                    run = runs.hasNext() ? runs.next() : null;
+                }
+                LineAnnotation line = changedLines.get(lineNumber);
+                int parentLineNumber = -1;
+                if (line == null && run != null && lineNumber >= run[0]) {
+                    parentLineNumber = run[1] + lineNumber - run[0];
+                    line = parent.get(parentLineNumber - 1);
+                    if (parentLineNumber != lineNumber) {
+                        line = line.withOffset(lineNumber - parentLineNumber);
+                    }
+                } else if (line == null) {
+                    // Lines that are not covered by any node keep the root annotation
+                    line = LineAnnotation.rootAnnotation(lineNumber);
+                }
+                if (parentLineNumber != lineNumber) {
+                    firstChange = Math.min(firstChange, lineNumber);
+                }
+                if (parentLineNumber != lineNumber - shift) {
+                    lastChange = lineNumber;
+                }
+                lines.add(line);
+            }
+
+            Mutable mutable = new Mutable(this.file);
+            mutable.blobId = this.blobId;
+            Set<String> lineVariables = VariableSet.copyOf(parent.getVariables());
+            lineVariables.addAll(getVariables());
+            mutable.appendLines(lines, lineVariables);
+            try {
+                for (int[] range : matchedRanges) {
+                    for (int lineNumber = range[0], matchedLine = range[2]; lineNumber < range[1];
+                            lineNumber++, matchedLine++) {
+                        mutable.setMatching(lineNumber, matchedLine);
+                    }
+                }
+            } catch (MatchingException e) {
+                // The sizes of the ranges have been validated when they were recorded
+                throw new IllegalStateException(e);
+            }
+            long start = profile.now();
+            mutable.adoptedBlocks =
+                    Complete.aggregateBlocks(mutable, parent, firstChange, lastChange, shift);
+            profile.addSince(Phase.BLOCK_AGGREGATION, start);
+            return mutable.finishMutation(profile);
+        }
+    }
+
+    /**
+     * Aggregates the lines of a file ground truth to blocks by keeping a stack of open blocks. A
+     * block is completed once a line's annotation differs from the annotation of the block on top
+     * of the stack.
+     *
+     * <p>
+     * Blocks are opened in the order of their first line, so that they are collected in the order
+     * in which they are exported without sorting them.
+     * </p>
+     */
+    private static class BlockAggregator {
+        private final FileGT fileGT;
+        // All blocks in the order in which they have been opened, starting with the root block
+        private final ArrayList<BlockAnnotation> blocks;
+        // The indices of all open blocks in blocks, with the root block at the bottom
+        private int[] blockStack;
+        private int depth;
+
+        private BlockAggregator(FileGT fileGT) {
+            this.fileGT = fileGT;
+            this.blocks = new ArrayList<>();
+            this.blockStack = new int[16];
+            // The root annotation is always true and covers all lines
+            open(rootBlock(fileGT.size()));
+        }
+
+        private static BlockAnnotation rootBlock(int size) {
+            return new BlockAnnotation(1, size, new FeatureMapping("True"),
+                    new PresenceCondition("True"), "ROOT");
+        }
+
+        private void open(BlockAnnotation block) {
+            if (depth == blockStack.length) {
+                blockStack = Arrays.copyOf(blockStack, 2 * depth);
+            }
+            blockStack[depth++] = blocks.size();
+            blocks.add(block);
+        }
+
+        private BlockAnnotation top() {
+            return blocks.get(blockStack[depth - 1]);
+        }
+
+        private void accept(LineAnnotation line) {
+            Assert.assertTrue(line.lineNumber() > 0, "Encountered unexpected `empty` annotation. "
+                    + "The entire file should have been mapped");
+
+            // If the next line has a different annotation than the current block, the block is
+            // completed. The root block is only completed after the last line.
+            BlockAnnotation top = top();
+            if (depth > 1 && !top.annotationEquals(line)) {
+                top.setLineEndInclusive(line.lineNumber() - 1);
+                depth--;
+                top = top();
+            }
+
+            // If the current line is in a new block
+            if (!top.annotationEquals(line)) {
+                open(new BlockAnnotation(line.lineNumber(), line.lineNumber(),
+                        line.featureMapping(), line.presenceCondition(), line.nodeType()));
+            }
+        }
+
+        /**
+         * @return The blocks ordered by their first line. If the first lines are the same, the
+         *         block with the higher end line is taken first.
+         */
+        private ArrayList<BlockAnnotation> finish() {
+            // Unwind the stack fully
+            while (depth > 0) {
+                top().setLineEndInclusive(fileGT.size());
+                depth--;
+            }
+            return ordered();
+        }
+
+        private ArrayList<BlockAnnotation> ordered() {
+            // Only the root block and a block that is opened by the first line share their first
+            // line. The root block comes second if both blocks also end in the same line.
+            if (blocks.size() > 1 && blocks.get(1).lineStartInclusive() == 1
+                    && blocks.get(1).lineEndExclusive() == blocks.get(0).lineEndExclusive()) {
+                Collections.swap(blocks, 0, 1);
+            }
+            return blocks;
+        }
+    }
+
     /**
      * Represents a file ground truth that can be removed because the associated file has been
      * deleted or renamed
      */
     public static class Removed extends FileGT {
+        private static final long serialVersionUID = 1L;
 
         public Removed(String file) {
             super(file);
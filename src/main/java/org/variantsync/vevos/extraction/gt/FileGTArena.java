@@ -0,0 +1,354 @@
+package org.variantsync.vevos.extraction.gt;
+
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores completed file ground truths off the heap, so that a ground truth with many files only
+ * holds small {@link FileGT.Stored handles} on the heap. The arena allocates direct buffers in
+ * chunks and places the ground truths of files one after the other.
+ *
+ * <p>
+ * Each file is stored in a compact layout of ints: a header with the number of lines, the number
+ * of blocks, the id of the file's variables, and the lengths of the two CSV texts, followed by
+ * the ids of the feature mapping, presence condition, node type, and variables of each line, the
+ * matching of each line, and the first line, last line, and annotation ids of each block. The CSV
+ * texts follow as UTF-8 bytes. The ids refer to a table of annotations on the heap, which only
+ * holds each distinct annotation once.
+ * </p>
+ *
+ * <p>
+ * The regions of replaced ground truths are freed explicitly. A chunk whose live regions make up
+ * less than a quarter of its capacity is compacted by moving them to the current chunk. The arena
+ * must not be used concurrently.
+ * </p>
+ */
+public class FileGTArena {
+    /**
+     * The default capacity of a chunk in bytes
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int HEADER_INTS = 5;
+    private static final int LINE_INTS = 4;
+    private static final int BLOCK_INTS = 5;
+    private final int chunkSize;
+    // The annotations that are referenced by id
+    private final ArrayList<Object> annotations;
+    private final HashMap<Object, Integer> annotationIds;
+    // Empty chunks that can be reused
+    private final ArrayDeque<Chunk> pool;
+    private Chunk current;
+    private long capacity;
+    private long liveBytes;
+
+    public FileGTArena() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize The capacity of a chunk in bytes. Files that do not fit into a chunk are
+     *        stored in a chunk of their own.
+     */
+    public FileGTArena(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.annotations = new ArrayList<>();
+        this.annotationIds = new HashMap<>();
+        this.pool = new ArrayDeque<>();
+    }
+
+    /**
+     * A direct buffer whose regions are allocated from the start to the end.
+     */
+    static final class Chunk {
+        private final ByteBuffer buffer;
+        private final Set<FileGT.Stored> handles;
+        private int top;
+        private long live;
+
+        private Chunk(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+            this.handles = new HashSet<>();
+        }
+    }
+
+    /**
+     * Stores the given file ground truth in this arena.
+     *
+     * @param complete A completed file ground truth
+     * @return The handle of the stored ground truth, or the given ground truth if it is already
+     *         stored in this arena
+     */
+    public FileGT.Stored store(FileGT.Complete complete) {
+        if (complete instanceof FileGT.Stored stored) {
+            if (stored.arena() == this) {
+                return stored;
+            }
+            // The lines of a handle are only known to its arena
+            complete = stored.arena().decode(stored);
+        }
+        int lineCount = complete.size();
+        List<BlockAnnotation> blocks = complete.aggregatedBlocks();
+        byte[][] texts = {complete.csvPCLines().getBytes(StandardCharsets.UTF_8),
+                complete.csvMatchingLines().getBytes(StandardCharsets.UTF_8)};
+        int length = 4 * (HEADER_INTS + lineCount * (LINE_INTS + 1) + blocks.size() * BLOCK_INTS)
+                + texts[0].length + texts[1].length;
+
+        FileGT.Stored stored = new FileGT.Stored(complete.file, this, lineCount);
+        stored.blobId = complete.blobId;
+        allocate(stored, length);
+        ByteBuffer buffer = stored.chunk.buffer;
+        int position = stored.offset;
+        position = putInt(buffer, position, lineCount);
+        position = putInt(buffer, position, blocks.size());
+        position = putInt(buffer, position, id(VariableSet.of(complete.getVariables())));
+        for (byte[] text : texts) {
+            position = putInt(buffer, position, text.length);
+        }
+        for (LineAnnotation line : complete) {
+            position = putInt(buffer, position, id(line.featureMapping()));
+            position = putInt(buffer, position, id(line.presenceCondition()));
+            position = putInt(buffer, position, id(line.nodeType()));
+            position = putInt(buffer, position, id(line.uniqueContainedFeatures()));
+        }
+        for (int i = 0; i < lineCount; i++) {
+            position = putInt(buffer, position, complete.matching.get(i));
+        }
+        for (BlockAnnotation block : blocks) {
+            position = putInt(buffer, position, block.lineStartInclusive());
+            position = putInt(buffer, position, block.lineEndExclusive());
+            position = putInt(buffer, position, id(block.featureMapping()));
+            position = putInt(buffer, position, id(block.presenceCondition()));
+            position = putInt(buffer, position, id(block.nodeType()));
+        }
+        for (byte[] text : texts) {
+            buffer.put(position, text);
+            position += text.length;
+        }
+        return stored;
+    }
+
+    /**
+     * Replaces all completed file ground truths of the given ground truth with handles of this
+     * arena.
+     *
+     * @param groundTruth A completed ground truth
+     */
+    public void storeAll(GroundTruth groundTruth) {
+        for (Map.Entry<String, FileGT> entry : groundTruth.fileGTs().entrySet()) {
+            if (entry.getValue() instanceof FileGT.Complete complete) {
+                entry.setValue(store(complete));
+            }
+        }
+    }
+
+    /**
+     * Frees the regions of all file ground truths of the given ground truth, which must not be
+     * used afterward.
+     *
+     * @param groundTruth A ground truth that is discarded
+     */
+    public void release(GroundTruth groundTruth) {
+        for (FileGT fileGT : groundTruth.fileGTs().values()) {
+            free(fileGT);
+        }
+    }
+
+    /**
+     * Updates the completed ground truth like {@link GroundTruth#updateWith(GroundTruth,
+     * CommitProfile)}, stores the updated files in this arena, and frees the regions of the
+     * replaced files.
+     *
+     * @param completed The completed ground truth whose files are stored in this arena
+     * @param updated The ground truth with the changed files of the next commit
+     * @param profile The profile of the next commit
+     */
+    public void updateWith(GroundTruth completed, GroundTruth updated, CommitProfile profile) {
+        Map<String, FileGT> previous = new HashMap<>();
+        for (String file : updated.fileGTs().keySet()) {
+            previous.put(file, completed.get(file));
+        }
+        completed.updateWith(updated, profile);
+        previous.forEach((file, previousFileGT) -> {
+            FileGT fileGT = completed.get(file);
+            if (fileGT != previousFileGT) {
+                free(previousFileGT);
+            }
+            if (fileGT instanceof FileGT.Complete complete) {
+                completed.fileGTs().put(file, store(complete));
+            }
+        });
+    }
+
+    /**
+     * @return The number of bytes of all chunks
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bytes that are occupied by stored file ground truths
+     */
+    public long liveBytes() {
+        return liveBytes;
+    }
+
+    private int id(Object annotation) {
+        Integer id = annotationIds.get(annotation);
+        if (id == null) {
+            id = annotations.size();
+            annotations.add(annotation);
+            annotationIds.put(annotation, id);
+        }
+        return id;
+    }
+
+    private static int putInt(ByteBuffer buffer, int position, int value) {
+        buffer.putInt(position, value);
+        return position + 4;
+    }
+
+    private void allocate(FileGT.Stored stored, int length) {
+        Chunk chunk;
+        if (length > chunkSize) {
+            chunk = new Chunk(length);
+            capacity += length;
+        } else {
+            if (current == null || current.buffer.capacity() - current.top < length) {
+                current = pool.isEmpty() ? newChunk() : pool.pop();
+            }
+            chunk = current;
+        }
+        stored.chunk = chunk;
+        stored.offset = chunk.top;
+        stored.length = length;
+        chunk.top += length;
+        chunk.live += length;
+        chunk.handles.add(stored);
+        liveBytes += length;
+    }
+
+    private Chunk newChunk() {
+        capacity += chunkSize;
+        return new Chunk(chunkSize);
+    }
+
+    private void free(FileGT fileGT) {
+        if (!(fileGT instanceof FileGT.Stored stored) || stored.arena() != this
+                || stored.chunk == null) {
+            return;
+        }
+        Chunk chunk = stored.chunk;
+        chunk.handles.remove(stored);
+        chunk.live -= stored.length;
+        liveBytes -= stored.length;
+        stored.chunk = null;
+        if (chunk == current) {
+            return;
+        }
+        if (chunk.live < chunk.buffer.capacity() / 4) {
+            // Move the remaining regions, so that the chunk can be reused
+            for (FileGT.Stored moved : new ArrayList<>(chunk.handles)) {
+                ByteBuffer source = chunk.buffer;
+                int sourceOffset = moved.offset;
+                chunk.handles.remove(moved);
+                liveBytes -= moved.length;
+                allocate(moved, moved.length);
+                moved.chunk.buffer.put(moved.offset, source, sourceOffset, moved.length);
+            }
+            if (chunk.buffer.capacity() == chunkSize) {
+                chunk.top = 0;
+                chunk.live = 0;
+                pool.push(chunk);
+            } else {
+                capacity -= chunk.buffer.capacity();
+            }
+        }
+    }
+
+    private int intAt(FileGT.Stored stored, int index) {
+        return stored.chunk.buffer.getInt(stored.offset + 4 * index);
+    }
+
+    LineAnnotation line(FileGT.Stored stored, int index) {
+        int position = HEADER_INTS + index * LINE_INTS;
+        return new LineAnnotation(index + 1,
+                (FeatureMapping) annotations.get(intAt(stored, position)),
+                (PresenceCondition) annotations.get(intAt(stored, position + 1)),
+                (String) annotations.get(intAt(stored, position + 2)),
+                asVariables(annotations.get(intAt(stored, position + 3))));
+    }
+
+    Set<String> variables(FileGT.Stored stored) {
+        return asVariables(annotations.get(intAt(stored, 2)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> asVariables(Object variables) {
+        return (Set<String>) variables;
+    }
+
+    ArrayList<BlockAnnotation> blocks(FileGT.Stored stored) {
+        int lineCount = intAt(stored, 0);
+        int blockCount = intAt(stored, 1);
+        int position = HEADER_INTS + lineCount * (LINE_INTS + 1);
+        ArrayList<BlockAnnotation> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++, position += BLOCK_INTS) {
+            blocks.add(new BlockAnnotation(intAt(stored, position), intAt(stored, position + 1),
+                    (FeatureMapping) annotations.get(intAt(stored, position + 2)),
+                    (PresenceCondition) annotations.get(intAt(stored, position + 3)),
+                    (String) annotations.get(intAt(stored, position + 4))));
+        }
+        return blocks;
+    }
+
+    /**
+     * @return The match of the line with the given index
+     */
+    int match(FileGT.Stored stored, int index) {
+        return intAt(stored, HEADER_INTS + stored.size() * LINE_INTS + index);
+    }
+
+    /**
+     * @param text 0 for the CSV lines of the blocks and 1 for the matching
+     */
+    String csvText(FileGT.Stored stored, int text) {
+        int lineCount = intAt(stored, 0);
+        int blockCount = intAt(stored, 1);
+        int position = stored.offset
+                + 4 * (HEADER_INTS + lineCount * (LINE_INTS + 1) + blockCount * BLOCK_INTS);
+        for (int i = 0; i < text; i++) {
+            position += intAt(stored, 3 + i);
+        }
+        byte[] bytes = new byte[intAt(stored, 3 + text)];
+        stored.chunk.buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a stored file ground truth to a ground truth on the heap.
+     */
+    FileGT.Complete decode(FileGT.Stored stored) {
+        int lineCount = stored.size();
+        List<LineAnnotation> lines = new ArrayList<>(lineCount);
+        int[] matching = new int[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(line(stored, i));
+            matching[i] = match(stored, i);
+        }
+        FileGT.Complete decoded = FileGT.Complete.restore(stored.file, lines, matching,
+                variables(stored), blocks(stored),
+                new String[] {csvText(stored, 0), csvText(stored, 1)});
+        decoded.blobId = stored.blobId;
+        return decoded;
+    }
+}
@@ -1,5 +1,8 @@
 package org.variantsync.vevos.extraction.gt;
 
+import org.tinylog.Logger;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+
 import java.io.Serializable;
 import java.util.*;
 import java.util.function.Function;
@@ -8,18 +11,23 @@ import java.util.regex.Pattern;
 /**
  * The ground truth for the files of a repository at a specific commit (i.e., version).
  *
- * @param fileGTs The ground truths for each file
+ * @param fileGTs The ground truths for each file, sorted by the files' paths
  * @param variables The set of variables that can appear in the presence conditions
  */
-public record GroundTruth(HashMap<String, FileGT> fileGTs, Set<String> variables)
+public record GroundTruth(TreeMap<String, FileGT> fileGTs, Set<String> variables)
         implements Serializable {
     // Constant file names of the ground truth
     public final static String SUCCESS_COMMIT_FILE = "SUCCESS_COMMITS.txt";
     public final static String ERROR_COMMIT_FILE = "ERROR_COMMITS.txt";
     public final static String EMPTY_COMMIT_FILE = "EMPTY_COMMITS.txt";
+    public final static String DEFERRED_COMMIT_FILE = "DEFERRED_COMMITS.txt";
     public static final String COMMIT_PARENTS_FILE = "PARENTS.txt";
     public static final String COMMIT_MESSAGE_FILE = "MESSAGE.txt";
     public static final String VARIABLES_FILE = "VARIABLES.txt";
+    // Used by the full extraction between two checkpoints of the variables, see VariablesDelta
+    public static final String VARIABLES_DELTA_FILE = "VARIABLES.delta.txt";
+    // The inverted index of the variables of all commits of a repository, see FeatureIndex
+    public static final String FEATURE_INDEX_FILE = "FEATURE_INDEX.bin";
     // Used by the full extraction, because there is only one set of PCs for each commit
     public static final String CODE_VARIABILITY_CSV = "code-variability.spl.csv";
     public static final String CODE_MATCHING_CSV = "code-matching.spl.csv";
@@ -27,8 +35,23 @@ public record GroundTruth(HashMap<String, FileGT> fileGTs, Set<String> variables
     // commit
     public static final String CODE_VARIABILITY_CSV_BEFORE = "code-variability.before.spl.csv";
     public static final String CODE_VARIABILITY_CSV_AFTER = "code-variability.after.spl.csv";
+    // Used by the fast extraction for files whose blocks only moved, see BlockDelta
+    public static final String CODE_VARIABILITY_CSV_DELTA = "code-variability.delta.spl.csv";
     public static final String CODE_MATCHING_CSV_BEFORE = "code-matching.before.spl.csv";
     public static final String CODE_MATCHING_CSV_AFTER = "code-matching.after.spl.csv";
+    // Range-encoded variants of the matching files
+    public static final String CODE_MATCHING_RANGES_CSV = "code-matching.ranges.spl.csv";
+    public static final String CODE_MATCHING_RANGES_CSV_BEFORE =
+            "code-matching.before.ranges.spl.csv";
+    public static final String CODE_MATCHING_RANGES_CSV_AFTER =
+            "code-matching.after.ranges.spl.csv";
+    // Headers of the CSV files
+    public static final String PC_CSV_HEADER =
+            "Path;File Condition;Block Condition;Presence Condition;Line Type;start;end";
+    public static final String MATCHING_CSV_HEADER = "Path;Line Number; Counterpart";
+    public static final String DELTA_CSV_HEADER = "Path;Block Offsets";
+    public static final String MATCHING_RANGES_CSV_HEADER =
+            "Path;Line Number;Last Line Number;Counterpart";
 
     // Patterns for normalizing variables
     private static final Pattern variableStart = Pattern.compile("\\$\\{");
@@ -42,18 +65,29 @@ public record GroundTruth(HashMap<String, FileGT> fileGTs, Set<String> variables
 
         StringBuilder sb = new StringBuilder();
         for (String name : variablesList) {
-            if (name.equals("True") || name.equals("False")) {
-                continue;
+            name = normalizeVariable(name);
+            if (name != null) {
+                sb.append(name).append(System.lineSeparator());
             }
-            name = name.replaceAll(variableStart.pattern(), "");
-            name = name.replaceAll(variableEnd.pattern(), "");
-            name = name.replaceAll(quotation.pattern(), "");
-            name = name.replaceAll(semicolon.pattern(), "SEMICOLON");
-            sb.append(name).append(System.lineSeparator());
         }
         return sb.toString();
     }
 
+    /**
+     * @param name The name of a variable
+     * @return The name as it is listed in {@link #VARIABLES_FILE}, or null if the variable is a
+     *         constant
+     */
+    static String normalizeVariable(String name) {
+        if (name.equals("True") || name.equals("False")) {
+            return null;
+        }
+        name = name.replaceAll(variableStart.pattern(), "");
+        name = name.replaceAll(variableEnd.pattern(), "");
+        name = name.replaceAll(quotation.pattern(), "");
+        return name.replaceAll(semicolon.pattern(), "SEMICOLON");
+    }
+
     public FileGT computeIfAbsent(String file,
             Function<? super String, ? extends FileGT> mappingFunction) {
         return this.fileGTs.computeIfAbsent(file, mappingFunction);
@@ -63,15 +97,55 @@ public record GroundTruth(HashMap<String, FileGT> fileGTs, Set<String> variables
         return this.fileGTs.get(fileName);
     }
 
+    /**
+     * Returns the ground truths of all files in a directory and its subdirectories. The returned
+     * map is a view of this ground truth.
+     *
+     * @param directory The path of the directory relative to the repository's root
+     * @return The ground truths of all files in the directory, sorted by their paths
+     */
+    public NavigableMap<String, FileGT> filesIn(String directory) {
+        if (directory.isEmpty()) {
+            return this.fileGTs;
+        }
+        String prefix = directory.endsWith("/") ? directory : directory + "/";
+        // All paths with the prefix lie between the prefix and the prefix with the separator's
+        // successor
+        String end = prefix.substring(0, prefix.length() - 1) + (char) ('/' + 1);
+        return this.fileGTs.subMap(prefix, true, end, false);
+    }
+
     public int size() {
         return this.fileGTs.size();
     }
 
+    /**
+     * @return The total number of lines in all file ground truths
+     */
+    public long lineCount() {
+        long lines = 0;
+        for (FileGT fileGT : this.fileGTs.values()) {
+            lines += fileGT.size();
+        }
+        return lines;
+    }
+
     public boolean isEmpty() {
         return this.fileGTs.isEmpty();
     }
 
     public void updateWith(GroundTruth updated) {
+        updateWith(updated, CommitProfile.DISABLED);
+    }
+
+    /**
+     * Updates this ground truth with the changes of the next commit. Patched file ground truths
+     * are applied to the file ground truths of this ground truth.
+     *
+     * @param updated The ground truth with the changed files of the next commit
+     * @param profile The profile of the next commit
+     */
+    public void updateWith(GroundTruth updated, CommitProfile profile) {
         // update the variables
         this.variables.addAll(updated.variables);
 
@@ -85,6 +159,18 @@ public record GroundTruth(HashMap<String, FileGT> fileGTs, Set<String> variables
                 this.fileGTs.remove(updatedFile);
             } else if (fileGT instanceof FileGT.Complete updatedFileGT) {
                 this.fileGTs.put(updatedFile, updatedFileGT);
+            } else if (fileGT instanceof FileGT.Patch patch) {
+                FileGT previous = this.fileGTs.get(updatedFile);
+                FileGT.Complete patched = previous instanceof FileGT.Complete parent
+                        ? patch.applyTo(parent, profile)
+                        : null;
+                if (patched == null) {
+                    // Like for a file that could not be parsed, the previous version is kept
+                    Logger.warn("Unable to apply the patch of {} to its previous ground truth",
+                            updatedFile);
+                } else {
+                    this.fileGTs.put(updatedFile, patched);
+                }
             } else {
                 throw new IllegalStateException("Unexpected incomplete ground truth");
             }
@@ -96,29 +182,31 @@ public record GroundTruth(HashMap<String, FileGT> fileGTs, Set<String> variables
     }
 
     public String combinedVariablesListAsString(GroundTruth other) {
-        HashSet<String> variables = new HashSet<>(this.variables);
+        // A union of two variable sets only combines their bits
+        VariableSet variables = VariableSet.copyOf(this.variables);
         variables.addAll(other.variables);
         return variablesListAsString(variables);
     }
 
     public String asPcCsvString() {
-        return generateCsv(
-                "Path;File Condition;Block Condition;Presence Condition;Line Type;start;end",
-                FileGT.Complete::csvPCLines);
+        return generateCsv(PC_CSV_HEADER, FileGT.Complete::csvPCLines);
     }
 
     public String asMatchingCsvString() {
-        return generateCsv("Path;Line Number; Counterpart", FileGT.Complete::csvMatchingLines);
+        return generateCsv(MATCHING_CSV_HEADER, FileGT.Complete::csvMatchingLines);
+    }
+
+    public String asMatchingRangesCsvString() {
+        return generateCsv(MATCHING_RANGES_CSV_HEADER, FileGT.Complete::csvMatchingRanges);
     }
 
     private String generateCsv(String header, Function<FileGT.Complete, String> lineGenerator) {
         StringBuilder sb = new StringBuilder();
         sb.append(header);
         sb.append(System.lineSeparator());
-        ArrayList<String> fileNames = new ArrayList<>(this.fileGTs.keySet());
-        Collections.sort(fileNames);
-        for (String name : fileNames) {
-            if (this.fileGTs.get(name) instanceof FileGT.Complete fileGT) {
+        // The files are already sorted by their names
+        for (FileGT file : this.fileGTs.values()) {
+            if (file instanceof FileGT.Complete fileGT) {
                 sb.append(lineGenerator.apply(fileGT));
             } else {
                 throw new IllegalStateException(
@@ -0,0 +1,381 @@
+package org.variantsync.vevos.extraction.gt;
+
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Holds the completed file ground truths of a commit that have been moved out of the heap. Only
+ * the CSV lines of a spilled file ground truth are kept, in a temporary file that is deleted when
+ * the spill is closed; the matched ranges are rendered from these lines when they are written.
+ * The CSV files of the commit are then written by streaming the lines of the spilled and the
+ * in-memory file ground truths in the same order as
+ * {@link GroundTruth#asPcCsvString()}, {@link GroundTruth#asMatchingCsvString()} and
+ * {@link GroundTruth#asMatchingRangesCsvString()}.
+ *
+ * <p>
+ * A spill can be filled concurrently by the threads that analyze the patches of a commit. If the
+ * variables of the extraction are indexed, the spill also keeps the
+ * {@link FeatureIndex.VariableRuns runs} of the variables of each spilled file, so that the file
+ * can be indexed with its commit.
+ * </p>
+ */
+public class GroundTruthSpill implements AutoCloseable {
+    private final Path directory;
+    private final TreeMap<String, Fragment> fragments;
+    private final Set<String> variables;
+    // The index whose runs of variables are kept, or null if the variables are not indexed
+    private final FeatureIndex featureIndex;
+    private final TreeMap<String, FeatureIndex.VariableRuns> variableRuns;
+    private FileChannel channel;
+    private long lineCount;
+
+    /**
+     * Initializes an empty spill. The temporary file is only created once the first file ground
+     * truth is spilled.
+     *
+     * @param directory The directory in which the temporary file is created
+     */
+    public GroundTruthSpill(Path directory) {
+        this(directory, null);
+    }
+
+    /**
+     * Initializes an empty spill that keeps the runs of the variables of spilled files for the
+     * given index.
+     *
+     * @param directory The directory in which the temporary file is created
+     * @param featureIndex The index of the variables, or null if the variables are not indexed
+     */
+    public GroundTruthSpill(Path directory, FeatureIndex featureIndex) {
+        this.directory = directory;
+        this.fragments = new TreeMap<>();
+        this.variables = new VariableSet();
+        this.featureIndex = featureIndex;
+        this.variableRuns = new TreeMap<>();
+    }
+
+    /**
+     * Appends the CSV lines of the given completed file ground truth to the temporary file.
+     *
+     * @param file The name of the file
+     * @param complete The completed ground truth of the file
+     */
+    public void add(String file, FileGT.Complete complete) {
+        byte[] pcLines = complete.csvPCLines().getBytes(StandardCharsets.UTF_8);
+        byte[] matchingLines = complete.csvMatchingLines().getBytes(StandardCharsets.UTF_8);
+        FeatureIndex.VariableRuns runs =
+                featureIndex == null ? null : featureIndex.runsOf(complete);
+        synchronized (this) {
+            try {
+                if (channel == null) {
+                    Files.createDirectories(directory);
+                    channel = FileChannel.open(Files.createTempFile(directory, "vevos-", ".spill"),
+                            StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                long offset = channel.size();
+                writeFully(channel, ByteBuffer.wrap(pcLines), offset);
+                writeFully(channel, ByteBuffer.wrap(matchingLines), offset + pcLines.length);
+                IOMetrics.written(pcLines.length + matchingLines.length);
+                fragments.put(file, new Fragment(offset, pcLines.length, matchingLines.length,
+                        complete.size()));
+                variables.addAll(complete.getVariables());
+                if (runs != null) {
+                    variableRuns.put(file, runs);
+                }
+                lineCount += complete.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reopens a spilled file ground truth that is changed by another patch of the commit. The
+     * spilled ground truth is dropped, and an empty mutable ground truth with its matching is
+     * returned. The lines have to be analyzed again and the ground truth has to be spilled again.
+     * Like in a ground truth that is held in memory, the matching of the lines is overwritten by
+     * the matching of the next patch.
+     *
+     * @param file The name of the spilled file
+     * @return A mutable ground truth with the matching of the spilled ground truth
+     */
+    public synchronized FileGT.Mutable reopen(String file) {
+        Fragment fragment = fragments.remove(file);
+        if (fragment == null) {
+            throw new IllegalArgumentException(file + " has not been spilled");
+        }
+        variableRuns.remove(file);
+        lineCount -= fragment.lineCount();
+        FileGT.Mutable reopened = new FileGT.Mutable(file);
+        reopened.growIfRequired(fragment.lineCount());
+        int[] matching = readMatching(fragment);
+        for (int i = 0; i < matching.length; i++) {
+            reopened.matching.set(i, matching[i]);
+        }
+        return reopened;
+    }
+
+    /**
+     * Reads the matching of a spilled file ground truth from its CSV lines.
+     *
+     * @return The match of each line
+     */
+    private int[] readMatching(Fragment fragment) {
+        ByteBuffer matchingLines = ByteBuffer.allocate(fragment.matchingLength());
+        try {
+            long position = fragment.offset() + fragment.pcLength();
+            while (matchingLines.hasRemaining()) {
+                position += channel.read(matchingLines, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        IOMetrics.read(fragment.matchingLength());
+
+        int[] matching = new int[fragment.lineCount()];
+        Arrays.fill(matching, -1);
+        String[] rows = new String(matchingLines.array(), StandardCharsets.UTF_8)
+                .split(System.lineSeparator());
+        for (String row : rows) {
+            // Each row consists of the file, the line, and its match, and the file might
+            // contain the separator
+            int matchSeparator = row.lastIndexOf(';');
+            int lineSeparator = row.lastIndexOf(';', matchSeparator - 1);
+            if (lineSeparator >= 0) {
+                matching[Integer.parseInt(row.substring(lineSeparator + 1, matchSeparator))] =
+                        Integer.parseInt(row.substring(matchSeparator + 1));
+            }
+        }
+        return matching;
+    }
+
+    public synchronized boolean isEmpty() {
+        return fragments.isEmpty();
+    }
+
+    /**
+     * @return The number of spilled file ground truths
+     */
+    public synchronized int size() {
+        return fragments.size();
+    }
+
+    /**
+     * @return The names of all spilled files in sorted order
+     */
+    public synchronized Set<String> files() {
+        return new TreeSet<>(fragments.keySet());
+    }
+
+    /**
+     * @return The runs of the variables of each spilled file, which are only kept if the spill
+     *         has been created for a feature index
+     */
+    public synchronized Map<String, FeatureIndex.VariableRuns> variableRuns() {
+        return Collections.unmodifiableMap(new TreeMap<>(variableRuns));
+    }
+
+    /**
+     * @return The total number of lines in all spilled file ground truths
+     */
+    public synchronized long lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Removes the entries of all spilled files from the given ground truth and adds the variables
+     * of the spilled files to it. Must be called before the remaining file ground truths are
+     * completed.
+     *
+     * @param groundTruth The ground truth from which the file ground truths have been spilled
+     */
+    public synchronized void detach(GroundTruth groundTruth) {
+        groundTruth.fileGTs().keySet().removeAll(fragments.keySet());
+        groundTruth.variables().addAll(variables);
+    }
+
+    /**
+     * Writes the presence conditions of the spilled and the given file ground truths to a CSV file.
+     * The written file is equal to {@link GroundTruth#asPcCsvString()} of a ground truth that
+     * contains all file ground truths.
+     *
+     * @param target The CSV file
+     * @param inMemory The completed ground truth that contains all files that have not been spilled
+     */
+    public void writePcCsv(Path target, GroundTruth inMemory) {
+        writeCsv(target, GroundTruth.PC_CSV_HEADER, inMemory, Section.PC);
+    }
+
+    /**
+     * Writes the line matching of the spilled and the given file ground truths to a CSV file. The
+     * written file is equal to {@link GroundTruth#asMatchingCsvString()} of a ground truth that
+     * contains all file ground truths.
+     *
+     * @param target The CSV file
+     * @param inMemory The completed ground truth that contains all files that have not been spilled
+     */
+    public void writeMatchingCsv(Path target, GroundTruth inMemory) {
+        writeCsv(target, GroundTruth.MATCHING_CSV_HEADER, inMemory, Section.MATCHING);
+    }
+
+    /**
+     * Writes the range-encoded line matching of the spilled and the given file ground truths to a
+     * CSV file. The written file is equal to {@link GroundTruth#asMatchingRangesCsvString()} of a
+     * ground truth that contains all file ground truths.
+     *
+     * @param target The CSV file
+     * @param inMemory The completed ground truth that contains all files that have not been spilled
+     */
+    public void writeMatchingRangesCsv(Path target, GroundTruth inMemory) {
+        writeCsv(target, GroundTruth.MATCHING_RANGES_CSV_HEADER, inMemory,
+                Section.MATCHING_RANGES);
+    }
+
+    private synchronized void writeCsv(Path target, String header, GroundTruth inMemory,
+            Section section) {
+        Iterator<String> memoryNames = inMemory.fileGTs().keySet().iterator();
+        Iterator<String> spilledNames = fragments.keySet().iterator();
+        long bytes = 0;
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            bytes += write(out, header + System.lineSeparator());
+            String memoryName = nextOrNull(memoryNames);
+            String spilledName = nextOrNull(spilledNames);
+            // Both sets of names are sorted and disjoint, so they are merged in order
+            while (memoryName != null || spilledName != null) {
+                String name;
+                if (memoryName == null
+                        || spilledName != null && spilledName.compareTo(memoryName) < 0) {
+                    name = spilledName;
+                    spilledName = nextOrNull(spilledNames);
+                } else {
+                    name = memoryName;
+                    memoryName = nextOrNull(memoryNames);
+                }
+                Fragment fragment = fragments.get(name);
+                if (fragment != null && section == Section.MATCHING_RANGES) {
+                    // The matched ranges are only rendered if they are exported
+                    int[] matching = readMatching(fragment);
+                    bytes += write(out, FileGT.Complete.csvMatchingRanges(name, matching.length,
+                            line -> matching[line]));
+                } else if (fragment != null) {
+                    long offset = section == Section.PC ? fragment.offset()
+                            : fragment.offset() + fragment.pcLength();
+                    int length = section == Section.PC ? fragment.pcLength()
+                            : fragment.matchingLength();
+                    transferFully(offset, length, out);
+                    bytes += length;
+                } else if (inMemory.get(name) instanceof FileGT.Complete fileGT) {
+                    bytes += write(out, switch (section) {
+                        case PC -> fileGT.csvPCLines();
+                        case MATCHING -> fileGT.csvMatchingLines();
+                        case MATCHING_RANGES -> fileGT.csvMatchingRanges();
+                    });
+                } else {
+                    throw new IllegalStateException(
+                            "Not possible to create CSV line for incomplete file ground truth");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        IOMetrics.written(bytes);
+    }
+
+    private static String nextOrNull(Iterator<String> names) {
+        return names.hasNext() ? names.next() : null;
+    }
+
+    private static int write(FileChannel out, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void transferFully(long offset, long length, FileChannel out) throws IOException {
+        long end = offset + length;
+        while (offset < end) {
+            offset += channel.transferTo(offset, end - offset, out);
+        }
+    }
+
+    /**
+     * Deletes the temporary file.
+     */
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            channel = null;
+        }
+        fragments.clear();
+        variableRuns.clear();
+    }
+
+    /**
+     * Decides when file ground truths are spilled.
+     *
+     * @param threshold The number of lines of a commit's file ground truths that may be held in
+     *        memory. Once it is exceeded, further finished file ground truths are spilled. A value
+     *        of 0 or less disables spilling.
+     * @param directory The directory for temporary files
+     */
+    public record Policy(long threshold, Path directory) {
+
+        /**
+         * @return A policy that never spills
+         */
+        public static Policy disabled() {
+            return new Policy(0, null);
+        }
+
+        public boolean isEnabled() {
+            return threshold > 0;
+        }
+    }
+
+    /**
+     * The location of a spilled file ground truth. The matching lines directly follow the presence
+     * condition lines. The matched ranges are not spilled but rendered from the matching lines.
+     */
+    private record Fragment(long offset, int pcLength, int matchingLength, int lineCount) {
+
+    }
+
+    /**
+     * The sections of a spilled file ground truth that are written to separate CSV files.
+     */
+    private enum Section {
+        PC, MATCHING, MATCHING_RANGES
+    }
+}
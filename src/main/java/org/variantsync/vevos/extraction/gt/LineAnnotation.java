@@ -2,7 +2,6 @@ package org.variantsync.vevos.extraction.gt;
 
 
 import java.io.Serializable;
-import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -18,11 +17,31 @@ public record LineAnnotation(int lineNumber, FeatureMapping featureMapping,
         implements Serializable {
 
     public final static LineAnnotation EMPTY = new LineAnnotation(-1, new FeatureMapping("True"),
-            new PresenceCondition("True"), "", Collections.singleton("True"));
+            new PresenceCondition("True"), "", VariableSet.TRUE);
+
+    /**
+     * The variables are stored as an interned {@link VariableSet}, which is shared by all lines
+     * with the same variables. The feature mapping, presence condition, and node type are
+     * interned as well, so that the annotations of lines can be compared by reference.
+     */
+    public LineAnnotation {
+        if (featureMapping != null) {
+            featureMapping = featureMapping.intern();
+        }
+        if (presenceCondition != null) {
+            presenceCondition = presenceCondition.intern();
+        }
+        if (nodeType != null) {
+            nodeType = nodeType.intern();
+        }
+        if (uniqueContainedFeatures != null) {
+            uniqueContainedFeatures = VariableSet.of(uniqueContainedFeatures);
+        }
+    }
 
     public static LineAnnotation rootAnnotation(int lineNumber) {
         return new LineAnnotation(lineNumber, new FeatureMapping("True"),
-                new PresenceCondition("True"), "ROOT", Collections.singleton("True"));
+                new PresenceCondition("True"), "ROOT", VariableSet.TRUE);
     }
 
     public int index() {
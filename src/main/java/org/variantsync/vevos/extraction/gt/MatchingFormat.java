@@ -0,0 +1,42 @@
+package org.variantsync.vevos.extraction.gt;
+
+import java.util.Locale;
+
+/**
+ * The formats in which the line matching of a commit is exported.
+ */
+public enum MatchingFormat {
+    /**
+     * One row <code>path;line;counterpart</code> for each line of each file
+     */
+    LINES,
+    /**
+     * One row <code>path;from;to;counterpartFrom</code> for each run of lines whose counterparts
+     * are consecutive, or which have no counterpart. Both <code>from</code> and <code>to</code>
+     * are inclusive. The counterpart of an unmatched run is -1.
+     */
+    RANGES,
+    /**
+     * Both formats in separate files
+     */
+    BOTH;
+
+    /**
+     * @param value The configured format, or null
+     * @return The format with the given name, or {@link #LINES} if none is configured
+     */
+    public static MatchingFormat fromProperty(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return LINES;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public boolean writesLines() {
+        return this != RANGES;
+    }
+
+    public boolean writesRanges() {
+        return this != LINES;
+    }
+}
@@ -1,8 +1,24 @@
 package org.variantsync.vevos.extraction.gt;
 
+import java.io.Serial;
 import java.io.Serializable;
 
 public record PresenceCondition(String condition) implements Serializable {
+    private static final WeakInterner<PresenceCondition> INTERNED = new WeakInterner<>();
+
+    /**
+     * @return The canonical instance of this presence condition, which can be compared by
+     *         reference
+     */
+    public PresenceCondition intern() {
+        return INTERNED.intern(this);
+    }
+
+    @Serial
+    private Object readResolve() {
+        return intern();
+    }
+
     @Override
     public String toString() {
         return condition;
@@ -0,0 +1,121 @@
+package org.variantsync.vevos.extraction.gt;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the names of variables to dense ids, so that {@link VariableSet sets of variables} can be
+ * stored as bit sets. The ids are only valid in the extraction of the current repository and are
+ * {@link #release() released} afterward. Serialized sets store the names of their variables and are
+ * encoded again when they are loaded.
+ *
+ * <p>
+ * The dictionary also interns immutable sets, so that all line annotations with the same variables
+ * share a single set. The interned sets are only weakly referenced. It can be used concurrently by
+ * any number of threads.
+ * </p>
+ */
+public final class VariableDictionary {
+    private static final VariableDictionary GLOBAL = new VariableDictionary();
+    private final ConcurrentHashMap<String, Integer> ids;
+    private final WeakInterner<VariableSet> internedSets;
+    // The name of each id. Replaced by a larger copy when it is full.
+    private volatile String[] names;
+    private int size;
+    // The number of ids that are never released, i.e., the ids of the variables of constant sets
+    private int constantIds;
+
+    private VariableDictionary() {
+        this.ids = new ConcurrentHashMap<>();
+        this.internedSets = new WeakInterner<>();
+        this.names = new String[256];
+    }
+
+    /**
+     * @return The dictionary of the extraction, which is released after each repository
+     */
+    public static VariableDictionary global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param name The name of a variable
+     * @return The id of the variable, which is assigned if the variable is not known yet
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id == null) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, 2 * size);
+                }
+                id = size++;
+                // The name is written before the id is published
+                names[id] = name;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param name The name of a variable
+     * @return The id of the variable, or -1 if the variable is not known
+     */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id The id of a variable
+     * @return The name of the variable
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return The number of known variables
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Returns the immutable set with the given variables. The bits must not be modified afterward.
+     */
+    VariableSet intern(BitSet bits) {
+        return internedSets.intern(new VariableSet(bits, true));
+    }
+
+    /**
+     * Keeps the ids of all known variables when the dictionary is released. Called once the
+     * constant sets have been created.
+     */
+    synchronized void retainKnownIds() {
+        constantIds = size;
+    }
+
+    /**
+     * Releases the ids of all variables except for the variables of constant sets, e.g.,
+     * {@link VariableSet#TRUE}, and forgets all interned sets. Afterward, all other sets that have
+     * been created before are invalid. Hence, the dictionary must only be released once the
+     * extraction of a repository is done and no ground truth of it is referenced anymore.
+     */
+    public synchronized void release() {
+        String[] retained = new String[Math.max(256, constantIds)];
+        System.arraycopy(names, 0, retained, 0, constantIds);
+        for (int id = constantIds; id < size; id++) {
+            ids.remove(names[id]);
+        }
+        size = constantIds;
+        names = retained;
+        internedSets.clear();
+    }
+}
@@ -0,0 +1,213 @@
+package org.variantsync.vevos.extraction.gt;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of variables that is stored as a bit set of their ids in the
+ * {@link VariableDictionary#global() dictionary}. The union with another variable set is a single
+ * bitwise operation.
+ *
+ * <p>
+ * Sets are either mutable, e.g., the variables of a ground truth, or immutable and interned, e.g.,
+ * the variables of a line annotation. Mutable sets must not be modified concurrently.
+ * </p>
+ */
+public final class VariableSet extends AbstractSet<String> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    /**
+     * The variables of the root annotation
+     */
+    public static final VariableSet TRUE = of(Set.of("True"));
+
+    static {
+        // The constant sets remain valid when the dictionary is released
+        VariableDictionary.global().retainKnownIds();
+    }
+
+    private final BitSet bits;
+    private final boolean immutable;
+    // Cached hash of an immutable set
+    private transient int hash;
+
+    /**
+     * Initializes an empty mutable set.
+     */
+    public VariableSet() {
+        this(new BitSet(), false);
+    }
+
+    VariableSet(BitSet bits, boolean immutable) {
+        this.bits = bits;
+        this.immutable = immutable;
+    }
+
+    /**
+     * @param variables The names of variables
+     * @return A mutable set with the given variables
+     */
+    public static VariableSet copyOf(Collection<String> variables) {
+        VariableSet copy = new VariableSet();
+        copy.addAll(variables);
+        return copy;
+    }
+
+    /**
+     * @param variables The names of variables
+     * @return The interned immutable set with the given variables
+     */
+    public static VariableSet of(Collection<String> variables) {
+        if (variables instanceof VariableSet set && set.immutable) {
+            return set;
+        }
+        return VariableDictionary.global().intern(copyOf(variables).bits);
+    }
+
+    private void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException("The set of variables is immutable");
+        }
+    }
+
+    @Override
+    public boolean add(String variable) {
+        checkMutable();
+        int id = VariableDictionary.global().id(variable);
+        if (bits.get(id)) {
+            return false;
+        }
+        bits.set(id);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> variables) {
+        if (variables instanceof VariableSet other) {
+            checkMutable();
+            int size = bits.cardinality();
+            bits.or(other.bits);
+            return bits.cardinality() != size;
+        }
+        return super.addAll(variables);
+    }
+
+    /**
+     * @param other Another set of variables
+     * @return A mutable set with the variables of this set that are not in the other set
+     */
+    public VariableSet without(VariableSet other) {
+        BitSet difference = (BitSet) bits.clone();
+        difference.andNot(other.bits);
+        return new VariableSet(difference, false);
+    }
+
+    @Override
+    public boolean remove(Object variable) {
+        checkMutable();
+        int id = variable instanceof String name ? VariableDictionary.global().lookup(name) : -1;
+        if (id < 0 || !bits.get(id)) {
+            return false;
+        }
+        bits.clear(id);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        bits.clear();
+    }
+
+    @Override
+    public boolean contains(Object variable) {
+        int id = variable instanceof String name ? VariableDictionary.global().lookup(name) : -1;
+        return id >= 0 && bits.get(id);
+    }
+
+    @Override
+    public int size() {
+        return bits.cardinality();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int next = bits.nextSetBit(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public String next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = bits.nextSetBit(next + 1);
+                return VariableDictionary.global().name(last);
+            }
+
+            @Override
+            public void remove() {
+                checkMutable();
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                bits.clear(last);
+                last = -1;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof VariableSet other) {
+            return bits.equals(other.bits);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // Must be equal to the hash of any other set with the same names
+        if (!immutable) {
+            return super.hashCode();
+        }
+        if (hash == 0) {
+            hash = super.hashCode();
+        }
+        return hash;
+    }
+
+    @Serial
+    private Object writeReplace() {
+        return new Names(toArray(new String[0]), immutable);
+    }
+
+    /**
+     * The serialized form of a set, which does not depend on the ids of the variables.
+     */
+    private record Names(String[] names, boolean immutable) implements Serializable {
+
+        @Serial
+        private Object readResolve() {
+            VariableSet set = copyOf(Arrays.asList(names));
+            return immutable ? of(set) : set;
+        }
+    }
+}
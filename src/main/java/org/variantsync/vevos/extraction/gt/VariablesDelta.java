@@ -0,0 +1,86 @@
+package org.variantsync.vevos.extraction.gt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Renders the variables of consecutive commits of the full extraction. The complete
+ * {@link GroundTruth#VARIABLES_FILE} is only written at checkpoints. For all other commits, the
+ * {@link GroundTruth#VARIABLES_DELTA_FILE} lists the variables that have been added or removed
+ * since the previously rendered commit, which is named in its first row <code>Base;commit</code>.
+ * Added variables are listed as <code>+name</code> and removed variables as <code>-name</code>.
+ *
+ * <p>
+ * Only the changed variables are normalized, so that rendering a delta does not depend on the
+ * number of variables. Deltas are independent of the commit graph, because their base is always
+ * the commit that has been rendered before.
+ * </p>
+ */
+public class VariablesDelta {
+    private final int checkpointInterval;
+    // The number of raw variables that share a normalized name
+    private final Map<String, Integer> normalizedCounts;
+    private VariableSet previous;
+    private String baseCommit;
+    private int sinceCheckpoint;
+
+    /**
+     * @param checkpointInterval The number of rendered commits from one checkpoint to the next
+     */
+    public VariablesDelta(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+        this.normalizedCounts = new HashMap<>();
+        this.previous = new VariableSet();
+    }
+
+    /**
+     * Renders the variables of the next commit.
+     *
+     * @param commit The id of the commit
+     * @param groundTruth The completed ground truth of the commit
+     * @return The name of the file that is to be written and its content
+     */
+    public Rendered render(String commit, GroundTruth groundTruth) {
+        VariableSet current = VariableSet.copyOf(groundTruth.variables());
+        TreeSet<String> added = new TreeSet<>();
+        TreeSet<String> removed = new TreeSet<>();
+        for (String variable : current.without(previous)) {
+            String name = GroundTruth.normalizeVariable(variable);
+            if (name != null && normalizedCounts.merge(name, 1, Integer::sum) == 1) {
+                added.add(name);
+            }
+        }
+        for (String variable : previous.without(current)) {
+            String name = GroundTruth.normalizeVariable(variable);
+            if (name != null && normalizedCounts.merge(name, -1, Integer::sum) == 0) {
+                normalizedCounts.remove(name);
+                removed.add(name);
+            }
+        }
+        this.previous = current;
+
+        String base = baseCommit;
+        this.baseCommit = commit;
+        if (base == null || sinceCheckpoint >= checkpointInterval) {
+            sinceCheckpoint = 1;
+            return new Rendered(GroundTruth.VARIABLES_FILE, groundTruth.variablesListAsString());
+        }
+        sinceCheckpoint++;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Base;").append(base).append(System.lineSeparator());
+        added.forEach(name -> sb.append("+").append(name).append(System.lineSeparator()));
+        removed.forEach(name -> sb.append("-").append(name).append(System.lineSeparator()));
+        return new Rendered(GroundTruth.VARIABLES_DELTA_FILE, sb.toString());
+    }
+
+    /**
+     * The rendered variables of a commit.
+     *
+     * @param fileName Either {@link GroundTruth#VARIABLES_FILE} or
+     *        {@link GroundTruth#VARIABLES_DELTA_FILE}
+     * @param content The content of the file
+     */
+    public record Rendered(String fileName, String content) {
+    }
+}
@@ -0,0 +1,140 @@
+package org.variantsync.vevos.extraction.gt;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns immutable values, so that all equal values share a single canonical instance that can be
+ * compared by reference. The canonical instances are only weakly referenced. Once no ground truth
+ * refers to a canonical instance anymore, it is released, and the next equal value that is
+ * interned becomes the canonical instance. Hence, the interned values of a repository do not
+ * outlive its extraction. It can be used concurrently by any number of threads.
+ *
+ * @param <T> The type of the interned values
+ */
+final class WeakInterner<T> {
+    private final ConcurrentHashMap<Key, Canonical<T>> canonicals;
+    private final ReferenceQueue<T> released;
+
+    WeakInterner() {
+        this.canonicals = new ConcurrentHashMap<>();
+        this.released = new ReferenceQueue<>();
+    }
+
+    /**
+     * @param value The value that is interned
+     * @return The canonical instance of the value
+     */
+    T intern(T value) {
+        Canonical<T> canonical = canonicals.get(new Probe(value));
+        T interned = canonical == null ? null : canonical.get();
+        if (interned != null) {
+            return interned;
+        }
+        expungeReleased();
+        Canonical<T> added = new Canonical<>(value, released);
+        while (true) {
+            canonical = canonicals.putIfAbsent(added, added);
+            if (canonical == null) {
+                return value;
+            }
+            interned = canonical.get();
+            if (interned != null) {
+                return interned;
+            }
+            // The canonical instance has been released, but its entry has not been expunged yet
+            canonicals.remove(canonical, canonical);
+        }
+    }
+
+    /**
+     * @return The number of canonical instances that have not been released yet
+     */
+    int size() {
+        expungeReleased();
+        return canonicals.size();
+    }
+
+    /**
+     * Forgets all canonical instances. Values that are interned afterward are not compared by
+     * reference with the values that have been interned before.
+     */
+    void clear() {
+        canonicals.clear();
+        expungeReleased();
+    }
+
+    private void expungeReleased() {
+        for (Reference<? extends T> reference; (reference = released.poll()) != null;) {
+            canonicals.remove(reference, reference);
+        }
+    }
+
+    /**
+     * A key of the canonical instances, which is equal to any other key with an equal value.
+     */
+    private interface Key {
+        Object value();
+    }
+
+    private static boolean equalKeys(Key key, int hash, Object other) {
+        if (key == other) {
+            return true;
+        }
+        if (!(other instanceof Key otherKey) || hash != otherKey.hashCode()) {
+            return false;
+        }
+        Object value = key.value();
+        return value != null && value.equals(otherKey.value());
+    }
+
+    /**
+     * The weak reference to a canonical instance. Its hash is kept after the instance has been
+     * released, so that its entry can still be removed.
+     */
+    private static final class Canonical<T> extends WeakReference<T> implements Key {
+        private final int hash;
+
+        private Canonical(T value, ReferenceQueue<T> released) {
+            super(value, released);
+            this.hash = value.hashCode();
+        }
+
+        @Override
+        public Object value() {
+            return get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return equalKeys(this, hash, other);
+        }
+    }
+
+    /**
+     * A key that is only used to look up the canonical instance of a value.
+     */
+    private record Probe(Object value) implements Key {
+        private Probe {
+            Objects.requireNonNull(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return equalKeys(this, hashCode(), other);
+        }
+    }
+}
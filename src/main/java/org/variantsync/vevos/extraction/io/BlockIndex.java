@@ -0,0 +1,348 @@
+package org.variantsync.vevos.extraction.io;
+
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Gives random access to the blocks of single files in a CSV file of presence conditions without
+ * parsing the whole file. The CSV file is memory-mapped, and an index of the rows of each file is
+ * either loaded from a binary index file next to it, or built by scanning the mapped CSV file
+ * once.
+ *
+ * <p>
+ * The index file <code>&lt;csv&gt;.idx</code> starts with a magic number, the size and the
+ * modification time of the indexed CSV file, and the number of files. It is followed by one
+ * entry per file with the offset of the file's first row, the length of its path, and the offset
+ * after its last row, sorted by the UTF-8 bytes of the paths. An index file that does not match
+ * its CSV file is ignored. The rows of each file must be contiguous, as they are in all CSV files
+ * exported by {@link GroundTruth}, and a CSV file must be smaller than 2 GiB.
+ * </p>
+ */
+public final class BlockIndex {
+    /**
+     * The suffix that is appended to the name of a CSV file for the name of its index file
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+    private static final int MAGIC = 0x56474958;
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4;
+    private static final int ENTRY_BYTES = 3 * 4;
+    private final ByteBuffer csv;
+    private final ByteBuffer index;
+    private final int fileCount;
+
+    private BlockIndex(ByteBuffer csv, ByteBuffer index) {
+        this.csv = csv;
+        this.index = index;
+        this.fileCount = index.getInt(HEADER_BYTES - 4);
+    }
+
+    /**
+     * A block of a file as it is exported in the CSV file.
+     *
+     * @param featureMapping The normalized feature mapping of the block
+     * @param presenceCondition The normalized presence condition of the block
+     * @param nodeType The type of the block, <code>ROOT</code> for the block of the whole file
+     * @param lineStartInclusive The first line of the block
+     * @param lineEndInclusive The last line of the block
+     */
+    public record Block(String featureMapping, String presenceCondition, String nodeType,
+            int lineStartInclusive, int lineEndInclusive) {
+
+        public boolean contains(int lineNumber) {
+            return lineStartInclusive <= lineNumber && lineNumber <= lineEndInclusive;
+        }
+
+        public boolean isRoot() {
+            return nodeType.equals("ROOT");
+        }
+    }
+
+    /**
+     * Opens the given CSV file of presence conditions and its index file, if it exists and is up
+     * to date.
+     *
+     * @param csv A file that has been written with the header {@link GroundTruth#PC_CSV_HEADER}
+     * @return The index of the CSV file
+     */
+    public static BlockIndex open(Path csv) {
+        ByteBuffer mappedCsv = map(csv);
+        IOMetrics.read(mappedCsv.capacity());
+        long modified = lastModified(csv);
+        Path indexFile = indexFileOf(csv);
+        if (Files.exists(indexFile)) {
+            ByteBuffer index = map(indexFile);
+            if (index.capacity() >= HEADER_BYTES && index.getInt(0) == MAGIC
+                    && index.getLong(4) == mappedCsv.capacity() && index.getLong(12) == modified) {
+                return new BlockIndex(mappedCsv, index);
+            }
+        }
+        return new BlockIndex(mappedCsv, scan(csv, mappedCsv, modified));
+    }
+
+    /**
+     * Converts the given CSV file to its indexed form by writing its index file, so that it does
+     * not have to be scanned when it is opened.
+     *
+     * @param csv A file that has been written with the header {@link GroundTruth#PC_CSV_HEADER}
+     * @return The path of the written index file
+     */
+    public static Path writeIndex(Path csv) {
+        ByteBuffer index = scan(csv, map(csv), lastModified(csv));
+        Path indexFile = indexFileOf(csv);
+        try {
+            Files.write(indexFile, index.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        IOMetrics.written(index.capacity());
+        return indexFile;
+    }
+
+    public static Path indexFileOf(Path csv) {
+        return csv.resolveSibling(csv.getFileName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return The number of files with blocks in the CSV file
+     */
+    public int fileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @param file The path of a file relative to the repository's root
+     * @return Whether the CSV file contains blocks of the file
+     */
+    public boolean contains(String file) {
+        return find(file.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    /**
+     * Parses the rows of a single file.
+     *
+     * @param file The path of a file relative to the repository's root
+     * @return The blocks of the file in the order of the CSV file, or an empty list if the CSV
+     *         file does not contain the file
+     */
+    public List<Block> blocks(String file) {
+        int entry = find(file.getBytes(StandardCharsets.UTF_8));
+        if (entry < 0) {
+            return Collections.emptyList();
+        }
+        int position = rowsStart(entry);
+        int end = rowsEnd(entry);
+        int pathLength = pathLength(entry);
+        List<Block> blocks = new ArrayList<>();
+        while (position < end) {
+            int rowEnd = rowEnd(csv, position, end);
+            blocks.add(parseBlock(position + pathLength, rowEnd));
+            position = rowEnd + 1;
+        }
+        return blocks;
+    }
+
+    /**
+     * Determines the presence condition of a single line, which is the presence condition of the
+     * innermost block that contains the line.
+     *
+     * @param file The path of a file relative to the repository's root
+     * @param lineNumber The number of the line, starting at 1
+     * @return The normalized presence condition of the line, or null if the CSV file does not
+     *         contain the file or no block contains the line
+     */
+    public String presenceCondition(String file, int lineNumber) {
+        return presenceCondition(blocks(file), lineNumber);
+    }
+
+    static String presenceCondition(List<Block> blocks, int lineNumber) {
+        // The blocks of a file that are not the root block have distinct first lines, so the
+        // innermost block is the one that starts last
+        Block innermost = null;
+        for (Block block : blocks) {
+            if (block.contains(lineNumber) && (innermost == null || innermost.isRoot()
+                    || !block.isRoot()
+                            && block.lineStartInclusive() > innermost.lineStartInclusive())) {
+                innermost = block;
+            }
+        }
+        return innermost == null ? null : innermost.presenceCondition();
+    }
+
+    private int rowsStart(int entry) {
+        return index.getInt(HEADER_BYTES + entry * ENTRY_BYTES);
+    }
+
+    private int pathLength(int entry) {
+        return index.getInt(HEADER_BYTES + entry * ENTRY_BYTES + 4);
+    }
+
+    private int rowsEnd(int entry) {
+        return index.getInt(HEADER_BYTES + entry * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * Binary search over the entries, which are sorted by the unsigned bytes of their paths.
+     *
+     * @return The index of the entry of the path, or a negative number if there is none
+     */
+    private int find(byte[] path) {
+        int low = 0;
+        int high = fileCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(rowsStart(middle), pathLength(middle), path);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int start, int length, byte[] path) {
+        int common = Math.min(length, path.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(csv.get(start + i), path[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, path.length);
+    }
+
+    /**
+     * @return The position of the line break that ends the row at the given position
+     */
+    private static int rowEnd(ByteBuffer csv, int position, int end) {
+        while (position < end && csv.get(position) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Parses the columns after the path of a row, i.e., the constant file condition, the feature
+     * mapping, the presence condition, the node type, and the first and last line.
+     */
+    private Block parseBlock(int columnsStart, int rowEnd) {
+        String columns = string(csv, columnsStart, rowEnd);
+        // Columns are split from the end, like the paths of BlockDelta's rows
+        int endSeparator = columns.lastIndexOf(';');
+        int startSeparator = columns.lastIndexOf(';', endSeparator - 1);
+        int typeSeparator = columns.lastIndexOf(';', startSeparator - 1);
+        int pcSeparator = columns.lastIndexOf(';', typeSeparator - 1);
+        // The columns start with the separator after the path and the file condition
+        int fmSeparator = columns.indexOf(';', 1);
+        return new Block(columns.substring(fmSeparator + 1, pcSeparator),
+                columns.substring(pcSeparator + 1, typeSeparator),
+                columns.substring(typeSeparator + 1, startSeparator),
+                Integer.parseInt(columns.substring(startSeparator + 1, endSeparator)),
+                Integer.parseInt(columns.substring(endSeparator + 1)));
+    }
+
+    private static String string(ByteBuffer csv, int start, int end) {
+        if (end > start && csv.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        csv.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the index of the given mapped CSV file in the layout of an index file.
+     */
+    private static ByteBuffer scan(Path path, ByteBuffer csv, long modified) {
+        List<Entry> entries = new ArrayList<>();
+        Set<String> files = new HashSet<>();
+        int end = csv.capacity();
+        // Skip the header
+        int position = rowEnd(csv, 0, end) + 1;
+        Entry entry = null;
+        while (position < end) {
+            int rowEnd = rowEnd(csv, position, end);
+            String row = string(csv, position, rowEnd);
+            if (!row.isEmpty()) {
+                // The path is followed by the file condition and five more columns
+                int separator = row.length();
+                for (int i = 0; i < 6; i++) {
+                    separator = row.lastIndexOf(';', separator - 1);
+                }
+                if (separator < 0) {
+                    throw new IllegalArgumentException(
+                            path + " is not a CSV file of presence conditions: " + row);
+                }
+                String file = row.substring(0, separator);
+                if (entry == null || !entry.file.equals(file)) {
+                    if (!files.add(file)) {
+                        throw new IllegalArgumentException(
+                                "The rows of " + file + " in " + path + " are not contiguous");
+                    }
+                    entry = new Entry(file, file.getBytes(StandardCharsets.UTF_8), position);
+                    entries.add(entry);
+                }
+                entry.rowsEnd = Math.min(rowEnd + 1, end);
+            }
+            position = rowEnd + 1;
+        }
+
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.path, b.path));
+        ByteBuffer index = ByteBuffer.allocate(HEADER_BYTES + entries.size() * ENTRY_BYTES);
+        index.putInt(MAGIC).putLong(csv.capacity()).putLong(modified).putInt(entries.size());
+        for (Entry file : entries) {
+            index.putInt(file.rowsStart).putInt(file.path.length).putInt(file.rowsEnd);
+        }
+        return index;
+    }
+
+    private static final class Entry {
+        private final String file;
+        private final byte[] path;
+        private final int rowsStart;
+        private int rowsEnd;
+
+        private Entry(String file, byte[] path, int rowsStart) {
+            this.file = file;
+            this.path = path;
+            this.rowsStart = rowsStart;
+        }
+    }
+
+    private static ByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(file + " is too large to be indexed");
+            }
+            // The mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.variantsync.vevos.extraction.io;
+
+import org.variantsync.vevos.extraction.gt.FeatureIndex;
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Answers queries about the locations of variables over the history of a repository from a
+ * {@link FeatureIndex} that has been saved to {@link GroundTruth#FEATURE_INDEX_FILE}. The index
+ * file is memory-mapped. Only the commits and files are decoded when the index is opened, the
+ * variables are found by a binary search, and only their postings are read.
+ *
+ * <p>
+ * The index only holds the files that changed in each commit. Hence, the commits of a variable
+ * are the commits that changed a file in which the variable appears. The locations of a variable
+ * in a file remain valid until a later commit changes or {@link #removedFiles(String) removes} the
+ * file.
+ * </p>
+ */
+public class FeatureIndexReader {
+    public static final int MAGIC = 0x56474649;
+    // The offset and length of the name, and the offset and number of the postings
+    public static final int VARIABLE_BYTES = 4 * 4;
+    private static final int POSTING_BYTES = 4 * 4;
+    private final ByteBuffer buffer;
+    private final String[] commits;
+    private final HashMap<String, Integer> commitIds;
+    private final String[] files;
+    // The files that have been removed by each commit
+    private final HashMap<String, Set<String>> removedFiles;
+    private final int variableCount;
+    private final int variablesStart;
+
+    /**
+     * A run of lines of a file whose presence condition contains a variable before or after a
+     * commit.
+     *
+     * @param commit The id of the commit
+     * @param version Whether the lines are located before or after the commit
+     * @param file The path of the file relative to the repository's root
+     * @param lineStartInclusive The first line of the run
+     * @param lineEndInclusive The last line of the run
+     */
+    public record Location(String commit, GroundTruthReader.Version version, String file,
+            int lineStartInclusive, int lineEndInclusive) {
+    }
+
+    private FeatureIndexReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < 4 || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a feature index");
+        }
+        int[] position = {4};
+        this.commits = readStrings(position);
+        this.commitIds = new HashMap<>();
+        for (int i = 0; i < commits.length; i++) {
+            commitIds.put(commits[i], i);
+        }
+        this.files = readStrings(position);
+        this.removedFiles = new HashMap<>();
+        int removalCount = buffer.getInt(position[0]);
+        for (int i = 0; i < removalCount; i++) {
+            int removal = position[0] + 4 + 8 * i;
+            removedFiles.computeIfAbsent(commits[buffer.getInt(removal)], c -> new TreeSet<>())
+                    .add(files[buffer.getInt(removal + 4)]);
+        }
+        position[0] += 4 + 8 * removalCount;
+        this.variableCount = buffer.getInt(position[0]);
+        this.variablesStart = position[0] + 4;
+    }
+
+    /**
+     * @param file A file to which a feature index has been saved
+     * @return The reader of the index
+     */
+    public static FeatureIndexReader open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping remains valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IOMetrics.read(channel.size());
+            return new FeatureIndexReader(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return All indexed commits in the order in which they have been indexed
+     */
+    public List<String> commits() {
+        return List.of(commits);
+    }
+
+    /**
+     * @return All variables with at least one posting, sorted by the UTF-8 bytes of their names
+     */
+    public List<String> variables() {
+        List<String> variables = new ArrayList<>(variableCount);
+        for (int i = 0; i < variableCount; i++) {
+            variables.add(name(i));
+        }
+        return variables;
+    }
+
+    /**
+     * @param variable The normalized name of a variable
+     * @return All locations of the variable, ordered by the order in which their commits have been
+     *         indexed, their files, and their first lines
+     */
+    public List<Location> locations(String variable) {
+        int entry = find(variable);
+        if (entry < 0) {
+            return Collections.emptyList();
+        }
+        return locations(entry, 0, postingCount(entry));
+    }
+
+    /**
+     * @param variable The normalized name of a variable
+     * @param commit The id of a commit
+     * @return The locations of the variable in the files that changed in the commit, after the
+     *         commit, ordered by their files and first lines
+     */
+    public List<Location> locations(String variable, String commit) {
+        return locations(variable, commit, GroundTruthReader.Version.AFTER);
+    }
+
+    /**
+     * @param variable The normalized name of a variable
+     * @param commit The id of a commit
+     * @param version Whether the locations before or after the commit are returned
+     * @return The locations of the variable in the files that changed in the commit, ordered by
+     *         their files and first lines
+     */
+    public List<Location> locations(String variable, String commit,
+            GroundTruthReader.Version version) {
+        int entry = find(variable);
+        Integer commitId = commitIds.get(commit);
+        if (entry < 0 || commitId == null) {
+            return Collections.emptyList();
+        }
+        // The postings are sorted by their keys, which are ordered by commit and version
+        int key = 2 * commitId + (version == GroundTruthReader.Version.AFTER ? 1 : 0);
+        int from = firstPosting(entry, key);
+        int to = firstPosting(entry, key + 1);
+        return locations(entry, from, to);
+    }
+
+    /**
+     * @param commit The id of a commit
+     * @return The paths of the files that have been removed by the commit, in sorted order
+     */
+    public Set<String> removedFiles(String commit) {
+        return Collections.unmodifiableSet(removedFiles.getOrDefault(commit, Set.of()));
+    }
+
+    /**
+     * @param variable The normalized name of a variable
+     * @return The commits in which the variable appears in a changed file, in the order in which
+     *         they have been indexed
+     */
+    public Set<String> commits(String variable) {
+        Set<String> variableCommits = new LinkedHashSet<>();
+        int entry = find(variable);
+        if (entry >= 0) {
+            int postings = postingsOffset(entry);
+            for (int i = 0; i < postingCount(entry); i++) {
+                variableCommits.add(commits[buffer.getInt(postings + i * POSTING_BYTES) / 2]);
+            }
+        }
+        return variableCommits;
+    }
+
+    /**
+     * @param variable The normalized name of a variable
+     * @return The paths of all files in which the variable appears, in sorted order
+     */
+    public Set<String> files(String variable) {
+        Set<String> variableFiles = new TreeSet<>();
+        int entry = find(variable);
+        if (entry >= 0) {
+            int postings = postingsOffset(entry);
+            for (int i = 0; i < postingCount(entry); i++) {
+                variableFiles.add(files[buffer.getInt(postings + i * POSTING_BYTES + 4)]);
+            }
+        }
+        return variableFiles;
+    }
+
+    private List<Location> locations(int entry, int from, int to) {
+        List<Location> locations = new ArrayList<>(to - from);
+        int postings = postingsOffset(entry);
+        for (int i = from; i < to; i++) {
+            int posting = postings + i * POSTING_BYTES;
+            int key = buffer.getInt(posting);
+            locations.add(new Location(commits[key / 2],
+                    key % 2 == 1 ? GroundTruthReader.Version.AFTER
+                            : GroundTruthReader.Version.BEFORE,
+                    files[buffer.getInt(posting + 4)], buffer.getInt(posting + 8),
+                    buffer.getInt(posting + 12)));
+        }
+        return locations;
+    }
+
+    /**
+     * @return The index of the first posting of the variable whose key is at least the given key
+     */
+    private int firstPosting(int entry, int key) {
+        int postings = postingsOffset(entry);
+        int low = 0;
+        int high = postingCount(entry);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(postings + middle * POSTING_BYTES) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int find(String variable) {
+        byte[] name = variable.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = variableCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareName(middle, name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareName(int entry, byte[] name) {
+        int start = buffer.getInt(variablesStart + entry * VARIABLE_BYTES);
+        int length = buffer.getInt(variablesStart + entry * VARIABLE_BYTES + 4);
+        int common = Math.min(length, name.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(buffer.get(start + i), name[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, name.length);
+    }
+
+    private String name(int entry) {
+        int start = buffer.getInt(variablesStart + entry * VARIABLE_BYTES);
+        byte[] bytes = new byte[buffer.getInt(variablesStart + entry * VARIABLE_BYTES + 4)];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int postingsOffset(int entry) {
+        return buffer.getInt(variablesStart + entry * VARIABLE_BYTES + 8);
+    }
+
+    private int postingCount(int entry) {
+        return buffer.getInt(variablesStart + entry * VARIABLE_BYTES + 12);
+    }
+
+    private String[] readStrings(int[] position) {
+        String[] strings = new String[buffer.getInt(position[0])];
+        position[0] += 4;
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt(position[0])];
+            buffer.get(position[0] + 4, bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            position[0] += 4 + bytes.length;
+        }
+        return strings;
+    }
+}
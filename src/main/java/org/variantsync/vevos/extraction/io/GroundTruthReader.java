@@ -0,0 +1,240 @@
+package org.variantsync.vevos.extraction.io;
+
+import org.variantsync.vevos.extraction.gt.BlockDelta;
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Reads the blocks and presence conditions of single files at single commits from the results of
+ * a full or a fast extraction without loading whole CSV files. The CSV files of a commit are
+ * opened as {@link BlockIndex memory-mapped indices} on first access.
+ *
+ * <p>
+ * The full extraction writes the ground truth of all files after each commit. The fast extraction
+ * only writes the ground truths of the files that changed in a commit, before and after the
+ * commit. Files whose blocks only moved are restored from the ground truth before the commit and
+ * the {@link BlockDelta offsets} of their blocks.
+ * </p>
+ */
+public class GroundTruthReader {
+    // The number of commits whose indices are kept open
+    private static final int OPEN_COMMITS = 256;
+    private final Path dataDir;
+    private final LinkedHashMap<String, Commit> commits;
+
+    /**
+     * The state of the files relative to a commit.
+     */
+    public enum Version {
+        /**
+         * The files before the commit, only available in the results of the fast extraction
+         */
+        BEFORE,
+        /**
+         * The files after the commit
+         */
+        AFTER
+    }
+
+    /**
+     * @param dataDir The directory with the results of all commits of a repository, i.e.,
+     *        <code>repository/data</code>
+     */
+    public GroundTruthReader(Path dataDir) {
+        this.dataDir = dataDir;
+        this.commits = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+                return size() > OPEN_COMMITS;
+            }
+        };
+    }
+
+    /**
+     * Converts the results of all commits to their indexed form by writing the index file of each
+     * CSV file of presence conditions.
+     *
+     * @param dataDir The directory with the results of all commits of a repository
+     * @return The number of written index files
+     */
+    public static int writeIndices(Path dataDir) {
+        try (Stream<Path> commitDirs = Files.list(dataDir)) {
+            int written = 0;
+            for (Path commitDir : commitDirs.toList()) {
+                for (String csv : List.of(GroundTruth.CODE_VARIABILITY_CSV,
+                        GroundTruth.CODE_VARIABILITY_CSV_BEFORE,
+                        GroundTruth.CODE_VARIABILITY_CSV_AFTER)) {
+                    if (Files.exists(commitDir.resolve(csv))) {
+                        BlockIndex.writeIndex(commitDir.resolve(csv));
+                        written++;
+                    }
+                }
+            }
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param commit The id of a commit
+     * @param file The path of a file relative to the repository's root
+     * @return The blocks of the file after the commit, or an empty list if no ground truth of the
+     *         file has been written for the commit
+     */
+    public List<BlockIndex.Block> blocks(String commit, String file) {
+        return blocks(commit, file, Version.AFTER);
+    }
+
+    /**
+     * @param commit The id of a commit
+     * @param file The path of a file relative to the repository's root
+     * @param version Whether the blocks before or after the commit are read
+     * @return The blocks of the file, or an empty list if no ground truth of the file has been
+     *         written for the commit
+     */
+    public List<BlockIndex.Block> blocks(String commit, String file, Version version) {
+        return commit(commit).blocks(file, version);
+    }
+
+    /**
+     * @param commit The id of a commit
+     * @param file The path of a file relative to the repository's root
+     * @param lineNumber The number of the line after the commit, starting at 1
+     * @return The normalized presence condition of the line after the commit, or null if the
+     *         line is unknown
+     */
+    public String presenceCondition(String commit, String file, int lineNumber) {
+        return presenceCondition(commit, file, lineNumber, Version.AFTER);
+    }
+
+    /**
+     * @param commit The id of a commit
+     * @param file The path of a file relative to the repository's root
+     * @param lineNumber The number of the line in the given version, starting at 1
+     * @param version Whether the line is looked up before or after the commit
+     * @return The normalized presence condition of the line, or null if the line is unknown
+     */
+    public String presenceCondition(String commit, String file, int lineNumber,
+            Version version) {
+        return BlockIndex.presenceCondition(blocks(commit, file, version), lineNumber);
+    }
+
+    private Commit commit(String commit) {
+        Commit opened = commits.get(commit);
+        if (opened == null) {
+            opened = new Commit(dataDir.resolve(commit));
+            commits.put(commit, opened);
+        }
+        return opened;
+    }
+
+    /**
+     * The indices of the CSV files of a single commit, which are opened on first access.
+     */
+    private static final class Commit {
+        private final Path commitDir;
+        private final boolean full;
+        private BlockIndex after;
+        private BlockIndex before;
+        // The offsets of the files whose blocks only moved, null until they are read
+        private Map<String, String> offsets;
+
+        private Commit(Path commitDir) {
+            this.commitDir = commitDir;
+            this.full = Files.exists(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV));
+            if (!full && !Files.exists(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_AFTER))) {
+                throw new IllegalArgumentException("No ground truth has been written for "
+                        + commitDir.getFileName());
+            }
+        }
+
+        private List<BlockIndex.Block> blocks(String file, Version version) {
+            if (full) {
+                if (version == Version.BEFORE) {
+                    throw new IllegalArgumentException(
+                            "The full extraction only writes the ground truth after a commit");
+                }
+                if (after == null) {
+                    after = BlockIndex.open(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV));
+                }
+                return after.blocks(file);
+            }
+            if (before == null) {
+                before = BlockIndex
+                        .open(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_BEFORE));
+                after = BlockIndex.open(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_AFTER));
+            }
+            if (version == Version.BEFORE) {
+                return before.blocks(file);
+            }
+            List<BlockIndex.Block> blocks = after.blocks(file);
+            if (!blocks.isEmpty()) {
+                return blocks;
+            }
+            String fileOffsets = offsets().get(file);
+            return fileOffsets == null ? Collections.emptyList()
+                    : moved(before.blocks(file), fileOffsets);
+        }
+
+        private Map<String, String> offsets() {
+            if (offsets == null) {
+                offsets = new HashMap<>();
+                Path deltaCsv = commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_DELTA);
+                if (Files.exists(deltaCsv)) {
+                    try {
+                        List<String> rows = Files.readAllLines(deltaCsv, StandardCharsets.UTF_8);
+                        IOMetrics.read(Files.size(deltaCsv));
+                        for (String row : rows.subList(Math.min(1, rows.size()), rows.size())) {
+                            // Paths might contain the separator, so the offsets are split from
+                            // the end
+                            int separator = row.lastIndexOf(';');
+                            if (separator >= 0) {
+                                offsets.put(row.substring(0, separator),
+                                        row.substring(separator + 1));
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            return offsets;
+        }
+
+        /**
+         * Moves the blocks of a file before a commit by the runs of offsets of the delta CSV file.
+         */
+        private static List<BlockIndex.Block> moved(List<BlockIndex.Block> blocksBefore,
+                String fileOffsets) {
+            List<BlockIndex.Block> blocks = new ArrayList<>(blocksBefore.size());
+            for (String run : fileOffsets.split(",")) {
+                int count = Integer.parseInt(run.substring(0, run.indexOf('*')));
+                int startOffset =
+                        Integer.parseInt(run.substring(run.indexOf('*') + 1, run.indexOf(':')));
+                int endOffset = Integer.parseInt(run.substring(run.indexOf(':') + 1));
+                for (int i = 0; i < count; i++) {
+                    BlockIndex.Block block = blocksBefore.get(blocks.size());
+                    blocks.add(new BlockIndex.Block(block.featureMapping(),
+                            block.presenceCondition(), block.nodeType(),
+                            block.lineStartInclusive() + startOffset,
+                            block.lineEndInclusive() + endOffset));
+                }
+            }
+            return blocks;
+        }
+    }
+}
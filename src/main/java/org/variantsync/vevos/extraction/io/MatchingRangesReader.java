@@ -0,0 +1,149 @@
+package org.variantsync.vevos.extraction.io;
+
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.MatchingFormat;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reads a line matching that has been exported in the {@link MatchingFormat#RANGES range-encoded}
+ * format. Only the runs are held in memory, the counterparts of single lines are expanded when
+ * they are requested.
+ */
+public class MatchingRangesReader {
+    // The runs of each file, ordered by their first line
+    private final TreeMap<String, Runs> files;
+
+    private MatchingRangesReader(TreeMap<String, Runs> files) {
+        this.files = files;
+    }
+
+    /**
+     * Reads the runs of all files from the given CSV file.
+     *
+     * @param csv A file that has been written with the header
+     *        {@link GroundTruth#MATCHING_RANGES_CSV_HEADER}
+     * @return The reader of the matching
+     */
+    public static MatchingRangesReader read(Path csv) {
+        TreeMap<String, List<int[]>> rows = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null || !header.equals(GroundTruth.MATCHING_RANGES_CSV_HEADER)) {
+                throw new IllegalArgumentException(csv + " is not a range-encoded matching");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                // Paths might contain the separator, so the numbers are parsed from the end
+                int counterpartStart = line.lastIndexOf(';');
+                int toStart = line.lastIndexOf(';', counterpartStart - 1);
+                int fromStart = line.lastIndexOf(';', toStart - 1);
+                rows.computeIfAbsent(line.substring(0, fromStart), f -> new ArrayList<>())
+                        .add(new int[] {Integer.parseInt(line.substring(fromStart + 1, toStart)),
+                                Integer.parseInt(line.substring(toStart + 1, counterpartStart)),
+                                Integer.parseInt(line.substring(counterpartStart + 1))});
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        IOMetrics.read(csv.toFile().length());
+        TreeMap<String, Runs> files = new TreeMap<>();
+        rows.forEach((file, runs) -> files.put(file, Runs.of(runs)));
+        return new MatchingRangesReader(files);
+    }
+
+    /**
+     * @return The names of all files with a matching in sorted order
+     */
+    public Set<String> files() {
+        return files.keySet();
+    }
+
+    /**
+     * @param file The name of a file
+     * @return The number of matched line numbers of the file, including line number 0
+     */
+    public int lineCount(String file) {
+        Runs runs = files.get(file);
+        return runs == null ? 0 : runs.to[runs.to.length - 1] + 1;
+    }
+
+    /**
+     * Expands the counterpart of a single line.
+     *
+     * @param file The name of the file
+     * @param lineNumber The number of the line
+     * @return The number of the matched line, or -1 if the line has no counterpart or is unknown
+     */
+    public int counterpart(String file, int lineNumber) {
+        Runs runs = files.get(file);
+        if (runs == null) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(runs.from, lineNumber);
+        // Otherwise, the line is part of the run that starts before it
+        index = index >= 0 ? index : -index - 2;
+        if (index < 0 || lineNumber > runs.to[index] || runs.counterpartFrom[index] == -1) {
+            return -1;
+        }
+        return runs.counterpartFrom[index] + lineNumber - runs.from[index];
+    }
+
+    /**
+     * Expands all runs to the format in which {@link GroundTruth#asMatchingCsvString()} exports
+     * the matching, i.e., one row for each line.
+     *
+     * @return The expanded matching, including the header
+     */
+    public String asMatchingCsvString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(GroundTruth.MATCHING_CSV_HEADER);
+        sb.append(System.lineSeparator());
+        files.forEach((file, runs) -> {
+            for (int run = 0; run < runs.from.length; run++) {
+                for (int lineNumber = runs.from[run]; lineNumber <= runs.to[run]; lineNumber++) {
+                    sb.append(file);
+                    sb.append(";");
+                    sb.append(lineNumber);
+                    sb.append(";");
+                    sb.append(runs.counterpartFrom[run] == -1 ? -1
+                            : runs.counterpartFrom[run] + lineNumber - runs.from[run]);
+                    sb.append(System.lineSeparator());
+                }
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * The runs of a single file in columns.
+     */
+    private record Runs(int[] from, int[] to, int[] counterpartFrom) {
+
+        private static Runs of(List<int[]> rows) {
+            rows.sort((a, b) -> Integer.compare(a[0], b[0]));
+            Runs runs = new Runs(new int[rows.size()], new int[rows.size()],
+                    new int[rows.size()]);
+            for (int i = 0; i < rows.size(); i++) {
+                runs.from[i] = rows.get(i)[0];
+                runs.to[i] = rows.get(i)[1];
+                runs.counterpartFrom[i] = rows.get(i)[2];
+            }
+            return runs;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package org.variantsync.vevos.extraction.io;
 
 import org.tinylog.Logger;
+import org.variantsync.vevos.extraction.events.SerdeEvent;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class Serde {
 
@@ -19,6 +23,8 @@ public class Serde {
      * @return The loaded object
      */
     public static <V> V deserialize(File file) {
+        SerdeEvent event = new SerdeEvent();
+        event.begin();
         try (ObjectInputStream is = new ObjectInputStream(new FileInputStream(file))) {
             Object obj = is.readObject();
             try {
@@ -26,6 +32,9 @@ public class Serde {
                     Logger.error("Read a null from file {}", file);
                     throw new NullPointerException();
                 }
+                long bytes = file.length();
+                IOMetrics.read(bytes);
+                commit(event, "deserialize", file.toPath(), bytes);
                 return (V) obj;
             } catch (ClassCastException e) {
                 Logger.error("Was not able to cast loaded object: {}", obj);
@@ -51,6 +60,8 @@ public class Serde {
             Logger.error("Tried to serialize a null value to file {}", file);
             throw new NullPointerException();
         }
+        SerdeEvent event = new SerdeEvent();
+        event.begin();
         try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(file))) {
             os.writeObject(obj);
         } catch (IOException e) {
@@ -58,6 +69,9 @@ public class Serde {
             Logger.error(e);
             throw new UncheckedIOException(e);
         }
+        long bytes = file.length();
+        IOMetrics.written(bytes);
+        commit(event, "serialize", file.toPath(), bytes);
     }
 
     /**
@@ -67,12 +81,18 @@ public class Serde {
      * @param text Text to write into the file
      */
     public static void writeToFile(Path path, String text, OpenOption... options) {
+        SerdeEvent event = new SerdeEvent();
+        event.begin();
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
         try {
-            Files.writeString(path, text, options);
+            Files.write(path, bytes, options);
         } catch (IOException e) {
             Logger.error(e);
             throw new UncheckedIOException(e);
         }
+        IOMetrics.written(bytes.length);
+        commit(event, Arrays.asList(options).contains(StandardOpenOption.APPEND) ? "append"
+                : "write", path, bytes.length);
     }
 
     /**
@@ -96,4 +116,17 @@ public class Serde {
     public static void appendText(Path path, String text) {
         writeToFile(path, text, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
     }
+
+    /**
+     * Commits the given Flight Recorder event for an operation on the given file.
+     */
+    private static void commit(SerdeEvent event, String operation, Path path, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.path = path.toString();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
 }
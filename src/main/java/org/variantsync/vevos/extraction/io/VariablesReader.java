@@ -0,0 +1,80 @@
+package org.variantsync.vevos.extraction.io;
+
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.VariablesDelta;
+import org.variantsync.vevos.extraction.metrics.IOMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Reads the variables of a commit that have been written by the full extraction, either as a
+ * complete {@link GroundTruth#VARIABLES_FILE} or as a {@link VariablesDelta delta} to the commit
+ * that has been written before.
+ */
+public class VariablesReader {
+
+    private VariablesReader() {
+    }
+
+    /**
+     * Materializes the variables of a commit by applying all deltas since the last checkpoint.
+     *
+     * @param dataDir The directory with the results of all commits of a repository, i.e.,
+     *        <code>repository/data</code>
+     * @param commit The id of the commit
+     * @return The sorted variables of the commit, as listed in {@link GroundTruth#VARIABLES_FILE}
+     */
+    public static TreeSet<String> read(Path dataDir, String commit) {
+        Deque<List<String>> deltas = new ArrayDeque<>();
+        String next = commit;
+        while (!Files.exists(dataDir.resolve(next).resolve(GroundTruth.VARIABLES_FILE))) {
+            Path deltaFile = dataDir.resolve(next).resolve(GroundTruth.VARIABLES_DELTA_FILE);
+            if (!Files.exists(deltaFile)) {
+                throw new IllegalArgumentException("No variables have been written for " + next);
+            }
+            List<String> delta = readLines(deltaFile);
+            if (delta.isEmpty() || !delta.get(0).startsWith("Base;")) {
+                throw new IllegalArgumentException(deltaFile + " is not a delta of variables");
+            }
+            deltas.push(delta);
+            next = delta.get(0).substring("Base;".length());
+        }
+
+        TreeSet<String> variables = new TreeSet<>();
+        for (String name : readLines(dataDir.resolve(next).resolve(GroundTruth.VARIABLES_FILE))) {
+            if (!name.isEmpty()) {
+                variables.add(name);
+            }
+        }
+        // The deltas are applied from the oldest to the newest commit
+        while (!deltas.isEmpty()) {
+            List<String> delta = deltas.pop();
+            for (String row : delta.subList(1, delta.size())) {
+                if (row.startsWith("+")) {
+                    variables.add(row.substring(1));
+                } else if (row.startsWith("-")) {
+                    variables.remove(row.substring(1));
+                }
+            }
+        }
+        return variables;
+    }
+
+    private static List<String> readLines(Path file) {
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            IOMetrics.read(Files.size(file));
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
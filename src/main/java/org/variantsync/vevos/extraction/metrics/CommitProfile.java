@@ -0,0 +1,183 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Records the time spent in each {@link Phase} and the amount of processed data for a single
+ * commit. A profile can be updated concurrently, e.g., if the patches of a commit are analyzed in
+ * parallel.
+ */
+public class CommitProfile {
+    /**
+     * A profile that ignores all measurements. Used if profiling is disabled.
+     */
+    public static final CommitProfile DISABLED = new CommitProfile("", "", false);
+
+    private final String commit;
+    private final String stage;
+    private final boolean enabled;
+    private final LongAdder[] phaseNanos;
+    private final LongAdder files;
+    private final LongAdder lines;
+    private final LongAdder nodes;
+    private final LongAdder hookNanos;
+    private final long startNanos;
+
+    /**
+     * Starts the profile of a commit.
+     *
+     * @param commit The id of the commit
+     * @param stage The stage of the extraction in which the commit is processed (e.g., analysis or
+     *        postprocessing)
+     */
+    public CommitProfile(String commit, String stage) {
+        this(commit, stage, true);
+    }
+
+    private CommitProfile(String commit, String stage, boolean enabled) {
+        this.commit = commit;
+        this.stage = stage;
+        this.enabled = enabled;
+        this.phaseNanos = new LongAdder[Phase.values().length];
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+        this.files = new LongAdder();
+        this.lines = new LongAdder();
+        this.nodes = new LongAdder();
+        this.hookNanos = new LongAdder();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The current time in nanoseconds, or 0 if profiling is disabled
+     */
+    public long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since the given start time to the given phase.
+     *
+     * @param phase The phase in which the time was spent
+     * @param startNanos A start time obtained by {@link #now()}
+     */
+    public void addSince(Phase phase, long startNanos) {
+        if (enabled) {
+            phaseNanos[phase.ordinal()].add(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Adds the given amount of time to the given phase.
+     *
+     * @param phase The phase in which the time was spent
+     * @param nanos The spent time in nanoseconds
+     */
+    public void add(Phase phase, long nanos) {
+        if (enabled) {
+            phaseNanos[phase.ordinal()].add(nanos);
+        }
+    }
+
+    /**
+     * Measures the time required by the given operation.
+     *
+     * @param phase The phase to which the time is added
+     * @param operation The measured operation
+     * @param <T> The type of the operation's result
+     * @return The result of the operation
+     */
+    public <T> T time(Phase phase, Supplier<T> operation) {
+        long start = now();
+        T result = operation.get();
+        addSince(phase, start);
+        return result;
+    }
+
+    public void addFiles(long count) {
+        if (enabled) {
+            files.add(count);
+        }
+    }
+
+    public void addLines(long count) {
+        if (enabled) {
+            lines.add(count);
+        }
+    }
+
+    public void addNodes(long count) {
+        if (enabled) {
+            nodes.add(count);
+        }
+    }
+
+    /**
+     * Adds time that the commit's own thread spent in the extraction's hooks. All remaining time
+     * between starting the profile and {@link #finishParsing()} was spent by DiffDetective.
+     *
+     * @param startNanos A start time obtained by {@link #now()}
+     */
+    public void addHookTimeSince(long startNanos) {
+        if (enabled) {
+            hookNanos.add(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Attributes the time that passed since starting the profile and that was not spent in the
+     * extraction's hooks to {@link Phase#PARSING}. Must be called once, after DiffDetective
+     * processed all patches of the commit.
+     */
+    public void finishParsing() {
+        if (enabled) {
+            phaseNanos[Phase.PARSING.ordinal()].add(elapsedNanos() - hookNanos.sum());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The nanoseconds that passed since the profile was started
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Creates an immutable snapshot of the profile's measurements.
+     *
+     * @return The measurements of the commit
+     */
+    public Measurement finish() {
+        long[] nanos = new long[phaseNanos.length];
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = phaseNanos[i].sum();
+        }
+        return new Measurement(commit, stage, elapsedNanos(), nanos, files.sum(), lines.sum(),
+                nodes.sum());
+    }
+
+    /**
+     * The measurements of a single commit.
+     *
+     * @param commit The id of the commit
+     * @param stage The stage of the extraction
+     * @param totalNanos The wall time from starting to finishing the profile
+     * @param phaseNanos The time spent in each phase, indexed by {@link Phase#ordinal()}
+     * @param files The number of processed files
+     * @param lines The number of processed lines
+     * @param nodes The number of analyzed variation diff nodes
+     */
+    public record Measurement(String commit, String stage, long totalNanos, long[] phaseNanos,
+            long files, long lines, long nodes) {
+
+        public long nanos(Phase phase) {
+            return phaseNanos[phase.ordinal()];
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters for the I/O of the extraction. Files are read and written through the
+ * static methods of {@link org.variantsync.vevos.extraction.io.Serde} by all repositories, which is
+ * why these counters are not bound to a single repository.
+ */
+public final class IOMetrics {
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final Map<String, LongAdder> pendingTasks = new ConcurrentHashMap<>();
+
+    private IOMetrics() {
+    }
+
+    public static void written(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public static void read(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * Returns the counter of the tasks that have been submitted to the given I/O pool but have not
+     * been completed yet.
+     *
+     * @param pool The name of the pool
+     * @return The counter of pending tasks
+     */
+    public static LongAdder pendingTasks(String pool) {
+        return pendingTasks.computeIfAbsent(pool, p -> new LongAdder());
+    }
+
+    public static long bytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public static long bytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return The number of pending tasks of each I/O pool
+     */
+    public static Map<String, Long> pendingTasks() {
+        Map<String, Long> snapshot = new ConcurrentHashMap<>();
+        pendingTasks.forEach((pool, count) -> snapshot.put(pool, count.sum()));
+        return snapshot;
+    }
+}
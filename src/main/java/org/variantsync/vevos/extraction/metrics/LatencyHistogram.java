@@ -0,0 +1,63 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies with fixed bucket boundaries that can be updated concurrently without
+ * locking.
+ */
+public class LatencyHistogram {
+    /**
+     * The upper bounds of the buckets in seconds. The last, implicit bucket is unbounded.
+     */
+    public static final double[] BOUNDS =
+            {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60};
+
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum;
+
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[BOUNDS.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.sum = new DoubleAdder();
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void observe(long nanos) {
+        double seconds = nanos / 1e9;
+        int bucket = 0;
+        while (bucket < BOUNDS.length && seconds > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sum.add(seconds);
+    }
+
+    /**
+     * @return The cumulative number of observations that are less than or equal to each bound,
+     *         followed by the total number of observations
+     */
+    public long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    /**
+     * @return The sum of all observed latencies in seconds
+     */
+    public double sum() {
+        return sum.sum();
+    }
+}
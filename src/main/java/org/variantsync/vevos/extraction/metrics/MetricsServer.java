@@ -0,0 +1,207 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes the metrics of a running extraction in the Prometheus text format under
+ * http://localhost:&lt;port&gt;/metrics. The server is bound to the loopback address and uses the
+ * JDK's built-in HTTP server. All values are read from the existing counters when the endpoint is
+ * scraped, so the server does not add any work to the extraction itself.
+ */
+public class MetricsServer implements AutoCloseable {
+    public static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ProgressTracker progressTracker;
+    private final PhaseHistograms histograms;
+
+    /**
+     * Starts a server on the given port.
+     *
+     * @param port The port on the loopback address
+     * @param progressTracker The tracker that knows the metrics of all repositories
+     * @param histograms The latency histograms of all phases
+     */
+    public MetricsServer(int port, ProgressTracker progressTracker, PhaseHistograms histograms) {
+        this.progressTracker = progressTracker;
+        this.histograms = histograms;
+        try {
+            this.server = HttpServer
+                    .create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            Logger.error("Was not able to start the metrics endpoint on port {}", port);
+            throw new UncheckedIOException(e);
+        }
+        this.server.createContext(PATH, this::handle);
+        this.server.start();
+        Logger.info("Serving metrics under http://localhost:{}{}", port, PATH);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * @return The current metrics in the Prometheus text format
+     */
+    public String render() {
+        StringBuilder sb = new StringBuilder();
+
+        // Counters of each repository
+        var repositories = progressTracker.repositories();
+        header(sb, "vevos_commits_processed_total", "counter",
+                "Number of commits processed by the analysis");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_commits_processed_total", repo(metrics),
+                    metrics.processedCommits());
+        }
+        header(sb, "vevos_commits_failed_total", "counter",
+                "Number of commits for which no ground truth could be extracted");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_commits_failed_total", repo(metrics), metrics.failedCommits());
+        }
+        header(sb, "vevos_commits_empty_total", "counter",
+                "Number of commits without changes to analyzed files");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_commits_empty_total", repo(metrics), metrics.emptyCommits());
+        }
+        header(sb, "vevos_commits_deferred_total", "counter",
+                "Number of commits deferred because they exceeded their budget");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_commits_deferred_total", repo(metrics), metrics.deferredCommits());
+        }
+        header(sb, "vevos_blob_cache_hits_total", "counter",
+                "Number of files whose annotations were reused from the blob cache");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_blob_cache_hits_total", repo(metrics), metrics.blobCacheHits());
+        }
+        header(sb, "vevos_blob_cache_misses_total", "counter",
+                "Number of files whose blob was not found in the blob cache");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_blob_cache_misses_total", repo(metrics), metrics.blobCacheMisses());
+        }
+        header(sb, "vevos_stage_completed_commits", "gauge",
+                "Number of commits completed in the current stage of each repository");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_stage_completed_commits", stage(metrics),
+                    metrics.progress().completed());
+        }
+        header(sb, "vevos_stage_total_commits", "gauge",
+                "Number of commits of the current stage of each repository, -1 if unknown");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_stage_total_commits", stage(metrics), metrics.progress().total());
+        }
+        header(sb, "vevos_gt_cache_files", "gauge",
+                "Number of serialized ground truths in DiffDetective's output directory");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_gt_cache_files", repo(metrics), metrics.cacheFiles());
+        }
+        header(sb, "vevos_gt_cache_bytes", "gauge",
+                "Size of the serialized ground truths in DiffDetective's output directory");
+        for (RepoMetrics metrics : repositories) {
+            sample(sb, "vevos_gt_cache_bytes", repo(metrics), metrics.cacheBytes());
+        }
+
+        // I/O
+        header(sb, "vevos_io_bytes_written_total", "counter", "Number of bytes written");
+        sample(sb, "vevos_io_bytes_written_total", "", IOMetrics.bytesWritten());
+        header(sb, "vevos_io_bytes_read_total", "counter", "Number of bytes read");
+        sample(sb, "vevos_io_bytes_read_total", "", IOMetrics.bytesRead());
+        header(sb, "vevos_io_pending_tasks", "gauge",
+                "Number of tasks that have been submitted to an I/O pool and not completed yet");
+        for (Map.Entry<String, Long> pool : new TreeMap<>(IOMetrics.pendingTasks()).entrySet()) {
+            sample(sb, "vevos_io_pending_tasks", "pool=\"%s\"".formatted(escape(pool.getKey())),
+                    pool.getValue());
+        }
+
+        // Latencies
+        header(sb, "vevos_phase_duration_seconds", "histogram",
+                "Time spent per commit in each phase of the extraction");
+        for (var stage : new TreeMap<>(histograms.histograms()).entrySet()) {
+            for (var phase : new TreeMap<>(stage.getValue()).entrySet()) {
+                String labels = "stage=\"%s\",phase=\"%s\"".formatted(escape(stage.getKey()),
+                        escape(phase.getKey()));
+                long[] counts = phase.getValue().cumulativeCounts();
+                for (int i = 0; i < LatencyHistogram.BOUNDS.length; i++) {
+                    sample(sb, "vevos_phase_duration_seconds_bucket",
+                            labels + ",le=\"" + LatencyHistogram.BOUNDS[i] + "\"", counts[i]);
+                }
+                long count = counts[counts.length - 1];
+                sample(sb, "vevos_phase_duration_seconds_bucket", labels + ",le=\"+Inf\"",
+                        count);
+                sb.append("vevos_phase_duration_seconds_sum{").append(labels).append("} ")
+                        .append(phase.getValue().sum()).append("\n");
+                sample(sb, "vevos_phase_duration_seconds_count", labels, count);
+            }
+        }
+
+        // Heap
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(sb, "jvm_heap_used_bytes", "gauge", "Used heap memory");
+        sample(sb, "jvm_heap_used_bytes", "", heap.getUsed());
+        header(sb, "jvm_heap_committed_bytes", "gauge", "Committed heap memory");
+        sample(sb, "jvm_heap_committed_bytes", "", heap.getCommitted());
+        header(sb, "jvm_heap_max_bytes", "gauge", "Maximum heap memory, -1 if undefined");
+        sample(sb, "jvm_heap_max_bytes", "", heap.getMax());
+        return sb.toString();
+    }
+
+    private String repo(RepoMetrics metrics) {
+        return "repository=\"%s\"".formatted(escape(metrics.repositoryName()));
+    }
+
+    private String stage(RepoMetrics metrics) {
+        return "repository=\"%s\",stage=\"%s\"".formatted(escape(metrics.repositoryName()),
+                escape(progressTracker.stage(metrics)));
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(" ").append(help).append("\n");
+        sb.append("# TYPE ").append(name).append(" ").append(type).append("\n");
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append("{").append(labels).append("}");
+        }
+        sb.append(" ").append(value).append("\n");
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Stops the server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
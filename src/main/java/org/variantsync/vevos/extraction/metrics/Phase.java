@@ -0,0 +1,27 @@
+package org.variantsync.vevos.extraction.metrics;
+
+/**
+ * The phases in which the extraction of a commit's ground truth spends its time.
+ */
+public enum Phase {
+    /**
+     * Parsing the commit's diffs into variation diffs. This is done by DiffDetective.
+     */
+    PARSING,
+    /**
+     * Analyzing the nodes of the variation diffs and annotating the lines of each file.
+     */
+    NODE_ANALYSIS,
+    /**
+     * Aggregating the line annotations of each file to blocks.
+     */
+    BLOCK_AGGREGATION,
+    /**
+     * Rendering the ground truth as CSV.
+     */
+    CSV_RENDERING,
+    /**
+     * Reading and writing files.
+     */
+    IO
+}
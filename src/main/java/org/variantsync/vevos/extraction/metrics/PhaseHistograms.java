@@ -0,0 +1,46 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of each {@link Phase} and of the total time per commit, separated by the
+ * stage of the extraction. The histograms are fed with the measurements of finished
+ * {@link CommitProfile profiles}.
+ */
+public class PhaseHistograms {
+    /**
+     * The name under which the total time per commit is recorded.
+     */
+    public static final String TOTAL = "TOTAL";
+
+    // stage -> phase -> histogram
+    private final Map<String, Map<String, LatencyHistogram>> histograms;
+
+    public PhaseHistograms() {
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records the measurements of a commit.
+     *
+     * @param measurement The measurements of a finished profile
+     */
+    public void observe(CommitProfile.Measurement measurement) {
+        Map<String, LatencyHistogram> ofStage =
+                histograms.computeIfAbsent(measurement.stage(), s -> new ConcurrentHashMap<>());
+        ofStage.computeIfAbsent(TOTAL, p -> new LatencyHistogram())
+                .observe(measurement.totalNanos());
+        for (Phase phase : Phase.values()) {
+            ofStage.computeIfAbsent(phase.name(), p -> new LatencyHistogram())
+                    .observe(measurement.nanos(phase));
+        }
+    }
+
+    /**
+     * @return The histograms of each stage and phase
+     */
+    public Map<String, Map<String, LatencyHistogram>> histograms() {
+        return histograms;
+    }
+}
@@ -0,0 +1,159 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Collects the {@link CommitProfile profiles} of all commits of a repository and writes them as a
+ * machine-readable report. The report consists of one CSV file with a row per commit and one CSV
+ * file with percentile summaries for each phase and counter.
+ */
+public class ProfileReport {
+    public static final String PROFILE_FILE = "PROFILE.csv";
+    public static final String PROFILE_SUMMARY_FILE = "PROFILE_SUMMARY.csv";
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 1.0};
+
+    private final boolean enabled;
+    private final PhaseHistograms histograms;
+    private final ConcurrentLinkedQueue<CommitProfile.Measurement> measurements;
+
+    /**
+     * @param enabled Whether commits are profiled. If false, all profiles are
+     *        {@link CommitProfile#DISABLED} and no report is written.
+     */
+    public ProfileReport(boolean enabled) {
+        this(enabled, null);
+    }
+
+    /**
+     * @param enabled Whether a report with the measurements of all commits is written
+     * @param histograms The histograms to which the measurements of each commit are added, or null.
+     *        Commits are profiled if a report is written or histograms are given.
+     */
+    public ProfileReport(boolean enabled, PhaseHistograms histograms) {
+        this.enabled = enabled;
+        this.histograms = histograms;
+        this.measurements = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Starts the profile of a commit.
+     *
+     * @param commit The id of the commit
+     * @param stage The stage of the extraction
+     * @return A new profile, or {@link CommitProfile#DISABLED} if profiling is disabled
+     */
+    public CommitProfile begin(String commit, String stage) {
+        return enabled || histograms != null ? new CommitProfile(commit, stage)
+                : CommitProfile.DISABLED;
+    }
+
+    /**
+     * Finishes the given profile and adds its measurements to the report.
+     *
+     * @param profile The finished profile
+     */
+    public void end(CommitProfile profile) {
+        if (!profile.isEnabled()) {
+            return;
+        }
+        CommitProfile.Measurement measurement = profile.finish();
+        if (histograms != null) {
+            histograms.observe(measurement);
+        }
+        if (enabled) {
+            measurements.add(measurement);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes the report to the given directory. Nothing is written if profiling is disabled.
+     *
+     * @param directory The directory of the repository's results
+     */
+    public void write(Path directory) {
+        if (!enabled) {
+            return;
+        }
+        List<CommitProfile.Measurement> all = new ArrayList<>(measurements);
+        Serde.writeToFile(directory.resolve(PROFILE_FILE), commitsAsCsv(all));
+        Serde.writeToFile(directory.resolve(PROFILE_SUMMARY_FILE), summaryAsCsv(all));
+    }
+
+    private static String commitsAsCsv(List<CommitProfile.Measurement> all) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Commit;Stage;Total [ns]");
+        for (Phase phase : Phase.values()) {
+            sb.append(";").append(phase.name()).append(" [ns]");
+        }
+        sb.append(";Files;Lines;Nodes").append(System.lineSeparator());
+        for (CommitProfile.Measurement m : all) {
+            sb.append(m.commit()).append(";").append(m.stage()).append(";").append(m.totalNanos());
+            for (Phase phase : Phase.values()) {
+                sb.append(";").append(m.nanos(phase));
+            }
+            sb.append(";").append(m.files()).append(";").append(m.lines()).append(";")
+                    .append(m.nodes()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static String summaryAsCsv(List<CommitProfile.Measurement> all) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Stage;Metric;Count;Sum");
+        for (double percentile : PERCENTILES) {
+            sb.append(";p").append(Math.round(percentile * 100));
+        }
+        sb.append(System.lineSeparator());
+        for (String stage : all.stream().map(CommitProfile.Measurement::stage).distinct()
+                .sorted().toList()) {
+            List<CommitProfile.Measurement> ofStage =
+                    all.stream().filter(m -> m.stage().equals(stage)).toList();
+            appendSummary(sb, stage, "Total [ns]", ofStage, CommitProfile.Measurement::totalNanos);
+            for (Phase phase : Phase.values()) {
+                appendSummary(sb, stage, phase.name() + " [ns]", ofStage, m -> m.nanos(phase));
+            }
+            appendSummary(sb, stage, "Files", ofStage, CommitProfile.Measurement::files);
+            appendSummary(sb, stage, "Lines", ofStage, CommitProfile.Measurement::lines);
+            appendSummary(sb, stage, "Nodes", ofStage, CommitProfile.Measurement::nodes);
+        }
+        return sb.toString();
+    }
+
+    private static void appendSummary(StringBuilder sb, String stage, String metric,
+            List<CommitProfile.Measurement> measurements,
+            ToLongFunction<CommitProfile.Measurement> value) {
+        long[] values = measurements.stream().mapToLong(value).sorted().toArray();
+        sb.append(stage).append(";").append(metric).append(";").append(values.length).append(";")
+                .append(Arrays.stream(values).sum());
+        for (double percentile : PERCENTILES) {
+            sb.append(";").append(percentile(values, percentile));
+        }
+        sb.append(System.lineSeparator());
+    }
+
+    /**
+     * Determines the given percentile with the nearest-rank method.
+     *
+     * @param sortedValues The values in ascending order
+     * @param percentile The percentile in the range (0, 1]
+     * @return The value at the percentile, or 0 if there are no values
+     */
+    static long percentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sortedValues.length);
+        return sortedValues[Math.max(0, rank - 1)];
+    }
+}
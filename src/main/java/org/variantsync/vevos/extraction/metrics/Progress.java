@@ -0,0 +1,56 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The progress of the current stage of a repository's extraction, e.g., the analysis or the
+ * postprocessing of all commits. Steps can be counted concurrently by any number of threads.
+ */
+public class Progress {
+    private final LongAdder completed;
+    private volatile String stage;
+    private volatile long total;
+
+    /**
+     * Initializes the progress of a repository whose first stage has not started yet.
+     */
+    public Progress() {
+        this.completed = new LongAdder();
+        this.stage = "pending";
+        this.total = -1;
+    }
+
+    /**
+     * Starts a new stage and resets the number of completed steps.
+     *
+     * @param stage The name of the stage
+     * @param total The number of steps of the stage, or -1 if it is unknown
+     */
+    public void begin(String stage, long total) {
+        this.completed.reset();
+        this.total = total;
+        this.stage = stage;
+    }
+
+    /**
+     * Counts a completed step of the current stage.
+     */
+    public void step() {
+        completed.increment();
+    }
+
+    public String stage() {
+        return stage;
+    }
+
+    /**
+     * @return The number of steps of the current stage, or -1 if it is unknown
+     */
+    public long total() {
+        return total;
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+}
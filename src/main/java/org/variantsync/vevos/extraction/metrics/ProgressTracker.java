@@ -0,0 +1,267 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the progress of all repositories of an extraction. The tracker periodically determines
+ * the throughput of each repository over a sliding window, estimates the remaining time, logs the
+ * progress, and writes a status file with the per-repository and global progress.
+ */
+public class ProgressTracker implements AutoCloseable {
+    public static final String STATUS_FILE = "STATUS.txt";
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Path statusFile;
+    private final Duration interval;
+    private final Duration window;
+    private final Map<RepoMetrics, Throughput> active;
+    private final List<RepoMetrics> finished;
+    private final long startNanos;
+    private ScheduledExecutorService reporter;
+
+    /**
+     * Initializes a tracker without any repositories.
+     *
+     * @param statusFile The file to which the status is written
+     * @param interval The interval in which the status is reported. Periodic reports are disabled
+     *        if the interval is zero.
+     * @param window The duration over which the throughput is averaged
+     */
+    public ProgressTracker(Path statusFile, Duration interval, Duration window) {
+        this.statusFile = statusFile;
+        this.interval = interval;
+        this.window = window;
+        this.active = new ConcurrentHashMap<>();
+        this.finished = new ArrayList<>();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts the periodic reports.
+     */
+    public synchronized void start() {
+        if (interval.isZero() || reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts tracking the given repository.
+     *
+     * @param metrics The metrics of the repository
+     */
+    public void register(RepoMetrics metrics) {
+        active.put(metrics, new Throughput(window));
+    }
+
+    /**
+     * Stops tracking the given repository. Its counters are still included in the global status.
+     *
+     * @param metrics The metrics of the repository
+     */
+    public synchronized void finish(RepoMetrics metrics) {
+        if (active.remove(metrics) != null) {
+            finished.add(metrics);
+        }
+    }
+
+    /**
+     * @return The metrics of all active and finished repositories
+     */
+    public synchronized List<RepoMetrics> repositories() {
+        List<RepoMetrics> repositories = new ArrayList<>(finished);
+        repositories.addAll(active.keySet());
+        return repositories;
+    }
+
+    /**
+     * Returns the stage of the given repository's extraction, or 'done' if it has been finished.
+     *
+     * @param metrics The metrics of the repository
+     * @return The current stage
+     */
+    public String stage(RepoMetrics metrics) {
+        return active.containsKey(metrics) ? metrics.progress().stage() : "done";
+    }
+
+    /**
+     * Stops the periodic reports and writes the final status.
+     */
+    @Override
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        report();
+    }
+
+    /**
+     * Samples the progress of all active repositories, logs it, and writes the status file.
+     */
+    synchronized void report() {
+        long now = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Updated: ").append(LocalDateTime.now().format(TIME_FORMAT))
+                .append(System.lineSeparator());
+        sb.append("Running for: ").append(format(Duration.ofNanos(now - startNanos)))
+                .append(System.lineSeparator());
+        Runtime runtime = Runtime.getRuntime();
+        sb.append("Heap: %d MiB used of %d MiB max".formatted(
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20))
+                .append(System.lineSeparator());
+
+        long processed = 0;
+        long failed = 0;
+        long empty = 0;
+        double rate = 0;
+        StringBuilder repositories = new StringBuilder();
+        for (Map.Entry<RepoMetrics, Throughput> entry : active.entrySet()) {
+            RepoMetrics metrics = entry.getKey();
+            Progress progress = metrics.progress();
+            double repoRate = entry.getValue().sample(now, progress);
+            rate += repoRate;
+            processed += metrics.processedCommits();
+            failed += metrics.failedCommits();
+            empty += metrics.emptyCommits();
+            String line = "%s [%s]: %s commits, %.2f commits/s, ETA %s, %d failed, %d empty"
+                    .formatted(metrics.repositoryName(), progress.stage(), fraction(progress),
+                            repoRate, eta(progress, repoRate), metrics.failedCommits(),
+                            metrics.emptyCommits());
+            Logger.info(line);
+            repositories.append("  ").append(line).append(System.lineSeparator());
+        }
+        for (RepoMetrics metrics : finished) {
+            processed += metrics.processedCommits();
+            failed += metrics.failedCommits();
+            empty += metrics.emptyCommits();
+            repositories.append("  %s [done]: %d commits, %d failed, %d empty".formatted(
+                    metrics.repositoryName(), metrics.processedCommits(), metrics.failedCommits(),
+                    metrics.emptyCommits())).append(System.lineSeparator());
+        }
+        sb.append("Repositories: %d active, %d finished".formatted(active.size(),
+                finished.size())).append(System.lineSeparator());
+        sb.append("Global: %d commits analyzed, %.2f commits/s, %d failed, %d empty"
+                .formatted(processed, rate, failed, empty)).append(System.lineSeparator());
+        sb.append(repositories);
+        write(sb.toString());
+    }
+
+    private void write(String status) {
+        try {
+            Files.createDirectories(statusFile.toAbsolutePath().getParent());
+            // Replace the status atomically so that readers never see a partial file
+            Path tmp = statusFile.resolveSibling(statusFile.getFileName() + ".tmp");
+            Files.writeString(tmp, status);
+            Files.move(tmp, statusFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The status is informational and must never stop the extraction
+            Logger.warn("Was not able to write the status file {}: {}", statusFile,
+                    e.getMessage());
+        }
+    }
+
+    private static String fraction(Progress progress) {
+        long total = progress.total();
+        if (total < 0) {
+            return String.valueOf(progress.completed());
+        }
+        return "%d/%d (%.1f%%)".formatted(progress.completed(), total,
+                total == 0 ? 100.0 : 100.0 * progress.completed() / total);
+    }
+
+    /**
+     * Estimates the remaining time of the current stage of a repository's extraction.
+     *
+     * @param progress The progress of the repository
+     * @param rate The number of completed steps per second
+     * @return The formatted remaining time, or 'unknown' if the total or the rate is unknown
+     */
+    public static String eta(Progress progress, double rate) {
+        long remaining = progress.total() - progress.completed();
+        if (progress.total() < 0 || rate <= 0) {
+            return "unknown";
+        }
+        return format(Duration.ofSeconds((long) Math.ceil(Math.max(0, remaining) / rate)));
+    }
+
+    private static String format(Duration duration) {
+        return "%dd %02dh %02dm %02ds".formatted(duration.toDays(), duration.toHoursPart(),
+                duration.toMinutesPart(), duration.toSecondsPart());
+    }
+
+    /**
+     * The samples of a repository's progress within a sliding window.
+     */
+    public static class Throughput {
+        private final long windowNanos;
+        // Pairs of sample time and completed steps, oldest first
+        private final Deque<long[]> samples;
+        private String stage;
+
+        /**
+         * @param window The duration over which the throughput is averaged
+         */
+        public Throughput(Duration window) {
+            this.windowNanos = window.toNanos();
+            this.samples = new ArrayDeque<>();
+        }
+
+        /**
+         * Adds a sample and determines the throughput within the window.
+         *
+         * @param now The time of the sample in nanoseconds, as returned by System.nanoTime()
+         * @param progress The progress of the repository
+         * @return The completed steps per second
+         */
+        public double sample(long now, Progress progress) {
+            if (!progress.stage().equals(stage)) {
+                // The throughput of different stages is not comparable
+                samples.clear();
+                stage = progress.stage();
+            }
+            samples.addLast(new long[] {now, progress.completed()});
+            // Keep the youngest sample that is older than the window as a reference point
+            while (samples.size() > 2) {
+                Iterator<long[]> iterator = samples.iterator();
+                iterator.next();
+                if (now - iterator.next()[0] < windowNanos) {
+                    break;
+                }
+                samples.removeFirst();
+            }
+            long[] oldest = samples.getFirst();
+            if (now == oldest[0]) {
+                return 0;
+            }
+            return (progress.completed() - oldest[1]) / ((now - oldest[0]) / 1e9);
+        }
+    }
+}
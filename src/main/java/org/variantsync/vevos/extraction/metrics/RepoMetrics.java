@@ -0,0 +1,183 @@
+package org.variantsync.vevos.extraction.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the extraction of a single repository. The counters can be updated concurrently by
+ * any number of threads without contention on a shared lock.
+ */
+public class RepoMetrics {
+    private final String repositoryName;
+    private final LongAdder processedCommits;
+    private final LongAdder failedCommits;
+    private final LongAdder emptyCommits;
+    private final LongAdder deferredCommits;
+    private final LongAdder blobCacheHits;
+    private final LongAdder blobCacheMisses;
+    private final LongAdder cacheFiles;
+    private final LongAdder cacheBytes;
+    private final ProfileReport profiles;
+    private final Progress progress;
+
+    /**
+     * Initializes all counters of the given repository with 0. Commits are not profiled.
+     *
+     * @param repositoryName The name of the repository
+     */
+    public RepoMetrics(String repositoryName) {
+        this(repositoryName, false);
+    }
+
+    /**
+     * Initializes all counters of the given repository with 0.
+     *
+     * @param repositoryName The name of the repository
+     * @param profilingEnabled Whether the time spent in each phase should be profiled per commit
+     */
+    public RepoMetrics(String repositoryName, boolean profilingEnabled) {
+        this(repositoryName, profilingEnabled, null);
+    }
+
+    /**
+     * Initializes all counters of the given repository with 0.
+     *
+     * @param repositoryName The name of the repository
+     * @param profilingEnabled Whether a report with the profile of each commit should be written
+     * @param histograms The histograms to which the profile of each commit is added, or null
+     */
+    public RepoMetrics(String repositoryName, boolean profilingEnabled,
+            PhaseHistograms histograms) {
+        this.repositoryName = repositoryName;
+        this.processedCommits = new LongAdder();
+        this.failedCommits = new LongAdder();
+        this.emptyCommits = new LongAdder();
+        this.deferredCommits = new LongAdder();
+        this.blobCacheHits = new LongAdder();
+        this.blobCacheMisses = new LongAdder();
+        this.cacheFiles = new LongAdder();
+        this.cacheBytes = new LongAdder();
+        this.profiles = new ProfileReport(profilingEnabled, histograms);
+        this.progress = new Progress();
+    }
+
+    /**
+     * Counts a processed commit and advances the progress of the current stage.
+     *
+     * @return The number of processed commits including the counted one. The value is only exact if
+     *         no other thread counts a commit at the same time, which is sufficient for progress
+     *         reporting.
+     */
+    public long commitProcessed() {
+        processedCommits.increment();
+        progress.step();
+        return processedCommits.sum();
+    }
+
+    /**
+     * Counts a commit for which no ground truth could be extracted.
+     */
+    public void commitFailed() {
+        failedCommits.increment();
+    }
+
+    /**
+     * Counts a commit without any changes to analyzed files.
+     */
+    public void commitEmpty() {
+        emptyCommits.increment();
+    }
+
+    /**
+     * Counts a commit whose analysis has been aborted because it exceeded its budget.
+     */
+    public void commitDeferred() {
+        deferredCommits.increment();
+    }
+
+    /**
+     * Counts a file whose annotations have been reused from the blob cache.
+     */
+    public void blobCacheHit() {
+        blobCacheHits.increment();
+    }
+
+    /**
+     * Counts a file whose blob has not been found in the blob cache.
+     */
+    public void blobCacheMiss() {
+        blobCacheMisses.increment();
+    }
+
+    /**
+     * Counts a write of a serialized ground truth to DiffDetective's output directory.
+     *
+     * @param previousBytes The size of the file before it was written, 0 if it did not exist
+     * @param bytes The size of the written file
+     */
+    public void cacheFileWritten(long previousBytes, long bytes) {
+        if (previousBytes == 0) {
+            cacheFiles.increment();
+        }
+        cacheBytes.add(bytes - previousBytes);
+    }
+
+    /**
+     * Counts the deletion of a serialized ground truth from DiffDetective's output directory.
+     *
+     * @param bytes The size of the deleted file
+     */
+    public void cacheFileDeleted(long bytes) {
+        cacheFiles.decrement();
+        cacheBytes.add(-bytes);
+    }
+
+    /**
+     * @return The report that collects the profiles of the repository's commits
+     */
+    public ProfileReport profiles() {
+        return profiles;
+    }
+
+    /**
+     * @return The progress of the repository's current extraction stage
+     */
+    public Progress progress() {
+        return progress;
+    }
+
+    public String repositoryName() {
+        return repositoryName;
+    }
+
+    public long processedCommits() {
+        return processedCommits.sum();
+    }
+
+    public long failedCommits() {
+        return failedCommits.sum();
+    }
+
+    public long emptyCommits() {
+        return emptyCommits.sum();
+    }
+
+    public long deferredCommits() {
+        return deferredCommits.sum();
+    }
+
+    public long blobCacheHits() {
+        return blobCacheHits.sum();
+    }
+
+    public long blobCacheMisses() {
+        return blobCacheMisses.sum();
+    }
+
+    public long cacheFiles() {
+        return cacheFiles.sum();
+    }
+
+    public long cacheBytes() {
+        return cacheBytes.sum();
+    }
+}
@@ -0,0 +1,71 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.vevos.extraction.gt.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+public class BlobCacheTest {
+
+    private static FileGT.Complete completeFileGT(String file, String feature) {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        fileGT.insert(new LineAnnotation(1, new FeatureMapping("True"),
+                new PresenceCondition("True"), "artifact", Set.of("True")));
+        fileGT.insert(new LineAnnotation(2, new FeatureMapping(feature),
+                new PresenceCondition(feature), "if", Set.of(feature)));
+        fileGT.insert(new LineAnnotation(3, new FeatureMapping(feature),
+                new PresenceCondition(feature), "artifact", Set.of(feature)));
+        fileGT.insert(new LineAnnotation(4, new FeatureMapping(feature),
+                new PresenceCondition(feature), "endif", Set.of(feature)));
+        return fileGT.finishMutation();
+    }
+
+    @Test
+    public void adoptedBlobEqualsAnalyzedBlob() {
+        BlobCache cache = new BlobCache(100);
+        cache.put("blob", completeFileGT("src/a.c", "A"));
+
+        FileGT.Mutable copy = new FileGT.Mutable("src/b.c");
+        copy.adopt(cache.get("blob"));
+        FileGT.Complete reused = copy.finishMutation();
+        FileGT.Complete analyzed = completeFileGT("src/b.c", "A");
+
+        Assertions.assertEquals(analyzed.csvPCLines(), reused.csvPCLines());
+        Assertions.assertEquals(analyzed.csvMatchingLines(), reused.csvMatchingLines());
+        Assertions.assertEquals(analyzed.getVariables(), reused.getVariables());
+    }
+
+    @Test
+    public void leastRecentlyUsedBlobsAreEvicted(@TempDir Path tempDir) {
+        BlobCache cache = new BlobCache(10);
+        cache.put("a", completeFileGT("a.c", "A"));
+        cache.put("b", completeFileGT("b.c", "B"));
+        Assertions.assertNotNull(cache.get("a"));
+        cache.put("c", completeFileGT("c.c", "C"));
+
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(8, cache.lineCount());
+        Assertions.assertNull(cache.get("b"));
+
+        Path file = tempDir.resolve("blobs").resolve("repo.cache");
+        cache.save(file);
+        BlobCache loaded = BlobCache.load(file, 4);
+        Assertions.assertEquals(1, loaded.size());
+        Assertions.assertNotNull(loaded.get("c"));
+    }
+
+    @Test
+    public void unreadableCacheIsReplacedByEmptyCache(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("repo.cache");
+        Files.write(file, new byte[] {1, 2, 3});
+        BlobCache loaded = BlobCache.load(file, 10);
+        Assertions.assertEquals(0, loaded.size());
+        loaded.put("a", completeFileGT("a.c", "A"));
+        Assertions.assertNotNull(loaded.get("a"));
+    }
+}
@@ -0,0 +1,75 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.gt.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.line;
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.randomBlock;
+
+public class BlockAggregationTest {
+
+    /**
+     * The aggregation as it has been done by KernelHaven, with a stack of blocks that are compared
+     * by value and sorted after the last line. Each block is represented by the annotation of its
+     * first line, its first line, and its last line.
+     */
+    private static String referenceCsv(String file, List<LineAnnotation> lines) {
+        LineAnnotation root = LineAnnotation.rootAnnotation(1);
+        LinkedList<Object[]> stack = new LinkedList<>();
+        stack.push(new Object[] {root, 1, lines.size()});
+        List<Object[]> blocks = new ArrayList<>();
+        for (LineAnnotation line : lines) {
+            if (stack.size() > 1 && !sameAnnotation((LineAnnotation) stack.peek()[0], line)) {
+                Object[] block = stack.pop();
+                block[2] = line.lineNumber() - 1;
+                blocks.add(block);
+            }
+            if (!sameAnnotation((LineAnnotation) stack.peek()[0], line)) {
+                stack.push(new Object[] {line, line.lineNumber(), line.lineNumber()});
+            }
+        }
+        while (!stack.isEmpty()) {
+            Object[] block = stack.pop();
+            block[2] = lines.size();
+            blocks.add(block);
+        }
+        blocks.sort(Comparator.<Object[]>comparingInt(block -> (int) block[1])
+                .thenComparing(block -> (int) block[2], Comparator.reverseOrder()));
+        StringBuilder sb = new StringBuilder();
+        for (Object[] block : blocks) {
+            LineAnnotation annotation = (LineAnnotation) block[0];
+            sb.append(file).append(";1;").append(new BlockAnnotation((int) block[1],
+                    (int) block[2], annotation.featureMapping(), annotation.presenceCondition(),
+                    annotation.nodeType()).asCSVLine()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private static boolean sameAnnotation(LineAnnotation a, LineAnnotation b) {
+        return a.featureMapping().equals(b.featureMapping())
+                && a.presenceCondition().equals(b.presenceCondition())
+                && a.nodeType().equals(b.nodeType());
+    }
+
+    @Test
+    public void aggregatedCsvEqualsKernelHavenCsv() {
+        Random random = new Random(7);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            List<LineAnnotation> lines = new ArrayList<>();
+            randomBlock(random, lines, random.nextBoolean() ? "True" : "G", 0);
+            String file = "src/file" + iteration + ".c";
+            FileGT.Mutable fileGT = new FileGT.Mutable(file);
+            lines.forEach(fileGT::insert);
+
+            Assertions.assertEquals(referenceCsv(file, lines),
+                    fileGT.finishMutation().csvPCLines());
+        }
+    }
+}
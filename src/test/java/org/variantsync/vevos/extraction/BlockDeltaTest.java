@@ -0,0 +1,58 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.gt.*;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.groundTruth;
+
+public class BlockDeltaTest {
+
+    /**
+     * Creates the ground truth of a file with a single annotated block, which is preceded by the
+     * given number of unannotated lines and contains the given number of lines.
+     */
+    private static FileGT.Mutable fileGT(String file, String feature, int prefix, int body) {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        int lineNumber = 1;
+        for (; lineNumber <= prefix; lineNumber++) {
+            fileGT.insert(new LineAnnotation(lineNumber, new FeatureMapping("True"),
+                    new PresenceCondition("True"), "artifact", Set.of("True")));
+        }
+        fileGT.insert(new LineAnnotation(lineNumber++, new FeatureMapping(feature),
+                new PresenceCondition(feature), "if", Set.of(feature)));
+        for (int i = 0; i < body; i++) {
+            fileGT.insert(new LineAnnotation(lineNumber++, new FeatureMapping(feature),
+                    new PresenceCondition(feature), "artifact", Set.of(feature)));
+        }
+        fileGT.insert(new LineAnnotation(lineNumber, new FeatureMapping(feature),
+                new PresenceCondition(feature), "endif", Set.of(feature)));
+        return fileGT;
+    }
+
+    @Test
+    public void movedFilesAreRestoredFromTheDelta() {
+        GroundTruth before = groundTruth(Map.of("src/moved.c", fileGT("src/moved.c", "A", 2, 3),
+                "src/same.c", fileGT("src/same.c", "B", 1, 1),
+                "src/changed.c", fileGT("src/changed.c", "C", 1, 1)));
+        GroundTruth after = groundTruth(Map.of("src/moved.c", fileGT("src/moved.c", "A", 4, 2),
+                "src/same.c", fileGT("src/same.c", "B", 1, 1),
+                "src/changed.c", fileGT("src/changed.c", "D", 1, 1),
+                "src/added.c", fileGT("src/added.c", "E", 0, 1)));
+        String expected = after.asPcCsvString();
+
+        Map<String, String> moved = BlockDelta.extractMovedFiles(before, after);
+        Assertions.assertEquals(Set.of("src/moved.c", "src/same.c"), moved.keySet());
+        // All blocks of an unchanged file form a single run
+        Assertions.assertTrue(moved.get("src/same.c").matches("\\d+\\*0:0"));
+        Assertions.assertEquals(Set.of("src/changed.c", "src/added.c"),
+                after.fileGTs().keySet());
+
+        String restored = BlockDelta.restoreAfterCsv(before.asPcCsvString(),
+                after.asPcCsvString(), BlockDelta.asDeltaCsvString(moved));
+        Assertions.assertEquals(expected, restored);
+    }
+}
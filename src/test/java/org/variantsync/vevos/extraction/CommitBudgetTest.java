@@ -0,0 +1,65 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.analysis.CommitBudget;
+
+import java.time.Duration;
+
+public class CommitBudgetTest {
+
+    @Test
+    public void commitsExceedingThePatchBudgetAreDeferred() {
+        CommitBudget.Usage usage = new CommitBudget(null, 2, 0).begin();
+        usage.addPatch();
+        usage.addPatch();
+        usage.addLines(Long.MAX_VALUE / 2);
+        Assertions.assertNull(usage.exceededLimit());
+        usage.addPatch();
+        Assertions.assertEquals("patch", usage.exceededLimit());
+    }
+
+    @Test
+    public void commitsExceedingTheLineBudgetAreDeferred() throws InterruptedException {
+        CommitBudget.Usage usage = new CommitBudget(Duration.ZERO, 0, 100).begin();
+        Thread[] analyses = new Thread[4];
+        for (int i = 0; i < analyses.length; i++) {
+            analyses[i] = new Thread(() -> usage.addLines(25));
+            analyses[i].start();
+        }
+        for (Thread analysis : analyses) {
+            analysis.join();
+        }
+        Assertions.assertNull(usage.exceededLimit());
+        usage.addLines(1);
+        Assertions.assertEquals("line", usage.exceededLimit());
+    }
+
+    @Test
+    public void commitsExceedingTheTimeBudgetAreDeferred() throws InterruptedException {
+        CommitBudget.Usage usage = new CommitBudget(Duration.ofMillis(200), 0, 0).begin();
+        Assertions.assertNull(usage.exceededLimit());
+        Thread.sleep(250);
+        Assertions.assertEquals("time", usage.exceededLimit());
+
+        // The first exceeded limit is reported
+        CommitBudget.Usage exceeded = new CommitBudget(Duration.ofNanos(1), 1, 1).begin();
+        exceeded.addPatch();
+        exceeded.addPatch();
+        exceeded.addLines(2);
+        Assertions.assertEquals("patch", exceeded.exceededLimit());
+    }
+
+    @Test
+    public void unlimitedBudgetNeverDefersCommits() {
+        Assertions.assertFalse(CommitBudget.unlimited().isLimited());
+        Assertions.assertFalse(new CommitBudget(Duration.ZERO, 0, 0).isLimited());
+        Assertions.assertTrue(new CommitBudget(null, 0, 1).isLimited());
+        CommitBudget.Usage usage = CommitBudget.unlimited().begin();
+        for (int i = 0; i < 1000; i++) {
+            usage.addPatch();
+            usage.addLines(Integer.MAX_VALUE);
+        }
+        Assertions.assertNull(usage.exceededLimit());
+    }
+}
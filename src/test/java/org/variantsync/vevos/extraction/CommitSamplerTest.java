@@ -0,0 +1,82 @@
+package org.variantsync.vevos.extraction;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.vevos.extraction.filter.CommitSampler;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+public class CommitSamplerTest {
+
+    /**
+     * Creates a linear history with one commit per day, starting on 2020-01-01. Every third commit
+     * is tagged.
+     */
+    private static List<RevCommit> createHistory(Git git, int size) throws Exception {
+        List<RevCommit> commits = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            LocalDate day = LocalDate.of(2020, 1, 1).plusDays(i);
+            PersonIdent ident = new PersonIdent("author", "author@example.org",
+                    Date.from(day.atTime(12, 0).toInstant(ZoneOffset.UTC)),
+                    TimeZone.getTimeZone("UTC"));
+            RevCommit commit = git.commit().setMessage("commit " + i).setAllowEmpty(true)
+                    .setAuthor(ident).setCommitter(ident).call();
+            if (i % 3 == 0) {
+                git.tag().setName("v" + i).setAnnotated(i % 2 == 0).setObjectId(commit).call();
+            }
+            commits.add(commit);
+        }
+        return commits;
+    }
+
+    private static Set<String> names(List<RevCommit> commits, int... indices) {
+        Set<String> names = new HashSet<>();
+        for (int index : indices) {
+            names.add(commits.get(index).getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void restrictionsAreCombined(@TempDir Path tempDir) throws Exception {
+        try (Git git = Git.init().setDirectory(tempDir.toFile()).call()) {
+            List<RevCommit> commits = createHistory(git, 10);
+
+            CommitSampler.Selection tags = new CommitSampler(null, null, null, "refs/tags/*", 0)
+                    .select(git.getRepository());
+            Assertions.assertEquals(names(commits, 0, 3, 6, 9), tags.sampled());
+            Assertions.assertEquals(names(commits, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9), tags.required());
+
+            CommitSampler.Selection window = new CommitSampler(null, LocalDate.of(2020, 1, 3),
+                    LocalDate.of(2020, 1, 8), null, 2).select(git.getRepository());
+            Assertions.assertEquals(names(commits, 2, 4, 6), window.sampled());
+            Assertions.assertEquals(names(commits, 0, 1, 2, 3, 4, 5, 6), window.required());
+            Assertions.assertFalse(window.isRequired(commits.get(9).getName()));
+
+            CommitSampler.Selection range = new CommitSampler("v3..v6", null, null, null, 0)
+                    .select(git.getRepository());
+            Assertions.assertEquals(names(commits, 4, 5, 6), range.sampled());
+            Assertions.assertTrue(range.isRequired(commits.get(0).getName()));
+        }
+    }
+
+    @Test
+    public void disabledSamplerSelectsAllCommits() throws Exception {
+        CommitSampler sampler = new CommitSampler(null, null, null, null, 1);
+        Assertions.assertFalse(sampler.isEnabled());
+        Assertions.assertTrue(sampler.select(null).isAll());
+        Assertions.assertTrue(sampler.select(null).isSampled("any"));
+    }
+}
@@ -0,0 +1,139 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.vevos.extraction.analysis.VariabilityAnalysis;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.io.FeatureIndexReader;
+import org.variantsync.vevos.extraction.io.FeatureIndexReader.Location;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.groundTruth;
+import static org.variantsync.vevos.extraction.io.GroundTruthReader.Version.AFTER;
+import static org.variantsync.vevos.extraction.io.GroundTruthReader.Version.BEFORE;
+
+public class FeatureIndexTest {
+
+    /**
+     * Creates the ground truth of a file whose lines have the given presence conditions, which
+     * are conjunctions of variables separated by spaces.
+     */
+    private static FileGT.Mutable fileGT(String file, String... conditions) {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        for (int i = 0; i < conditions.length; i++) {
+            Set<String> variables = Set.of(conditions[i].split(" "));
+            String condition = String.join(" && ", variables);
+            fileGT.insert(new LineAnnotation(i + 1, new FeatureMapping(condition),
+                    new PresenceCondition(condition), "artifact", variables));
+        }
+        return fileGT;
+    }
+
+    @Test
+    public void variablesAreMappedToTheirLocations(@TempDir Path tempDir) {
+        Path file = tempDir.resolve(GroundTruth.FEATURE_INDEX_FILE);
+        FeatureIndex index = FeatureIndex.load(file);
+        index.add("c1", groundTruth(Map.of("src/b.c", fileGT("src/b.c", "True", "A", "A B",
+                "B", "A"), "src/a.c", fileGT("src/a.c", "${C}", "True"))));
+        // Only the changed files are indexed
+        GroundTruth completed = groundTruth(Map.of("src/b.c", fileGT("src/b.c", "True"),
+                "src/a.c", fileGT("src/a.c", "A", "A")));
+        index.add("c2", completed, Set.of("src/a.c"));
+        index.save(file);
+
+        FeatureIndexReader reader = FeatureIndexReader.open(file);
+        Assertions.assertEquals(List.of("c1", "c2"), reader.commits());
+        Assertions.assertEquals(List.of("A", "B", "C"), reader.variables());
+        Assertions.assertEquals(List.of(new Location("c1", AFTER, "src/b.c", 2, 3),
+                new Location("c1", AFTER, "src/b.c", 5, 5),
+                new Location("c2", AFTER, "src/a.c", 1, 2)),
+                reader.locations("A"));
+        Assertions.assertEquals(List.of(new Location("c1", AFTER, "src/b.c", 3, 4)),
+                reader.locations("B", "c1"));
+        Assertions.assertTrue(reader.locations("B", "c2").isEmpty());
+        Assertions.assertEquals(List.of("c1", "c2"), List.copyOf(reader.commits("A")));
+        Assertions.assertEquals(Set.of("src/a.c"), reader.files("C"));
+        Assertions.assertTrue(reader.locations("D").isEmpty());
+
+        // A loaded index is extended, and commits are only indexed once
+        FeatureIndex loaded = FeatureIndex.load(file);
+        loaded.add("c2", completed);
+        loaded.add("c3", groundTruth(Map.of("include/b.h", fileGT("include/b.h", "B"))));
+        loaded.save(file);
+        reader = FeatureIndexReader.open(file);
+        Assertions.assertEquals(List.of("c1", "c2", "c3"), reader.commits());
+        Assertions.assertEquals(List.of(new Location("c2", AFTER, "src/a.c", 1, 2)),
+                reader.locations("A", "c2"));
+        Assertions.assertEquals(Set.of("include/b.h", "src/b.c"), reader.files("B"));
+        Assertions.assertEquals(List.of(new Location("c3", AFTER, "include/b.h", 1, 1)),
+                reader.locations("B", "c3"));
+    }
+
+    @Test
+    public void removedFilesAreRecorded(@TempDir Path tempDir) {
+        Path file = tempDir.resolve(GroundTruth.FEATURE_INDEX_FILE);
+        FeatureIndex index = FeatureIndex.load(file);
+        index.add("c1", groundTruth(Map.of("src/a.c", fileGT("src/a.c", "A"), "src/b.c",
+                fileGT("src/b.c", "A"))));
+        // The full extraction does not hold the ground truths of removed files
+        GroundTruth completed = groundTruth(Map.of("src/b.c", fileGT("src/b.c", "A")));
+        Collection<String> changedFiles = List.of("src/a.c", "src/b.c");
+        index.add("c2", completed, changedFiles);
+        index.save(file);
+        FeatureIndex.load(file).save(file);
+
+        FeatureIndexReader reader = FeatureIndexReader.open(file);
+        Assertions.assertEquals(Set.of("src/a.c"), reader.removedFiles("c2"));
+        Assertions.assertTrue(reader.removedFiles("c1").isEmpty());
+        Assertions.assertEquals(List.of(new Location("c2", AFTER, "src/b.c", 1, 1)),
+                reader.locations("A", "c2"));
+    }
+
+    @Test
+    public void spilledFilesAreIndexedBeforeAndAfter(@TempDir Path tempDir) {
+        Path file = tempDir.resolve(GroundTruth.FEATURE_INDEX_FILE);
+        FeatureIndex index = FeatureIndex.load(file);
+        GroundTruth before = new GroundTruth(new TreeMap<>(), new HashSet<>());
+        GroundTruth after = new GroundTruth(new TreeMap<>(), new HashSet<>());
+        before.fileGTs().put("src/a.c", fileGT("src/a.c", "A", "True"));
+        before.fileGTs().put("src/renamed.c", fileGT("src/renamed.c", "B"));
+        before.fileGTs().put("src/spilled.c", fileGT("src/spilled.c", "B"));
+        after.fileGTs().put("src/a.c", fileGT("src/a.c", "True", "A", "A"));
+        after.fileGTs().put("src/new.c", fileGT("src/new.c", "B"));
+        after.fileGTs().put("src/spilled.c", fileGT("src/spilled.c", "B C", "True", "B"));
+        try (GroundTruthSpill spilledBefore = new GroundTruthSpill(tempDir, index);
+                GroundTruthSpill spilledAfter = new GroundTruthSpill(tempDir, index)) {
+            ((FileGT.Mutable) before.get("src/spilled.c")).spillTo(spilledBefore,
+                    CommitProfile.DISABLED);
+            ((FileGT.Mutable) after.get("src/spilled.c")).spillTo(spilledAfter,
+                    CommitProfile.DISABLED);
+            spilledBefore.detach(before);
+            spilledAfter.detach(after);
+            VariabilityAnalysis.makeComplete(before);
+            VariabilityAnalysis.makeComplete(after);
+            index.add("c1", before, spilledBefore, after, spilledAfter);
+        }
+        index.save(file);
+
+        FeatureIndexReader reader = FeatureIndexReader.open(file);
+        Assertions.assertEquals(List.of(new Location("c1", BEFORE, "src/a.c", 1, 1)),
+                reader.locations("A", "c1", BEFORE));
+        Assertions.assertEquals(List.of(new Location("c1", AFTER, "src/a.c", 2, 3)),
+                reader.locations("A", "c1"));
+        Assertions.assertEquals(List.of(new Location("c1", BEFORE, "src/renamed.c", 1, 1),
+                new Location("c1", BEFORE, "src/spilled.c", 1, 1),
+                new Location("c1", AFTER, "src/new.c", 1, 1),
+                new Location("c1", AFTER, "src/spilled.c", 1, 1),
+                new Location("c1", AFTER, "src/spilled.c", 3, 3)), reader.locations("B"));
+        Assertions.assertEquals(Set.of("src/renamed.c"), reader.removedFiles("c1"));
+    }
+}
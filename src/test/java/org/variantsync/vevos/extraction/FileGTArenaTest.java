@@ -0,0 +1,111 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.diffdetective.util.LineRange;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.io.Serde;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class FileGTArenaTest {
+
+    private static FileGT.Complete completeFileGT(String file, String feature, int artifacts)
+            throws Exception {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        fileGT.insert(new LineAnnotation(1, new FeatureMapping("True"),
+                new PresenceCondition("True"), "artifact", Set.of("True")));
+        fileGT.insert(new LineAnnotation(2, new FeatureMapping(feature),
+                new PresenceCondition(feature), "if", Set.of(feature)));
+        for (int i = 0; i < artifacts; i++) {
+            fileGT.insert(new LineAnnotation(3 + i, new FeatureMapping(feature),
+                    new PresenceCondition(feature), "artifact", Set.of(feature)));
+        }
+        fileGT.insert(new LineAnnotation(3 + artifacts, new FeatureMapping(feature),
+                new PresenceCondition(feature), "endif", Set.of(feature)));
+        fileGT.setMatching(new LineRange(1, 3), new LineRange(2, 4));
+        return fileGT.finishMutation();
+    }
+
+    private static void assertSameGroundTruth(FileGT.Complete expected, FileGT.Complete actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        List<LineAnnotation> expectedLines = new ArrayList<>();
+        expected.forEach(expectedLines::add);
+        List<LineAnnotation> actualLines = new ArrayList<>();
+        actual.forEach(actualLines::add);
+        Assertions.assertEquals(expectedLines, actualLines);
+        Assertions.assertEquals(expected.getVariables(), actual.getVariables());
+        Assertions.assertEquals(expected.aggregatedBlocks(), actual.aggregatedBlocks());
+        Assertions.assertEquals(expected.csvPCLines(), actual.csvPCLines());
+        Assertions.assertEquals(expected.csvMatchingLines(), actual.csvMatchingLines());
+        Assertions.assertEquals(expected.csvMatchingRanges(), actual.csvMatchingRanges());
+    }
+
+    @Test
+    public void storedGroundTruthEqualsOriginal(@TempDir Path tempDir) throws Exception {
+        FileGTArena arena = new FileGTArena();
+        FileGT.Complete original = completeFileGT("src/ä.c", "A", 5);
+        FileGT.Stored stored = arena.store(original);
+        assertSameGroundTruth(original, stored);
+        Assertions.assertSame(stored, arena.store(stored));
+
+        // Patches are applied to the decoded lines and blocks
+        FileGT.Patch patch = new FileGT.Patch("src/ä.c", original.size(), original.size());
+        patch.retain(1, 1, original.size(), true);
+        assertSameGroundTruth(patch.applyTo(original, CommitProfile.DISABLED),
+                patch.applyTo(stored, CommitProfile.DISABLED));
+
+        // Serialized handles are decoded to ground truths on the heap
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
+        groundTruth.fileGTs().put("src/ä.c", stored);
+        File file = tempDir.resolve("gt.ser").toFile();
+        Serde.serialize(file, groundTruth);
+        GroundTruth loaded = Serde.deserialize(file);
+        Assertions.assertFalse(loaded.get("src/ä.c") instanceof FileGT.Stored);
+        assertSameGroundTruth(original, (FileGT.Complete) loaded.get("src/ä.c"));
+    }
+
+    @Test
+    public void replacedGroundTruthsAreFreed() throws Exception {
+        FileGTArena arena = new FileGTArena(4096);
+        GroundTruth completed = new GroundTruth(new TreeMap<>(), new VariableSet());
+        for (int i = 0; i < 100; i++) {
+            completed.fileGTs().put("file" + i + ".c", completeFileGT("file" + i + ".c", "A", 3));
+        }
+        arena.storeAll(completed);
+        long liveBytes = arena.liveBytes();
+        long capacity = arena.capacity();
+
+        // Replace most files in several commits, so that chunks are compacted and reused. The
+        // features of all commits have names of the same length.
+        for (int commit = 0; commit < 20; commit++) {
+            GroundTruth updated = new GroundTruth(new TreeMap<>(), new VariableSet());
+            String feature = String.valueOf((char) ('B' + commit));
+            for (int i = 0; i < 100; i++) {
+                if (i % 10 != 0) {
+                    updated.fileGTs().put("file" + i + ".c",
+                            completeFileGT("file" + i + ".c", feature, 3));
+                }
+            }
+            arena.updateWith(completed, updated, CommitProfile.DISABLED);
+        }
+
+        Assertions.assertEquals(liveBytes, arena.liveBytes());
+        Assertions.assertTrue(arena.capacity() <= 4 * capacity);
+        for (int i = 0; i < 100; i++) {
+            String file = "file" + i + ".c";
+            Assertions.assertTrue(completed.get(file) instanceof FileGT.Stored);
+            assertSameGroundTruth(completeFileGT(file, i % 10 == 0 ? "A" : "U", 3),
+                    (FileGT.Complete) completed.get(file));
+        }
+        arena.release(completed);
+        Assertions.assertEquals(0, arena.liveBytes());
+    }
+}
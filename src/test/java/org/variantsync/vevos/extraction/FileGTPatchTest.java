@@ -0,0 +1,131 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.diffdetective.util.LineRange;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.line;
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.randomBlock;
+
+public class FileGTPatchTest {
+    private static final String FILE = "src/main.c";
+
+    private static FileGT.Complete complete(List<LineAnnotation> lines, int parentSize,
+            int unchangedPrefix, int unchangedSuffix) throws Exception {
+        FileGT.Mutable fileGT = new FileGT.Mutable(FILE);
+        lines.forEach(fileGT::insert);
+        int size = lines.size();
+        // The matching is indexed by line number, so that the last line is not matched
+        fileGT.setMatching(new LineRange(1, unchangedPrefix),
+                new LineRange(1, unchangedPrefix));
+        fileGT.setMatching(new LineRange(size - unchangedSuffix + 1, size),
+                new LineRange(parentSize - unchangedSuffix + 1, parentSize));
+        return fileGT.finishMutation();
+    }
+
+    @Test
+    public void patchedGroundTruthEqualsAnalyzedGroundTruth() throws Exception {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            List<LineAnnotation> parentLines = new ArrayList<>();
+            randomBlock(random, parentLines, "True", 0);
+            int parentSize = parentLines.size();
+            FileGT.Complete parent = complete(parentLines, parentSize, parentSize, 0);
+
+            // Replace a random region of the parent by random lines
+            int from = random.nextInt(parentSize + 1);
+            int to = from + random.nextInt(parentSize - from + 1);
+            List<LineAnnotation> inserted = new ArrayList<>();
+            randomBlock(random, inserted, random.nextBoolean() ? "True" : "F0", 1);
+            inserted = inserted.subList(0, random.nextInt(inserted.size() + 1));
+            int shift = inserted.size() - (to - from);
+            List<LineAnnotation> lines = new ArrayList<>(parentLines.subList(0, from));
+            for (LineAnnotation line : inserted) {
+                lines.add(line.withOffset(from + 1 - inserted.get(0).lineNumber()));
+            }
+            for (LineAnnotation line : parentLines.subList(to, parentSize)) {
+                lines.add(line.withOffset(shift));
+            }
+            int suffix = parentSize - to;
+            FileGT.Complete expected = complete(lines, parentSize, from, suffix);
+
+            FileGT.Patch patch = new FileGT.Patch(FILE, lines.size(), parentSize);
+            if (from > 0) {
+                patch.retain(1, 1, from, parentLines.get(0).nodeType().equals("artifact"));
+            }
+            for (int i = from; i < from + inserted.size(); i++) {
+                patch.insert(lines.get(i));
+            }
+            if (suffix > 0) {
+                patch.retain(to + 1 + shift, to + 1, suffix,
+                        parentLines.get(to).nodeType().equals("artifact"));
+            }
+            patch.setMatching(new LineRange(1, from), new LineRange(1, from));
+            patch.setMatching(new LineRange(lines.size() - suffix + 1, lines.size()),
+                    new LineRange(to + 1, parentSize));
+            FileGT.Complete patched = patch.applyTo(parent, CommitProfile.DISABLED);
+
+            Assertions.assertNotNull(patched);
+            Assertions.assertEquals(expected.aggregatedBlocks(), patched.aggregatedBlocks());
+            Assertions.assertEquals(expected.csvPCLines(), patched.csvPCLines());
+            Assertions.assertEquals(expected.csvMatchingLines(), patched.csvMatchingLines());
+            Assertions.assertTrue(patched.getVariables().containsAll(expected.getVariables()));
+        }
+    }
+
+    @Test
+    public void patchOfAnotherVersionIsRejected() throws Exception {
+        List<LineAnnotation> lines = List.of(line(1, "True", "True", "artifact"),
+                line(2, "A", "A", "if"), line(3, "A", "A", "artifact"),
+                line(4, "A", "A", "endif"));
+        FileGT.Complete parent = complete(lines, 4, 4, 0);
+
+        FileGT.Patch longer = new FileGT.Patch(FILE, 6, 5);
+        Assertions.assertNull(longer.applyTo(parent, CommitProfile.DISABLED));
+
+        FileGT.Patch shifted = new FileGT.Patch(FILE, 4, 4);
+        shifted.retain(1, 2, 1, true);
+        Assertions.assertNull(shifted.applyTo(parent, CommitProfile.DISABLED));
+    }
+
+    @Test
+    public void patchOnlyFitsItsParentBlob() {
+        List<LineAnnotation> staleLines = List.of(line(1, "True", "True", "artifact"),
+                line(2, "A", "A", "if"), line(3, "A", "A", "artifact"),
+                line(4, "A", "A", "endif"));
+        FileGT.Mutable staleParent = new FileGT.Mutable(FILE);
+        staleLines.forEach(staleParent::insert);
+        staleParent.identifyBlob("stale");
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
+        groundTruth.fileGTs().put(FILE, staleParent.finishMutation());
+
+        // The patch fits the structure of the stale parent, but has been made for another blob
+        FileGT.Patch patch = new FileGT.Patch(FILE, 4, 4);
+        patch.retain(1, 1, 4, true);
+        patch.identifyBlobs("patched", "parent");
+        Assertions.assertNull(patch.applyTo((FileGT.Complete) groundTruth.get(FILE),
+                CommitProfile.DISABLED));
+        // Like for a file that could not be parsed, the previous ground truth is kept
+        GroundTruth updated = new GroundTruth(new TreeMap<>(), new VariableSet());
+        updated.fileGTs().put(FILE, patch);
+        groundTruth.updateWith(updated, CommitProfile.DISABLED);
+        FileGT.Complete complete = (FileGT.Complete) groundTruth.get(FILE);
+        Assertions.assertEquals("stale", complete.blobId());
+
+        // A patch for the blob of the completed ground truth is applied
+        FileGT.Patch next = new FileGT.Patch(FILE, 4, 4);
+        next.retain(1, 1, 4, true);
+        next.identifyBlobs("next", "stale");
+        FileGT.Complete patched = next.applyTo(complete, CommitProfile.DISABLED);
+        Assertions.assertNotNull(patched);
+        Assertions.assertEquals("next", patched.blobId());
+        Assertions.assertEquals(complete.csvPCLines(), patched.csvPCLines());
+    }
+}
@@ -0,0 +1,65 @@
+package org.variantsync.vevos.extraction;
+
+import org.variantsync.vevos.extraction.analysis.VariabilityAnalysis;
+import org.variantsync.vevos.extraction.gt.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Ground truths and annotated lines that are shared by several tests.
+ */
+final class GroundTruthFixtures {
+
+    private GroundTruthFixtures() {
+    }
+
+    /**
+     * @return A ground truth whose file ground truths have been completed
+     */
+    static GroundTruth groundTruth(Map<String, FileGT> fileGTs) {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(fileGTs), new HashSet<>());
+        VariabilityAnalysis.makeComplete(groundTruth);
+        return groundTruth;
+    }
+
+    /**
+     * Appends the lines of a random block with the given presence condition. Nested blocks consist
+     * of an 'if' or 'elif', their body, and an 'endif'. Besides nested blocks and artifacts, blocks
+     * contain lines with the root's annotation.
+     */
+    static void randomBlock(Random random, List<LineAnnotation> lines, String condition,
+            int depth) {
+        int items = 1 + random.nextInt(4);
+        for (int i = 0; i < items; i++) {
+            int kind = random.nextInt(6);
+            if (depth < 4 && kind < 2) {
+                String feature = "F" + random.nextInt(4);
+                String nested = condition.equals("True") ? feature : condition + " & " + feature;
+                lines.add(line(lines.size() + 1, feature, nested,
+                        random.nextBoolean() ? "if" : "elif"));
+                randomBlock(random, lines, nested, depth + 1);
+                lines.add(line(lines.size() + 1, feature, nested, "endif"));
+            } else if (kind == 2) {
+                lines.add(line(lines.size() + 1, "True", "True", "ROOT"));
+            } else {
+                for (int j = random.nextInt(3); j >= 0; j--) {
+                    lines.add(line(lines.size() + 1, condition, condition,
+                            random.nextInt(5) == 0 ? "other" : "artifact"));
+                }
+            }
+        }
+    }
+
+    static LineAnnotation line(int lineNumber, String mapping, String condition,
+            String nodeType) {
+        // New strings, so that the annotations are only equal by reference after interning
+        return new LineAnnotation(lineNumber, new FeatureMapping(new String(mapping)),
+                new PresenceCondition(new String(condition)), new String(nodeType),
+                new HashSet<>(Arrays.asList(condition.split(" & "))));
+    }
+}
@@ -0,0 +1,119 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.io.BlockIndex;
+import org.variantsync.vevos.extraction.io.GroundTruthReader;
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.variantsync.vevos.extraction.GroundTruthFixtures.groundTruth;
+
+public class GroundTruthReaderTest {
+
+    /**
+     * Creates the ground truth of a file with a block of feature A that contains a block of A and
+     * B, which are preceded by the given number of unannotated lines.
+     */
+    private static FileGT.Mutable fileGT(String file, int prefix) {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        int lineNumber = 1;
+        for (; lineNumber <= prefix; lineNumber++) {
+            fileGT.insert(line(lineNumber, "True", "artifact"));
+        }
+        fileGT.insert(line(lineNumber++, "A", "if"));
+        fileGT.insert(line(lineNumber++, "A", "artifact"));
+        fileGT.insert(line(lineNumber++, "A && B", "if"));
+        fileGT.insert(line(lineNumber++, "A && B", "endif"));
+        fileGT.insert(line(lineNumber++, "A", "artifact"));
+        fileGT.insert(line(lineNumber++, "A", "endif"));
+        fileGT.insert(line(lineNumber, "True", "artifact"));
+        return fileGT;
+    }
+
+    private static LineAnnotation line(int lineNumber, String condition, String nodeType) {
+        return new LineAnnotation(lineNumber, new FeatureMapping(condition),
+                new PresenceCondition(condition), nodeType, Set.of(condition));
+    }
+
+    private static void assertSameBlocks(FileGT.Complete expected, List<BlockIndex.Block> actual) {
+        Assertions.assertEquals(expected.aggregatedBlocks().stream()
+                .map(BlockAnnotation::asCSVLine).toList(),
+                actual.stream().map(block -> "%s;%s;%s;%d;%d".formatted(block.featureMapping(),
+                        block.presenceCondition(), block.nodeType(), block.lineStartInclusive(),
+                        block.lineEndInclusive())).toList());
+    }
+
+    @Test
+    public void fullResultsAreReadWithAndWithoutIndex(@TempDir Path dataDir) {
+        GroundTruth groundTruth = groundTruth(Map.of("src/a;b.c", fileGT("src/a;b.c", 0),
+                "src/c.c", fileGT("src/c.c", 2), "include/ü.h", fileGT("include/ü.h", 1)));
+        Path commitDir = dataDir.resolve("c1");
+        commitDir.toFile().mkdirs();
+        Serde.writeToFile(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV),
+                groundTruth.asPcCsvString());
+
+        for (int run = 0; run < 2; run++) {
+            GroundTruthReader reader = new GroundTruthReader(dataDir);
+            for (String file : groundTruth.fileGTs().keySet()) {
+                FileGT.Complete fileGT = (FileGT.Complete) groundTruth.get(file);
+                assertSameBlocks(fileGT, reader.blocks("c1", file));
+                for (LineAnnotation line : fileGT) {
+                    Assertions.assertEquals(
+                            BlockAnnotation
+                                    .normalizeCondition(line.presenceCondition().condition()),
+                            reader.presenceCondition("c1", file, line.lineNumber()));
+                }
+            }
+            Assertions.assertTrue(reader.blocks("c1", "src/missing.c").isEmpty());
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> reader.blocks("c1", "src/c.c", GroundTruthReader.Version.BEFORE));
+            // The second run opens the written index file
+            Assertions.assertEquals(1, GroundTruthReader.writeIndices(dataDir));
+        }
+        Assertions.assertTrue(Files.exists(BlockIndex
+                .indexFileOf(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV))));
+    }
+
+    @Test
+    public void movedFilesOfFastResultsAreRestored(@TempDir Path dataDir) {
+        FileGT.Mutable unannotated = new FileGT.Mutable("src/changed.c");
+        unannotated.insert(line(1, "True", "artifact"));
+        GroundTruth before = groundTruth(Map.of("src/moved.c", fileGT("src/moved.c", 1),
+                "src/changed.c", fileGT("src/changed.c", 0)));
+        GroundTruth after = groundTruth(Map.of("src/moved.c", fileGT("src/moved.c", 3),
+                "src/changed.c", unannotated));
+        GroundTruth expected = groundTruth(Map.of("src/moved.c", fileGT("src/moved.c", 3)));
+        expected.fileGTs().put("src/changed.c", after.get("src/changed.c"));
+
+        Path commitDir = dataDir.resolve("c2");
+        commitDir.toFile().mkdirs();
+        Serde.writeToFile(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_BEFORE),
+                before.asPcCsvString());
+        Map<String, String> moved = BlockDelta.extractMovedFiles(before, after);
+        Assertions.assertEquals(Set.of("src/moved.c"), moved.keySet());
+        Serde.writeToFile(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_AFTER),
+                after.asPcCsvString());
+        Serde.writeToFile(commitDir.resolve(GroundTruth.CODE_VARIABILITY_CSV_DELTA),
+                BlockDelta.asDeltaCsvString(moved));
+
+        GroundTruthReader reader = new GroundTruthReader(dataDir);
+        for (String file : expected.fileGTs().keySet()) {
+            assertSameBlocks((FileGT.Complete) expected.get(file), reader.blocks("c2", file));
+            assertSameBlocks((FileGT.Complete) before.get(file),
+                    reader.blocks("c2", file, GroundTruthReader.Version.BEFORE));
+        }
+        Assertions.assertEquals("A && B", reader.presenceCondition("c2", "src/moved.c", 6));
+        Assertions.assertEquals("A && B", reader.presenceCondition("c2", "src/moved.c", 4,
+                GroundTruthReader.Version.BEFORE));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> reader.blocks("c3", "src/moved.c"));
+    }
+}
@@ -0,0 +1,115 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.diffdetective.util.LineRange;
+import org.variantsync.vevos.extraction.analysis.VariabilityAnalysis;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.metrics.CommitProfile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class GroundTruthSpillTest {
+    private static final List<String> FILES = List.of("src/b.c", "src/a.c", "include/c.h");
+
+    private static GroundTruth mutableGroundTruth() {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new HashSet<>());
+        for (String file : FILES) {
+            FileGT.Mutable fileGT = new FileGT.Mutable(file);
+            annotate(fileGT, file);
+            groundTruth.fileGTs().put(file, fileGT);
+        }
+        return groundTruth;
+    }
+
+    private static void annotate(FileGT.Mutable fileGT, String file) {
+        String feature = "FEATURE_" + file.length();
+        fileGT.insert(new LineAnnotation(1, new FeatureMapping("True"),
+                new PresenceCondition("True"), "artifact", Set.of("True")));
+        fileGT.insert(new LineAnnotation(2, new FeatureMapping(feature),
+                new PresenceCondition(feature), "if", Set.of(feature)));
+        fileGT.insert(new LineAnnotation(3, new FeatureMapping(feature),
+                new PresenceCondition(feature), "artifact", Set.of(feature)));
+        fileGT.insert(new LineAnnotation(4, new FeatureMapping(feature),
+                new PresenceCondition(feature), "endif", Set.of(feature)));
+    }
+
+    @Test
+    public void streamedCsvEqualsRenderedCsv(@TempDir Path tempDir) throws IOException {
+        GroundTruth expected = mutableGroundTruth();
+        VariabilityAnalysis.makeComplete(expected);
+
+        GroundTruth groundTruth = mutableGroundTruth();
+        try (GroundTruthSpill spill = new GroundTruthSpill(tempDir.resolve("spill"))) {
+            ((FileGT.Mutable) groundTruth.get("src/b.c")).spillTo(spill, CommitProfile.DISABLED);
+            ((FileGT.Mutable) groundTruth.get("include/c.h")).spillTo(spill,
+                    CommitProfile.DISABLED);
+            Assertions.assertEquals(2, spill.size());
+            Assertions.assertEquals(8, spill.lineCount());
+            Assertions.assertEquals(0, groundTruth.get("src/b.c").size());
+
+            spill.detach(groundTruth);
+            VariabilityAnalysis.makeComplete(groundTruth);
+            Assertions.assertEquals(1, groundTruth.size());
+
+            Path pcCsv = tempDir.resolve("pc.csv");
+            Path matchingCsv = tempDir.resolve("matching.csv");
+            spill.writePcCsv(pcCsv, groundTruth);
+            spill.writeMatchingCsv(matchingCsv, groundTruth);
+            Path rangesCsv = tempDir.resolve("ranges.csv");
+            spill.writeMatchingRangesCsv(rangesCsv, groundTruth);
+            Assertions.assertEquals(expected.asPcCsvString(), Files.readString(pcCsv));
+            Assertions.assertEquals(expected.asMatchingCsvString(), Files.readString(matchingCsv));
+            Assertions.assertEquals(expected.asMatchingRangesCsvString(),
+                    Files.readString(rangesCsv));
+            Assertions.assertEquals(expected.variablesListAsString(),
+                    groundTruth.variablesListAsString());
+        }
+        try (var remaining = Files.list(tempDir.resolve("spill"))) {
+            Assertions.assertEquals(0, remaining.count());
+        }
+    }
+
+    @Test
+    public void reopenedFileKeepsItsMatching(@TempDir Path tempDir) throws Exception {
+        // Two patches of a commit match different lines of the same file
+        GroundTruth expected = mutableGroundTruth();
+        FileGT.Mutable expectedFileGT = (FileGT.Mutable) expected.get("src/a.c");
+        expectedFileGT.setMatching(new LineRange(1, 3), new LineRange(1, 3));
+        expectedFileGT.setMatching(new LineRange(3, 4), new LineRange(5, 6));
+        VariabilityAnalysis.makeComplete(expected);
+
+        GroundTruth groundTruth = mutableGroundTruth();
+        FileGT.Mutable fileGT = (FileGT.Mutable) groundTruth.get("src/a.c");
+        fileGT.setMatching(new LineRange(1, 3), new LineRange(1, 3));
+        try (GroundTruthSpill spill = new GroundTruthSpill(tempDir.resolve("spill"))) {
+            fileGT.spillTo(spill, CommitProfile.DISABLED);
+            Assertions.assertTrue(fileGT.isConsumed());
+
+            FileGT.Mutable reopened = spill.reopen("src/a.c");
+            Assertions.assertEquals(0, spill.size());
+            Assertions.assertEquals(0, spill.lineCount());
+            annotate(reopened, "src/a.c");
+            reopened.setMatching(new LineRange(3, 4), new LineRange(5, 6));
+            reopened.spillTo(spill, CommitProfile.DISABLED);
+            Assertions.assertEquals(1, spill.size());
+            Assertions.assertEquals(4, spill.lineCount());
+
+            spill.detach(groundTruth);
+            VariabilityAnalysis.makeComplete(groundTruth);
+            Path pcCsv = tempDir.resolve("pc.csv");
+            Path matchingCsv = tempDir.resolve("matching.csv");
+            spill.writePcCsv(pcCsv, groundTruth);
+            spill.writeMatchingCsv(matchingCsv, groundTruth);
+            Assertions.assertEquals(expected.asPcCsvString(), Files.readString(pcCsv));
+            Assertions.assertEquals(expected.asMatchingCsvString(), Files.readString(matchingCsv));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.gt.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class GroundTruthTest {
+    private static final List<String> FILES =
+            List.of("src/b.c", "src-old/d.c", "src/a.c", "include/c.h", "src/util/e.c", "f.c");
+
+    private static GroundTruth groundTruth() {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
+        for (String file : FILES) {
+            FileGT.Mutable fileGT = new FileGT.Mutable(file);
+            fileGT.insert(new LineAnnotation(1, new FeatureMapping("True"),
+                    new PresenceCondition("True"), "artifact", Set.of("True")));
+            groundTruth.fileGTs().put(file, fileGT.finishMutation());
+        }
+        return groundTruth;
+    }
+
+    @Test
+    public void filesInDirectoryIncludeSubdirectories() {
+        GroundTruth groundTruth = groundTruth();
+
+        Assertions.assertEquals(List.of("src/a.c", "src/b.c", "src/util/e.c"),
+                List.copyOf(groundTruth.filesIn("src").keySet()));
+        Assertions.assertEquals(List.of("src/util/e.c"),
+                List.copyOf(groundTruth.filesIn("src/util/").keySet()));
+        Assertions.assertTrue(groundTruth.filesIn("lib").isEmpty());
+        Assertions.assertEquals(FILES.size(), groundTruth.filesIn("").size());
+    }
+
+    @Test
+    public void csvListsFilesInOrderOfTheirPaths() {
+        List<String> paths = groundTruth().asPcCsvString().lines().skip(1)
+                .map(row -> row.substring(0, row.indexOf(';'))).distinct().toList();
+
+        Assertions.assertEquals(FILES.stream().sorted().toList(), paths);
+    }
+}
@@ -0,0 +1,55 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.diffdetective.util.LineRange;
+import org.variantsync.vevos.extraction.analysis.VariabilityAnalysis;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.io.MatchingRangesReader;
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class MatchingRangesReaderTest {
+
+    private static FileGT.Mutable fileGT(String file, int size) {
+        FileGT.Mutable fileGT = new FileGT.Mutable(file);
+        for (int lineNumber = 1; lineNumber <= size; lineNumber++) {
+            fileGT.insert(new LineAnnotation(lineNumber, new FeatureMapping("True"),
+                    new PresenceCondition("True"), "artifact", Set.of("True")));
+        }
+        return fileGT;
+    }
+
+    @Test
+    public void expandedRangesEqualMatchingLines(@TempDir Path tempDir) throws Exception {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new HashSet<>());
+        // Lines 3 and 4 have been inserted, lines 7 to 9 are moved
+        FileGT.Mutable modified = fileGT("src/a;b.c", 10);
+        modified.setMatching(new LineRange(1, 3), new LineRange(1, 3));
+        modified.setMatching(new LineRange(5, 7), new LineRange(3, 5));
+        modified.setMatching(new LineRange(7, 10), new LineRange(10, 13));
+        groundTruth.fileGTs().put("src/a;b.c", modified);
+        groundTruth.fileGTs().put("src/added.c", fileGT("src/added.c", 5));
+        VariabilityAnalysis.makeComplete(groundTruth);
+
+        Path csv = tempDir.resolve(GroundTruth.CODE_MATCHING_RANGES_CSV);
+        Serde.writeToFile(csv, groundTruth.asMatchingRangesCsvString());
+        MatchingRangesReader reader = MatchingRangesReader.read(csv);
+
+        Assertions.assertEquals(groundTruth.asMatchingCsvString(), reader.asMatchingCsvString());
+        Assertions.assertEquals(4, groundTruth.asMatchingRangesCsvString().lines()
+                .filter(line -> line.startsWith("src/a;b.c;")).count());
+        Assertions.assertEquals(10, reader.lineCount("src/a;b.c"));
+        Assertions.assertEquals(2, reader.counterpart("src/a;b.c", 2));
+        Assertions.assertEquals(-1, reader.counterpart("src/a;b.c", 3));
+        Assertions.assertEquals(4, reader.counterpart("src/a;b.c", 6));
+        Assertions.assertEquals(11, reader.counterpart("src/a;b.c", 8));
+        Assertions.assertEquals(-1, reader.counterpart("src/a;b.c", 10));
+        Assertions.assertEquals(-1, reader.counterpart("src/missing.c", 1));
+    }
+}
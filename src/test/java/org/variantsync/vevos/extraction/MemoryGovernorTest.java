@@ -0,0 +1,107 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.concurrency.MemoryGovernor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MemoryGovernorTest {
+    private static final long MAX_HEAP = 1000;
+
+    /**
+     * Asserts that the given task is still blocked after a short while.
+     */
+    private static void assertBlocked(CompletableFuture<?> task) {
+        Assertions.assertThrows(TimeoutException.class,
+                () -> task.get(200, TimeUnit.MILLISECONDS));
+    }
+
+    private static void assertDone(CompletableFuture<?> task) throws Exception {
+        task.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void permitsAreHalvedUnderPressureAndRecoverStepwise() throws Exception {
+        double[] pressure = {0.9};
+        MemoryGovernor governor = new MemoryGovernor(8, 0.8, 0.5, MAX_HEAP, () -> pressure[0]);
+        Assertions.assertEquals(8, governor.permits());
+        for (int expected : new int[] {4, 2, 1, 1}) {
+            governor.adjust();
+            Assertions.assertEquals(expected, governor.permits());
+        }
+        // Between the watermarks, the permits are kept
+        pressure[0] = 0.6;
+        governor.adjust();
+        Assertions.assertEquals(1, governor.permits());
+
+        // A commit waits until a permit is released
+        governor.acquire();
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(governor::acquire);
+        assertBlocked(waiting);
+        governor.release();
+        assertDone(waiting);
+        governor.release();
+
+        pressure[0] = 0.3;
+        for (int expected : new int[] {2, 3, 4, 5, 6, 7, 8, 8}) {
+            governor.adjust();
+            Assertions.assertEquals(expected, governor.permits());
+        }
+        governor.close();
+    }
+
+    @Test
+    public void reservationsWaitForHeadroom() throws Exception {
+        // The headroom up to the high watermark is 800 - 300 bytes
+        MemoryGovernor governor = new MemoryGovernor(4, 0.8, 0.5, MAX_HEAP, () -> 0.3);
+        // A single reservation is never delayed, even if it exceeds the headroom
+        governor.reserve(600);
+        governor.unreserve(600);
+
+        governor.reserve(400);
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> governor.reserve(200));
+        assertBlocked(waiting);
+        governor.unreserve(400);
+        assertDone(waiting);
+        // The remaining reservation leaves room for another one
+        governor.reserve(300);
+        governor.unreserve(300);
+        governor.unreserve(200);
+        governor.close();
+    }
+
+    @Test
+    public void producersAwaitPendingTasksUnderPressure() throws Exception {
+        double[] pressure = {0.9};
+        AtomicLong pendingTasks = new AtomicLong(2);
+        MemoryGovernor governor = new MemoryGovernor(4, 0.8, 0.5, MAX_HEAP, () -> pressure[0]);
+        CompletableFuture<Void> waiting =
+                CompletableFuture.runAsync(() -> governor.awaitHeadroom(pendingTasks::get));
+        assertBlocked(waiting);
+        pendingTasks.set(0);
+        assertDone(waiting);
+
+        // Without pressure, producers continue despite pending tasks
+        pendingTasks.set(2);
+        pressure[0] = 0.7;
+        assertDone(CompletableFuture.runAsync(() -> governor.awaitHeadroom(pendingTasks::get)));
+        governor.close();
+    }
+
+    @Test
+    public void disabledGovernorNeverBlocks() throws Exception {
+        MemoryGovernor governor = MemoryGovernor.disabled();
+        assertDone(CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 4; i++) {
+                governor.acquire();
+                governor.reserve(Long.MAX_VALUE / 8);
+            }
+            governor.awaitHeadroom(() -> 1);
+        }));
+        governor.close();
+    }
+}
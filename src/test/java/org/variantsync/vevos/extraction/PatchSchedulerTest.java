@@ -0,0 +1,92 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.concurrency.PatchScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class PatchSchedulerTest {
+
+    @Test
+    public void patchesOfTheSameTargetAreAnalyzedInOrder() {
+        PatchScheduler scheduler = new PatchScheduler(1, 4);
+        Object first = new Object();
+        Object second = new Object();
+        List<Integer> firstOrder = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> secondOrder = Collections.synchronizedList(new ArrayList<>());
+        PatchScheduler.Session session = scheduler.beginCommit();
+        for (int i = 0; i < 50; i++) {
+            int patch = i;
+            session.schedule(List.of(first), () -> {
+                // Give later patches of the target a chance to overtake this one
+                Thread.yield();
+                firstOrder.add(patch);
+            });
+            // A patch that mutates both targets is ordered after the patches of each of them
+            session.schedule(patch % 10 == 0 ? List.of(first, second) : List.of(second),
+                    () -> secondOrder.add(patch));
+        }
+        Assertions.assertEquals(100, session.patchCount());
+        session.await();
+        scheduler.shutdown();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(i);
+        }
+        Assertions.assertEquals(expected, firstOrder);
+        Assertions.assertEquals(expected, secondOrder);
+    }
+
+    @Test
+    public void failuresArePropagatedByAwait() {
+        PatchScheduler scheduler = new PatchScheduler(1, 2);
+        PatchScheduler.Session session = scheduler.beginCommit();
+        session.schedule(List.of(), () -> {
+        });
+        session.schedule(List.of(), () -> {
+            throw new IllegalStateException("patch failed");
+        });
+        session.schedule(Collections.singletonList(null), () -> {
+        });
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                session::await);
+        Assertions.assertEquals("patch failed", e.getMessage());
+
+        // The session can be awaited again once its failed tasks have been cleared
+        session.await();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void patchesUpToTheThresholdAreAnalyzedInline() {
+        PatchScheduler scheduler = new PatchScheduler(2, 2);
+        Assertions.assertTrue(scheduler.isParallel());
+        Thread committer = Thread.currentThread();
+        List<Boolean> inline = Collections.synchronizedList(new ArrayList<>());
+        PatchScheduler.Session session = scheduler.beginCommit();
+        for (int i = 0; i < 3; i++) {
+            session.schedule(List.of(), () -> inline.add(Thread.currentThread() == committer));
+        }
+        // The inline patches have already been analyzed when they are scheduled
+        Assertions.assertTrue(inline.get(0) && inline.get(1));
+        session.await();
+        scheduler.shutdown();
+        Assertions.assertEquals(List.of(true, true, false), inline);
+
+        // A sequential scheduler analyzes all patches inline
+        PatchScheduler sequential = PatchScheduler.sequential();
+        Assertions.assertFalse(sequential.isParallel());
+        inline.clear();
+        session = sequential.beginCommit();
+        for (int i = 0; i < 3; i++) {
+            session.schedule(List.of(), () -> inline.add(Thread.currentThread() == committer));
+        }
+        Assertions.assertEquals(List.of(true, true, true), inline);
+        session.await();
+        sequential.shutdown();
+    }
+}
@@ -0,0 +1,45 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.filter.PathFilter;
+
+import java.util.List;
+import java.util.Properties;
+
+public class PathFilterTest {
+
+    @Test
+    public void globsMatchEntirePaths() {
+        PathFilter filter = new PathFilter(PathFilter.DEFAULT_EXTENSIONS, List.of(),
+                List.of("**/test/**", "third_party/*.h", "gen?.c"));
+
+        Assertions.assertTrue(filter.accepts("src/main.c"));
+        Assertions.assertFalse(filter.accepts("src/main.java"));
+        Assertions.assertFalse(filter.accepts("test/main.c"));
+        Assertions.assertFalse(filter.accepts("src/test/util/main.c"));
+        Assertions.assertFalse(filter.accepts("third_party/zlib.h"));
+        Assertions.assertTrue(filter.accepts("third_party/zlib/zlib.h"));
+        Assertions.assertFalse(filter.accepts("gen1.c"));
+        Assertions.assertTrue(filter.accepts("gen12.c"));
+        Assertions.assertTrue(filter.accepts("src/gen1.c"));
+    }
+
+    @Test
+    public void repositoryPropertiesReplaceDefaults() {
+        Properties properties = new Properties();
+        properties.setProperty(ConfigProperties.INCLUDE_PATHS, "src/**");
+        properties.setProperty(ConfigProperties.INCLUDE_PATHS + ".linux", "kernel/**, mm/**");
+        properties.setProperty(ConfigProperties.FILE_EXTENSIONS + ".linux", "c");
+
+        PathFilter busybox = PathFilter.fromProperties(properties, "busybox");
+        Assertions.assertTrue(busybox.accepts("src/libbb/xfuncs.h"));
+        Assertions.assertFalse(busybox.accepts("kernel/fork.c"));
+
+        PathFilter linux = PathFilter.fromProperties(properties, "linux");
+        Assertions.assertTrue(linux.accepts("kernel/fork.c"));
+        Assertions.assertTrue(linux.accepts("mm/slab.c"));
+        Assertions.assertFalse(linux.accepts("mm/slab.h"));
+        Assertions.assertFalse(linux.accepts("src/main.c"));
+    }
+}
@@ -0,0 +1,59 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.variantsync.vevos.extraction.metrics.Progress;
+import org.variantsync.vevos.extraction.metrics.ProgressTracker;
+
+import java.time.Duration;
+
+public class ProgressTrackerTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private static void complete(Progress progress, int steps) {
+        for (int i = 0; i < steps; i++) {
+            progress.step();
+        }
+    }
+
+    @Test
+    public void throughputIsAveragedOverTheWindow() {
+        ProgressTracker.Throughput throughput =
+                new ProgressTracker.Throughput(Duration.ofSeconds(2));
+        Progress progress = new Progress();
+        progress.begin("analysis", 100);
+        // The first sample has no reference point
+        Assertions.assertEquals(0, throughput.sample(0, progress));
+        complete(progress, 10);
+        Assertions.assertEquals(10, throughput.sample(SECOND, progress), 1e-9);
+        complete(progress, 10);
+        Assertions.assertEquals(10, throughput.sample(2 * SECOND, progress), 1e-9);
+        // The sample at 0s drops out of the window, the sample at 1s is the reference point
+        complete(progress, 30);
+        Assertions.assertEquals(20, throughput.sample(3 * SECOND, progress), 1e-9);
+        // A sample at the same time as the reference point has no throughput yet
+        Assertions.assertEquals(0, new ProgressTracker.Throughput(Duration.ofSeconds(2))
+                .sample(3 * SECOND, progress));
+
+        // The throughput of a new stage is not averaged with the previous stage
+        progress.begin("postprocessing", 10);
+        Assertions.assertEquals(0, throughput.sample(4 * SECOND, progress));
+        complete(progress, 2);
+        Assertions.assertEquals(4, throughput.sample(4 * SECOND + SECOND / 2, progress), 1e-9);
+    }
+
+    @Test
+    public void etaIsRoundedUpToFullSeconds() {
+        Progress progress = new Progress();
+        Assertions.assertEquals("unknown", ProgressTracker.eta(progress, 10));
+        progress.begin("analysis", 100_000);
+        complete(progress, 10);
+        Assertions.assertEquals("unknown", ProgressTracker.eta(progress, 0));
+        Assertions.assertEquals("0d 00h 00m 04s", ProgressTracker.eta(progress, 30_000));
+        Assertions.assertEquals("1d 03h 46m 30s", ProgressTracker.eta(progress, 1));
+
+        progress.begin("postprocessing", 2);
+        complete(progress, 3);
+        Assertions.assertEquals("0d 00h 00m 00s", ProgressTracker.eta(progress, 1));
+    }
+}
@@ -0,0 +1,91 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.vevos.extraction.gt.*;
+import org.variantsync.vevos.extraction.io.Serde;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class VariableSetTest {
+
+    @Test
+    public void lineAnnotationsShareInternedSets() {
+        LineAnnotation first = new LineAnnotation(1, new FeatureMapping("A"),
+                new PresenceCondition("A & B"), "artifact", Set.of("A", "B"));
+        LineAnnotation second = new LineAnnotation(2, new FeatureMapping("B"),
+                new PresenceCondition("A & B"), "artifact", new HashSet<>(List.of("B", "A")));
+
+        Assertions.assertSame(first.uniqueContainedFeatures(), second.uniqueContainedFeatures());
+        Assertions.assertEquals(Set.of("A", "B"), first.uniqueContainedFeatures());
+        Assertions.assertEquals(Set.of("A", "B").hashCode(),
+                first.uniqueContainedFeatures().hashCode());
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> first.uniqueContainedFeatures().add("C"));
+    }
+
+    @Test
+    public void unionContainsVariablesOfBothSets() {
+        VariableSet union = VariableSet.copyOf(Set.of("A", "B"));
+        Assertions.assertTrue(union.addAll(VariableSet.of(Set.of("B", "C"))));
+        Assertions.assertFalse(union.addAll(VariableSet.of(Set.of("C"))));
+
+        Assertions.assertEquals(Set.of("A", "B", "C"), union);
+        Assertions.assertTrue(union.contains("C"));
+        Assertions.assertFalse(union.contains("D"));
+        Assertions.assertTrue(union.remove("A"));
+        Assertions.assertEquals(Set.of("B", "C"), union);
+    }
+
+    @Test
+    public void serializedGroundTruthKeepsVariables(@TempDir Path tempDir) {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
+        FileGT.Mutable fileGT = new FileGT.Mutable("src/a.c");
+        fileGT.insert(new LineAnnotation(1, new FeatureMapping("A"), new PresenceCondition("A"),
+                "artifact", Set.of("A")));
+        groundTruth.fileGTs().put("src/a.c", fileGT);
+        groundTruth.variables().add("A");
+
+        File file = tempDir.resolve("gt.ser").toFile();
+        Serde.serialize(file, groundTruth);
+        GroundTruth loaded = Serde.deserialize(file);
+
+        Assertions.assertEquals(groundTruth.variablesListAsString(),
+                loaded.variablesListAsString());
+        Assertions.assertEquals(Set.of("A"),
+                loaded.get("src/a.c").get(0).uniqueContainedFeatures());
+    }
+
+    @Test
+    public void internedAnnotationsAreComparedByReference() {
+        FeatureMapping mapping = new FeatureMapping("INTERNED_A").intern();
+        Assertions.assertSame(mapping, new FeatureMapping("INTERNED_A").intern());
+        Assertions.assertSame(new LineAnnotation(1, mapping, new PresenceCondition("A"),
+                "artifact", Set.of("A")).presenceCondition(),
+                new PresenceCondition("A").intern());
+    }
+
+    @Test
+    public void releasedDictionaryKeepsConstantSets(@TempDir Path tempDir) {
+        GroundTruth groundTruth = new GroundTruth(new TreeMap<>(), new VariableSet());
+        groundTruth.variables().addAll(Set.of("RELEASED_A", "RELEASED_B"));
+        File file = tempDir.resolve("gt.ser").toFile();
+        Serde.serialize(file, groundTruth);
+        int known = VariableDictionary.global().size();
+
+        VariableDictionary.global().release();
+        Assertions.assertTrue(VariableDictionary.global().size() < known);
+        Assertions.assertEquals(-1, VariableDictionary.global().lookup("RELEASED_A"));
+        Assertions.assertEquals(Set.of("True"), VariableSet.TRUE);
+        Assertions.assertEquals(VariableSet.TRUE, VariableSet.of(Set.of("True")));
+        // Ground truths of the repository that have been written are encoded again
+        GroundTruth loaded = Serde.deserialize(file);
+        Assertions.assertEquals(Set.of("RELEASED_A", "RELEASED_B"), loaded.variables());
+    }
+}
@@ -0,0 +1,49 @@
+package org.variantsync.vevos.extraction;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.variantsync.vevos.extraction.gt.GroundTruth;
+import org.variantsync.vevos.extraction.gt.VariableSet;
+import org.variantsync.vevos.extraction.gt.VariablesDelta;
+import org.variantsync.vevos.extraction.io.Serde;
+import org.variantsync.vevos.extraction.io.VariablesReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class VariablesDeltaTest {
+
+    @Test
+    public void materializedVariablesEqualCompleteVariables(@TempDir Path dataDir)
+            throws IOException {
+        // Variables are removed when the extraction continues at another branch. "${A}" and "A"
+        // are listed with the same name.
+        List<Set<String>> commits = List.of(Set.of("True", "A", "B"), Set.of("True", "A", "B"),
+                Set.of("True", "A", "B", "${A}", "C;D"), Set.of("True", "B", "${A}"),
+                Set.of("True", "B"), Set.of("True", "B", "E"), Set.of("False", "E"));
+        VariablesDelta variablesDelta = new VariablesDelta(3);
+        for (int i = 0; i < commits.size(); i++) {
+            GroundTruth groundTruth =
+                    new GroundTruth(new TreeMap<>(), VariableSet.copyOf(commits.get(i)));
+            VariablesDelta.Rendered rendered = variablesDelta.render("c" + i, groundTruth);
+            Assertions.assertEquals(i % 3 == 0 ? GroundTruth.VARIABLES_FILE
+                    : GroundTruth.VARIABLES_DELTA_FILE, rendered.fileName());
+            Path commitDir = dataDir.resolve("c" + i);
+            Files.createDirectories(commitDir);
+            Serde.writeToFile(commitDir.resolve(rendered.fileName()), rendered.content());
+
+            TreeSet<String> expected = new TreeSet<>(groundTruth.variablesListAsString().lines()
+                    .toList());
+            Assertions.assertEquals(expected, VariablesReader.read(dataDir, "c" + i));
+        }
+        Assertions.assertEquals("Base;c1" + System.lineSeparator() + "+CSEMICOLOND"
+                + System.lineSeparator(),
+                Files.readString(dataDir.resolve("c2").resolve(GroundTruth.VARIABLES_DELTA_FILE)));
+    }
+}